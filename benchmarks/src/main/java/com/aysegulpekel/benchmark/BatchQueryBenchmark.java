@@ -0,0 +1,72 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.logic.BatchPathfinder;
+import com.aysegulpekel.logic.PathQuery;
+import com.aysegulpekel.logic.PathResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how batch query throughput scales with the number of workers
+ * sharing one read only grid. Scores are queries per second, so a linear
+ * scaling shows up as a score growing with the worker count.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(BatchQueryBenchmark.QUERIES)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BatchQueryBenchmark {
+
+    // Queries per batch
+    static final int QUERIES = 1000;
+
+    @Param({"1", "2", "4", "8"})
+    private int workers;
+
+    @Param({"512"})
+    private int size;
+
+    @Param({"RANDOM_25", "ROOMS"})
+    private MapType type;
+
+    private ForkJoinPool executor;
+    private BatchPathfinder pathfinder;
+    private List<PathQuery> queries;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(MapType.SEED);
+        CompactGrid map = type.generate(size);
+
+        queries = new ArrayList<PathQuery>(QUERIES);
+        while (queries.size() < QUERIES) {
+            int start = random.nextInt(size * size);
+            int goal = random.nextInt(size * size);
+            if (!map.isObstacle(start) && !map.isObstacle(goal)) {
+                queries.add(new PathQuery(start, goal));
+            }
+        }
+
+        executor = new ForkJoinPool(workers);
+        pathfinder = new BatchPathfinder(map, executor);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public List<PathResult> batch() throws InterruptedException {
+        return pathfinder.findAll(queries, 1, TimeUnit.SECONDS);
+    }
+}
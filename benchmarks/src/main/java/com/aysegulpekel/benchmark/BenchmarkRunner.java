@@ -0,0 +1,24 @@
+package com.aysegulpekel.benchmark;
+
+import org.openjdk.jmh.Main;
+
+import java.util.Arrays;
+
+/**
+ * BenchmarkRunner runs the benchmarks with throughput and sample time modes and the gc profiler,
+ * so every result shows operations per second, latency percentiles and the allocation rate.
+ * Any JMH options may follow, e.g. a benchmark name pattern or -p size=256 for a quick run.
+ */
+public final class BenchmarkRunner {
+
+    private static final String[] DEFAULTS = {"-bm", "thrpt,sample", "-prof", "gc"};
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] options = Arrays.copyOf(DEFAULTS, DEFAULTS.length + args.length);
+        System.arraycopy(args, 0, options, DEFAULTS.length, args.length);
+        Main.main(options);
+    }
+}
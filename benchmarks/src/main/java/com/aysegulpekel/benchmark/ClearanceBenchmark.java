@@ -0,0 +1,137 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridMap;
+import com.aysegulpekel.logic.AStar;
+import com.aysegulpekel.logic.SearchContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares agents larger than a cell on one grid with clearances against a grid
+ * of inflated obstacles per agent size: the search on each, rebuilding the
+ * inflated grids after an edit, and repairing the clearances after the same edit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ClearanceBenchmark {
+
+    // Agent sizes of the inflated grids
+    private static final int[] SIZES = {2, 3, 4};
+
+    // Agent size searched
+    private static final int AGENT_SIZE = 2;
+
+    @Param({"256", "1024"})
+    private int size;
+
+    @Param({"RANDOM_10", "ROOMS"})
+    private MapType type;
+
+    private CompactGrid map;
+    private CompactGrid inflated;
+    private int start;
+    private int goal;
+    private int toggled;
+
+    private final AStar aStar = new AStar();
+    private final SearchContext context = new SearchContext();
+
+    @Setup
+    public void setUp() {
+        map = type.generate(size);
+        inflated = inflate(AGENT_SIZE);
+
+        // Two far apart cells the agent fits on and can move between: the cell furthest
+        // from the first fitting cell after the middle, and the cell furthest from that
+        GridMap view = map.getClearance().forAgentSize(AGENT_SIZE);
+        int middle = size / 2 * size + size / 2;
+        while (view.isObstacle(middle)) {
+            middle++;
+        }
+        start = farthest(view, middle);
+        goal = farthest(view, start);
+        toggled = size / 2 * size + size / 3;
+    }
+
+    @Benchmark
+    public int[] clearanceSearch() {
+        return aStar.findPath(map.getClearance().forAgentSize(AGENT_SIZE), start, goal, context);
+    }
+
+    @Benchmark
+    public int[] inflatedSearch() {
+        return aStar.findPath(inflated, start, goal, context);
+    }
+
+    /**
+     * Toggles one obstacle, the clearances repair themselves
+     */
+    @Benchmark
+    public int clearanceEdit() {
+        map.setObstacle(toggled, !map.isObstacle(toggled));
+        return map.getClearance().getClearance(toggled);
+    }
+
+    /**
+     * Toggles one obstacle and builds the inflated grid of every agent size again
+     */
+    @Benchmark
+    public CompactGrid inflatedEdit() {
+        map.setObstacle(toggled, !map.isObstacle(toggled));
+        CompactGrid last = null;
+        for (int agentSize : SIZES) {
+            last = inflate(agentSize);
+        }
+        return last;
+    }
+
+    // A grid whose free cells are the cells an agent of the size fits on
+    private CompactGrid inflate(int agentSize) {
+        CompactGrid grid = new CompactGrid(size, size);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                boolean fits = x + agentSize <= size && y + agentSize <= size;
+                for (int dy = 0; fits && dy < agentSize; dy++) {
+                    for (int dx = 0; fits && dx < agentSize; dx++) {
+                        fits = !map.isObstacle(x + dx, y + dy);
+                    }
+                }
+                if (!fits) {
+                    grid.setObstacle(x, y, true);
+                }
+            }
+        }
+        return grid;
+    }
+
+    // Last cell a breadth first search from the start reaches
+    private static int farthest(GridMap view, int start) {
+        int[] queue = new int[view.getWidth() * view.getHeight()];
+        boolean[] seen = new boolean[queue.length];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        seen[start] = true;
+        while (head < tail) {
+            int cell = queue[head++];
+            int mask = view.getNeighbourMask(cell);
+            while (mask != 0) {
+                int direction = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                int neighbor = cell + Directions.offset(direction, view.getWidth());
+                if (!seen[neighbor]) {
+                    seen[neighbor] = true;
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+        return queue[tail - 1];
+    }
+}
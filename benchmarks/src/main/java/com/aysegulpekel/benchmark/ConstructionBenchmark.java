@@ -0,0 +1,33 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.Grid;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building an empty grid, the legacy Cell matrix against the compact map.
+ * The Cell matrix of the largest size needs well over a gigabyte of heap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConstructionBenchmark {
+
+    @Param({"25", "256", "1024", "4096"})
+    private int size;
+
+    @Benchmark
+    public Grid grid() {
+        return new Grid(size, size);
+    }
+
+    @Benchmark
+    public CompactGrid compactGrid() {
+        return new CompactGrid(size, size);
+    }
+}
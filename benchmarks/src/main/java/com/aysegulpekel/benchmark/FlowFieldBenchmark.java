@@ -0,0 +1,95 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.logic.AStar;
+import com.aysegulpekel.logic.FlowField;
+import com.aysegulpekel.logic.SearchContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares routing many agents to one shared goal: one A* per agent against
+ * one flow field read by every agent, and measures repairing a field after
+ * an obstacle toggles. Scores are the time to give every agent its first step.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FlowFieldBenchmark {
+
+    @Param({"100", "1000"})
+    private int agents;
+
+    @Param({"256", "1024"})
+    private int size;
+
+    @Param({"RANDOM_25", "ROOMS"})
+    private MapType type;
+
+    private CompactGrid map;
+    private int goal;
+    private int[] starts;
+
+    private final AStar aStar = new AStar();
+    private final SearchContext context = new SearchContext();
+
+    // Field kept up to date while the toggle benchmark edits the map
+    private FlowField field;
+    private int toggled;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(MapType.SEED);
+        map = type.generate(size);
+        goal = MapGenerator.farEndpoints(map)[1];
+        starts = new int[agents];
+        for (int i = 0; i < agents; ) {
+            int start = random.nextInt(size * size);
+            if (!map.isObstacle(start)) {
+                starts[i++] = start;
+            }
+        }
+        field = new FlowField(map, goal);
+        toggled = size / 2 * size + size / 3;
+    }
+
+    @TearDown
+    public void tearDown() {
+        field.detach();
+    }
+
+    @Benchmark
+    public int aStarPerAgent() {
+        int steps = 0;
+        for (int start : starts) {
+            int[] path = aStar.findPath(map, start, goal, context);
+            steps += path.length > 1 ? path[1] : -1;
+        }
+        return steps;
+    }
+
+    @Benchmark
+    public int sharedField() {
+        FlowField shared = new FlowField(map, goal);
+        shared.detach();
+        int steps = 0;
+        for (int start : starts) {
+            steps += shared.getNextStep(start);
+        }
+        return steps;
+    }
+
+    /**
+     * Toggles one obstacle and repairs the field, the map is back to the start after every second call
+     */
+    @Benchmark
+    public int toggleAndUpdate() {
+        map.setObstacle(toggled, !map.isObstacle(toggled));
+        return field.update();
+    }
+}
@@ -0,0 +1,117 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.logic.AStar;
+import com.aysegulpekel.logic.HierarchicalPlanner;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares long distance queries of flat A* with the HPA* planner on one large map
+ * scattered with walls. The memory of the abstract graph and of the search state
+ * each querying thread keeps is printed once per setup, next to the search state
+ * flat A* needs per thread for its per cell search arrays.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@OperationsPerInvocation(HierarchicalBenchmark.QUERIES)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class HierarchicalBenchmark {
+
+    // Queries per invocation
+    static final int QUERIES = 16;
+
+    @Param({"2048"})
+    private int size;
+
+    @Param({"32"})
+    private int clusterSize;
+
+    private CompactGrid map;
+    private HierarchicalPlanner planner;
+    private AStar aStar;
+    private int[] starts;
+    private int[] goals;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        map = new CompactGrid(size, size);
+
+        // Scattered walls like buildings of a city, long detours for flat A* and few entrances per cluster
+        for (int wall = 0; wall < size * size / 400; wall++) {
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            boolean horizontal = random.nextBoolean();
+            int length = 8 + random.nextInt(64);
+            for (int i = 0; i < length; i++) {
+                int wx = horizontal ? x + i : x;
+                int wy = horizontal ? y : y + i;
+                if (wx < size && wy < size) {
+                    map.setObstacle(wx, wy, true);
+                }
+            }
+        }
+
+        // Queries cross at least half of the map
+        starts = new int[QUERIES];
+        goals = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            do {
+                starts[i] = random.nextInt(size / 4) * size + random.nextInt(size / 4);
+                goals[i] = (size - 1 - random.nextInt(size / 4)) * size + size - 1 - random.nextInt(size / 4);
+            } while (map.isObstacle(starts[i]) || map.isObstacle(goals[i]));
+        }
+
+        long buildStart = System.nanoTime();
+        planner = new HierarchicalPlanner(map, clusterSize);
+        long buildTime = System.nanoTime() - buildStart;
+        aStar = new AStar();
+
+        // Flat A* keeps a stamp, a score and a parent per cell plus an id, key and position in its heap
+        long flatBytes = (long) size * size * (4 + 4 + 4 + 4 + 8 + 4);
+        System.out.printf("%nHPA* build %d ms, %d nodes, %d edges, %d KB abstract graph, %d KB search state per thread,"
+                        + " flat A* %d KB search state per thread%n",
+                TimeUnit.NANOSECONDS.toMillis(buildTime), planner.getNodeCount(), planner.getEdgeCount(),
+                planner.getMemoryBytes() / 1024, planner.getSearchBytes() / 1024, flatBytes / 1024);
+    }
+
+    @TearDown
+    public void tearDown() {
+        planner.detach();
+    }
+
+    @Benchmark
+    public int flat() {
+        int length = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            length += aStar.findPath(map, starts[i], goals[i]).length;
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int hierarchical() {
+        int length = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            length += planner.findPath(starts[i], goals[i]).length;
+        }
+        return length;
+    }
+
+    /**
+     * Flips one obstacle and answers one query, so the score includes rebuilding the touched clusters
+     */
+    @Benchmark
+    @OperationsPerInvocation(1)
+    public int rebuildAndQuery() {
+        int cell = starts[0] + size * (size / 2);
+        map.setObstacle(cell, !map.isObstacle(cell));
+        return planner.findPath(starts[1], goals[1]).length;
+    }
+}
@@ -0,0 +1,97 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.logic.AStar;
+import com.aysegulpekel.logic.Heuristic;
+import com.aysegulpekel.logic.LandmarkHeuristic;
+import com.aysegulpekel.logic.SearchContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the octile heuristic with ALT landmarks on corridor heavy maps.
+ * The cells each heuristic expands for the benchmark's queries are printed once per setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@OperationsPerInvocation(LandmarkBenchmark.QUERIES)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LandmarkBenchmark {
+
+    // Queries per invocation
+    static final int QUERIES = 16;
+
+    @Param({"MAZE", "ROOMS"})
+    private MapType type;
+
+    @Param({"256", "1024"})
+    private int size;
+
+    @Param({"8"})
+    private int landmarks;
+
+    private CompactGrid map;
+    private AStar octile;
+    private AStar alt;
+    private int[] starts;
+    private int[] goals;
+
+    @Setup
+    public void setUp() {
+        map = type.generate(size);
+        Random random = new Random(MapType.SEED);
+        starts = new int[QUERIES];
+        goals = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            do {
+                starts[i] = random.nextInt(size * size);
+                goals[i] = random.nextInt(size * size);
+            } while (map.isObstacle(starts[i]) || map.isObstacle(goals[i]));
+        }
+
+        long buildStart = System.nanoTime();
+        LandmarkHeuristic heuristic = LandmarkHeuristic.build(map, landmarks);
+        long buildTime = System.nanoTime() - buildStart;
+        octile = new AStar(Heuristic.OCTILE);
+        alt = new AStar(heuristic);
+
+        System.out.printf("%nALT build %d ms, %d KB of tables, expanded cells octile %d, ALT %d%n",
+                TimeUnit.NANOSECONDS.toMillis(buildTime), heuristic.getTableBytes() / 1024,
+                expanded(octile), expanded(alt));
+    }
+
+    @Benchmark
+    public int octile() {
+        return run(octile);
+    }
+
+    @Benchmark
+    public int landmarks() {
+        return run(alt);
+    }
+
+    private int run(AStar aStar) {
+        int length = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            length += aStar.findPath(map, starts[i], goals[i]).length;
+        }
+        return length;
+    }
+
+    // Cells the search expands over all queries
+    private long expanded(AStar aStar) {
+        SearchContext context = new SearchContext();
+        context.setStatsEnabled(true);
+        long expanded = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            aStar.findPath(map, starts[i], goals[i], context);
+            expanded += context.getStats().getExpanded();
+        }
+        return expanded;
+    }
+}
@@ -0,0 +1,67 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.Cell;
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.Grid;
+import com.aysegulpekel.logic.AStar;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Cell based API the user interface runs on, over the same generated maps.
+ * Sizes stop at 1024, the Cell matrix of larger maps doesn't fit a usual heap.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LegacyBenchmark {
+
+    @Param({"OPEN", "RANDOM_25", "MAZE", "ROOMS"})
+    private MapType type;
+
+    @Param({"25", "256", "1024"})
+    private int size;
+
+    private final AStar aStar = new AStar();
+    private Grid grid;
+    private Cell start;
+    private Cell goal;
+
+    @Setup
+    public void setUp() {
+        CompactGrid map = type.generate(size);
+        grid = new Grid(size, size);
+        for (int index = 0; index < size * size; index++) {
+            grid.getCell(index).setObstacle(map.isObstacle(index));
+        }
+        int[] endpoints = MapGenerator.farEndpoints(map);
+        start = grid.getCell(endpoints[0]);
+        goal = grid.getCell(endpoints[1]);
+        // runAStar labels the components on its first call, which belongs to the setup
+        grid.isConnected(start, goal);
+    }
+
+    @Benchmark
+    public List<Cell> runAStar() {
+        return aStar.runAStar(start, goal);
+    }
+
+    /**
+     * Lists the neighbours of every cell, what Grid.findNeighbours used to build after each change
+     */
+    @Benchmark
+    public int cellNeighbours() {
+        int neighbours = 0;
+        for (Cell[] column : grid.getGrid()) {
+            for (Cell cell : column) {
+                neighbours += cell.getNeighbors().size();
+            }
+        }
+        return neighbours;
+    }
+}
@@ -0,0 +1,228 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.Directions;
+
+import java.util.Random;
+
+/**
+ * MapGenerator creates the maps the benchmarks run on.
+ * Every map is generated from a seed, so each run measures the same workload.
+ */
+public final class MapGenerator {
+
+    private MapGenerator() {
+    }
+
+    /**
+     * Scatters single cell obstacles
+     *
+     * @param width   horizontal size of the map
+     * @param height  vertical size of the map
+     * @param density share of the cells which become obstacles, between 0 and 1
+     * @param seed    seed of the random generator
+     * @return the generated map
+     */
+    public static CompactGrid random(int width, int height, double density, long seed) {
+        Random random = new Random(seed);
+        CompactGrid map = new CompactGrid(width, height);
+        for (int index = 0; index < width * height; index++) {
+            if (random.nextDouble() < density) {
+                map.setObstacle(index, true);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Carves a perfect maze with the recursive backtracker: cells on even
+     * positions are rooms, the walls in between are knocked down while
+     * walking randomly to unvisited rooms. Every two rooms are connected
+     * by exactly one corridor, so paths are long and winding.
+     *
+     * @param width  horizontal size of the map
+     * @param height vertical size of the map
+     * @param seed   seed of the random generator
+     * @return the generated map
+     */
+    public static CompactGrid maze(int width, int height, long seed) {
+        Random random = new Random(seed);
+        CompactGrid map = filled(width, height);
+        int roomsX = (width + 1) / 2;
+        int roomsY = (height + 1) / 2;
+
+        boolean[] visited = new boolean[roomsX * roomsY];
+        int[] stack = new int[roomsX * roomsY];
+        int[] candidates = new int[4];
+        int size = 0;
+
+        stack[size++] = 0;
+        visited[0] = true;
+        map.setObstacle(0, 0, false);
+        while (size > 0) {
+            int room = stack[size - 1];
+            int x = room % roomsX;
+            int y = room / roomsX;
+
+            int count = 0;
+            if (x > 0 && !visited[room - 1]) {
+                candidates[count++] = room - 1;
+            }
+            if (x < roomsX - 1 && !visited[room + 1]) {
+                candidates[count++] = room + 1;
+            }
+            if (y > 0 && !visited[room - roomsX]) {
+                candidates[count++] = room - roomsX;
+            }
+            if (y < roomsY - 1 && !visited[room + roomsX]) {
+                candidates[count++] = room + roomsX;
+            }
+            if (count == 0) {
+                size--;
+                continue;
+            }
+
+            int next = candidates[random.nextInt(count)];
+            int nextX = next % roomsX;
+            int nextY = next / roomsX;
+            map.setObstacle(x + nextX, y + nextY, false);
+            map.setObstacle(nextX * 2, nextY * 2, false);
+            visited[next] = true;
+            stack[size++] = next;
+        }
+        return map;
+    }
+
+    /**
+     * Carves rectangular rooms out of solid rock and links each room
+     * to the previous one with an L shaped corridor
+     *
+     * @param width  horizontal size of the map
+     * @param height vertical size of the map
+     * @param seed   seed of the random generator
+     * @return the generated map
+     */
+    public static CompactGrid rooms(int width, int height, long seed) {
+        Random random = new Random(seed);
+        CompactGrid map = filled(width, height);
+        int rooms = Math.max(2, width * height / 400);
+        int maxSide = Math.max(3, Math.min(width, height) / 4);
+
+        int previousX = -1;
+        int previousY = -1;
+        for (int room = 0; room < rooms; room++) {
+            int roomWidth = 3 + random.nextInt(Math.min(maxSide, 16));
+            int roomHeight = 3 + random.nextInt(Math.min(maxSide, 16));
+            int left = random.nextInt(Math.max(1, width - roomWidth));
+            int top = random.nextInt(Math.max(1, height - roomHeight));
+            carve(map, left, top, left + roomWidth - 1, top + roomHeight - 1);
+
+            int centerX = Math.min(left + roomWidth / 2, width - 1);
+            int centerY = Math.min(top + roomHeight / 2, height - 1);
+            if (previousX != -1) {
+                carve(map, Math.min(previousX, centerX), previousY, Math.max(previousX, centerX), previousY);
+                carve(map, centerX, Math.min(previousY, centerY), centerX, Math.max(previousY, centerY));
+            }
+            previousX = centerX;
+            previousY = centerY;
+        }
+        return map;
+    }
+
+    /**
+     * @param width  horizontal size of the map
+     * @param height vertical size of the map
+     * @return a map without any obstacles
+     */
+    public static CompactGrid open(int width, int height) {
+        return new CompactGrid(width, height);
+    }
+
+    /**
+     * Lays floor costs over a map: ground costs 2, straight lanes every 16 rows
+     * and columns cost 1, and scattered rectangles of slow ground cost 4 to 8
+     *
+     * @param map  map to lay the costs over, its obstacles are kept
+     * @param seed seed of the random generator
+     * @return the map
+     */
+    public static CompactGrid weigh(CompactGrid map, long seed) {
+        Random random = new Random(seed);
+        int width = map.getWidth();
+        int height = map.getHeight();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                map.setCost(x, y, x % 16 == 0 || y % 16 == 0 ? 1 : 2);
+            }
+        }
+        int zones = Math.max(1, width * height / 1000);
+        for (int zone = 0; zone < zones; zone++) {
+            int cost = 4 + random.nextInt(5);
+            int left = random.nextInt(width);
+            int top = random.nextInt(height);
+            int right = Math.min(width - 1, left + 2 + random.nextInt(12));
+            int bottom = Math.min(height - 1, top + 2 + random.nextInt(12));
+            for (int y = top; y <= bottom; y++) {
+                for (int x = left; x <= right; x++) {
+                    map.setCost(x, y, cost);
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Finds two far apart cells connected by a path: the first free cell
+     * and the last cell, in index order, of the area it belongs to
+     *
+     * @param map map to look at
+     * @return start and goal indexes, the same cell twice if it is isolated
+     */
+    public static int[] farEndpoints(CompactGrid map) {
+        int size = map.getWidth() * map.getHeight();
+        int start = 0;
+        while (start < size - 1 && map.isObstacle(start)) {
+            start++;
+        }
+
+        // Breadth first walk over the area of the start
+        boolean[] reached = new boolean[size];
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        reached[start] = true;
+        int goal = start;
+        while (head < tail) {
+            int current = queue[head++];
+            goal = Math.max(goal, current);
+            int mask = map.getNeighbourMask(current);
+            while (mask != 0) {
+                int direction = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                int neighbor = current + Directions.offset(direction, map.getWidth());
+                if (!reached[neighbor]) {
+                    reached[neighbor] = true;
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+        return new int[]{start, goal};
+    }
+
+    private static CompactGrid filled(int width, int height) {
+        CompactGrid map = new CompactGrid(width, height);
+        for (int index = 0; index < width * height; index++) {
+            map.setObstacle(index, true);
+        }
+        return map;
+    }
+
+    private static void carve(CompactGrid map, int left, int top, int right, int bottom) {
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++) {
+                map.setObstacle(x, y, false);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.CompactGrid;
+
+/**
+ * MapType names the generated workloads, so benchmarks can take it as a parameter
+ */
+public enum MapType {
+
+    OPEN, RANDOM_10, RANDOM_25, RANDOM_40, MAZE, ROOMS;
+
+    // Every map of every run is generated from the same seed
+    static final long SEED = 42;
+
+    /**
+     * @param size side of the square map
+     * @return the generated map
+     */
+    public CompactGrid generate(int size) {
+        switch (this) {
+            case OPEN:
+                return MapGenerator.open(size, size);
+            case RANDOM_10:
+                return MapGenerator.random(size, size, 0.10, SEED);
+            case RANDOM_25:
+                return MapGenerator.random(size, size, 0.25, SEED);
+            case RANDOM_40:
+                return MapGenerator.random(size, size, 0.40, SEED);
+            case MAZE:
+                return MapGenerator.maze(size, size, SEED);
+            default:
+                return MapGenerator.rooms(size, size, SEED);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.logic.multiagent.CooperativePlanner;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures cooperative planning of many agents on one map. Every operation
+ * replans the windows of all agents from the same positions, the plans
+ * counter reports the agent windows planned per second, one agent one plan.
+ * Zero workers plan the agents one after the other on the benchmark thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MultiAgentBenchmark {
+
+    @Param({"100", "400"})
+    private int agents;
+
+    @Param({"0", "4"})
+    private int workers;
+
+    @Param({"16"})
+    private int window;
+
+    @Param({"256"})
+    private int size;
+
+    @Param({"RANDOM_25", "ROOMS"})
+    private MapType type;
+
+    private ForkJoinPool executor;
+    private CooperativePlanner planner;
+
+    /**
+     * Agent windows planned, JMH reports the counter per second
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Plans {
+        public long plans;
+    }
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        Random random = new Random(MapType.SEED);
+        CompactGrid map = type.generate(size);
+        map.getComponents();
+
+        planner = new CooperativePlanner(map, window);
+        Set<Integer> starts = new HashSet<Integer>();
+        Set<Integer> goals = new HashSet<Integer>();
+        while (planner.getAgentCount() < agents) {
+            int start = random.nextInt(size * size);
+            int goal = random.nextInt(size * size);
+            if (!map.isObstacle(start) && !map.isObstacle(goal) && map.isConnected(start, goal)
+                    && starts.add(start)) {
+                if (goals.add(goal)) {
+                    planner.addAgent(start, goal);
+                } else {
+                    starts.remove(start);
+                }
+            }
+        }
+        executor = workers > 0 ? new ForkJoinPool(workers) : null;
+        // The true distances are filled in lazily, the first replan pays for most of them
+        planner.replan(executor);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public int replan(Plans plans) throws InterruptedException {
+        planner.replan(executor);
+        plans.plans += agents;
+        return planner.getAgentCount();
+    }
+}
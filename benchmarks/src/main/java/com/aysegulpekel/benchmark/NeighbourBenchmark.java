@@ -0,0 +1,42 @@
+package com.aysegulpekel.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures keeping the neighbours up to date and reading them back
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class NeighbourBenchmark {
+
+    /**
+     * Turns a cell in the middle of the map into an obstacle and back,
+     * which updates the neighbours around it twice
+     */
+    @Benchmark
+    public void toggleObstacle(Workload workload) {
+        int cell = workload.map.indexOf(workload.size / 2, workload.size / 2);
+        boolean obstacle = workload.map.isObstacle(cell);
+        workload.map.setObstacle(cell, !obstacle);
+        workload.map.setObstacle(cell, obstacle);
+    }
+
+    /**
+     * Visits every move of every cell, as a search covering the whole map does
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int visitAllNeighbours(Workload workload) {
+        int moves = 0;
+        int size = workload.size * workload.size;
+        for (int index = 0; index < size; index++) {
+            moves += Integer.bitCount(workload.map.getNeighbourMask(index));
+        }
+        return moves;
+    }
+}
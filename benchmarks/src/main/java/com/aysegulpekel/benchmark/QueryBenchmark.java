@@ -0,0 +1,94 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.logic.AStar;
+import com.aysegulpekel.logic.JumpPointSearch;
+import com.aysegulpekel.logic.PathBuffer;
+import com.aysegulpekel.logic.SearchContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures single queries between two far apart cells of the generated maps,
+ * and queries whose goal can't be reached, which exhaust the start's whole area
+ * unless the map's connected components are labelled.
+ * Sample time mode reports the latency percentiles next to the average.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QueryBenchmark {
+
+    private final AStar aStar = new AStar();
+    private final JumpPointSearch jumpPointSearch = new JumpPointSearch();
+
+    // Reused by every query of the path buffer benchmark, which runs on one thread
+    private final PathBuffer path = new PathBuffer();
+
+    /**
+     * UnreachableWorkload walls in the goal of the workload, so no path leads there
+     */
+    public static class UnreachableWorkload extends Workload {
+
+        @Override
+        @Setup(Level.Trial)
+        public void setUp() {
+            super.setUp();
+            int x = map.getX(goal);
+            int y = map.getY(goal);
+            for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, size - 1); ny++) {
+                for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, size - 1); nx++) {
+                    if (nx != x || ny != y) {
+                        map.setObstacle(nx, ny, true);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * LabelledUnreachableWorkload labels the components of the walled in map,
+     * so the unreachable goal is rejected before the search starts
+     */
+    public static class LabelledUnreachableWorkload extends UnreachableWorkload {
+
+        @Override
+        @Setup(Level.Trial)
+        public void setUp() {
+            super.setUp();
+            map.getComponents();
+        }
+    }
+
+    @Benchmark
+    public int[] aStar(Workload workload) {
+        return aStar.findPath(workload.map, workload.start, workload.goal);
+    }
+
+    /**
+     * Writes the path into a reused buffer, the gc profiler shows no allocations
+     */
+    @Benchmark
+    public PathBuffer aStarIntoBuffer(Workload workload) {
+        aStar.findPath(workload.map, workload.start, workload.goal, SearchContext.forCurrentThread(), path);
+        return path;
+    }
+
+    @Benchmark
+    public int[] jumpPointSearch(Workload workload) {
+        return jumpPointSearch.findPath(workload.map, workload.start, workload.goal);
+    }
+
+    @Benchmark
+    public int[] aStarUnreachable(UnreachableWorkload workload) {
+        return aStar.findPath(workload.map, workload.start, workload.goal);
+    }
+
+    @Benchmark
+    public int[] aStarUnreachableLabelled(LabelledUnreachableWorkload workload) {
+        return aStar.findPath(workload.map, workload.start, workload.goal);
+    }
+}
@@ -0,0 +1,145 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.io.MapFile;
+import com.aysegulpekel.logic.AStar;
+import com.aysegulpekel.logic.Histogram;
+import com.aysegulpekel.service.shard.LocalShards;
+import com.aysegulpekel.service.shard.ShardCoordinator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ShardScaling reports how sharded planning scales with the number of shards.
+ * A generated map is written to a map file and split into more and more shards,
+ * each served by a local worker process. Per layout it reports the time until
+ * every worker has built its shard, the boundary nodes, the cells each worker
+ * holds, the throughput and latency percentiles of client threads planning
+ * random paths, and the path costs against A* on the whole map.
+ * <p>
+ * Arguments, all optional: map size, map type, seconds per layout and client threads.
+ */
+public final class ShardScaling {
+
+    private static final int[][] LAYOUTS = {{1, 1}, {2, 1}, {2, 2}, {4, 2}, {4, 4}};
+
+    // Queries whose sharded path cost is compared to the optimal one
+    private static final int QUALITY_QUERIES = 100;
+
+    private ShardScaling() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        MapType type = args.length > 1 ? MapType.valueOf(args[1]) : MapType.ROOMS;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int clients = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        CompactGrid map = type.generate(size);
+        Path file = Files.createTempFile("shards", ".map");
+        try {
+            MapFile.write(map, file);
+            int[] free = freeCells(map);
+            System.out.printf("%s %dx%d, %d clients, %d s per layout, %d cores%n", type, size, size, clients,
+                    seconds, Runtime.getRuntime().availableProcessors());
+            for (int[] layout : LAYOUTS) {
+                run(map, file, free, layout[0], layout[1], seconds, clients);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void run(CompactGrid map, Path file, int[] free, int columns, int rows,
+                            int seconds, int clients) throws Exception {
+        long startNanos = System.nanoTime();
+        try (LocalShards shards = new LocalShards(file, columns, rows, "-Xmx1g");
+             ShardCoordinator coordinator = shards.connect()) {
+            long readyMillis = (System.nanoTime() - startNanos) / 1000000;
+            double costRatio = costRatio(map, coordinator, free);
+
+            Histogram latencyNanos = new Histogram();
+            List<Thread> threads = new ArrayList<Thread>();
+            long until = System.nanoTime() + seconds * 1000000000L;
+            for (int i = 0; i < clients; i++) {
+                Random random = new Random(MapType.SEED + i);
+                threads.add(new Thread(() -> {
+                    try {
+                        while (System.nanoTime() < until) {
+                            int start = free[random.nextInt(free.length)];
+                            int goal = free[random.nextInt(free.length)];
+                            long sentNanos = System.nanoTime();
+                            coordinator.findPath(start, goal);
+                            latencyNanos.record(System.nanoTime() - sentNanos);
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Shard worker lost", e);
+                    }
+                }, "shard-client-" + i));
+            }
+            long runNanos = System.nanoTime();
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long elapsedNanos = System.nanoTime() - runNanos;
+
+            long answered = latencyNanos.getCount();
+            System.out.printf("%dx%d shards: ready=%dms nodes=%d cells/shard=%d throughput=%d/s"
+                            + " p50=%dus p99=%dus requests/query=%.1f cost=+%.2f%%%n",
+                    columns, rows, readyMillis, coordinator.getNodeCount(),
+                    (long) map.getWidth() * map.getHeight() / (columns * rows),
+                    answered * 1000000000L / elapsedNanos,
+                    latencyNanos.getPercentile(50) / 1000, latencyNanos.getPercentile(99) / 1000,
+                    (double) coordinator.getRequests() / coordinator.getQueries(), (costRatio - 1) * 100);
+        }
+    }
+
+    // Mean ratio of the sharded path's cost to the optimal path's cost
+    private static double costRatio(CompactGrid map, ShardCoordinator coordinator, int[] free) throws IOException {
+        AStar aStar = new AStar();
+        Random random = new Random(MapType.SEED);
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < QUALITY_QUERIES; i++) {
+            int start = free[random.nextInt(free.length)];
+            int goal = free[random.nextInt(free.length)];
+            long optimal = cost(map, aStar.findPath(map, start, goal));
+            if (optimal > 0) {
+                sum += (double) cost(map, coordinator.findPath(start, goal)) / optimal;
+                count++;
+            }
+        }
+        return count == 0 ? 1 : sum / count;
+    }
+
+    private static long cost(CompactGrid map, int[] path) {
+        long cost = 0;
+        for (int i = 1; i < path.length; i++) {
+            boolean diagonal = path[i] % map.getWidth() != path[i - 1] % map.getWidth()
+                    && path[i] / map.getWidth() != path[i - 1] / map.getWidth();
+            cost += diagonal ? Directions.DIAGONAL_COST : Directions.STRAIGHT_COST;
+        }
+        return cost;
+    }
+
+    private static int[] freeCells(CompactGrid map) {
+        int[] free = new int[map.getWidth() * map.getHeight()];
+        int count = 0;
+        for (int i = 0; i < free.length; i++) {
+            if (!map.isObstacle(i)) {
+                free[count++] = i;
+            }
+        }
+        return Arrays.copyOf(free, count);
+    }
+}
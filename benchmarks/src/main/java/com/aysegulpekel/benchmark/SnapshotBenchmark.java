@@ -0,0 +1,121 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.TiledGrid;
+import com.aysegulpekel.logic.AStar;
+import com.aysegulpekel.logic.SearchContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the copy-on-write tiled grid: publishing a version after one edit or
+ * a batch of edits against copying the whole grid, searching a snapshot against
+ * searching the compact grid, and searches running while a writer keeps
+ * publishing edits.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SnapshotBenchmark {
+
+    // Cells edited by one batch
+    private static final int BATCH = 64;
+
+    @Param({"256", "1024"})
+    private int size;
+
+    @Param({"RANDOM_10", "ROOMS"})
+    private MapType type;
+
+    private CompactGrid map;
+    private TiledGrid tiles;
+    private int start;
+    private int goal;
+
+    // Cells the edits toggle, in a fixed random order
+    private int[] edited;
+    private int next;
+
+    private final AStar aStar = new AStar();
+
+    /**
+     * Searcher holds the search state of one reading thread
+     */
+    @State(Scope.Thread)
+    public static class Searcher {
+        final SearchContext context = new SearchContext();
+    }
+
+    @Setup
+    public void setUp() {
+        map = type.generate(size);
+        tiles = TiledGrid.copyOf(map);
+        int[] endpoints = MapGenerator.farEndpoints(map);
+        start = endpoints[0];
+        goal = endpoints[1];
+        Random random = new Random(MapType.SEED);
+        edited = new int[1 << 16];
+        for (int i = 0; i < edited.length; i++) {
+            edited[i] = random.nextInt(size * size);
+        }
+    }
+
+    @Benchmark
+    public TiledGrid.Snapshot publishOne() {
+        int cell = nextEdited();
+        return tiles.setObstacle(cell, !tiles.snapshot().isObstacle(cell));
+    }
+
+    @Benchmark
+    public TiledGrid.Snapshot publishBatch() {
+        return tiles.edit(editor -> {
+            for (int i = 0; i < BATCH; i++) {
+                int cell = nextEdited();
+                editor.setObstacle(cell, !editor.isObstacle(cell));
+            }
+        });
+    }
+
+    /**
+     * What every edit would cost if a version were a full copy of the grid
+     */
+    @Benchmark
+    public TiledGrid copyWholeGrid() {
+        return TiledGrid.copyOf(map);
+    }
+
+    @Benchmark
+    public int[] searchCompact(Searcher searcher) {
+        return aStar.findPath(map, start, goal, searcher.context);
+    }
+
+    @Benchmark
+    public int[] searchSnapshot(Searcher searcher) {
+        return aStar.findPath(tiles.snapshot(), start, goal, searcher.context);
+    }
+
+    @Benchmark
+    @Group("underEdits")
+    @GroupThreads(3)
+    public int[] readers(Searcher searcher) {
+        return aStar.findPath(tiles.snapshot(), start, goal, searcher.context);
+    }
+
+    @Benchmark
+    @Group("underEdits")
+    @GroupThreads(1)
+    public TiledGrid.Snapshot writer() {
+        return publishOne();
+    }
+
+    // Only the writing thread takes cells
+    private int nextEdited() {
+        next = (next + 1) & (edited.length - 1);
+        return edited[next];
+    }
+}
@@ -0,0 +1,59 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.logic.AStar;
+import com.aysegulpekel.logic.Heuristic;
+import com.aysegulpekel.logic.SearchContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the binary heap and the radix heap open sets of A* on maps with
+ * floor costs, where the octile heuristic is weak and the open set grows
+ * large, and on the same maps with every cell costing 1.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WeightedBenchmark {
+
+    @Param({"256", "1024"})
+    private int size;
+
+    @Param({"RANDOM_10", "ROOMS"})
+    private MapType type;
+
+    @Param({"true", "false"})
+    private boolean weighted;
+
+    @Param({"BINARY_HEAP", "RADIX_HEAP"})
+    private AStar.QueueType queue;
+
+    private CompactGrid map;
+    private int start;
+    private int goal;
+
+    private AStar aStar;
+    private final SearchContext context = new SearchContext();
+
+    @Setup
+    public void setUp() {
+        map = type.generate(size);
+        if (weighted) {
+            MapGenerator.weigh(map, MapType.SEED);
+        }
+        int[] endpoints = MapGenerator.farEndpoints(map);
+        start = endpoints[0];
+        goal = endpoints[1];
+        aStar = new AStar(Heuristic.OCTILE, queue);
+    }
+
+    @Benchmark
+    public int[] search() {
+        return aStar.findPath(map, start, goal, context);
+    }
+}
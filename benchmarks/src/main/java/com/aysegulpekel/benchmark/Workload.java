@@ -0,0 +1,34 @@
+package com.aysegulpekel.benchmark;
+
+import com.aysegulpekel.core.CompactGrid;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Workload is a generated map with two far apart cells connected by a path,
+ * shared by the benchmarks which search it
+ */
+@State(Scope.Benchmark)
+public class Workload {
+
+    @Param({"OPEN", "RANDOM_10", "RANDOM_25", "RANDOM_40", "MAZE", "ROOMS"})
+    MapType type;
+
+    @Param({"25", "256", "1024", "4096"})
+    int size;
+
+    CompactGrid map;
+    int start;
+    int goal;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = type.generate(size);
+        int[] endpoints = MapGenerator.farEndpoints(map);
+        start = endpoints[0];
+        goal = endpoints[1];
+    }
+}
@@ -12,6 +12,10 @@ public class Cell {
     private int x;
     private int y;
 
+    // Position of the cell in its grid as y * width + x,
+    // assigned by the grid and used to key per cell search state
+    private int index;
+
     // The cost of going from the cell's location to goal
     private int gScore = Integer.MAX_VALUE;
 
@@ -22,8 +26,15 @@ public class Cell {
     // Boolean status for if the cell is obstacle or not
     private boolean obstacle = false;
 
+    // Cost of moving into the cell, 1 for plain floor and more for slow ground
+    private int cost = 1;
+
+    // Neighbours of a stand alone cell, cells of a grid get theirs from the grid
     List<Cell> neighbors = new ArrayList<Cell>();
 
+    // Grid the cell belongs to, obstacle changes are written through to its compact map
+    Grid grid;
+
     public int getX() {
         return x;
     }
@@ -40,6 +51,14 @@ public class Cell {
         this.y = y;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     public int getgScore() {
         return gScore;
     }
@@ -56,19 +75,53 @@ public class Cell {
         this.fScore = fScore;
     }
 
+    /**
+     * @return the cells this cell can move to
+     */
     public List<Cell> getNeighbors() {
-        return neighbors;
+        return grid != null ? grid.getNeighbours(this) : neighbors;
     }
 
+    /**
+     * @param neighbors the cells a stand alone cell can move to
+     * @throws IllegalStateException for a cell of a grid, whose neighbours follow the grid's obstacles
+     */
     public void setNeighbors(List<Cell> neighbors) {
+        if (grid != null) {
+            throw new IllegalStateException("Cells of a grid get their neighbours from the grid");
+        }
         this.neighbors = neighbors;
     }
 
+    /**
+     * @return the grid the cell belongs to, null for a stand alone cell
+     */
+    public Grid getGrid() {
+        return grid;
+    }
+
     public boolean isObstacle() {
         return obstacle;
     }
 
     public void setObstacle(boolean obstacle) {
         this.obstacle = obstacle;
+        if (grid != null) {
+            grid.getMap().setObstacle(index, obstacle);
+        }
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * @param cost cost of moving into the cell, from 1 to GridMap.MAX_COST
+     */
+    public void setCost(int cost) {
+        if (grid != null) {
+            grid.getMap().setCost(index, cost);
+        }
+        this.cost = cost;
     }
 }
@@ -0,0 +1,235 @@
+package com.aysegulpekel.core;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * ClearanceMap keeps, for every cell, the side of the largest free square
+ * whose top left corner is the cell. An agent of size k covers the k x k
+ * cells right of and below the cell it stands on, so it fits on a cell
+ * exactly when the cell's clearance is at least k, and every agent size
+ * shares one grid and one byte per cell.
+ * <p>
+ * The clearance of a free cell is one more than the smallest clearance of
+ * its right, lower and lower right neighbours, so the map is built in one
+ * pass from the bottom right corner up. Clearances are capped at
+ * MAX_CLEARANCE, which keeps a cell from depending on rows further below:
+ * the rows are split into stripes which are built in parallel, each starting
+ * MAX_CLEARANCE rows below its first row. An obstacle change only touches
+ * the cells up to MAX_CLEARANCE - 1 left of and above it, which are redone
+ * row by row until a row stays the same.
+ * <p>
+ * The clearances are changed by the thread editing the grid while any number of threads read them.
+ */
+public class ClearanceMap {
+
+    // Largest clearance kept, larger free squares count as this size
+    public static final int MAX_CLEARANCE = Byte.MAX_VALUE;
+
+    private final CompactGrid map;
+    private final int width;
+    private final int height;
+
+    // Clearance of each cell, 0 for obstacles
+    private final byte[] clearances;
+
+    // Views by agent size, made on first use so that searches don't allocate them
+    private final AgentView[] views = new AgentView[MAX_CLEARANCE + 1];
+
+    /**
+     * Computes the clearances of the grid, which must not change until the constructor returns
+     *
+     * @param map grid map to compute the clearances of
+     */
+    ClearanceMap(CompactGrid map) {
+        this.map = map;
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.clearances = new byte[width * height];
+        build();
+    }
+
+    /**
+     * @param index index of a cell
+     * @return side of the largest free square with the cell as its top left corner, at most MAX_CLEARANCE
+     */
+    public int getClearance(int index) {
+        return clearances[index];
+    }
+
+    /**
+     * @param index index of a cell
+     * @param size  side of the agent's square
+     * @return true if an agent of the size fits with its top left corner on the cell
+     */
+    public boolean fits(int index, int size) {
+        return clearances[index] >= size;
+    }
+
+    /**
+     * Views the grid as an agent of a size sees it: cells the agent doesn't fit
+     * on are obstacles, and it moves only to cells it fits on. A diagonal move
+     * also needs the agent to fit on one of the two cells it passes between.
+     * A move costs what moving into the cell the agent stands on costs.
+     *
+     * @param size side of the agent's square, from 1 to MAX_CLEARANCE
+     * @return grid map for the searches, which follows the grid's obstacle changes
+     */
+    public GridMap forAgentSize(int size) {
+        if (size < 1 || size > MAX_CLEARANCE) {
+            throw new IllegalArgumentException("Agent size must be between 1 and " + MAX_CLEARANCE + ", was " + size);
+        }
+        if (size == 1) {
+            return map;
+        }
+        // Two threads may both make a view, they are the same
+        AgentView view = views[size];
+        if (view == null) {
+            view = new AgentView(size);
+            views[size] = view;
+        }
+        return view;
+    }
+
+    /**
+     * Recomputes every clearance
+     */
+    void build() {
+        int stripes = Math.min(height, Runtime.getRuntime().availableProcessors() * 4);
+        IntStream.range(0, stripes).parallel().forEach(stripe -> {
+            int from = height * stripe / stripes;
+            int to = height * (stripe + 1) / stripes;
+            buildRows(from, to);
+        });
+    }
+
+    /**
+     * Builds a stripe of rows. The rows below it are computed again into scratch rows,
+     * starting MAX_CLEARANCE rows down from a row taken to be all clear; clearances are
+     * capped, so the guess is forgotten by the time the stripe is reached.
+     *
+     * @param from first row of the stripe
+     * @param to   row after the last row of the stripe
+     */
+    private void buildRows(int from, int to) {
+        int last = Math.min(height, to + MAX_CLEARANCE);
+        // One more column which stays 0, for the cells on the right border
+        byte[] below = new byte[width + 1];
+        byte[] row = new byte[width + 1];
+        if (last < height) {
+            Arrays.fill(below, 0, width, (byte) MAX_CLEARANCE);
+        }
+        for (int y = last - 1; y >= from; y--) {
+            int offset = y * width;
+            for (int x = width - 1; x >= 0; x--) {
+                row[x] = map.isObstacle(offset + x) ? 0
+                        : (byte) Math.min(MAX_CLEARANCE, 1 + Math.min(row[x + 1], Math.min(below[x], below[x + 1])));
+            }
+            if (y < to) {
+                System.arraycopy(row, 0, clearances, offset, width);
+            }
+            byte[] swap = below;
+            below = row;
+            row = swap;
+        }
+    }
+
+    /**
+     * Repairs the clearances after a cell changed, called by the grid before its listeners
+     *
+     * @param index    index of the cell
+     * @param obstacle true if the cell is an obstacle now
+     */
+    void obstacleChanged(int index, boolean obstacle) {
+        int x = index % width;
+        int y = index / width;
+        int left = Math.max(0, x - MAX_CLEARANCE + 1);
+        int top = Math.max(0, y - MAX_CLEARANCE + 1);
+        for (int row = y; row >= top; row--) {
+            boolean changed = false;
+            for (int column = x; column >= left; column--) {
+                int cell = row * width + column;
+                byte clearance = map.isObstacle(cell) ? 0 : (byte) Math.min(MAX_CLEARANCE, 1 + Math.min(
+                        clearanceAt(column + 1, row), Math.min(clearanceAt(column, row + 1),
+                                clearanceAt(column + 1, row + 1))));
+                if (clearance != clearances[cell]) {
+                    clearances[cell] = clearance;
+                    changed = true;
+                }
+            }
+            // The rows above only depend on this one within the touched columns
+            if (!changed) {
+                return;
+            }
+        }
+    }
+
+    private int clearanceAt(int x, int y) {
+        return x < width && y < height ? clearances[y * width + x] : 0;
+    }
+
+    /**
+     * AgentView is the grid as seen by an agent of one size
+     */
+    private class AgentView implements GridMap {
+        private final int size;
+
+        AgentView(int size) {
+            this.size = size;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public boolean isObstacle(int index) {
+            return clearances[index] < size;
+        }
+
+        // Every neighbour of the grid's moves is pruned with one lookup, diagonals look at one side more
+        public int getNeighbourMask(int index) {
+            if (clearances[index] < size) {
+                return 0;
+            }
+            int mask = map.getNeighbourMask(index);
+            int result = 0;
+            while (mask != 0) {
+                int direction = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                if (clearances[index + Directions.offset(direction, width)] < size) {
+                    continue;
+                }
+                if (Directions.isDiagonal(direction) && clearances[index + Directions.dx(direction)] < size
+                        && clearances[index + Directions.dy(direction) * width] < size) {
+                    continue;
+                }
+                result |= 1 << direction;
+            }
+            return result;
+        }
+
+        @Override
+        public int getCost(int index) {
+            return map.getCost(index);
+        }
+
+        @Override
+        public boolean isWeighted() {
+            return map.isWeighted();
+        }
+
+        public long getVersion() {
+            return map.getVersion();
+        }
+
+        // Cells an agent of any size connects are connected for a single cell too
+        @Override
+        public boolean isConnected(int from, int to) {
+            return map.isConnected(from, to);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.aysegulpekel.core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * CompactGrid keeps the obstacles of a grid in a bitset,
+ * one bit per cell, instead of one Cell object per cell.
+ * The moves of every cell are kept as a byte of direction bits,
+ * which an obstacle change updates in its 3x3 neighbourhood only.
+ * Cell costs take a byte per cell once any cell costs more than 1.
+ * Connected component labels and clearances are kept too, once they were asked for.
+ */
+public class CompactGrid implements GridMap {
+
+    private final int width;
+    private final int height;
+
+    // Bit y * width + x is set when the cell is an obstacle
+    private final long[] obstacles;
+
+    // Directions each cell can move to, see Directions.computeMask
+    private final byte[] masks;
+
+    // Cost of each cell as an unsigned byte, null while every cell costs 1
+    private byte[] costs;
+
+    // Bumped on every obstacle or cost change, the grid is edited by one thread at a time
+    private volatile long version;
+
+    // Component labels, null until getComponents is first called
+    private volatile ConnectedComponents components;
+
+    // Clearances for agents larger than a cell, null until getClearance is first called
+    private volatile ClearanceMap clearance;
+
+    // Listeners told about obstacle changes
+    private final List<GridListener> listeners = new CopyOnWriteArrayList<GridListener>();
+
+    /**
+     * Grid is created with its dimensions and without any obstacles
+     * @param width horizontal dimension
+     * @param height vertical dimension
+     */
+    public CompactGrid(int width, int height) {
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid grid size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.obstacles = new long[(int) (((long) width * height + 63) >>> 6)];
+        this.masks = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                masks[y * width + x] = (byte) Directions.computeMask(this, x, y);
+            }
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isObstacle(int index) {
+        return (obstacles[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public boolean isObstacle(int x, int y) {
+        return isObstacle(indexOf(x, y));
+    }
+
+    /**
+     * Turns a cell into an obstacle or frees it, telling the listeners if it changed
+     * @param index index of the cell
+     * @param obstacle true for an obstacle
+     */
+    public void setObstacle(int index, boolean obstacle) {
+        if (obstacle == isObstacle(index)) {
+            return;
+        }
+        if (obstacle) {
+            obstacles[index >>> 6] |= 1L << index;
+        } else {
+            obstacles[index >>> 6] &= ~(1L << index);
+        }
+        updateMasks(index % width, index / width);
+        if (components != null) {
+            components.obstacleChanged(index, obstacle);
+        }
+        if (clearance != null) {
+            clearance.obstacleChanged(index, obstacle);
+        }
+        version++;
+        for (GridListener listener : listeners) {
+            listener.obstacleChanged(index, obstacle);
+        }
+    }
+
+    public void setObstacle(int x, int y, boolean obstacle) {
+        setObstacle(indexOf(x, y), obstacle);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getCost(int index) {
+        byte[] costs = this.costs;
+        return costs == null ? 1 : costs[index] & 0xFF;
+    }
+
+    public int getCost(int x, int y) {
+        return getCost(indexOf(x, y));
+    }
+
+    public boolean isWeighted() {
+        return costs != null;
+    }
+
+    /**
+     * Changes the cost of moving into a cell, telling the listeners if it changed.
+     * A cost change bumps the version so that cached paths are dropped.
+     *
+     * @param index index of the cell
+     * @param cost  cost from 1 to MAX_COST
+     */
+    public void setCost(int index, int cost) {
+        if (cost < 1 || cost > MAX_COST) {
+            throw new IllegalArgumentException("Cost must be between 1 and " + MAX_COST + ", was " + cost);
+        }
+        if (cost == getCost(index)) {
+            return;
+        }
+        if (costs == null) {
+            byte[] costs = new byte[width * height];
+            Arrays.fill(costs, (byte) 1);
+            this.costs = costs;
+        }
+        costs[index] = (byte) cost;
+        version++;
+        for (GridListener listener : listeners) {
+            listener.costChanged(index, cost);
+        }
+    }
+
+    public void setCost(int x, int y, int cost) {
+        setCost(indexOf(x, y), cost);
+    }
+
+    /**
+     * Labels the components on the first call, obstacle changes keep the labels up to date from then on.
+     * The first call must not overlap with obstacle changes.
+     *
+     * @return component labels of the grid
+     */
+    public ConnectedComponents getComponents() {
+        ConnectedComponents components = this.components;
+        if (components == null) {
+            synchronized (this) {
+                components = this.components;
+                if (components == null) {
+                    components = new ConnectedComponents(this);
+                    this.components = components;
+                }
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Computes the clearances on the first call, obstacle changes keep them up to date from then on.
+     * The first call must not overlap with obstacle changes.
+     *
+     * @return clearances of the grid's cells for agents larger than a cell
+     */
+    public ClearanceMap getClearance() {
+        ClearanceMap clearance = this.clearance;
+        if (clearance == null) {
+            synchronized (this) {
+                clearance = this.clearance;
+                if (clearance == null) {
+                    clearance = new ClearanceMap(this);
+                    this.clearance = clearance;
+                }
+            }
+        }
+        return clearance;
+    }
+
+    /**
+     * Answers from the component labels once getComponents was called, in constant time
+     */
+    @Override
+    public boolean isConnected(int from, int to) {
+        ConnectedComponents components = this.components;
+        return components == null || components.isConnected(from, to);
+    }
+
+    public void addListener(GridListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(GridListener listener) {
+        listeners.remove(listener);
+    }
+
+    public int getNeighbourMask(int index) {
+        return masks[index] & 0xFF;
+    }
+
+    // An obstacle only changes the moves into it and the diagonal moves along its sides, all within 3x3
+    private void updateMasks(int x, int y) {
+        for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, height - 1); ny++) {
+            for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, width - 1); nx++) {
+                masks[ny * width + nx] = (byte) Directions.computeMask(this, nx, ny);
+            }
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.aysegulpekel.core;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * ConnectedComponents labels every free cell of a grid with the id of the
+ * area it can reach. Two cells with different ids have no path between them,
+ * so a query into a walled off area is answered without any search.
+ * <p>
+ * The labels are built with union-find, the rows split into stripes which
+ * are labelled in parallel and then joined along the stripe borders. After
+ * that the grid keeps them up to date on every obstacle change: a freed cell
+ * joins the areas around it, and a new obstacle splits its area only if its
+ * free neighbours can no longer reach each other around it, in which case
+ * the parts are searched side by side and all but the last one left
+ * unfinished, usually the largest, get new ids.
+ * <p>
+ * Ids only stay the same until the next obstacle change. The labels are
+ * changed by the thread editing the grid while any number of threads read them.
+ * A rebuild labels a fresh array and publishes it together with its union-find,
+ * so a reader sees either the old labels or the new ones, never a mix.
+ */
+public class ConnectedComponents {
+
+    // Id of obstacle cells
+    public static final int NO_COMPONENT = -1;
+
+    // Directions pointing at lower indexes, each pair of cells is joined once from its higher index
+    private static final int BACKWARD_MASK = 1 << Directions.of(-1, -1) | 1 << Directions.of(-1, 0)
+            | 1 << Directions.of(0, -1) | 1 << Directions.of(1, -1);
+
+    private final CompactGrid map;
+
+    // Label of each cell, NO_COMPONENT for obstacles
+    private int[] labels;
+
+    // Union-find over the labels, labels joined by freed cells share a root which is the id
+    private int[] parents;
+    private byte[] ranks;
+    private int labelCount;
+
+    // What the readers see, replaced whenever the labels or the parents are reallocated
+    private volatile Labels published;
+
+    // Cells visited while separating a split, allocated by the first split
+    private int[] visits;
+    private int visitStamp;
+    private final int[][] queues = new int[Directions.COUNT][];
+
+    /**
+     * Labels is one build's labels with the union-find over them
+     */
+    private static final class Labels {
+        final int[] labels;
+        final int[] parents;
+
+        Labels(int[] labels, int[] parents) {
+            this.labels = labels;
+            this.parents = parents;
+        }
+
+        int componentOf(int index) {
+            int label = labels[index];
+            if (label == NO_COMPONENT) {
+                return NO_COMPONENT;
+            }
+            // A label handed out after the parents grew is still its own root
+            return label < parents.length ? find(parents, label) : label;
+        }
+    }
+
+    /**
+     * Labels the grid, which must not change until the constructor returns
+     *
+     * @param map grid map to label
+     */
+    ConnectedComponents(CompactGrid map) {
+        this.map = map;
+        build();
+    }
+
+    /**
+     * @param index index of a cell
+     * @return id of the cell's component, NO_COMPONENT for an obstacle
+     */
+    public int getComponent(int index) {
+        return published.componentOf(index);
+    }
+
+    /**
+     * @param from index of a cell
+     * @param to   index of another cell
+     * @return true if both cells are free and a path leads from one to the other
+     */
+    public boolean isConnected(int from, int to) {
+        Labels labels = published;
+        int component = labels.componentOf(from);
+        return component != NO_COMPONENT && component == labels.componentOf(to);
+    }
+
+    /**
+     * @return number of labels in use, the components plus the labels merged or split since the last build
+     */
+    public int getLabelCount() {
+        return labelCount;
+    }
+
+    /**
+     * Relabels the whole grid into fresh arrays, the readers keep the old ones until it is done
+     */
+    void build() {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int stripes = Math.min(height, Runtime.getRuntime().availableProcessors() * 4);
+        int[] labels = new int[width * height];
+
+        // Union-find over the cells, every stripe only joins cells inside of it
+        IntStream.range(0, stripes).parallel().forEach(stripe -> {
+            int from = height * stripe / stripes * width;
+            int to = height * (stripe + 1) / stripes * width;
+            for (int index = from; index < to; index++) {
+                if (map.isObstacle(index)) {
+                    labels[index] = NO_COMPONENT;
+                    continue;
+                }
+                labels[index] = index;
+                int mask = map.getNeighbourMask(index) & BACKWARD_MASK;
+                while (mask != 0) {
+                    int direction = Integer.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                    int neighbor = index + Directions.offset(direction, width);
+                    if (neighbor >= from) {
+                        union(labels, index, neighbor);
+                    }
+                }
+            }
+        });
+
+        // Joins the first row of every stripe to the last row of the stripe above
+        for (int stripe = 1; stripe < stripes; stripe++) {
+            int from = height * stripe / stripes * width;
+            for (int index = from; index < from + width; index++) {
+                if (map.isObstacle(index)) {
+                    continue;
+                }
+                int mask = map.getNeighbourMask(index) & BACKWARD_MASK;
+                while (mask != 0) {
+                    int direction = Integer.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                    int neighbor = index + Directions.offset(direction, width);
+                    if (neighbor < from) {
+                        union(labels, index, neighbor);
+                    }
+                }
+            }
+        }
+
+        // Roots are the lowest index of their component, so one pass in index order numbers them densely
+        int count = 0;
+        for (int index = 0; index < labels.length; index++) {
+            int parent = labels[index];
+            if (parent == index) {
+                labels[index] = count++;
+            } else if (parent != NO_COMPONENT) {
+                // Parents always have lower indexes, so the parent holds its component's number already
+                labels[index] = labels[parent];
+            }
+        }
+
+        int[] parents = new int[Math.max(count * 2, 16)];
+        for (int label = 0; label < parents.length; label++) {
+            parents[label] = label;
+        }
+        this.ranks = new byte[parents.length];
+        this.labelCount = count;
+        this.labels = labels;
+        this.parents = parents;
+        this.published = new Labels(labels, parents);
+    }
+
+    /**
+     * Repairs the labels after a cell changed, called by the grid after its masks were updated
+     *
+     * @param index    index of the cell
+     * @param obstacle true if the cell is an obstacle now
+     */
+    void obstacleChanged(int index, boolean obstacle) {
+        if (obstacle) {
+            blocked(index);
+        } else {
+            freed(index);
+        }
+    }
+
+    // A freed cell joins every component it can move to
+    private void freed(int index) {
+        int width = map.getWidth();
+        int label = NO_COMPONENT;
+        int mask = map.getNeighbourMask(index);
+        while (mask != 0) {
+            int direction = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            int neighborLabel = labels[index + Directions.offset(direction, width)];
+            label = label == NO_COMPONENT ? neighborLabel : joinLabels(label, neighborLabel);
+        }
+        if (label != NO_COMPONENT) {
+            labels[index] = label;
+        } else if (labelCount < labels.length) {
+            labels[index] = newLabel();
+        } else {
+            build();
+        }
+    }
+
+    // A new obstacle splits its component if its free neighbours fall apart into groups which can't meet
+    private void blocked(int index) {
+        labels[index] = NO_COMPONENT;
+
+        int width = map.getWidth();
+        int x = index % width;
+        int y = index / width;
+
+        // Groups the free neighbours by the moves between them, all such moves stay next to the new obstacle
+        int[] ring = new int[Directions.COUNT];
+        int[] group = new int[Directions.COUNT];
+        int size = 0;
+        for (int direction = 0; direction < Directions.COUNT; direction++) {
+            int nx = x + Directions.dx(direction);
+            int ny = y + Directions.dy(direction);
+            if (nx >= 0 && ny >= 0 && nx < width && ny < map.getHeight() && !map.isObstacle(ny * width + nx)) {
+                group[size] = size;
+                ring[size++] = ny * width + nx;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                int dx = ring[j] % width - ring[i] % width;
+                int dy = ring[j] / width - ring[i] / width;
+                if (Math.abs(dx) <= 1 && Math.abs(dy) <= 1
+                        && (map.getNeighbourMask(ring[i]) & 1 << Directions.of(dx, dy)) != 0) {
+                    union(group, i, j);
+                }
+            }
+        }
+
+        int groups = 0;
+        for (int i = 0; i < size; i++) {
+            if (compress(group, i) == i) {
+                groups++;
+            }
+        }
+        if (groups <= 1) {
+            return;
+        }
+
+        if (labelCount + groups > labels.length) {
+            // Labels merged or split off long ago are never reused, a rebuild clears them out
+            build();
+            return;
+        }
+
+        int[] seeds = new int[groups];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (compress(group, i) == i) {
+                seeds[count++] = ring[i];
+            }
+        }
+        separate(seeds);
+    }
+
+    /**
+     * Searches from every group at once, one cell per group in turn. Searches which
+     * meet belong to one component. Searches which run out of cells before meeting
+     * the others have walked a whole component, which gets a new label. Once only one
+     * component is left unfinished it keeps the old label, so only the smaller parts
+     * of a split are walked and a group which meets the others early costs little.
+     *
+     * @param seeds one free neighbour of each group around the new obstacle
+     */
+    private void separate(int[] seeds) {
+        int groups = seeds.length;
+        if (visits == null) {
+            visits = new int[labels.length];
+        }
+        if (visitStamp > Integer.MAX_VALUE - 2 * Directions.COUNT) {
+            Arrays.fill(visits, 0);
+            visitStamp = 0;
+        }
+        // Cells visited by search s during this split are marked with stamp + s
+        int stamp = visitStamp + Directions.COUNT;
+        visitStamp = stamp;
+
+        int[] heads = new int[groups];
+        int[] tails = new int[groups];
+        int[] sets = new int[groups];
+        for (int search = 0; search < groups; search++) {
+            if (queues[search] == null) {
+                queues[search] = new int[64];
+            }
+            sets[search] = search;
+            visits[seeds[search]] = stamp + search;
+            queues[search][tails[search]++] = seeds[search];
+        }
+
+        int width = map.getWidth();
+        int unfinished = groups;
+        while (unfinished > 1) {
+            for (int search = 0; search < groups; search++) {
+                if (heads[search] == tails[search]) {
+                    continue;
+                }
+                int current = queues[search][heads[search]++];
+                int mask = map.getNeighbourMask(current);
+                while (mask != 0) {
+                    int direction = Integer.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                    int neighbor = current + Directions.offset(direction, width);
+                    int visit = visits[neighbor] - stamp;
+                    if (visit >= 0 && visit < groups) {
+                        union(sets, search, visit);
+                    } else {
+                        visits[neighbor] = stamp + search;
+                        if (tails[search] == queues[search].length) {
+                            queues[search] = Arrays.copyOf(queues[search], tails[search] * 2);
+                        }
+                        queues[search][tails[search]++] = neighbor;
+                    }
+                }
+            }
+            unfinished = countUnfinished(sets, heads, tails);
+        }
+
+        // Finished components get new labels, the unfinished one keeps the old label
+        int kept = compress(sets, 0);
+        for (int set = 0; set < groups; set++) {
+            if (compress(sets, set) == set && !isFinished(sets, set, heads, tails)) {
+                kept = set;
+            }
+        }
+        for (int set = 0; set < groups; set++) {
+            if (compress(sets, set) != set || set == kept) {
+                continue;
+            }
+            int label = newLabel();
+            for (int search = 0; search < groups; search++) {
+                if (compress(sets, search) == set) {
+                    for (int i = 0; i < tails[search]; i++) {
+                        labels[queues[search][i]] = label;
+                    }
+                }
+            }
+        }
+    }
+
+    // Number of components, joined searches, whose searches still have cells to visit
+    private static int countUnfinished(int[] sets, int[] heads, int[] tails) {
+        int unfinished = 0;
+        for (int set = 0; set < sets.length; set++) {
+            if (compress(sets, set) == set && !isFinished(sets, set, heads, tails)) {
+                unfinished++;
+            }
+        }
+        return unfinished;
+    }
+
+    private static boolean isFinished(int[] sets, int set, int[] heads, int[] tails) {
+        for (int search = 0; search < sets.length; search++) {
+            if (heads[search] < tails[search] && compress(sets, search) == set) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int newLabel() {
+        if (labelCount == parents.length) {
+            int[] parents = Arrays.copyOf(this.parents, this.parents.length * 2);
+            for (int label = labelCount; label < parents.length; label++) {
+                parents[label] = label;
+            }
+            ranks = Arrays.copyOf(ranks, parents.length);
+            this.parents = parents;
+            this.published = new Labels(labels, parents);
+        }
+        return labelCount++;
+    }
+
+    // Union by rank keeps the paths short for the readers, which never compress them
+    private int joinLabels(int first, int second) {
+        int[] parents = this.parents;
+        int firstRoot = find(parents, first);
+        int secondRoot = find(parents, second);
+        if (firstRoot == secondRoot) {
+            return firstRoot;
+        }
+        if (ranks[firstRoot] < ranks[secondRoot]) {
+            parents[firstRoot] = secondRoot;
+            return secondRoot;
+        }
+        if (ranks[firstRoot] == ranks[secondRoot]) {
+            ranks[firstRoot]++;
+        }
+        parents[secondRoot] = firstRoot;
+        return firstRoot;
+    }
+
+    // Links the higher root below the lower one, so a root is always the lowest index of its set
+    private static void union(int[] parents, int first, int second) {
+        int firstRoot = compress(parents, first);
+        int secondRoot = compress(parents, second);
+        if (firstRoot < secondRoot) {
+            parents[secondRoot] = firstRoot;
+        } else if (secondRoot < firstRoot) {
+            parents[firstRoot] = secondRoot;
+        }
+    }
+
+    // Finds the root and halves the path on the way, only for arrays no other thread reads
+    private static int compress(int[] parents, int element) {
+        while (parents[element] != element) {
+            parents[element] = parents[parents[element]];
+            element = parents[element];
+        }
+        return element;
+    }
+
+    private static int find(int[] parents, int element) {
+        while (parents[element] != element) {
+            element = parents[element];
+        }
+        return element;
+    }
+}
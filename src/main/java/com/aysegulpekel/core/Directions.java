@@ -0,0 +1,124 @@
+package com.aysegulpekel.core;
+
+/**
+ * Directions holds the eight moves a cell can make to its neighbours.
+ * Directions are numbered in the order the neighbours have always been
+ * traced, so bit d of a neighbour mask stands for direction d.
+ */
+public final class Directions {
+
+    // Number of directions around a cell
+    public static final int COUNT = 8;
+
+    // Vertical or horizontal directions cost 10 units
+    public static final int STRAIGHT_COST = 10;
+
+    // Diagonal directions cost 14 units,
+    // which applies the Pythagorean theorem (10^2 + 10^2 ~ 14^2)
+    public static final int DIAGONAL_COST = 14;
+
+    // Horizontal and vertical steps of each direction
+    private static final int[] DX = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] DY = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+    private Directions() {
+    }
+
+    public static int dx(int direction) {
+        return DX[direction];
+    }
+
+    public static int dy(int direction) {
+        return DY[direction];
+    }
+
+    /**
+     * @param dx horizontal step, -1, 0 or 1
+     * @param dy vertical step, -1, 0 or 1
+     * @return the direction of the step, -1 if both steps are 0
+     */
+    public static int of(int dx, int dy) {
+        int direction = (dx + 1) * 3 + dy + 1;
+        if (direction == 4) {
+            return -1;
+        }
+        return direction < 4 ? direction : direction - 1;
+    }
+
+    public static boolean isDiagonal(int direction) {
+        return DX[direction] != 0 && DY[direction] != 0;
+    }
+
+    /**
+     * @param direction any direction
+     * @return cost of moving one step in the direction
+     */
+    public static int cost(int direction) {
+        return isDiagonal(direction) ? DIAGONAL_COST : STRAIGHT_COST;
+    }
+
+    /**
+     * @param direction any direction
+     * @return the direction pointing the other way
+     */
+    public static int opposite(int direction) {
+        return COUNT - 1 - direction;
+    }
+
+    /**
+     * @param direction any direction
+     * @param width     width of the grid
+     * @return index difference between a cell and its neighbour in the direction
+     */
+    public static int offset(int direction, int width) {
+        return DY[direction] * width + DX[direction];
+    }
+
+    /**
+     * Octile distance is the cost of the cheapest move sequence on an empty grid,
+     * diagonal moves as far as possible and straight moves for the rest
+     *
+     * @param dx horizontal difference
+     * @param dy vertical difference
+     * @return octile distance
+     */
+    public static int octile(int dx, int dy) {
+        dx = Math.abs(dx);
+        dy = Math.abs(dy);
+        int diagonal = Math.min(dx, dy);
+        return diagonal * DIAGONAL_COST + (Math.max(dx, dy) - diagonal) * STRAIGHT_COST;
+    }
+
+    /**
+     * Computes which neighbours of a cell can be moved to.
+     * A neighbour must be inside the grid and not an obstacle,
+     * and a diagonal neighbour can't be reached by squeezing
+     * between two obstacles on its sides.
+     *
+     * @param map grid map the cell belongs to
+     * @param x   horizontal position of the cell
+     * @param y   vertical position of the cell
+     * @return bit mask of the directions which can be moved to
+     */
+    public static int computeMask(GridMap map, int x, int y) {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int index = y * width + x;
+        int mask = 0;
+
+        for (int direction = 0; direction < COUNT; direction++) {
+            int nx = x + DX[direction];
+            int ny = y + DY[direction];
+            if (nx < 0 || ny < 0 || nx >= width || ny >= height
+                    || map.isObstacle(index + offset(direction, width))) {
+                continue;
+            }
+            if (isDiagonal(direction) && map.isObstacle(index + DX[direction])
+                    && map.isObstacle(index + DY[direction] * width)) {
+                continue;
+            }
+            mask |= 1 << direction;
+        }
+        return mask;
+    }
+}
@@ -6,13 +6,16 @@ import java.util.List;
 /**
  * Grid object is a Cell matrix, also holds
  * the helper methods to initialize the grid and
- * trace the neighbours of each cell in the grid
+ * list the neighbours of each cell in the grid.
+ * The obstacles of its cells are mirrored in a CompactGrid,
+ * which the searches can run on without touching the cells.
  */
 public class Grid {
 
     private int width;
     private int height;
     private Cell[][] grid;
+    private CompactGrid map;
 
     /**
      * Grid is created with its dimensions
@@ -22,6 +25,7 @@ public class Grid {
     public Grid(int width, int height) {
         this.width = width;
         this.height = height;
+        this.map = new CompactGrid(width, height);
         this.grid = initialize();
     }
 
@@ -29,8 +33,53 @@ public class Grid {
         return grid;
     }
 
+    /**
+     * Replaces the cells of the grid and mirrors their obstacles and costs into the map
+     * @param grid cell matrix with the same dimensions as the grid
+     */
     public void setGrid(Cell[][] grid) {
         this.grid = grid;
+        for (int x = 0; x < grid.length; x++) {
+            for (int y = 0; y < grid[x].length; y++) {
+                grid[x][y].grid = this;
+                grid[x][y].setIndex(y * width + x);
+                map.setObstacle(x, y, grid[x][y].isObstacle());
+                map.setCost(x, y, grid[x][y].getCost());
+            }
+        }
+    }
+
+    /**
+     * @return compact view of the grid which stays in sync with its cells' obstacles
+     */
+    public CompactGrid getMap() {
+        return map;
+    }
+
+    /**
+     * @param index index of a cell in the map
+     * @return the cell at the index
+     */
+    public Cell getCell(int index) {
+        return grid[index % width][index / width];
+    }
+
+    /**
+     * @param cell a cell of the grid
+     * @return id of the area the cell can reach, ConnectedComponents.NO_COMPONENT for an obstacle
+     */
+    public int getComponentId(Cell cell) {
+        return map.getComponents().getComponent(cell.getIndex());
+    }
+
+    /**
+     * Labels the components on the first call and keeps them up to date from then on
+     * @param from a cell of the grid
+     * @param to another cell of the grid
+     * @return true if there is a path between the cells
+     */
+    public boolean isConnected(Cell from, Cell to) {
+        return map.getComponents().isConnected(from.getIndex(), to.getIndex());
     }
 
     /**
@@ -47,6 +96,8 @@ public class Grid {
 
                 grid[x][y].setX(x);
                 grid[x][y].setY(y);
+                grid[x][y].setIndex(y * width + x);
+                grid[x][y].grid = this;
 
                 grid[x][y].setgScore(0);
                 grid[x][y].setfScore(0);
@@ -55,70 +106,48 @@ public class Grid {
         return grid;
     }
 
-    // Traces the grid and assigns each cell's neighbours list to themselves
-    public void findNeighbours() {
-
-        for (int x = 0; x < grid.length; x++) {
-            for (int y = 0; y < grid[x].length; y++) {
-                int border = grid.length - 1;
-
-                List<Cell> neighbors = new ArrayList<Cell>();
-
-                // Controls to watch out each border and obstacles around
-                if (x > 0 && y > 0 && !grid[x - 1][y - 1].isObstacle()) {
-                    neighbors.add(grid[x - 1][y - 1]);
-                }
-
-                if (x > 0 && !grid[x - 1][y].isObstacle()) {
-                    neighbors.add(grid[x - 1][y]);
-                }
-
-                if (x > 0 && y < border && !grid[x - 1][y + 1].isObstacle()) {
-                    neighbors.add(grid[x - 1][y + 1]);
-                }
-
-                if (y > 0 && !grid[x][y - 1].isObstacle()) {
-                    neighbors.add(grid[x][y - 1]);
-                }
-
-                if (y < border && !grid[x][y + 1].isObstacle()) {
-                    neighbors.add(grid[x][y + 1]);
-                }
-
-                if (x < border && y > 0 && !grid[x + 1][y - 1].isObstacle()) {
-                    neighbors.add(grid[x + 1][y - 1]);
-                }
-
-                if (x < border && !grid[x + 1][y].isObstacle()) {
-                    neighbors.add(grid[x + 1][y]);
-                }
-
-                if (x < border && y < border && !grid[x + 1][y + 1].isObstacle()) {
-                    neighbors.add(grid[x + 1][y + 1]);
-                }
-
-                if (x > 0 && y > 0 && neighbors.contains(grid[x - 1][y - 1]) &&
-                        grid[x - 1][y].isObstacle() && grid[x][y - 1].isObstacle()) {
-                    neighbors.remove(grid[x - 1][y - 1]);
-                }
-
-                if (x > 0 && y < border && neighbors.contains(grid[x - 1][y + 1]) &&
-                        grid[x - 1][y].isObstacle() && grid[x][y + 1].isObstacle()) {
-                    neighbors.remove(grid[x - 1][y + 1]);
-                }
-
-                if (x < border && y > 0 && neighbors.contains(grid[x + 1][y - 1]) &&
-                        grid[x][y - 1].isObstacle() && grid[x + 1][y].isObstacle()) {
-                    neighbors.remove(grid[x + 1][y - 1]);
-                }
-
-                if (x < border && y < border && neighbors.contains(grid[x + 1][y + 1]) &&
-                        grid[x + 1][y].isObstacle() && grid[x][y + 1].isObstacle()) {
-                    neighbors.remove(grid[x + 1][y + 1]);
-                }
+    /**
+     * Lists the cells a cell can move to, read from the move directions the map keeps up to date
+     * @param cell a cell of the grid
+     * @return the neighbours in the order of the directions
+     */
+    public List<Cell> getNeighbours(Cell cell) {
+        List<Cell> neighbors = new ArrayList<Cell>(Directions.COUNT);
+        int mask = map.getNeighbourMask(cell.getIndex());
+        while (mask != 0) {
+            int direction = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            neighbors.add(grid[cell.getX() + Directions.dx(direction)][cell.getY() + Directions.dy(direction)]);
+        }
+        return neighbors;
+    }
 
-                grid[x][y].setNeighbors(neighbors);
-            }
+    /**
+     * Lists the cells an agent covering size x size cells can move to, the cells are
+     * the top left corners of the agent, see ClearanceMap
+     * @param cell a cell of the grid the agent fits on
+     * @param size side of the agent's square
+     * @return the neighbours in the order of the directions
+     */
+    public List<Cell> getNeighbours(Cell cell, int size) {
+        List<Cell> neighbors = new ArrayList<Cell>(Directions.COUNT);
+        int mask = map.getClearance().forAgentSize(size).getNeighbourMask(cell.getIndex());
+        while (mask != 0) {
+            int direction = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            neighbors.add(grid[cell.getX() + Directions.dx(direction)][cell.getY() + Directions.dy(direction)]);
         }
+        return neighbors;
+    }
+
+    /**
+     * Traces the grid and assigns each cell's neighbours list to themselves.
+     * Cells of a grid read their neighbours from the map, which keeps them
+     * up to date on every obstacle change, so nothing needs to be traced.
+     *
+     * @deprecated neighbours no longer need to be traced after obstacle changes
+     */
+    @Deprecated
+    public void findNeighbours() {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,25 @@
+package com.aysegulpekel.core;
+
+/**
+ * GridListener is told about every obstacle and cost change of a grid,
+ * so that state derived from the grid can be repaired instead of rebuilt
+ */
+public interface GridListener {
+
+    /**
+     * Called after a cell turned into an obstacle or got free again
+     *
+     * @param index    index of the cell
+     * @param obstacle true if the cell is an obstacle now
+     */
+    void obstacleChanged(int index, boolean obstacle);
+
+    /**
+     * Called after the cost of moving into a cell changed, listeners which ignore costs needn't override it
+     *
+     * @param index index of the cell
+     * @param cost  new cost of the cell
+     */
+    default void costChanged(int index, int cost) {
+    }
+}
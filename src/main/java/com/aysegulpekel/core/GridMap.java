@@ -0,0 +1,75 @@
+package com.aysegulpekel.core;
+
+/**
+ * GridMap is the view of a grid the searches run on.
+ * Cells are addressed by their index, which is y * width + x.
+ */
+public interface GridMap {
+
+    // Highest cost a cell can have, costs fit in an unsigned byte
+    int MAX_COST = 255;
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * @param index index of the cell
+     * @return true if the cell can't be passed
+     */
+    boolean isObstacle(int index);
+
+    /**
+     * @param index index of the cell
+     * @return bit mask of the directions (see Directions) the cell can move to
+     */
+    int getNeighbourMask(int index);
+
+    /**
+     * Cost of moving into a cell, as a multiple of the move's STRAIGHT_COST or DIAGONAL_COST.
+     * Costs start at 1, so the heuristics never overestimate on weighted maps either.
+     *
+     * @param index index of the cell
+     * @return cost of the cell from 1 to MAX_COST
+     */
+    default int getCost(int index) {
+        return 1;
+    }
+
+    /**
+     * Searches only look the costs up on weighted maps
+     *
+     * @return true if any cell may cost more than 1
+     */
+    default boolean isWeighted() {
+        return false;
+    }
+
+    /**
+     * @return counter which changes whenever an obstacle or a cost of the map changes
+     */
+    long getVersion();
+
+    /**
+     * Tells quickly whether a path may exist, before any search starts
+     *
+     * @param from index of a cell
+     * @param to   index of another cell
+     * @return false if the cells surely aren't connected, true if they might be
+     */
+    default boolean isConnected(int from, int to) {
+        return true;
+    }
+
+    default int indexOf(int x, int y) {
+        return y * getWidth() + x;
+    }
+
+    default int getX(int index) {
+        return index % getWidth();
+    }
+
+    default int getY(int index) {
+        return index / getWidth();
+    }
+}
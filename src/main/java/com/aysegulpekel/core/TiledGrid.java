@@ -0,0 +1,366 @@
+package com.aysegulpekel.core;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * TiledGrid is a grid which writers edit while any number of searches read it without locks.
+ * <p>
+ * The cells are stored in square tiles of TILE_SIZE x TILE_SIZE cells, each
+ * holding its obstacles, neighbour masks and costs. Readers search a Snapshot,
+ * an immutable version of the grid, which stays the same however the grid is
+ * edited meanwhile. Edits copy the tiles they touch into a new snapshot, which
+ * shares every other tile with the previous one, and publish it with a single
+ * volatile write. Searches started afterwards see the new version, searches
+ * in flight finish on the version they started on.
+ * <p>
+ * Writers are serialized, and a batch of edits is published at once.
+ */
+public class TiledGrid {
+
+    // Tiles are 64 x 64 cells, a row of a tile's obstacles is one long
+    public static final int TILE_BITS = 6;
+    public static final int TILE_SIZE = 1 << TILE_BITS;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+
+    private final int width;
+    private final int height;
+
+    // Number of tiles across
+    private final int tilesX;
+
+    // Latest published version
+    private volatile Snapshot current;
+
+    /**
+     * Grid is created with its dimensions and without any obstacles
+     *
+     * @param width  horizontal dimension
+     * @param height vertical dimension
+     */
+    public TiledGrid(int width, int height) {
+        if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid grid size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.tilesX = (width + TILE_MASK) >>> TILE_BITS;
+        int tilesY = (height + TILE_MASK) >>> TILE_BITS;
+
+        // Free tiles differ only in the masks along the map's borders, so the inner ones are shared
+        Tile[] tiles = new Tile[tilesX * tilesY];
+        Tile inner = null;
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                boolean border = tx == 0 || ty == 0 || tx == tilesX - 1 || ty == tilesY - 1;
+                if (border || inner == null) {
+                    Tile tile = new Tile();
+                    for (int y = 0; y < TILE_SIZE; y++) {
+                        for (int x = 0; x < TILE_SIZE; x++) {
+                            int gx = tx * TILE_SIZE + x;
+                            int gy = ty * TILE_SIZE + y;
+                            if (gx < width && gy < height) {
+                                tile.masks[y << TILE_BITS | x] = (byte) freeMask(gx, gy);
+                            }
+                        }
+                    }
+                    tiles[ty * tilesX + tx] = tile;
+                    if (!border) {
+                        inner = tile;
+                    }
+                } else {
+                    tiles[ty * tilesX + tx] = inner;
+                }
+            }
+        }
+        this.current = new Snapshot(this, tiles, 0, false);
+    }
+
+    /**
+     * Copies the obstacles, moves and costs of another map
+     *
+     * @param map map to copy
+     * @return a tiled grid whose first snapshot looks like the map
+     */
+    public static TiledGrid copyOf(GridMap map) {
+        TiledGrid grid = new TiledGrid(map.getWidth(), map.getHeight());
+        Tile[] tiles = grid.current.tiles;
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new Tile();
+        }
+        boolean weighted = map.isWeighted();
+        for (int y = 0; y < grid.height; y++) {
+            for (int x = 0; x < grid.width; x++) {
+                int index = y * grid.width + x;
+                Tile tile = tiles[grid.tileOf(x, y)];
+                int cell = (y & TILE_MASK) << TILE_BITS | (x & TILE_MASK);
+                if (map.isObstacle(index)) {
+                    tile.obstacles[y & TILE_MASK] |= 1L << x;
+                }
+                tile.masks[cell] = (byte) map.getNeighbourMask(index);
+                if (weighted && map.getCost(index) != 1) {
+                    tile.setCost(cell, map.getCost(index));
+                }
+            }
+        }
+        grid.current = new Snapshot(grid, tiles, 0, weighted);
+        return grid;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the latest published version, which never changes
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * Turns a cell into an obstacle or frees it and publishes the new version
+     *
+     * @param index    index of the cell
+     * @param obstacle true for an obstacle
+     * @return the published version
+     */
+    public Snapshot setObstacle(int index, boolean obstacle) {
+        return edit(editor -> editor.setObstacle(index, obstacle));
+    }
+
+    /**
+     * Changes the cost of a cell and publishes the new version
+     *
+     * @param index index of the cell
+     * @param cost  cost from 1 to MAX_COST
+     * @return the published version
+     */
+    public Snapshot setCost(int index, int cost) {
+        return edit(editor -> editor.setCost(index, cost));
+    }
+
+    /**
+     * Applies a batch of edits to a copy of the latest version and publishes it at once.
+     * Only the tiles the edits touch are copied.
+     *
+     * @param edits edits to apply, they must not keep the editor
+     * @return the published version, the latest one unchanged if nothing changed
+     */
+    public synchronized Snapshot edit(Consumer<Editor> edits) {
+        Editor editor = new Editor(current);
+        edits.accept(editor);
+        if (editor.changes == 0) {
+            return current;
+        }
+        Snapshot published = new Snapshot(this, editor.tiles, current.version + 1, editor.weighted);
+        current = published;
+        return published;
+    }
+
+    private int tileOf(int x, int y) {
+        return (y >>> TILE_BITS) * tilesX + (x >>> TILE_BITS);
+    }
+
+    // Moves of a cell on a grid without obstacles
+    private int freeMask(int x, int y) {
+        int mask = 0;
+        for (int direction = 0; direction < Directions.COUNT; direction++) {
+            int nx = x + Directions.dx(direction);
+            int ny = y + Directions.dy(direction);
+            if (nx >= 0 && ny >= 0 && nx < width && ny < height) {
+                mask |= 1 << direction;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Tile holds the cells of one square of the grid, it is never changed once published
+     */
+    private static final class Tile {
+
+        // Bit x of long y is set when the cell is an obstacle
+        final long[] obstacles;
+
+        // Directions each cell can move to, by y * TILE_SIZE + x
+        final byte[] masks;
+
+        // Cost of each cell as an unsigned byte, null while every cell costs 1
+        byte[] costs;
+
+        Tile() {
+            this.obstacles = new long[TILE_SIZE];
+            this.masks = new byte[TILE_SIZE * TILE_SIZE];
+        }
+
+        Tile(Tile tile) {
+            this.obstacles = tile.obstacles.clone();
+            this.masks = tile.masks.clone();
+            this.costs = tile.costs != null ? tile.costs.clone() : null;
+        }
+
+        void setCost(int cell, int cost) {
+            if (costs == null) {
+                costs = new byte[TILE_SIZE * TILE_SIZE];
+                Arrays.fill(costs, (byte) 1);
+            }
+            costs[cell] = (byte) cost;
+        }
+    }
+
+    /**
+     * Snapshot is one version of the grid. Its tiles are never written after it is
+     * published, so any number of threads may search it without locks.
+     */
+    public static final class Snapshot implements GridMap {
+
+        private final int width;
+        private final int height;
+        private final int tilesX;
+        private final Tile[] tiles;
+        private final long version;
+        private final boolean weighted;
+
+        private Snapshot(TiledGrid grid, Tile[] tiles, long version, boolean weighted) {
+            this.width = grid.width;
+            this.height = grid.height;
+            this.tilesX = grid.tilesX;
+            this.tiles = tiles;
+            this.version = version;
+            this.weighted = weighted;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public boolean isObstacle(int index) {
+            int x = index % width;
+            int y = index / width;
+            return (tile(x, y).obstacles[y & TILE_MASK] & 1L << x) != 0;
+        }
+
+        public int getNeighbourMask(int index) {
+            int x = index % width;
+            int y = index / width;
+            return tile(x, y).masks[(y & TILE_MASK) << TILE_BITS | (x & TILE_MASK)] & 0xFF;
+        }
+
+        public int getCost(int index) {
+            int x = index % width;
+            int y = index / width;
+            byte[] costs = tile(x, y).costs;
+            return costs == null ? 1 : costs[(y & TILE_MASK) << TILE_BITS | (x & TILE_MASK)] & 0xFF;
+        }
+
+        public boolean isWeighted() {
+            return weighted;
+        }
+
+        /**
+         * @return number of versions published before this one
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        private Tile tile(int x, int y) {
+            return tiles[(y >>> TILE_BITS) * tilesX + (x >>> TILE_BITS)];
+        }
+    }
+
+    /**
+     * Editor changes a private copy of the latest version. Tiles are copied the first
+     * time they are written, together with the tiles around a cell whose moves change.
+     */
+    public final class Editor {
+
+        // Tiles of the new version, shared with the old one until copied
+        private final Tile[] tiles;
+        private final boolean[] copied;
+
+        // Reads the tiles being edited
+        private final Snapshot draft;
+
+        private boolean weighted;
+        private int changes;
+
+        private Editor(Snapshot base) {
+            this.tiles = base.tiles.clone();
+            this.copied = new boolean[tiles.length];
+            this.weighted = base.weighted;
+            this.draft = new Snapshot(TiledGrid.this, tiles, base.version + 1, weighted);
+        }
+
+        /**
+         * @param index index of a cell
+         * @return true if the cell is an obstacle after the edits so far
+         */
+        public boolean isObstacle(int index) {
+            return draft.isObstacle(index);
+        }
+
+        /**
+         * @param index    index of the cell
+         * @param obstacle true for an obstacle
+         */
+        public void setObstacle(int index, boolean obstacle) {
+            if (obstacle == draft.isObstacle(index)) {
+                return;
+            }
+            int x = index % width;
+            int y = index / width;
+            Tile tile = copy(tileOf(x, y));
+            tile.obstacles[y & TILE_MASK] ^= 1L << x;
+
+            // An obstacle only changes the moves within its 3x3 neighbourhood, which may reach into other tiles
+            for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, height - 1); ny++) {
+                for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, width - 1); nx++) {
+                    byte mask = (byte) Directions.computeMask(draft, nx, ny);
+                    int cell = (ny & TILE_MASK) << TILE_BITS | (nx & TILE_MASK);
+                    int neighbourTile = tileOf(nx, ny);
+                    if (tiles[neighbourTile].masks[cell] != mask) {
+                        copy(neighbourTile).masks[cell] = mask;
+                    }
+                }
+            }
+            changes++;
+        }
+
+        /**
+         * @param index index of the cell
+         * @param cost  cost from 1 to MAX_COST
+         */
+        public void setCost(int index, int cost) {
+            if (cost < 1 || cost > GridMap.MAX_COST) {
+                throw new IllegalArgumentException("Cost must be between 1 and " + GridMap.MAX_COST + ", was " + cost);
+            }
+            if (cost == draft.getCost(index)) {
+                return;
+            }
+            int x = index % width;
+            int y = index / width;
+            copy(tileOf(x, y)).setCost((y & TILE_MASK) << TILE_BITS | (x & TILE_MASK), cost);
+            weighted = true;
+            changes++;
+        }
+
+        // The tile of the new version, copied from the old one on the first write
+        private Tile copy(int tile) {
+            if (!copied[tile]) {
+                tiles[tile] = new Tile(tiles[tile]);
+                copied[tile] = true;
+            }
+            return tiles[tile];
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package com.aysegulpekel.gui;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.GridListener;
+
+import javax.swing.*;
+
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * GridView draws a grid map, its endpoints and a path, from 25x25 boards up to maps with millions of cells.
+ * <p>
+ * Every cell is one pixel of a cached image, which is scaled onto the screen,
+ * so a repaint costs the visible pixels and not the size of the map. Only the
+ * cells which changed are drawn into the image again. Grid lines are drawn
+ * once the cells are large enough to tell apart.
+ * <p>
+ * The mouse wheel zooms around the cursor, dragging with the right or middle
+ * button pans. Obstacle changes of the map, the endpoints, the path and the
+ * cells a search opened or closed may come from any thread: they are queued and picked up by the next paint on the event
+ * dispatch thread, which never reads a half updated list.
+ */
+public class GridView extends JComponent implements GridListener {
+
+    private static final int FREE = 0xFFFFFF;
+    private static final int OBSTACLE = 0x0000FF;
+    private static final int PATH = 0x808080;
+    private static final int START = 0x00FF00;
+    private static final int GOAL = 0xFF0000;
+    private static final int OPEN = 0xB0F0B0;
+    private static final int CLOSED = 0xF0D0A0;
+
+    // Search marks of a cell, a cell is opened before it is closed
+    private static final byte NOT_SEARCHED = 0;
+    private static final byte OPENED = 1;
+    private static final byte SEARCHED = 2;
+
+    // Smallest cell size in pixels grid lines are drawn at
+    private static final double GRID_LINE_ZOOM = 6;
+
+    private static final double MIN_ZOOM = 1 / 64.0;
+    private static final double MAX_ZOOM = 64;
+
+    private volatile CompactGrid map;
+    private BufferedImage image;
+
+    // Pixels of the image, one per cell by index
+    private int[] pixels;
+
+    // Pixels per cell and the screen position of the map's top left corner
+    private volatile double zoom;
+    private volatile double offsetX;
+    private volatile double offsetY;
+
+    // Cells changed by other threads since the last paint
+    private final Object pendingLock = new Object();
+    private int[] pendingCells = new int[64];
+    private int pendingCount;
+
+    // Cells a search opened or closed since the last paint, index * 2 + 1 for closed ones,
+    // the marks before are cleared first when clearSearch is set
+    private int[] pendingSearched = new int[64];
+    private int pendingSearchedCount;
+    private boolean clearSearch;
+
+    // Latest endpoints and path handed over, read by the next paint
+    private final AtomicReference<int[]> pendingEndpoints = new AtomicReference<int[]>();
+    private final AtomicReference<int[]> pendingPath = new AtomicReference<int[]>();
+
+    // What the image shows, only touched on the event dispatch thread
+    private int start = -1;
+    private int goal = -1;
+    private int[] path = new int[0];
+    private final BitSet onPath = new BitSet();
+    private byte[] searched;
+
+    /**
+     * @param map  grid map to show
+     * @param zoom pixels per cell
+     */
+    public GridView(CompactGrid map, double zoom) {
+        this.zoom = zoom;
+        setMap(map);
+
+        MouseAdapter navigation = new MouseAdapter() {
+            private Point dragFrom;
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (!SwingUtilities.isLeftMouseButton(e)) {
+                    dragFrom = e.getPoint();
+                }
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (dragFrom != null) {
+                    pan(e.getX() - dragFrom.x, e.getY() - dragFrom.y);
+                    dragFrom = e.getPoint();
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                dragFrom = null;
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoomAt(e.getX(), e.getY(), Math.pow(1.25, -e.getPreciseWheelRotation()));
+            }
+        };
+        addMouseListener(navigation);
+        addMouseMotionListener(navigation);
+        addMouseWheelListener(navigation);
+    }
+
+    /**
+     * Shows another map, call on the event dispatch thread
+     *
+     * @param map grid map to show
+     */
+    public void setMap(CompactGrid map) {
+        if (this.map != null) {
+            this.map.removeListener(this);
+        }
+        this.map = map;
+        map.addListener(this);
+        synchronized (pendingLock) {
+            pendingCount = 0;
+            pendingSearchedCount = 0;
+            clearSearch = false;
+        }
+        pendingEndpoints.set(null);
+        pendingPath.set(null);
+        start = -1;
+        goal = -1;
+        path = new int[0];
+        onPath.clear();
+        searched = new byte[map.getWidth() * map.getHeight()];
+
+        image = new BufferedImage(map.getWidth(), map.getHeight(), BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int index = 0; index < pixels.length; index++) {
+            pixels[index] = map.isObstacle(index) ? OBSTACLE : FREE;
+        }
+        revalidate();
+        repaint();
+    }
+
+    public CompactGrid getMap() {
+        return map;
+    }
+
+    /**
+     * Marks the endpoints, callable from any thread
+     *
+     * @param start index of the start cell, -1 for none
+     * @param goal  index of the goal cell, -1 for none
+     */
+    public void setEndpoints(int start, int goal) {
+        pendingEndpoints.set(new int[]{start, goal});
+        repaint();
+    }
+
+    /**
+     * Shows a path instead of the previous one, callable from any thread
+     *
+     * @param path cell indexes of the path, not changed afterwards
+     */
+    public void setPath(int[] path) {
+        pendingPath.set(path);
+        repaint();
+    }
+
+    /**
+     * Marks cells a search opened or closed, callable from any thread.
+     * A closed cell stays closed when it is marked open again.
+     *
+     * @param cells  indexes of the cells, copied before the call returns
+     * @param count  number of cells to take from the start of the array
+     * @param closed true if the cells were closed, false if they were opened
+     */
+    public void markSearched(int[] cells, int count, boolean closed) {
+        synchronized (pendingLock) {
+            if (pendingSearchedCount + count > pendingSearched.length) {
+                pendingSearched = Arrays.copyOf(pendingSearched, Math.max(pendingSearched.length * 2,
+                        pendingSearchedCount + count));
+            }
+            for (int i = 0; i < count; i++) {
+                pendingSearched[pendingSearchedCount++] = cells[i] * 2 + (closed ? 1 : 0);
+            }
+        }
+        repaint();
+    }
+
+    /**
+     * Removes the marks of the previous search, callable from any thread
+     */
+    public void clearSearched() {
+        synchronized (pendingLock) {
+            pendingSearchedCount = 0;
+            clearSearch = true;
+        }
+        repaint();
+    }
+
+    /**
+     * Redraws a cell whose obstacle changed, called by the map on the editing thread
+     */
+    public void obstacleChanged(int index, boolean obstacle) {
+        synchronized (pendingLock) {
+            if (pendingCount == pendingCells.length) {
+                pendingCells = Arrays.copyOf(pendingCells, pendingCount * 2);
+            }
+            pendingCells[pendingCount++] = index;
+        }
+        Rectangle bounds = cellBounds(index);
+        repaint(bounds.x, bounds.y, bounds.width, bounds.height);
+    }
+
+    /**
+     * @param x horizontal position on the view
+     * @param y vertical position on the view
+     * @return index of the cell under the position, -1 outside of the map
+     */
+    public int cellAt(int x, int y) {
+        int cellX = (int) Math.floor((x - offsetX) / zoom);
+        int cellY = (int) Math.floor((y - offsetY) / zoom);
+        if (cellX < 0 || cellY < 0 || cellX >= map.getWidth() || cellY >= map.getHeight()) {
+            return -1;
+        }
+        return cellY * map.getWidth() + cellX;
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    /**
+     * Zooms around a position of the view, which stays over the same cell
+     *
+     * @param x      horizontal position on the view
+     * @param y      vertical position on the view
+     * @param factor how many times larger the cells get
+     */
+    public void zoomAt(int x, int y, double factor) {
+        double newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        offsetX = x - (x - offsetX) * newZoom / zoom;
+        offsetY = y - (y - offsetY) * newZoom / zoom;
+        zoom = newZoom;
+        repaint();
+    }
+
+    /**
+     * Moves the map on the view
+     *
+     * @param dx horizontal distance in pixels
+     * @param dy vertical distance in pixels
+     */
+    public void pan(int dx, int dy) {
+        offsetX += dx;
+        offsetY += dy;
+        repaint();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension((int) Math.ceil(map.getWidth() * zoom) + 1, (int) Math.ceil(map.getHeight() * zoom) + 1);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        applyChanges();
+
+        Graphics2D g2 = (Graphics2D) g;
+        Rectangle clip = g2.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g2.setColor(getBackground() != null ? getBackground() : Color.LIGHT_GRAY);
+        g2.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        // Only the cells under the clip are scaled onto the screen
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int fromX = Math.max(0, (int) Math.floor((clip.x - offsetX) / zoom));
+        int fromY = Math.max(0, (int) Math.floor((clip.y - offsetY) / zoom));
+        int toX = Math.min(width, (int) Math.ceil((clip.x + clip.width - offsetX) / zoom) + 1);
+        int toY = Math.min(height, (int) Math.ceil((clip.y + clip.height - offsetY) / zoom) + 1);
+        if (fromX >= toX || fromY >= toY) {
+            return;
+        }
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g2.drawImage(image, screenX(fromX), screenY(fromY), screenX(toX), screenY(toY),
+                fromX, fromY, toX, toY, null);
+
+        if (zoom >= GRID_LINE_ZOOM) {
+            g2.setColor(Color.BLACK);
+            for (int x = fromX; x <= toX; x++) {
+                g2.drawLine(screenX(x), screenY(fromY), screenX(x), screenY(toY));
+            }
+            for (int y = fromY; y <= toY; y++) {
+                g2.drawLine(screenX(fromX), screenY(y), screenX(toX), screenY(y));
+            }
+        }
+    }
+
+    // Draws the cells changed since the last paint into the image
+    private void applyChanges() {
+        int[] cells;
+        int count;
+        int[] searchedCells;
+        int searchedCount;
+        boolean clear;
+        synchronized (pendingLock) {
+            cells = pendingCells;
+            count = pendingCount;
+            pendingCells = new int[Math.max(64, count)];
+            pendingCount = 0;
+            searchedCells = pendingSearched;
+            searchedCount = pendingSearchedCount;
+            pendingSearched = new int[Math.max(64, searchedCount)];
+            pendingSearchedCount = 0;
+            clear = clearSearch;
+            clearSearch = false;
+        }
+        for (int i = 0; i < count; i++) {
+            redraw(cells[i]);
+        }
+
+        if (clear) {
+            for (int index = 0; index < searched.length; index++) {
+                if (searched[index] != NOT_SEARCHED) {
+                    searched[index] = NOT_SEARCHED;
+                    redraw(index);
+                }
+            }
+        }
+        for (int i = 0; i < searchedCount; i++) {
+            int index = searchedCells[i] >>> 1;
+            byte mark = (searchedCells[i] & 1) != 0 ? SEARCHED : OPENED;
+            if (mark > searched[index]) {
+                searched[index] = mark;
+                redraw(index);
+            }
+        }
+
+        int[] endpoints = pendingEndpoints.getAndSet(null);
+        if (endpoints != null) {
+            int oldStart = start;
+            int oldGoal = goal;
+            start = endpoints[0];
+            goal = endpoints[1];
+            redraw(oldStart);
+            redraw(oldGoal);
+            redraw(start);
+            redraw(goal);
+        }
+
+        int[] newPath = pendingPath.getAndSet(null);
+        if (newPath != null) {
+            int[] oldPath = path;
+            path = newPath;
+            onPath.clear();
+            for (int cell : newPath) {
+                onPath.set(cell);
+            }
+            for (int cell : oldPath) {
+                redraw(cell);
+            }
+            for (int cell : newPath) {
+                redraw(cell);
+            }
+        }
+    }
+
+    private void redraw(int index) {
+        if (index < 0) {
+            return;
+        }
+        int color;
+        if (index == start) {
+            color = START;
+        } else if (index == goal) {
+            color = GOAL;
+        } else if (map.isObstacle(index)) {
+            color = OBSTACLE;
+        } else if (onPath.get(index)) {
+            color = PATH;
+        } else if (searched[index] == SEARCHED) {
+            color = CLOSED;
+        } else if (searched[index] == OPENED) {
+            color = OPEN;
+        } else {
+            color = FREE;
+        }
+        pixels[index] = color;
+    }
+
+    private Rectangle cellBounds(int index) {
+        int x = index % map.getWidth();
+        int y = index / map.getWidth();
+        return new Rectangle(screenX(x), screenY(y), screenX(x + 1) - screenX(x) + 1, screenY(y + 1) - screenY(y) + 1);
+    }
+
+    private int screenX(int cellX) {
+        return (int) Math.floor(offsetX + cellX * zoom);
+    }
+
+    private int screenY(int cellY) {
+        return (int) Math.floor(offsetY + cellY * zoom);
+    }
+}
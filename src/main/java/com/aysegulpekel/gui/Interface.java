@@ -1,30 +1,53 @@
 package com.aysegulpekel.gui;
 
-import com.aysegulpekel.core.Cell;
-import com.aysegulpekel.core.Grid;
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.TiledGrid;
+import com.aysegulpekel.io.MovingAiImporter;
 import com.aysegulpekel.logic.AStar;
-
-import org.apache.log4j.Logger;
+import com.aysegulpekel.logic.AnytimeSearch;
+import com.aysegulpekel.logic.CellView;
+import com.aysegulpekel.logic.PathResult;
+import com.aysegulpekel.logic.SearchStepper;
 
 import javax.swing.*;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.util.*;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.function.Supplier;
 
 public class Interface extends JFrame implements ActionListener {
-    private static Dimension BOARD_SIZE = new Dimension(500, 500);
+    private static final int BOARD_CELLS = 25;
     private static final int CELL_SIZE = 20;
+    // Time the search may take between two repaints
+    private static final long FRAME_NANOS = 16000000L;
+    // Cells expanded per frame when the search is animated, unless changed on the menu
+    private static final int ANIMATION_RATE = 10;
     private JButton start, reset;
+    private JCheckBox animate;
+    private JSpinner rate;
     private GameBoard gameBoard;
     private Thread game;
-    private static final Logger LOGGER = Logger.getLogger(Interface.class);
+    // Creates the board's map again when it is cleared
+    private final Supplier<CompactGrid> maps;
 
     /**
      * Creates the menu to choose start or reset the board
      */
     public Interface() {
+        this(() -> new CompactGrid(BOARD_CELLS, BOARD_CELLS), CELL_SIZE);
+    }
+
+    /**
+     * Creates the menu and a board showing the given maps
+     *
+     * @param maps creates the map of the board, again whenever it is cleared
+     * @param zoom pixels per cell at the start
+     */
+    public Interface(Supplier<CompactGrid> maps, double zoom) {
+        this.maps = maps;
         JMenuBar menu = new JMenuBar();
         setJMenuBar(menu);
 
@@ -34,10 +57,16 @@ public class Interface extends JFrame implements ActionListener {
         reset = new JButton("Clear");
         reset.addActionListener(this);
 
+        animate = new JCheckBox("Animate");
+        rate = new JSpinner(new SpinnerNumberModel(ANIMATION_RATE, 1, 1000000, 1));
+        rate.setToolTipText("Cells expanded per frame");
+
         menu.add(start);
         menu.add(reset);
+        menu.add(animate);
+        menu.add(rate);
 
-        gameBoard = new GameBoard();
+        gameBoard = new GameBoard(maps.get(), zoom);
         add(gameBoard);
     }
 
@@ -47,11 +76,14 @@ public class Interface extends JFrame implements ActionListener {
     public void setGameBeingPlayed(boolean isBeingPlayed) {
         if (isBeingPlayed) {
             start.setEnabled(false);
+            gameBoard.expansionsPerFrame = animate.isSelected() ? (Integer) rate.getValue() : 0;
             game = new Thread(gameBoard);
             game.start();
         } else {
             start.setEnabled(true);
-            game.interrupt();
+            if (game != null) {
+                game.interrupt();
+            }
             gameBoard.resetBoard();
         }
     }
@@ -63,10 +95,12 @@ public class Interface extends JFrame implements ActionListener {
      */
     public void actionPerformed(ActionEvent e) {
         if (e.getSource().equals(reset)) {
-            gameBoard.resetBoard();
-            gameBoard.repaint();
             setGameBeingPlayed(false);
         } else if (e.getSource().equals(start)) {
+            if (gameBoard.goal == -1) {
+                JOptionPane.showMessageDialog(this, "Click a starting point and an end point first.");
+                return;
+            }
             setGameBeingPlayed(true);
         }
     }
@@ -75,220 +109,200 @@ public class Interface extends JFrame implements ActionListener {
      * Game board is visual representation class of th board with its listeners and runnable
      * application
      */
-    private class GameBoard extends JPanel implements ComponentListener, MouseListener, MouseMotionListener, Runnable {
-        // Array list to keep clicked points on board
-        private ArrayList<Point> clickedPoints = new ArrayList<Point>(0);
-        // Array list to keep shortest path's points on board
-        private ArrayList<Point> pathPoints = new ArrayList<Point>(0);
+    private class GameBoard extends GridView implements Runnable {
+        // Clicked start and end cells, -1 until clicked, only touched on the event dispatch thread
+        private int start = -1;
+        private int goal = -1;
+        // Cells the animated search expands per frame, 0 runs the anytime search, set before the thread starts
+        private int expansionsPerFrame;
+        // Copy of the board the searches read a snapshot of, so obstacles clicked meanwhile don't reach them
+        private volatile TiledGrid tiles;
 
         /**
          * Adds action listeners to the board
          */
-        public GameBoard() {
-            // Add resizing listener
-            addComponentListener(this);
-            addMouseListener(this);
-            addMouseMotionListener(this);
-        }
-
-        /**
-         * Overrides JComponent method
-         * <p>
-         * Points represents the clicked cells which are indicated with blue
-         * and grid is created by drawLine and drawRect methods
-         */
-        @Override
-        protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            try {
-                for (Point newPoint : clickedPoints) {
-                    int cellX = newPoint.x * CELL_SIZE;
-                    int cellY = newPoint.y * CELL_SIZE;
-
-                    // If it's the first point, it indicates the starting point with a green cell
-                    if (newPoint.equals(clickedPoints.get(0))) {
-                        g.setColor(Color.green);
-                        g.fillRect(cellX, cellY, CELL_SIZE, CELL_SIZE);
-                    }
-                    // If it's the second point, it indicates the end point with a red cell
-                    else if (newPoint.equals(clickedPoints.get(1))) {
-                        g.setColor(Color.red);
-                        g.fillRect(cellX, cellY, CELL_SIZE, CELL_SIZE);
-                    }
-                    // The rest indicates the obstacles with blue cells
-                    else {
-                        g.setColor(Color.blue);
-                        g.fillRect(cellX, cellY, CELL_SIZE, CELL_SIZE);
-                    }
+        public GameBoard(CompactGrid map, double zoom) {
+            super(map, zoom);
+            tiles = TiledGrid.copyOf(map);
+            MouseAdapter clicks = new MouseAdapter() {
+                // Allows to get clicked when the mouse released
+                @Override
+                public void mouseReleased(MouseEvent e) {
+                    addPoint(e);
                 }
-                // The shortest path colored with gray cells
-                for (Point newPoint : pathPoints) {
-                    int cellX = newPoint.x * CELL_SIZE;
-                    int cellY = newPoint.y * CELL_SIZE;
-                    g.setColor(Color.gray);
-                    g.fillRect(cellX, cellY, CELL_SIZE, CELL_SIZE);
-                }
-            } catch (ConcurrentModificationException cme) {
-                LOGGER.info(cme.getMessage(), cme);
-            }
 
-            // Draws vertical and horizontal lines
-            g.setColor(Color.BLACK);
-            g.drawRect(0, 0, BOARD_SIZE.width, BOARD_SIZE.height);
-
-            for (int i = 0; i <= BOARD_SIZE.width; i += CELL_SIZE) {
-                g.drawLine(i, 0, i, BOARD_SIZE.height);
-            }
-
-            for (int i = 0; i <= BOARD_SIZE.height; i += CELL_SIZE) {
-                g.drawLine(0, i, BOARD_SIZE.width, i);
-            }
+                // Allows to get clicked when mouse dragged
+                @Override
+                public void mouseDragged(MouseEvent e) {
+                    addPoint(e);
+                }
+            };
+            addMouseListener(clicks);
+            addMouseMotionListener(clicks);
         }
 
-        // Adds a new clicked points to clickedPoints array and repaints
-        public void addPoint(int x, int y) {
-            if (!clickedPoints.contains(new Point(x, y))) {
-                clickedPoints.add(new Point(x, y));
+        // Calls add point with action's positions, left button only, the others pan the board
+        public void addPoint(MouseEvent me) {
+            int cell = cellAt(me.getX(), me.getY());
+            if (cell != -1 && SwingUtilities.isLeftMouseButton(me) && Interface.this.start.isEnabled()) {
+                addPoint(cell);
             }
-            repaint();
         }
 
-        // Calls add point with action's positions
-        public void addPoint(MouseEvent me) {
-
-            int x = me.getPoint().x / CELL_SIZE;
-            int y = me.getPoint().y / CELL_SIZE;
-            if ((x >= 0) && (x < BOARD_SIZE.width / CELL_SIZE) && (y >= 0)
-                    && (y < BOARD_SIZE.height / CELL_SIZE) && start.isEnabled()) {
-                addPoint(x, y);
+        // The first clicked cell is the start, the second the end point and the rest are obstacles
+        public void addPoint(int cell) {
+            if (cell == start || cell == goal) {
+                return;
+            }
+            if (start == -1) {
+                start = cell;
+            } else if (goal == -1) {
+                goal = cell;
+            } else {
+                getMap().setObstacle(cell, true);
+                return;
             }
+            getMap().setObstacle(cell, false);
+            setEndpoints(start, goal);
         }
 
         // Clears the board and the obstacles
         public void resetBoard() {
-            clickedPoints.clear();
-            pathPoints.clear();
-        }
-
-        public void componentResized(ComponentEvent e) {
-
-        }
-
-        public void componentMoved(ComponentEvent e) {
-
-        }
-
-        public void componentShown(ComponentEvent e) {
-
-        }
-
-        public void componentHidden(ComponentEvent e) {
-
+            start = -1;
+            goal = -1;
+            CompactGrid map = maps.get();
+            tiles = TiledGrid.copyOf(map);
+            setMap(map);
         }
 
-        public void mouseClicked(MouseEvent e) {
-
-        }
-
-        public void mousePressed(MouseEvent e) {
-
-        }
-
-        // Allows to get clicked when the mouse released
-        public void mouseReleased(MouseEvent e) {
-            addPoint(e);
-        }
-
-        public void mouseEntered(MouseEvent e) {
-
-        }
-
-        public void mouseExited(MouseEvent e) {
-        }
-
-        // Allows to get clicked when mouse dragged
-        public void mouseDragged(MouseEvent e) {
-            addPoint(e);
-        }
-
-        public void mouseMoved(MouseEvent e) {
-
+        // Obstacles are clicked on the event dispatch thread, each one is published as a new version
+        @Override
+        public void obstacleChanged(int index, boolean obstacle) {
+            super.obstacleChanged(index, obstacle);
+            tiles.setObstacle(index, obstacle);
         }
 
         /**
-         * Initializes the board with start and the end points,
-         * creates the obstacles from user clicks,
-         * finds each cell's neighbours and runs the a star algorithm itself.
+         * Runs the a star algorithm from the start to the end point
+         * until the path is optimal or the board is cleared.
          */
         public void run() {
-            int width = BOARD_SIZE.width / CELL_SIZE;
-            int height = BOARD_SIZE.height / CELL_SIZE;
-
-            Grid grid = new Grid(width, height);
+            clearSearched();
+            if (expansionsPerFrame > 0) {
+                animate();
+                return;
+            }
+            // Anytime search shows a quick path first and improves it frame by frame,
+            // clearing the board interrupts this thread and stops the search
+            AnytimeSearch search = new AnytimeSearch(tiles.snapshot(), start, goal);
+            AnytimeSearch.Status status = AnytimeSearch.Status.IMPROVING;
+            while (status == AnytimeSearch.Status.IMPROVING) {
+                status = search.improve(System.nanoTime() + FRAME_NANOS, AnytimeSearch.NO_BUDGET);
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                setPath(search.getPath());
+            }
 
-            Cell start = null;
-            Cell goal = null;
+            // If there is no path returned, user gets warned
+            if (status == AnytimeSearch.Status.UNREACHABLE) {
+                JOptionPane.showMessageDialog(null, "You can't go there :/");
+            }
+        }
 
-            // Injects clicked cells into the grid
-            for (Point current : clickedPoints) {
-                // First click indicates starting point
-                if (current.equals(clickedPoints.get(0))) {
-                    start = grid.getGrid()[(int) current.getX()][(int) current.getY()];
+        /**
+         * Runs the a star algorithm a few expansions per frame, showing the open and closed cells
+         * and the way to the last expanded cell, until the goal is reached or the board is cleared.
+         */
+        private void animate() {
+            SearchStepper stepper = new AStar().stepper(tiles.snapshot(), start, goal);
+            int[] cells = new int[64];
+            int shownClosed = 0;
+            while (!stepper.isFinished()) {
+                long frameStart = System.nanoTime();
+                stepper.step(expansionsPerFrame);
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
                 }
-                // Second click indicates ending point
-                else if (current.equals(clickedPoints.get(1))) {
-                    goal = grid.getGrid()[(int) current.getX()][(int) current.getY()];
+
+                // Only the cells closed since the last frame are new, the frontier is handed over whole
+                CellView closed = stepper.getClosed();
+                cells = mark(closed, shownClosed, cells, true);
+                shownClosed = closed.size();
+                cells = mark(stepper.getFrontier(), 0, cells, false);
+                if (stepper.getCurrent() != -1) {
+                    setPath(stepper.getPathTo(stepper.getCurrent()));
                 }
-                // The rest indicates the obstacles
-                else {
-                    grid.getGrid()[current.x][current.y].setObstacle(true);
+
+                long wait = FRAME_NANOS - (System.nanoTime() - frameStart);
+                if (wait > 0) {
+                    try {
+                        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
                 }
             }
 
-            // Finds all the neighbours for each cell of the grid
-            grid.findNeighbours();
-
-            // Create a runnable a star object
-            AStar runnable = new AStar();
-            // Run a star from starting point to the goal,
-            // <path> is the resulting shortest path
-            List<Cell> path = runnable.runAStar(start, goal);
-
-            // If there is no path returned, user gets warned
-            if (path.isEmpty()) {
+            if (stepper.getStatus() == PathResult.Status.FOUND) {
+                setPath(stepper.getPath());
+            } else {
                 JOptionPane.showMessageDialog(null, "You can't go there :/");
             }
+        }
 
-            // Colors the path found
-            ArrayList<Point> coloredPath = new ArrayList<Point>(0);
-            for (int i = 0; i < path.size(); i++) {
-                if (path.get(i).equals(start) || path.get(i).equals(goal)) {
-                    continue;
-                }
-                coloredPath.add(new Point(path.get(i).getX(), path.get(i).getY()));
+        // Marks the cells of a view from a position on, the buffer is returned for the next frame
+        private int[] mark(CellView view, int from, int[] buffer, boolean closed) {
+            int count = view.size() - from;
+            if (count > buffer.length) {
+                buffer = new int[Math.max(count, buffer.length * 2)];
             }
-            pathPoints.addAll(coloredPath);
-
-            // Repaint for each turn
-            repaint();
+            for (int i = 0; i < count; i++) {
+                buffer[i] = view.get(from + i);
+            }
+            markSearched(buffer, count, closed);
+            return buffer;
         }
     }
 
     /**
      * Setup the interface specifics
      *
-     * @param args main arguments
+     * @param args nothing for the 25x25 board, width and height for an empty map
+     *             or a MovingAI .map file to show
      */
     public static void main(String[] args) {
-        JFrame game = new Interface();
+        Supplier<CompactGrid> maps;
+        double zoom;
+        if (args.length == 2) {
+            final int width = Integer.parseInt(args[0]);
+            final int height = Integer.parseInt(args[1]);
+            maps = () -> new CompactGrid(width, height);
+            zoom = Math.max(500.0 / Math.max(width, height), 1 / 64.0);
+        } else if (args.length == 1) {
+            maps = () -> {
+                try {
+                    return MovingAiImporter.read(Paths.get(args[0]));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            zoom = 1;
+        } else {
+            maps = () -> new CompactGrid(BOARD_CELLS, BOARD_CELLS);
+            zoom = CELL_SIZE;
+        }
+
+        JFrame game = new Interface(maps, zoom);
         game.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         game.setSize(500, 550);
-        game.setResizable(false);
         game.setLocation((Toolkit.getDefaultToolkit().getScreenSize().width - game.getWidth()) / 2,
                 (Toolkit.getDefaultToolkit().getScreenSize().height - game.getHeight()) / 2);
         game.setVisible(true);
         JOptionPane.showMessageDialog(null,
                 "First click: starting point.\n" + "Second click: end point.\n \n" +
-                        "And click more for the obstacles as you wish!!!");
+                        "And click more for the obstacles as you wish!!!\n \n" +
+                        "Mouse wheel zooms, dragging with the right button moves the board.\n" +
+                        "Tick Animate to watch the search, the number sets the cells it expands per frame.");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,220 @@
+package com.aysegulpekel.io;
+
+import com.aysegulpekel.core.GridMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MapFile reads and writes the binary map format.
+ * <p>
+ * A file starts with a 32 byte header: the magic bytes "ASTM", the format
+ * version, the width, the height and the flags, all as little endian ints,
+ * padded with zeros. The obstacle bitmap follows as little endian longs,
+ * bit i of long i / 64 is set when the cell with index i is an obstacle.
+ * When the COSTS flag is set, one unsigned cost byte per cell follows the bitmap.
+ */
+public final class MapFile {
+
+    // "ASTM" read as a little endian int
+    static final int MAGIC = 'A' | 'S' << 8 | 'T' << 16 | 'M' << 24;
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+
+    // Flag of files which carry per cell costs after the bitmap
+    public static final int COSTS = 1;
+
+    // Size of the buffers the files are written through
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private MapFile() {
+    }
+
+    /**
+     * Maps a file into memory without reading it, the pages are loaded when the search touches them
+     *
+     * @param file binary map file
+     * @return a grid map reading straight from the mapped file
+     * @throws IOException if the file can't be read or isn't a binary map
+     */
+    public static MappedGrid open(Path file) throws IOException {
+        return MappedGrid.open(file);
+    }
+
+    /**
+     * Writes the obstacles of a map into a binary map file, with the costs of a weighted map
+     *
+     * @param map  map to write
+     * @param file file to create or overwrite
+     * @throws IOException if the file can't be written
+     */
+    public static void write(GridMap map, Path file) throws IOException {
+        byte[] costs = null;
+        if (map.isWeighted()) {
+            costs = new byte[map.getWidth() * map.getHeight()];
+            for (int index = 0; index < costs.length; index++) {
+                costs[index] = (byte) map.getCost(index);
+            }
+        }
+        write(map, costs, file);
+    }
+
+    /**
+     * Writes the obstacles and the costs of a map into a binary map file
+     *
+     * @param map   map to write
+     * @param costs one cost per cell by index, null to leave the costs out
+     * @param file  file to create or overwrite
+     * @throws IOException if the file can't be written
+     */
+    public static void write(GridMap map, byte[] costs, Path file) throws IOException {
+        long cells = (long) map.getWidth() * map.getHeight();
+        if (costs != null && costs.length != cells) {
+            throw new IllegalArgumentException("Expected " + cells + " costs, got " + costs.length);
+        }
+        try (Writer writer = new Writer(file, map.getWidth(), map.getHeight(), costs != null)) {
+            for (int index = 0; index < cells; index++) {
+                writer.add(map.isObstacle(index));
+            }
+            if (costs != null) {
+                writer.addCosts(costs, 0, costs.length);
+            }
+        }
+    }
+
+    /**
+     * Offset of the cost bytes in a file
+     *
+     * @param cells number of cells of the map
+     * @return offset of the first cost byte
+     */
+    static long costsOffset(long cells) {
+        return HEADER_SIZE + ((cells + 63) >>> 6) * 8;
+    }
+
+    /**
+     * Writer streams the cells of a map into a binary map file, in index order,
+     * so a map can be converted without ever holding it in memory
+     */
+    public static class Writer implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final long cells;
+        private final boolean hasCosts;
+
+        // Obstacle bits gathered for the next long of the bitmap
+        private long word;
+        private long written;
+        private boolean bitmapFinished;
+        private long costsWritten;
+
+        /**
+         * Creates the file and writes its header
+         *
+         * @param file     file to create or overwrite
+         * @param width    horizontal size of the map
+         * @param height   vertical size of the map
+         * @param hasCosts true if costs follow the obstacles
+         * @throws IOException if the file can't be written
+         */
+        public Writer(Path file, int width, int height, boolean hasCosts) throws IOException {
+            if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid grid size " + width + "x" + height);
+            }
+            this.cells = (long) width * height;
+            this.hasCosts = hasCosts;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(hasCosts ? COSTS : 0);
+            while (buffer.position() < HEADER_SIZE) {
+                buffer.put((byte) 0);
+            }
+        }
+
+        /**
+         * Adds the next cell in index order
+         *
+         * @param obstacle true if the cell is an obstacle
+         * @throws IOException if the file can't be written
+         */
+        public void add(boolean obstacle) throws IOException {
+            if (written == cells) {
+                throw new IllegalStateException("Every cell has been written already");
+            }
+            if (obstacle) {
+                word |= 1L << written;
+            }
+            if ((++written & 63) == 0) {
+                putWord();
+            }
+        }
+
+        /**
+         * Adds the costs of the next cells in index order, after every obstacle was added
+         *
+         * @param costs  cost bytes
+         * @param offset position of the first cost to add
+         * @param length number of costs to add
+         * @throws IOException if the file can't be written
+         */
+        public void addCosts(byte[] costs, int offset, int length) throws IOException {
+            if (!hasCosts || written != cells) {
+                throw new IllegalStateException("Costs follow the obstacles of files with costs only");
+            }
+            finishBitmap();
+            while (length > 0) {
+                int chunk = Math.min(length, buffer.remaining());
+                buffer.put(costs, offset, chunk);
+                offset += chunk;
+                length -= chunk;
+                costsWritten += chunk;
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+            }
+        }
+
+        public void close() throws IOException {
+            try {
+                if (written != cells || (hasCosts && costsWritten != cells)) {
+                    throw new IllegalStateException("Map file closed before every cell was written");
+                }
+                finishBitmap();
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+
+        // Writes the last partly filled long of the bitmap
+        private void finishBitmap() throws IOException {
+            if (!bitmapFinished && (written & 63) != 0) {
+                putWord();
+            }
+            bitmapFinished = true;
+        }
+
+        private void putWord() throws IOException {
+            if (buffer.remaining() < 8) {
+                flush();
+            }
+            buffer.putLong(word);
+            word = 0;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.aysegulpekel.io;
+
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedGrid is a read only grid map backed by a memory mapped binary map file.
+ * Nothing is copied onto the heap: opening costs the same for any file size,
+ * and the operating system pages the parts of the file in as searches touch them.
+ * <p>
+ * A single mapping can't exceed 2GB, so the file is mapped in chunks. Reads
+ * never change a buffer's position, so any number of threads may search at once.
+ */
+public class MappedGrid implements GridMap {
+
+    // Size of one mapped chunk as a power of two, a multiple of 8 so no long crosses two chunks
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+    private final int width;
+    private final int height;
+
+    // Obstacle bitmap in chunks, as little endian longs
+    private final ByteBuffer[] bitmap;
+
+    // Cost bytes in chunks, null if the file has no costs
+    private final ByteBuffer[] costs;
+
+    private MappedGrid(int width, int height, ByteBuffer[] bitmap, ByteBuffer[] costs) {
+        this.width = width;
+        this.height = height;
+        this.bitmap = bitmap;
+        this.costs = costs;
+    }
+
+    /**
+     * Maps a binary map file, see MapFile for its layout
+     *
+     * @param file binary map file
+     * @return the mapped grid
+     * @throws IOException if the file can't be read or isn't a binary map
+     */
+    public static MappedGrid open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(MapFile.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) != -1) {
+                // Keeps reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < MapFile.HEADER_SIZE || header.getInt() != MapFile.MAGIC) {
+                throw new IOException(file + " is not a binary map file");
+            }
+            int version = header.getInt();
+            if (version != MapFile.VERSION) {
+                throw new IOException(file + " has unsupported format version " + version);
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            int flags = header.getInt();
+            if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE) {
+                throw new IOException(file + " has invalid grid size " + width + "x" + height);
+            }
+
+            long cells = (long) width * height;
+            long costsOffset = MapFile.costsOffset(cells);
+            boolean hasCosts = (flags & MapFile.COSTS) != 0;
+            long expectedSize = hasCosts ? costsOffset + cells : costsOffset;
+            if (channel.size() < expectedSize) {
+                throw new IOException(file + " is truncated, expected " + expectedSize + " bytes");
+            }
+
+            // The mappings stay valid after the channel is closed
+            ByteBuffer[] bitmap = map(channel, MapFile.HEADER_SIZE, costsOffset - MapFile.HEADER_SIZE);
+            ByteBuffer[] costs = hasCosts ? map(channel, costsOffset, cells) : null;
+            return new MappedGrid(width, height, bitmap, costs);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean isObstacle(int index) {
+        long offset = (long) (index >>> 6) << 3;
+        long word = bitmap[(int) (offset >>> CHUNK_BITS)].getLong((int) (offset & CHUNK_MASK));
+        return (word & (1L << index)) != 0;
+    }
+
+    /**
+     * Neighbour masks are computed from the mapped obstacles when asked, nothing is kept on the heap
+     */
+    public int getNeighbourMask(int index) {
+        return Directions.computeMask(this, index % width, index / width);
+    }
+
+    /**
+     * The file is never written through the mapping, so the version never changes
+     */
+    public long getVersion() {
+        return 0;
+    }
+
+    /**
+     * @return true if the file carries per cell costs
+     */
+    public boolean hasCosts() {
+        return costs != null;
+    }
+
+    public boolean isWeighted() {
+        return costs != null;
+    }
+
+    /**
+     * @param index index of the cell
+     * @return cost of the cell from 1 to MAX_COST, a cost byte of 0 counts as 1, 1 if the file has no costs
+     */
+    public int getCost(int index) {
+        if (costs == null) {
+            return 1;
+        }
+        return Math.max(1, costs[index >>> CHUNK_BITS].get(index & (int) CHUNK_MASK) & 0xFF);
+    }
+
+    // Maps a region of the file in chunks of at most 2^CHUNK_BITS bytes
+    private static ByteBuffer[] map(FileChannel channel, long position, long size) throws IOException {
+        int chunks = (int) Math.max(1, (size + CHUNK_MASK) >>> CHUNK_BITS);
+        ByteBuffer[] buffers = new ByteBuffer[chunks];
+        for (int i = 0; i < chunks; i++) {
+            long offset = (long) i << CHUNK_BITS;
+            long length = Math.min(1L << CHUNK_BITS, size - offset);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position + offset, length);
+            buffers[i] = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return buffers;
+    }
+}
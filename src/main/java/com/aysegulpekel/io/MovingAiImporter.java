@@ -0,0 +1,108 @@
+package com.aysegulpekel.io;
+
+import com.aysegulpekel.core.CompactGrid;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * MovingAiImporter reads maps of the MovingAI benchmark sets (movingai.com/benchmarks).
+ * <p>
+ * A .map file has a short header ("type octile", "height H", "width W", "map")
+ * followed by one line of characters per row. Ground '.', 'G' and swamp 'S'
+ * can be passed, trees 'T', water 'W' and out of bounds '@', 'O' can't.
+ */
+public final class MovingAiImporter {
+
+    private MovingAiImporter() {
+    }
+
+    /**
+     * Reads a .map file into a compact grid
+     *
+     * @param file MovingAI map file
+     * @return the grid with the file's obstacles
+     * @throws IOException if the file can't be read or is malformed
+     */
+    public static CompactGrid read(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            int[] size = readHeader(reader, file);
+            CompactGrid map = new CompactGrid(size[0], size[1]);
+            for (int y = 0; y < size[1]; y++) {
+                String row = readRow(reader, file, y, size[0]);
+                for (int x = 0; x < size[0]; x++) {
+                    if (!isPassable(row.charAt(x))) {
+                        map.setObstacle(x, y, true);
+                    }
+                }
+            }
+            return map;
+        }
+    }
+
+    /**
+     * Converts a .map file into a binary map file row by row, without holding the map in memory
+     *
+     * @param source MovingAI map file
+     * @param target binary map file to create or overwrite
+     * @throws IOException if a file can't be read or written, or the source is malformed
+     */
+    public static void convert(Path source, Path target) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.US_ASCII)) {
+            int[] size = readHeader(reader, source);
+            try (MapFile.Writer writer = new MapFile.Writer(target, size[0], size[1], false)) {
+                for (int y = 0; y < size[1]; y++) {
+                    String row = readRow(reader, source, y, size[0]);
+                    for (int x = 0; x < size[0]; x++) {
+                        writer.add(!isPassable(row.charAt(x)));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param terrain character of a cell
+     * @return true if the cell can be passed
+     */
+    static boolean isPassable(char terrain) {
+        return terrain == '.' || terrain == 'G' || terrain == 'S';
+    }
+
+    // Reads the header lines up to "map", returns the width and the height
+    private static int[] readHeader(BufferedReader reader, Path file) throws IOException {
+        int width = -1;
+        int height = -1;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts[0].equals("map")) {
+                if (width <= 0 || height <= 0) {
+                    throw new IOException(file + " has no valid width and height before its map");
+                }
+                return new int[]{width, height};
+            }
+            try {
+                if (parts[0].equals("width") && parts.length == 2) {
+                    width = Integer.parseInt(parts[1]);
+                } else if (parts[0].equals("height") && parts.length == 2) {
+                    height = Integer.parseInt(parts[1]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException(file + " has a malformed header line: " + line, e);
+            }
+        }
+        throw new IOException(file + " ends before its map");
+    }
+
+    private static String readRow(BufferedReader reader, Path file, int y, int width) throws IOException {
+        String row = reader.readLine();
+        if (row == null || row.length() < width) {
+            throw new IOException(file + " has a missing or short row " + y);
+        }
+        return row;
+    }
+}
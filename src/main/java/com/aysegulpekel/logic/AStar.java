@@ -1,157 +1,420 @@
 package com.aysegulpekel.logic;
 
 import com.aysegulpekel.core.Cell;
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.Grid;
+import com.aysegulpekel.core.GridMap;
 
 import java.util.*;
 
-import static java.lang.Math.abs;
-
 /**
  * A star holds the algorithm basics.
  * Runs the algorithm with the help of
  * the heuristic distance calculation,
  * distance between cells and their neighbours
  * and the lowest f scores examination.
+ * <p>
+ * The search state lives in a SearchContext rather than in the grid,
+ * so one AStar and one grid map can serve many threads at once.
+ * The octile heuristic is used unless another one is given.
+ * <p>
+ * On weighted maps a move costs its STRAIGHT_COST or DIAGONAL_COST times
+ * the cost of the cell it moves into. Costs are small integers, so the open
+ * set may be a RadixHeap instead of the binary heap.
  */
-public class AStar {
+public class AStar implements Pathfinder {
 
-    // Vertical or horizontal directions cost 10 units
-    private static final int STRAIGHT_COST = 10;
+    /**
+     * Queue the open cells wait in
+     */
+    public enum QueueType {
+        // Binary heap, f score ties are popped in discovery order
+        BINARY_HEAP,
+        // Radix heap, O(1) pushes and pops for heuristics which never overestimate a move
+        RADIX_HEAP
+    }
 
-    // Diagonal directions cost 14 units,
-    // which applies the Pythagorean theorem (10^2 + 10^2 ~ 14^2)
-    private static final int DIAGONAL_COST = 14;
+    // Deadline value of searches which run until they finish
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    // Mask of the expansion count at which the deadline and interruption are checked, every 1024 expansions
+    private static final int DEADLINE_CHECK_INTERVAL = 1023;
+
+    private final Heuristic heuristic;
+    private final QueueType queueType;
+
+    public AStar() {
+        this(Heuristic.OCTILE);
+    }
+
+    /**
+     * @param heuristic estimate of the remaining cost, paths are optimal if it never overestimates
+     */
+    public AStar(Heuristic heuristic) {
+        this(heuristic, QueueType.BINARY_HEAP);
+    }
 
     /**
-     * Runs the main logic
+     * @param heuristic estimate of the remaining cost, paths are optimal if it never overestimates
+     * @param queueType queue of the open cells, RADIX_HEAP needs a consistent heuristic such as OCTILE
+     */
+    public AStar(Heuristic heuristic, QueueType queueType) {
+        this.heuristic = heuristic;
+        this.queueType = queueType;
+    }
+
+    public Heuristic getHeuristic() {
+        return heuristic;
+    }
+
+    public QueueType getQueueType() {
+        return queueType;
+    }
+
+    /**
+     * Runs the main logic. Cells of a grid are searched on the grid's map,
+     * stand alone cells through the neighbour lists set on them.
      *
      * @param start the starting cell
      * @param goal  target cell to arrive
-     * @return List of cells which indicate the shortest path from start to goal
+     * @return List of cells which indicate the shortest path from goal back to start
      */
     public List<Cell> runAStar(Cell start, Cell goal) {
-        // Open set keeps the unvisited cells
-        List<Cell> openSet = new ArrayList<Cell>();
+        Grid grid = start.getGrid();
+        if (grid != goal.getGrid()) {
+            throw new IllegalArgumentException("Start and goal must belong to the same grid");
+        }
+        if (grid == null) {
+            return runOnNeighbourLists(start, goal);
+        }
 
-        // Closed set keeps the visited cells
-        List<Cell> closedSet = new ArrayList<Cell>();
+        int[] path = findPath(grid.getMap(), start.getIndex(), goal.getIndex());
 
-        // Keeps track of visited cells with parent cells
-        Map<Cell, Cell> cameFrom = new HashMap<Cell, Cell>();
+        // Cells are listed from the goal back to the start
+        List<Cell> totalPath = new ArrayList<Cell>(path.length);
+        for (int i = path.length - 1; i >= 0; i--) {
+            totalPath.add(grid.getCell(path[i]));
+        }
+        return totalPath;
+    }
 
-        openSet.add(start);
+    /**
+     * Runs the main logic on stand alone cells, which have no map but list their neighbours themselves.
+     * Cells get ids in discovery order, the search state is kept by id.
+     *
+     * @param start the starting cell
+     * @param goal  target cell to arrive
+     * @return List of cells which indicate the shortest path from goal back to start
+     */
+    private List<Cell> runOnNeighbourLists(Cell start, Cell goal) {
+        Map<Cell, Integer> ids = new IdentityHashMap<Cell, Integer>();
+        List<Cell> cells = new ArrayList<Cell>();
+        int[] gScore = new int[16];
+        int[] cameFrom = new int[16];
+        boolean[] closed = new boolean[16];
+        IndexedHeap openSet = new IndexedHeap();
 
-        // Calculate starting cell's f score
-        start.setfScore(heuristicCostEstimate(start, goal));
+        ids.put(start, 0);
+        cells.add(start);
+        gScore[0] = 0;
+        cameFrom[0] = -1;
+        openSet.push(0, key(estimate(start, goal), 0));
 
-        // Loop through the open set traverse the grid
         while (!openSet.isEmpty()) {
-            // Pick the lowest f scored
-            Cell current = getLowestFScored(start, openSet);
-            // Check if it's the goal and return the path if so
-            if (current.getX() == goal.getX() && current.getY() == goal.getY()) {
-                return reconstructPath(cameFrom, current);
+            int current = openSet.pop();
+            Cell cell = cells.get(current);
+            if (cell.getX() == goal.getX() && cell.getY() == goal.getY()) {
+                List<Cell> totalPath = new ArrayList<Cell>();
+                for (int id = current; id != -1; id = cameFrom[id]) {
+                    totalPath.add(cells.get(id));
+                }
+                return totalPath;
             }
+            closed[current] = true;
 
-            // Keep track of processed and unprocessed cells
-            openSet.remove(current);
-            closedSet.add(current);
-
-            // For each neighbour of the current cell, compute the distances
-            for (int i = 0; i < current.getNeighbors().size(); i++) {
-                Cell neighbor = current.getNeighbors().get(i);
-
-                if (closedSet.contains(neighbor)) {
+            for (Cell neighbor : cell.getNeighbors()) {
+                Integer known = ids.get(neighbor);
+                int id = known != null ? known : cells.size();
+                if (known == null) {
+                    ids.put(neighbor, id);
+                    cells.add(neighbor);
+                    if (id == gScore.length) {
+                        gScore = Arrays.copyOf(gScore, id * 2);
+                        cameFrom = Arrays.copyOf(cameFrom, id * 2);
+                        closed = Arrays.copyOf(closed, id * 2);
+                    }
+                } else if (closed[id]) {
                     continue;
                 }
 
-                // Tentative gScore is the metric to decide if going from current cell costs less or not
-                int tentativeGScore = current.getgScore() + distanceBetween(current, neighbor);
-                if (!openSet.contains(neighbor)) {
-                    openSet.add(neighbor);
-                }
-                // If any neighbour of the current costs less than current cell's tentative score,
-                // then it's not better to pass by to that current cell, so skip and look for other paths.
-                else if (tentativeGScore >= neighbor.getgScore()) {
+                boolean diagonal = cell.getX() != neighbor.getX() && cell.getY() != neighbor.getY();
+                int tentativeGScore = gScore[current]
+                        + (diagonal ? Directions.DIAGONAL_COST : Directions.STRAIGHT_COST) * neighbor.getCost();
+                boolean isOpen = openSet.contains(id);
+                if (isOpen && tentativeGScore >= gScore[id]) {
                     continue;
                 }
-
-                // Save the previous cell for each passed cell
-                cameFrom.put(neighbor, current);
-
-                // Set the corresponding scores
-                neighbor.setgScore(tentativeGScore);
-                neighbor.setfScore(neighbor.getgScore() + heuristicCostEstimate(neighbor, goal));
+                cameFrom[id] = current;
+                gScore[id] = tentativeGScore;
+                long fKey = key(tentativeGScore + estimate(neighbor, goal), id);
+                if (isOpen) {
+                    openSet.decreaseKey(id, fKey);
+                } else {
+                    openSet.push(id, fKey);
+                }
             }
         }
         // If there is no path to goal, return an empty path
-        return Collections.emptyList();
+        return new ArrayList<Cell>(0);
     }
 
+    // Octile distance between two stand alone cells
+    private static int estimate(Cell from, Cell to) {
+        return Directions.octile(from.getX() - to.getX(), from.getY() - to.getY());
+    }
 
     /**
-     * Arranges the passed cells from starting to goal
+     * Runs the main logic on a grid map with the context pooled for the current thread
      *
-     * @param cameFrom Map for passed cells and their previous cells
-     * @param current  Arriving cell (equals to the goal cell)
-     * @return List of shortest path's cells
+     * @param map   grid map to search on
+     * @param start index of the starting cell
+     * @param goal  index of the target cell
+     * @return indexes of the shortest path's cells from start to goal, empty if there is no path
      */
-    private List<Cell> reconstructPath(Map<Cell, Cell> cameFrom, Cell current) {
-        List<Cell> totalPath = new ArrayList<Cell>();
-        totalPath.add(current);
-        while (cameFrom.containsKey(current)) {
-            current = cameFrom.get(current);
-            totalPath.add(current);
-        }
+    public int[] findPath(GridMap map, int start, int goal) {
+        return findPath(map, start, goal, SearchContext.forCurrentThread());
+    }
 
-        return totalPath;
+    /**
+     * Runs the main logic for an agent covering size x size cells. Cells stand for the
+     * agent's top left corner, and neighbours the agent doesn't fit on are pruned by
+     * the grid's clearances, so every agent size searches the same grid.
+     *
+     * @param map       grid to search on
+     * @param start     index of the agent's starting cell
+     * @param goal      index of the agent's target cell
+     * @param agentSize side of the agent's square, 1 for a single cell
+     * @return indexes of the shortest path's cells from start to goal, empty if the agent can't get there
+     */
+    public int[] findPath(CompactGrid map, int start, int goal, int agentSize) {
+        return findPath(map.getClearance().forAgentSize(agentSize), start, goal);
     }
 
     /**
-     * Givest the distance between the neighbor and the current,
-     * straight cost and diagonal costs respectively
+     * Runs the main logic on a grid map, without any Cell objects
      *
-     * @param current  Current cell
-     * @param neighbor Any neighbour of the current cell
-     * @return distance from current to neighbour
+     * @param map     grid map to search on, it is only read
+     * @param start   index of the starting cell
+     * @param goal    index of the target cell
+     * @param context search state, reset before the search starts
+     * @return indexes of the shortest path's cells from start to goal, empty if there is no path
      */
-    private int distanceBetween(Cell current, Cell neighbor) {
-        if (current.getX() == neighbor.getX() || current.getY() == neighbor.getY()) {
-            return STRAIGHT_COST;
-        } else {
-            return DIAGONAL_COST;
+    public int[] findPath(GridMap map, int start, int goal, SearchContext context) {
+        if (search(map, start, goal, context, NO_DEADLINE) == PathResult.Status.FOUND) {
+            return reconstructPath(context.cameFrom, goal);
         }
+        return new int[0];
     }
 
     /**
-     * Gets the lowest fScored cell from unprocessed cell list
+     * Runs the main logic without allocating: the state comes from the context
+     * and the path is written into the buffer, both pooled by the caller
      *
-     * @param current Current cell
-     * @param openSet Unprocessed cells list
-     * @return Lowest fScored cell
+     * @param map     grid map to search on, it is only read
+     * @param start   index of the starting cell
+     * @param goal    index of the target cell
+     * @param context search state, reset before the search starts
+     * @param path    buffer receiving the path's cells from start to goal, emptied if there is no path
+     * @return true if the path was found
      */
-    private Cell getLowestFScored(Cell current, List<Cell> openSet) {
-
-        Cell minCell = current;
-        int min = Integer.MAX_VALUE;
-        for (int i = 0; i < openSet.size(); i++) {
-            if (openSet.get(i).getfScore() < min) {
-                min = openSet.get(i).getfScore();
-                minCell = openSet.get(i);
+    @Override
+    public boolean findPath(GridMap map, int start, int goal, SearchContext context, PathBuffer path) {
+        if (search(map, start, goal, context, NO_DEADLINE) == PathResult.Status.FOUND) {
+            path.fill(context.cameFrom, goal);
+            return true;
+        }
+        path.clear();
+        return false;
+    }
+
+    /**
+     * Runs the main logic on a grid map, without any Cell objects.
+     * Scores and parents are kept in the context's flat arrays indexed by
+     * cell index and neighbours are read from the map's neighbour masks.
+     * When the goal is found, the path can be read back from the context.
+     *
+     * @param map      grid map to search on, it is only read
+     * @param start    index of the starting cell
+     * @param goal     index of the target cell
+     * @param context  search state, reset before the search starts
+     * @param deadline System.nanoTime() value to give up at, or NO_DEADLINE
+     * @return FOUND, UNREACHABLE, TIMED_OUT when the deadline passed first,
+     * or CANCELLED when the thread was interrupted
+     */
+    public PathResult.Status search(GridMap map, int start, int goal, SearchContext context, long deadline) {
+        int width = map.getWidth();
+
+        context.reset(width * map.getHeight(), queueType == QueueType.RADIX_HEAP);
+        int[] gScore = context.gScore;
+        int[] cameFrom = context.cameFrom;
+        OpenSet openSet = context.open;
+        boolean weighted = map.isWeighted();
+
+        // Work counters live in locals, they are only reported when instrumentation is on
+        boolean instrumented = SearchStats.isInstrumented(context);
+        long startNanos = instrumented ? System.nanoTime() : 0;
+        int expanded = 0;
+        int improved = 0;
+        int openSetPeak = 1;
+
+        if (start != goal && !map.isConnected(start, goal)) {
+            if (instrumented) {
+                SearchStats.report(map, context, goal, PathResult.Status.UNREACHABLE, startNanos,
+                        expanded, context.discovered, improved, 0, null);
+            }
+            return PathResult.Status.UNREACHABLE;
+        }
+
+        context.discover(start);
+        gScore[start] = 0;
+        cameFrom[start] = -1;
+        openSet.push(start, key(heuristic.estimate(map, start, goal), context.discovered++));
+
+        while (!openSet.isEmpty()) {
+            int current = openSet.pop();
+            if (current == goal) {
+                if (instrumented) {
+                    SearchStats.report(map, context, goal, PathResult.Status.FOUND, startNanos,
+                            expanded, context.discovered, improved, openSetPeak, null);
+                }
+                return PathResult.Status.FOUND;
+            }
+            context.close(current);
+
+            // Look at the clock and the interrupt flag once in a while, they are too slow to read on every expansion
+            if ((++expanded & DEADLINE_CHECK_INTERVAL) == 0) {
+                PathResult.Status stopped = null;
+                if (Thread.currentThread().isInterrupted()) {
+                    stopped = PathResult.Status.CANCELLED;
+                } else if (deadline != NO_DEADLINE && System.nanoTime() - deadline > 0) {
+                    stopped = PathResult.Status.TIMED_OUT;
+                }
+                if (stopped != null) {
+                    if (instrumented) {
+                        SearchStats.report(map, context, goal, stopped, startNanos,
+                                expanded, context.discovered, improved, openSetPeak, null);
+                    }
+                    return stopped;
+                }
+            }
+
+            // Walk the set bits of the neighbour mask in direction order
+            int mask = map.getNeighbourMask(current);
+            while (mask != 0) {
+                int direction = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                int neighbor = current + Directions.offset(direction, width);
+
+                if (context.isClosed(neighbor)) {
+                    continue;
+                }
+
+                // Tentative gScore is the metric to decide if going from current cell costs less or not
+                int moveCost = Directions.cost(direction);
+                if (weighted) {
+                    moveCost *= map.getCost(neighbor);
+                }
+                int tentativeGScore = gScore[current] + moveCost;
+                boolean isOpen = openSet.contains(neighbor);
+                if (isOpen && tentativeGScore >= gScore[neighbor]) {
+                    continue;
+                }
+
+                context.discover(neighbor);
+                cameFrom[neighbor] = current;
+                gScore[neighbor] = tentativeGScore;
+                int fScore = tentativeGScore + heuristic.estimate(map, neighbor, goal);
+
+                // A cell keeps its discovery order when its score drops,
+                // so equal f scores are always resolved the same way
+                if (isOpen) {
+                    long order = openSet.getKey(neighbor) & 0xFFFFFFFFL;
+                    openSet.decreaseKey(neighbor, key(fScore, order));
+                    improved++;
+                } else {
+                    openSet.push(neighbor, key(fScore, context.discovered++));
+                }
+            }
+
+            // The open set only grows while neighbours are pushed, so its peak is always seen here
+            if (openSet.size() > openSetPeak) {
+                openSetPeak = openSet.size();
             }
         }
-        return minCell;
+        // If the open set runs out, there is no path to goal
+        if (instrumented) {
+            SearchStats.report(map, context, goal, PathResult.Status.UNREACHABLE, startNanos,
+                    expanded, context.discovered, improved, openSetPeak, null);
+        }
+        return PathResult.Status.UNREACHABLE;
+    }
+
+    /**
+     * Prepares a search which runs a few expansions at a time, see SearchStepper.
+     * The searches run by search and findPath don't pay for the stepping.
+     *
+     * @param map   grid map to search on, it is only read
+     * @param start index of the starting cell
+     * @param goal  index of the target cell
+     * @return the stepper, before its first expansion
+     */
+    public SearchStepper stepper(GridMap map, int start, int goal) {
+        return new SearchStepper(map, start, goal, heuristic, queueType);
     }
 
     /**
-     * Calculates manhattan distance between given cell and the current cell
+     * Reads the path back after a search which found its goal. A star's parents
+     * are neighbouring cells, so the map isn't needed to fill in the steps between them.
      *
-     * @param current Current cell
-     * @param next    Given cell
-     * @return Manhattan distance from current to next
+     * @param map     grid map which was searched, unused
+     * @param context context of the search
+     * @param goal    index of the target cell
+     * @return indexes of every cell on the path from start to goal
      */
-    private int heuristicCostEstimate(Cell current, Cell next) {
+    @Override
+    public int[] getPath(GridMap map, SearchContext context, int goal) {
+        return context.getPath(goal);
+    }
+
+    /**
+     * Combines the f score and the discovery order into one open set key,
+     * so the heap orders by f score first and by discovery order on ties
+     *
+     * @param fScore f score of the cell
+     * @param order  discovery order of the cell
+     * @return open set key
+     */
+    static long key(int fScore, long order) {
+        return ((long) fScore << 32) | order;
+    }
 
-        return abs(current.getX() - next.getX()) * 10 + abs(current.getY() - next.getY()) * 10;
+    /**
+     * Arranges the passed cell indexes from starting to goal
+     *
+     * @param cameFrom previous cell index of each passed cell, -1 for the start
+     * @param current  Arriving cell index (equals to the goal cell)
+     * @return indexes of the shortest path's cells
+     */
+    static int[] reconstructPath(int[] cameFrom, int current) {
+        int length = 0;
+        for (int cell = current; cell != -1; cell = cameFrom[cell]) {
+            length++;
+        }
+        int[] totalPath = new int[length];
+        for (int cell = current; cell != -1; cell = cameFrom[cell]) {
+            totalPath[--length] = cell;
+        }
+        return totalPath;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,291 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridMap;
+
+import java.util.Arrays;
+
+/**
+ * AnytimeSearch is ARA*, anytime repairing A*, for callers with a time budget.
+ * <p>
+ * The first path comes from an A* whose heuristic is inflated by a weight,
+ * which finds a path quickly but may be up to weight times too expensive.
+ * Each later round lowers the weight and repairs the previous round's search
+ * instead of starting over, until the weight reaches 1 and the path is optimal.
+ * <p>
+ * improve runs until a deadline, a node budget or an interruption of the
+ * calling thread, and the next call carries on where the last one stopped,
+ * so the search can be spread over the ticks of a game loop. The best path
+ * so far and its suboptimality bound can be read between calls. A search
+ * belongs to one query and one thread, and the map must not change under it.
+ * On weighted maps moves cost what they cost in AStar.
+ */
+public class AnytimeSearch {
+
+    /**
+     * Where the search stands after an improve call
+     */
+    public enum Status {
+        // Stopped at the deadline, the budget or an interruption, improve may be called again
+        IMPROVING,
+        // The path is optimal, there is nothing left to improve
+        OPTIMAL,
+        // The goal can't be reached
+        UNREACHABLE
+    }
+
+    // Node budget of calls which run until the deadline
+    public static final long NO_BUDGET = Long.MAX_VALUE;
+
+    // Weight of the first round and how much each round lowers it
+    public static final double DEFAULT_INITIAL_WEIGHT = 3.0;
+    public static final double DEFAULT_WEIGHT_STEP = 0.5;
+
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    // Mask of the expansion count at which the clock and the interrupt flag are checked
+    private static final int CHECK_INTERVAL = 255;
+
+    private final GridMap map;
+    private final int goal;
+    private final Heuristic heuristic;
+    private final double weightStep;
+    private double weight;
+
+    private final int[] gScore;
+    private final int[] cameFrom;
+
+    // Round in which each cell was last expanded, cells are expanded at most once per round
+    private final int[] closedIn;
+    private int round = 1;
+
+    private final IndexedHeap openSet;
+
+    // Expanded cells which got cheaper in the same round, they wait for the next round
+    private int[] inconsistent = new int[64];
+    private int inconsistentCount;
+    private final boolean[] isInconsistent;
+
+    // Counts the cells put into the open set to break ties
+    private long order;
+
+    private int[] bestPath = new int[0];
+    private int bestCost = INFINITY;
+    private double bound = Double.POSITIVE_INFINITY;
+    private Status status = Status.IMPROVING;
+    private long expanded;
+
+    /**
+     * @param map   grid map to search on
+     * @param start index of the starting cell
+     * @param goal  index of the target cell
+     */
+    public AnytimeSearch(GridMap map, int start, int goal) {
+        this(map, start, goal, Heuristic.OCTILE, DEFAULT_INITIAL_WEIGHT, DEFAULT_WEIGHT_STEP);
+    }
+
+    /**
+     * @param map           grid map to search on
+     * @param start         index of the starting cell
+     * @param goal          index of the target cell
+     * @param heuristic     estimate of the remaining cost which never overestimates
+     * @param initialWeight inflation of the heuristic in the first round, at least 1
+     * @param weightStep    how much each round lowers the weight, more than 0
+     */
+    public AnytimeSearch(GridMap map, int start, int goal, Heuristic heuristic, double initialWeight,
+                         double weightStep) {
+        if (initialWeight < 1 || weightStep <= 0) {
+            throw new IllegalArgumentException("Invalid weights " + initialWeight + ", " + weightStep);
+        }
+        int size = map.getWidth() * map.getHeight();
+        this.map = map;
+        this.goal = goal;
+        this.heuristic = heuristic;
+        this.weight = initialWeight;
+        this.weightStep = weightStep;
+        this.gScore = new int[size];
+        this.cameFrom = new int[size];
+        this.closedIn = new int[size];
+        this.isInconsistent = new boolean[size];
+        this.openSet = new IndexedHeap(size);
+
+        Arrays.fill(gScore, INFINITY);
+        gScore[start] = 0;
+        cameFrom[start] = -1;
+        if (start != goal && !map.isConnected(start, goal)) {
+            status = Status.UNREACHABLE;
+            return;
+        }
+        openSet.push(start, key(start));
+    }
+
+    /**
+     * Searches on until the path is optimal or one of the limits is hit
+     *
+     * @param deadline   System.nanoTime() value to stop at, or AStar.NO_DEADLINE
+     * @param nodeBudget number of cells this call may expand, or NO_BUDGET
+     * @return OPTIMAL or UNREACHABLE once the search is over, IMPROVING if it stopped at a limit
+     */
+    public Status improve(long deadline, long nodeBudget) {
+        long budgetLeft = nodeBudget;
+        int sinceCheck = 0;
+        while (status == Status.IMPROVING) {
+            // A round ends when no cell in the open set can lead to a cheaper path to the goal
+            if (openSet.isEmpty() || gScore[goal] <= openSet.peekKey() >>> 32) {
+                finishRound();
+                continue;
+            }
+            if (budgetLeft-- <= 0) {
+                return status;
+            }
+            if ((++sinceCheck & CHECK_INTERVAL) == 0 && (Thread.currentThread().isInterrupted()
+                    || (deadline != AStar.NO_DEADLINE && System.nanoTime() - deadline > 0))) {
+                return status;
+            }
+            expand(openSet.pop());
+        }
+        return status;
+    }
+
+    /**
+     * @return cells of the best path found so far from start to goal, empty if none was found yet
+     */
+    public int[] getPath() {
+        return bestPath.clone();
+    }
+
+    /**
+     * @return cost of the best path found so far, Integer.MAX_VALUE if none was found yet
+     */
+    public int getPathCost() {
+        return bestCost == INFINITY ? Integer.MAX_VALUE : bestCost;
+    }
+
+    /**
+     * @return the best path costs at most this many times the optimal cost, infinite until a path is found
+     */
+    public double getBound() {
+        return bound;
+    }
+
+    /**
+     * @return weight the heuristic is inflated by in the running round
+     */
+    public double getWeight() {
+        return weight;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return cells expanded by all improve calls together
+     */
+    public long getExpanded() {
+        return expanded;
+    }
+
+    private void expand(int current) {
+        closedIn[current] = round;
+        expanded++;
+        int width = map.getWidth();
+        boolean weighted = map.isWeighted();
+        int mask = map.getNeighbourMask(current);
+        while (mask != 0) {
+            int direction = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            int neighbor = current + Directions.offset(direction, width);
+            int moveCost = Directions.cost(direction);
+            if (weighted) {
+                moveCost *= map.getCost(neighbor);
+            }
+            int tentativeGScore = gScore[current] + moveCost;
+            if (tentativeGScore >= gScore[neighbor]) {
+                continue;
+            }
+            gScore[neighbor] = tentativeGScore;
+            cameFrom[neighbor] = current;
+
+            if (closedIn[neighbor] == round) {
+                // Expanded already in this round, it is looked at again in the next one
+                if (!isInconsistent[neighbor]) {
+                    isInconsistent[neighbor] = true;
+                    if (inconsistentCount == inconsistent.length) {
+                        inconsistent = Arrays.copyOf(inconsistent, inconsistentCount * 2);
+                    }
+                    inconsistent[inconsistentCount++] = neighbor;
+                }
+            } else if (openSet.contains(neighbor)) {
+                openSet.changeKey(neighbor, key(neighbor));
+            } else {
+                openSet.push(neighbor, key(neighbor));
+            }
+        }
+    }
+
+    // Publishes the round's path and starts the next round with a lower weight
+    private void finishRound() {
+        if (gScore[goal] >= INFINITY) {
+            status = Status.UNREACHABLE;
+            return;
+        }
+        if (gScore[goal] < bestCost) {
+            // Parents which got cheaper after their children were reached make the path cheaper than the goal's g
+            int[] path = AStar.reconstructPath(cameFrom, goal);
+            int pathCost = costOf(path);
+            if (pathCost < bestCost) {
+                bestCost = pathCost;
+                bestPath = path;
+            }
+        }
+        if (weight <= 1) {
+            bound = 1;
+            status = Status.OPTIMAL;
+            return;
+        }
+
+        // The next round gets the open and the inconsistent cells, ordered by the lower weight
+        double finishedWeight = weight;
+        weight = Math.max(1, weight - weightStep);
+        round++;
+        int[] open = new int[openSet.size() + inconsistentCount];
+        int count = 0;
+        while (!openSet.isEmpty()) {
+            open[count++] = openSet.pop();
+        }
+        for (int i = 0; i < inconsistentCount; i++) {
+            isInconsistent[inconsistent[i]] = false;
+            open[count++] = inconsistent[i];
+        }
+        inconsistentCount = 0;
+
+        // Every path goes through one of these cells, so the cheapest of them bounds the optimal cost
+        long lowest = INFINITY;
+        for (int i = 0; i < count; i++) {
+            if (!openSet.contains(open[i])) {
+                openSet.push(open[i], key(open[i]));
+                lowest = Math.min(lowest, (long) gScore[open[i]] + heuristic.estimate(map, open[i], goal));
+            }
+        }
+        bound = Math.min(finishedWeight, (double) bestCost / Math.max(1, Math.min(lowest, bestCost)));
+    }
+
+    private int costOf(int[] path) {
+        int width = map.getWidth();
+        boolean weighted = map.isWeighted();
+        int cost = 0;
+        for (int i = 1; i < path.length; i++) {
+            int moveCost = Directions.octile(path[i] % width - path[i - 1] % width,
+                    path[i] / width - path[i - 1] / width);
+            cost += weighted ? moveCost * map.getCost(path[i]) : moveCost;
+        }
+        return cost;
+    }
+
+    // Inflated f score in the upper half, insertion order in the lower half
+    private long key(int cell) {
+        long fScore = gScore[cell] + (long) (weight * heuristic.estimate(map, cell, goal));
+        return fScore << 32 | (order++ & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,303 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.GridMap;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * BatchPathfinder runs many path queries against one shared grid map in parallel.
+ * Queries are spread over a caller supplied executor, and every worker
+ * borrows a pooled SearchContext, so the per query state is reused
+ * across the batch and across later batches.
+ * <p>
+ * A SearchContext is as large as the map. However many threads the executor
+ * has, virtual ones included, at most maxSearches queries search at once and
+ * the others wait for their turn, so there are never more than maxSearches
+ * contexts.
+ * <p>
+ * Cancelling a query interrupts the thread searching it, whatever the
+ * executor: the searches check the interrupt flag as they go and end with
+ * CANCELLED. ForkJoinPool's cancel(true) interrupts nothing, so the queries
+ * interrupt their threads themselves.
+ * <p>
+ * The map must not change while a batch is running.
+ */
+public class BatchPathfinder {
+
+    private final GridMap map;
+    private final Pathfinder pathfinder;
+    private final ExecutorService executor;
+
+    // Search contexts left over from finished queries, ready for the next ones
+    private final ConcurrentLinkedQueue<SearchContext> contexts = new ConcurrentLinkedQueue<SearchContext>();
+
+    // A permit per query searching, each of them holds a context
+    private final Semaphore searching;
+
+    // Whether the results carry the stats of their searches
+    private volatile boolean statsEnabled;
+
+    /**
+     * @param map      grid map the queries run on
+     * @param executor executor running the queries, it is not shut down by the batch
+     */
+    public BatchPathfinder(GridMap map, ExecutorService executor) {
+        this(map, new AStar(), executor);
+    }
+
+    /**
+     * @param map        grid map the queries run on
+     * @param pathfinder search mode the queries run with
+     * @param executor   executor running the queries, it is not shut down by the batch
+     */
+    public BatchPathfinder(GridMap map, Pathfinder pathfinder, ExecutorService executor) {
+        this(map, pathfinder, executor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param map         grid map the queries run on
+     * @param pathfinder  search mode the queries run with
+     * @param executor    executor running the queries, it is not shut down by the batch
+     * @param maxSearches number of queries which may search at once, and of the contexts kept for them
+     */
+    public BatchPathfinder(GridMap map, Pathfinder pathfinder, ExecutorService executor, int maxSearches) {
+        if (maxSearches <= 0) {
+            throw new IllegalArgumentException("Invalid number of searches " + maxSearches);
+        }
+        this.map = map;
+        this.pathfinder = pathfinder;
+        this.executor = executor;
+        this.searching = new Semaphore(maxSearches);
+    }
+
+    /**
+     * @return a work stealing pool with one worker per available processor
+     */
+    public static ExecutorService newWorkStealingExecutor() {
+        return new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an executor which starts a virtual thread per query.
+     * Virtual threads only exist on Java 21 and later, so it is looked up reflectively.
+     *
+     * @return a virtual thread per task executor
+     * @throws UnsupportedOperationException if the running JVM has no virtual threads
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later", e);
+        }
+    }
+
+    /**
+     * Turns the per query stats of the results on or off
+     *
+     * @param enabled true to attach SearchStats to every result
+     */
+    public void setStatsEnabled(boolean enabled) {
+        this.statsEnabled = enabled;
+    }
+
+    /**
+     * Runs every query in parallel and waits for all of them
+     *
+     * @param queries queries to run
+     * @param timeout time each query may search for once it started
+     * @param unit    unit of the timeout
+     * @return results in the order of the queries
+     * @throws InterruptedException if the calling thread is interrupted while waiting,
+     *                              the queries which did not finish yet are cancelled
+     */
+    public List<PathResult> findAll(Collection<PathQuery> queries, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        List<QueryTask> tasks = new ArrayList<QueryTask>(queries.size());
+        List<Future<PathResult>> futures = new ArrayList<Future<PathResult>>(queries.size());
+        for (PathQuery query : queries) {
+            QueryTask task = new QueryTask(query, unit.toNanos(timeout));
+            tasks.add(task);
+            futures.add(executor.submit(task));
+        }
+
+        List<PathResult> results = new ArrayList<PathResult>(futures.size());
+        try {
+            for (Future<PathResult> future : futures) {
+                results.add(getResult(future));
+            }
+        } finally {
+            if (results.size() < futures.size()) {
+                cancel(tasks, futures);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs every query in parallel and hands each result over as soon as it is ready.
+     * The consumer is called on the calling thread, one result at a time.
+     *
+     * @param queries  queries to run
+     * @param timeout  time each query may search for once it started
+     * @param unit     unit of the timeout
+     * @param consumer receives the results in the order they complete
+     * @throws InterruptedException if the calling thread is interrupted while waiting,
+     *                              the queries which did not finish yet are cancelled
+     */
+    public void findEach(Collection<PathQuery> queries, long timeout, TimeUnit unit, Consumer<PathResult> consumer)
+            throws InterruptedException {
+        CompletionService<PathResult> completion = new ExecutorCompletionService<PathResult>(executor);
+        List<QueryTask> tasks = new ArrayList<QueryTask>(queries.size());
+        List<Future<PathResult>> futures = new ArrayList<Future<PathResult>>(queries.size());
+        for (PathQuery query : queries) {
+            QueryTask task = new QueryTask(query, unit.toNanos(timeout));
+            tasks.add(task);
+            futures.add(completion.submit(task));
+        }
+
+        int received = 0;
+        try {
+            for (; received < futures.size(); received++) {
+                consumer.accept(getResult(completion.take()));
+            }
+        } finally {
+            if (received < futures.size()) {
+                cancel(tasks, futures);
+            }
+        }
+    }
+
+    /**
+     * Runs one query on the executor without waiting for it. Cancelling the
+     * future drops the query if it did not start yet and interrupts its search otherwise,
+     * on any executor.
+     *
+     * @param query   query to run
+     * @param timeout time the query may search for once it started
+     * @param unit    unit of the timeout
+     * @return future of the result, completed on the executor's thread
+     * @throws RejectedExecutionException if the executor takes no more tasks
+     */
+    public CompletableFuture<PathResult> submit(PathQuery query, long timeout, TimeUnit unit) {
+        QueryTask task = new QueryTask(query, unit.toNanos(timeout));
+        CompletableFuture<PathResult> result = new CompletableFuture<PathResult>();
+        Future<?> running = executor.submit(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                result.complete(task.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((path, error) -> {
+            if (result.isCancelled()) {
+                running.cancel(true);
+                task.cancel();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * QueryTask waits for a permit and searches its query with a pooled context.
+     * Cancelling it interrupts the thread running it, if it is running.
+     */
+    private final class QueryTask implements Callable<PathResult> {
+        private final PathQuery query;
+        private final long timeoutNanos;
+
+        // Thread running the task, null before it started and after it ended
+        private Thread runner;
+        private boolean cancelled;
+
+        /**
+         * @param query        query to run
+         * @param timeoutNanos time the search may take once it started
+         */
+        QueryTask(PathQuery query, long timeoutNanos) {
+            this.query = query;
+            this.timeoutNanos = timeoutNanos;
+        }
+
+        public PathResult call() throws InterruptedException {
+            synchronized (this) {
+                if (cancelled) {
+                    return new PathResult(query, PathResult.Status.CANCELLED, null, null);
+                }
+                runner = Thread.currentThread();
+            }
+            try {
+                return search();
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    // The interrupt was meant for this query only, the pool's thread goes on with the next task
+                    if (cancelled) {
+                        Thread.interrupted();
+                    }
+                }
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+
+        private PathResult search() throws InterruptedException {
+            searching.acquire();
+            // Contexts are only made while holding a permit, so the pool never outgrows the permits
+            SearchContext context = contexts.poll();
+            if (context == null) {
+                context = new SearchContext();
+            }
+            try {
+                context.setStatsEnabled(statsEnabled);
+                long deadline = System.nanoTime() + timeoutNanos;
+                PathResult.Status status =
+                        pathfinder.search(map, query.getStart(), query.getGoal(), context, deadline);
+                int[] path = status == PathResult.Status.FOUND
+                        ? pathfinder.getPath(map, context, query.getGoal()) : null;
+                SearchStats stats = context.getStats() != null ? context.getStats().copy() : null;
+                return new PathResult(query, status, path, stats);
+            } finally {
+                contexts.offer(context);
+                searching.release();
+            }
+        }
+    }
+
+    // Unwraps the result of a finished query, rethrowing whatever the search threw
+    private static PathResult getResult(Future<PathResult> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Interrupts the queries waiting for a permit too, they would otherwise still search one by one
+    private static void cancel(List<QueryTask> tasks, List<Future<PathResult>> futures) {
+        for (int i = 0; i < futures.size(); i++) {
+            futures.get(i).cancel(true);
+            tasks.get(i).cancel();
+        }
+    }
+}
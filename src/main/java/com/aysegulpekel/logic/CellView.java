@@ -0,0 +1,26 @@
+package com.aysegulpekel.logic;
+
+/**
+ * CellView is a read-only view of a set of cells which belongs to a running search.
+ * It reads the search's own state, so it changes as the search goes on
+ * and must only be read by the thread stepping the search, between steps.
+ */
+public interface CellView {
+
+    /**
+     * @return number of cells in the set
+     */
+    int size();
+
+    /**
+     * @param position position from 0 to size() - 1
+     * @return index of the cell at the position
+     */
+    int get(int position);
+
+    /**
+     * @param index index of a cell
+     * @return true if the cell is in the set
+     */
+    boolean contains(int index);
+}
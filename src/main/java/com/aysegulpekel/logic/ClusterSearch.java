@@ -0,0 +1,166 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridMap;
+
+import java.util.Arrays;
+
+/**
+ * ClusterSearch runs Dijkstra inside a rectangle of a grid map,
+ * never stepping outside of it. Scores are kept in small local arrays
+ * indexed by the position inside the rectangle, so one search only
+ * touches the rectangle's cells however large the map is.
+ * <p>
+ * The arrays are sized for the largest rectangle once, so one search
+ * can be pointed at rectangle after rectangle without allocating.
+ */
+class ClusterSearch {
+
+    // Distance of cells which can't be reached inside the rectangle
+    static final int INFINITY = Integer.MAX_VALUE;
+
+    private final GridMap map;
+    private int left;
+    private int top;
+    private int width;
+    private int height;
+
+    // Distance from the source to each cell of the rectangle, by local index
+    private final int[] distances;
+
+    // Local index of the previous cell of each reached cell, -1 for the source
+    private final int[] cameFrom;
+
+    // Moves of each cell which stay inside the rectangle by local index, -1 until first looked up
+    private final int[] masks;
+
+    private final IndexedHeap openSet;
+
+    /**
+     * @param map      grid map the rectangles are part of
+     * @param capacity number of cells of the largest rectangle
+     */
+    ClusterSearch(GridMap map, int capacity) {
+        this.map = map;
+        this.distances = new int[capacity];
+        this.cameFrom = new int[capacity];
+        this.openSet = new IndexedHeap(capacity);
+        this.masks = new int[capacity];
+    }
+
+    /**
+     * Points the search at a rectangle, the moves of its cells are looked up again
+     *
+     * @param left   horizontal position of the rectangle's top left cell
+     * @param top    vertical position of the rectangle's top left cell
+     * @param width  horizontal size of the rectangle
+     * @param height vertical size of the rectangle
+     * @throws IllegalArgumentException if the rectangle has more cells than the search was sized for
+     */
+    void setRectangle(int left, int top, int width, int height) {
+        if (width * height > masks.length) {
+            throw new IllegalArgumentException("Rectangle of " + width + "x" + height + " is larger than "
+                    + masks.length + " cells");
+        }
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+        Arrays.fill(masks, 0, width * height, -1);
+    }
+
+    /**
+     * Computes the distances from a source cell to the cells of the rectangle.
+     * With a target the search is directed at it by the octile distance and
+     * stops once it is reached, so only the distances up to it are final.
+     *
+     * @param source map index of a cell inside the rectangle
+     * @param target map index of a cell to stop at, or -1 to reach every cell
+     */
+    void run(int source, int target) {
+        Arrays.fill(distances, 0, width * height, INFINITY);
+        openSet.clear();
+
+        int local = toLocal(source);
+        distances[local] = 0;
+        cameFrom[local] = -1;
+        openSet.push(local, 0);
+
+        int targetLocal = target == -1 ? -1 : toLocal(target);
+        int targetX = targetLocal % width;
+        int targetY = targetLocal / width;
+        while (!openSet.isEmpty()) {
+            int current = openSet.pop();
+            if (current == targetLocal) {
+                return;
+            }
+            int mask = maskOf(current);
+            while (mask != 0) {
+                int direction = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                int neighbor = current + Directions.offset(direction, width);
+                int distance = distances[current] + Directions.cost(direction);
+                if (distance < distances[neighbor]) {
+                    boolean isOpen = openSet.contains(neighbor);
+                    distances[neighbor] = distance;
+                    cameFrom[neighbor] = current;
+                    int key = targetLocal == -1 ? distance
+                            : distance + Directions.octile(neighbor % width - targetX, neighbor / width - targetY);
+                    if (isOpen) {
+                        openSet.decreaseKey(neighbor, key);
+                    } else {
+                        openSet.push(neighbor, key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param cell map index of a cell inside the rectangle
+     * @return distance from the last source to the cell, INFINITY if it wasn't reached
+     */
+    int getDistance(int cell) {
+        return distances[toLocal(cell)];
+    }
+
+    /**
+     * @param cell map index of a reached cell
+     * @return map indexes of the way from the last source to the cell, without the source itself
+     */
+    int[] getPath(int cell) {
+        int steps = 0;
+        for (int local = toLocal(cell); cameFrom[local] != -1; local = cameFrom[local]) {
+            steps++;
+        }
+        int[] path = new int[steps];
+        for (int local = toLocal(cell); cameFrom[local] != -1; local = cameFrom[local]) {
+            path[--steps] = (top + local / width) * map.getWidth() + left + local % width;
+        }
+        return path;
+    }
+
+    // Moves of a cell which stay inside the rectangle, looked up once per cell
+    private int maskOf(int local) {
+        int mask = masks[local];
+        if (mask == -1) {
+            int x = local % width;
+            int y = local / width;
+            mask = map.getNeighbourMask((top + y) * map.getWidth() + left + x);
+            for (int direction = 0; direction < Directions.COUNT; direction++) {
+                int nx = x + Directions.dx(direction);
+                int ny = y + Directions.dy(direction);
+                if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+                    mask &= ~(1 << direction);
+                }
+            }
+            masks[local] = mask;
+        }
+        return mask;
+    }
+
+    private int toLocal(int cell) {
+        int mapWidth = map.getWidth();
+        return (cell / mapWidth - top) * width + cell % mapWidth - left;
+    }
+}
@@ -0,0 +1,128 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridMap;
+
+import java.util.Arrays;
+
+/**
+ * DistanceSearch measures the distances from one cell to a few others with
+ * Dijkstra, for callers which need neither a path nor a whole flow field.
+ * The search stops as soon as every target is settled, so targets close to
+ * the source only cost the cells around it. Targets which are obstacles or
+ * in another component, once the map labels its components, are not waited for.
+ * <p>
+ * Like the flow fields, the cells waiting to be settled go into a ring of
+ * buckets, one per distance up to the dearest move, instead of a heap. The
+ * search keeps its ring and its SearchContext from one run to the next, so
+ * warmed up runs allocate nothing. A search is used by one thread at a time.
+ */
+public class DistanceSearch {
+
+    // Distance of targets which can't be reached
+    public static final int NO_DISTANCE = Integer.MAX_VALUE;
+
+    // Distances waiting in the ring are at most the dearest move apart
+    private static final int BUCKETS = Directions.DIAGONAL_COST + 1;
+    private static final int WEIGHTED_BUCKETS = Directions.DIAGONAL_COST * GridMap.MAX_COST + 1;
+
+    private final SearchContext context = new SearchContext();
+
+    // Cells waiting to be settled, bucket d % ring size holds the ones at distance d, made on first use
+    private final int[][] buckets = new int[WEIGHTED_BUCKETS][];
+    private final int[] bucketSizes = new int[WEIGHTED_BUCKETS];
+
+    /**
+     * @param map       grid map to search on, it is only read
+     * @param source    index of the cell to measure from
+     * @param targets   indexes of the cells to measure to, repeats are allowed
+     * @param count     number of targets to read from the array
+     * @param distances receives the distance to each target, NO_DISTANCE where there is no path
+     */
+    public void run(GridMap map, int source, int[] targets, int count, int[] distances) {
+        boolean weighted = map.isWeighted();
+        int ring = weighted ? WEIGHTED_BUCKETS : BUCKETS;
+        int width = map.getWidth();
+        context.reset(width * map.getHeight());
+        int[] gScore = context.gScore;
+        Arrays.fill(bucketSizes, 0, ring, 0);
+
+        // Targets before this one are settled or never will be
+        int waitingFor = skipDone(map, source, targets, count, 0);
+        int queued = 0;
+        if (!map.isObstacle(source) && waitingFor < count) {
+            context.discover(source);
+            gScore[source] = 0;
+            push(source, 0, ring);
+            queued++;
+        }
+
+        search:
+        for (int distance = 0; queued > 0; distance++) {
+            int slot = distance % ring;
+            // The bucket only grows by pushes at least STRAIGHT_COST further, so it is drained in one pass
+            int[] bucket = buckets[slot];
+            int size = bucketSizes[slot];
+            bucketSizes[slot] = 0;
+            queued -= size;
+            for (int i = 0; i < size; i++) {
+                int cell = bucket[i];
+                // Cells lowered after they were queued are queued again at their lower distance
+                if (gScore[cell] != distance || context.isClosed(cell)) {
+                    continue;
+                }
+                context.close(cell);
+                if (cell == targets[waitingFor]) {
+                    waitingFor = skipDone(map, source, targets, count, waitingFor);
+                    if (waitingFor == count) {
+                        break search;
+                    }
+                }
+
+                int mask = map.getNeighbourMask(cell);
+                while (mask != 0) {
+                    int direction = Integer.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                    int neighbor = cell + Directions.offset(direction, width);
+                    int moveCost = Directions.cost(direction);
+                    if (weighted) {
+                        moveCost *= map.getCost(neighbor);
+                    }
+                    int neighborDistance = distance + moveCost;
+                    if (!context.isDiscovered(neighbor) || neighborDistance < gScore[neighbor]) {
+                        context.discover(neighbor);
+                        gScore[neighbor] = neighborDistance;
+                        push(neighbor, neighborDistance, ring);
+                        queued++;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            distances[i] = context.isClosed(targets[i]) ? gScore[targets[i]] : NO_DISTANCE;
+        }
+    }
+
+    // Moves past the targets which are settled or can't be reached
+    private int skipDone(GridMap map, int source, int[] targets, int count, int from) {
+        int next = from;
+        while (next < count && (context.isClosed(targets[next]) || map.isObstacle(targets[next])
+                || !map.isConnected(source, targets[next]))) {
+            next++;
+        }
+        return next;
+    }
+
+    private void push(int cell, int distance, int ring) {
+        int slot = distance % ring;
+        int size = bucketSizes[slot];
+        if (buckets[slot] == null) {
+            buckets[slot] = new int[16];
+        } else if (size == buckets[slot].length) {
+            buckets[slot] = Arrays.copyOf(buckets[slot], size * 2);
+        }
+        buckets[slot][size] = cell;
+        bucketSizes[slot] = size + 1;
+    }
+}
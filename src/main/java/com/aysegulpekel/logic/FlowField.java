@@ -0,0 +1,369 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridListener;
+
+import java.util.Arrays;
+
+/**
+ * FlowField holds the distance of every cell to one goal and the direction
+ * of the next step along a shortest path, so any number of agents heading
+ * for the goal read their next step in O(1) instead of searching.
+ * <p>
+ * The field is a Dijkstra from the goal over the whole map. Moves cost
+ * STRAIGHT_COST or DIAGONAL_COST, so the cells waiting to be settled are
+ * never more than DIAGONAL_COST apart, and a ring of DIAGONAL_COST + 1
+ * buckets replaces the heap: every cell goes in and out of its bucket in O(1).
+ * <p>
+ * Obstacle changes are picked up from the grid as they happen. The next
+ * update resets only the cells whose next steps led through a changed move
+ * and settles them again from the cells around them, the rest of the field
+ * is kept.
+ * <p>
+ * Fields are for maps without costs: the buckets assume every move costs
+ * STRAIGHT_COST or DIAGONAL_COST, so weighted maps are rejected.
+ * <p>
+ * A field is updated by one thread at a time. Agents may read it from many
+ * threads, as long as no update runs meanwhile.
+ */
+public class FlowField implements GridListener {
+
+    // Direction of cells without a next step: the goal, obstacles and cells which can't reach the goal
+    public static final byte NO_DIRECTION = -1;
+
+    // Distance of cells which can't reach the goal, small enough to add costs to without overflowing
+    private static final int INFINITY = Integer.MAX_VALUE / 4;
+
+    // Distances waiting in the bucket ring are at most the largest move cost apart
+    private static final int BUCKETS = Directions.DIAGONAL_COST + 1;
+
+    private final CompactGrid map;
+    private final int width;
+    private final int goal;
+
+    // Distance of every cell to the goal
+    private final int[] distances;
+
+    // Direction of the next step of every cell
+    private final byte[] directions;
+
+    // Cells waiting to be settled, bucket d % BUCKETS holds the ones at distance d
+    private final int[][] buckets = new int[BUCKETS][16];
+    private final int[] bucketSizes = new int[BUCKETS];
+
+    // Cells whose obstacle changed since the last update
+    private int[] changedCells = new int[16];
+    private int changedCount;
+
+    // Whether obstacles changed since the last update, read without the lock
+    private volatile boolean changed;
+
+    // Cells reset by the last update, also used as the queue finding them
+    private int[] resetCells = new int[16];
+
+    /**
+     * Computes the field and starts listening to the grid's obstacle changes
+     *
+     * @param map  grid the agents move on, without costs
+     * @param goal index of the target cell
+     * @throws IllegalArgumentException if the goal is out of the map or the map is weighted
+     */
+    public FlowField(CompactGrid map, int goal) {
+        int size = map.getWidth() * map.getHeight();
+        if (goal < 0 || goal >= size) {
+            throw new IllegalArgumentException("Goal " + goal + " is out of the map");
+        }
+        checkUniform(map);
+        this.map = map;
+        this.width = map.getWidth();
+        this.goal = goal;
+        this.distances = new int[size];
+        this.directions = new byte[size];
+
+        Arrays.fill(distances, INFINITY);
+        Arrays.fill(directions, NO_DIRECTION);
+        if (!map.isObstacle(goal)) {
+            distances[goal] = 0;
+            settle(new long[]{goal}, 1);
+        }
+        map.addListener(this);
+    }
+
+    public int getGoal() {
+        return goal;
+    }
+
+    /**
+     * @param index index of a cell
+     * @return cost of the shortest path from the cell to the goal, Integer.MAX_VALUE if there is none
+     */
+    public int getDistance(int index) {
+        return distances[index] >= INFINITY ? Integer.MAX_VALUE : distances[index];
+    }
+
+    /**
+     * @param index index of a cell
+     * @return direction of the next step towards the goal, NO_DIRECTION on the goal or if there is no path
+     */
+    public byte getDirection(int index) {
+        return directions[index];
+    }
+
+    /**
+     * @param index index of a cell
+     * @return index of the next cell on a shortest path to the goal, -1 on the goal or if there is no path
+     */
+    public int getNextStep(int index) {
+        byte direction = directions[index];
+        return direction == NO_DIRECTION ? -1 : index + Directions.offset(direction, width);
+    }
+
+    /**
+     * Follows the next steps from a cell to the goal
+     *
+     * @param start index of the starting cell
+     * @return indexes of the path's cells from start to goal, empty if there is no path
+     */
+    public int[] getPath(int start) {
+        if (distances[start] >= INFINITY) {
+            return new int[0];
+        }
+        int[] path = new int[16];
+        int length = 0;
+        for (int current = start; current != -1; current = getNextStep(current)) {
+            if (length == path.length) {
+                path = Arrays.copyOf(path, length * 2);
+            }
+            path[length++] = current;
+        }
+        return Arrays.copyOf(path, length);
+    }
+
+    /**
+     * Stops listening to the grid, the field is not updated anymore
+     */
+    public void detach() {
+        map.removeListener(this);
+    }
+
+    /**
+     * @return approximate number of bytes the field takes
+     */
+    public long getMemoryBytes() {
+        return (long) distances.length * (Integer.SIZE / 8 + 1);
+    }
+
+    public synchronized void obstacleChanged(int index, boolean obstacle) {
+        if (changedCount == changedCells.length) {
+            changedCells = Arrays.copyOf(changedCells, changedCount * 2);
+        }
+        changedCells[changedCount++] = index;
+        changed = true;
+    }
+
+    /**
+     * @return true if obstacles changed since the last update, so the next update has work to do
+     */
+    public boolean hasChanges() {
+        return changed;
+    }
+
+    /**
+     * Repairs the field after the obstacle changes since the last update
+     *
+     * @return number of cells whose distance was reset and settled again
+     * @throws IllegalArgumentException if the map got costs since the field was computed
+     */
+    public int update() {
+        checkUniform(map);
+        int[] changes;
+        int count;
+        synchronized (this) {
+            changes = Arrays.copyOf(changedCells, changedCount);
+            count = changedCount;
+            changedCount = 0;
+            changed = false;
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        // An obstacle change adds or removes moves inside its 3x3 neighbourhood only.
+        // Cells there whose next step is gone are reset, with every cell whose steps lead through them.
+        int height = map.getHeight();
+        int reset = 0;
+        for (int i = 0; i < count; i++) {
+            int x = changes[i] % width;
+            int y = changes[i] / width;
+            for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, height - 1); ny++) {
+                for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, width - 1); nx++) {
+                    int cell = ny * width + nx;
+                    if (distances[cell] < INFINITY && !hasValidStep(cell)) {
+                        reset = resetTree(cell, reset);
+                    }
+                }
+            }
+        }
+
+        // Reset cells start over from their neighbours, cells around the changes may have got new moves
+        long[] seeds = new long[reset + count * 9];
+        int seedCount = 0;
+        for (int i = 0; i < reset; i++) {
+            seedCount = seed(resetCells[i], seeds, seedCount);
+        }
+        for (int i = 0; i < count; i++) {
+            int x = changes[i] % width;
+            int y = changes[i] / width;
+            for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, height - 1); ny++) {
+                for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, width - 1); nx++) {
+                    seedCount = seed(ny * width + nx, seeds, seedCount);
+                }
+            }
+        }
+        Arrays.sort(seeds, 0, seedCount);
+        settle(seeds, seedCount);
+        return reset;
+    }
+
+    // The bucket ring only orders moves costing STRAIGHT_COST or DIAGONAL_COST
+    static void checkUniform(CompactGrid map) {
+        if (map.isWeighted()) {
+            throw new IllegalArgumentException("Flow fields can't be computed on a weighted map");
+        }
+    }
+
+    // Whether the cell is the free goal, or is free and steps over a move which still exists
+    private boolean hasValidStep(int cell) {
+        if (map.isObstacle(cell)) {
+            return false;
+        }
+        if (cell == goal) {
+            return true;
+        }
+        byte direction = directions[cell];
+        return direction != NO_DIRECTION && (map.getNeighbourMask(cell) & 1 << direction) != 0;
+    }
+
+    // Resets a cell and every cell whose next steps lead through it, returns the new number of reset cells
+    private int resetTree(int root, int reset) {
+        int from = reset;
+        reset = addReset(root, reset);
+        while (from < reset) {
+            int cell = resetCells[from++];
+            // Cells stepping to this one are among the cells it can step to, the moves are symmetric
+            int mask = map.getNeighbourMask(cell);
+            while (mask != 0) {
+                int direction = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                int neighbor = cell + Directions.offset(direction, width);
+                if (distances[neighbor] < INFINITY && directions[neighbor] == Directions.opposite(direction)) {
+                    reset = addReset(neighbor, reset);
+                }
+            }
+        }
+        return reset;
+    }
+
+    private int addReset(int cell, int reset) {
+        if (reset == resetCells.length) {
+            resetCells = Arrays.copyOf(resetCells, reset * 2);
+        }
+        resetCells[reset] = cell;
+        distances[cell] = INFINITY;
+        directions[cell] = NO_DIRECTION;
+        return reset + 1;
+    }
+
+    // Lowers a free cell to the cheapest step into a settled neighbour, and queues it if it got cheaper
+    private int seed(int cell, long[] seeds, int seedCount) {
+        if (map.isObstacle(cell)) {
+            return seedCount;
+        }
+        int best = cell == goal ? 0 : INFINITY;
+        byte bestDirection = NO_DIRECTION;
+        int mask = map.getNeighbourMask(cell);
+        while (mask != 0) {
+            int direction = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            int distance = distances[cell + Directions.offset(direction, width)] + Directions.cost(direction);
+            if (distance < best) {
+                best = distance;
+                bestDirection = (byte) direction;
+            }
+        }
+        if (best >= distances[cell]) {
+            return seedCount;
+        }
+        distances[cell] = best;
+        directions[cell] = bestDirection;
+        seeds[seedCount] = (long) best << 32 | cell;
+        return seedCount + 1;
+    }
+
+    /**
+     * Settles the cells from the seeds on, in order of their distance, lowering every neighbour
+     * which gets cheaper through them. Seeds join the bucket ring once the distance reaches theirs.
+     *
+     * @param seeds     distance in the high half and cell in the low half, sorted
+     * @param seedCount number of seeds
+     */
+    private void settle(long[] seeds, int seedCount) {
+        int nextSeed = 0;
+        int queued = 0;
+        int distance = 0;
+        while (true) {
+            if (queued == 0) {
+                if (nextSeed == seedCount) {
+                    return;
+                }
+                distance = (int) (seeds[nextSeed] >>> 32);
+            }
+            while (nextSeed < seedCount && (int) (seeds[nextSeed] >>> 32) == distance) {
+                int cell = (int) seeds[nextSeed++];
+                // A seed lowered again meanwhile is queued at its lower distance already
+                if (distances[cell] == distance) {
+                    push(cell, distance);
+                    queued++;
+                }
+            }
+
+            int slot = distance % BUCKETS;
+            // The bucket only grows by pushes at least STRAIGHT_COST further, so it is drained in one pass
+            int[] bucket = buckets[slot];
+            int size = bucketSizes[slot];
+            bucketSizes[slot] = 0;
+            queued -= size;
+            for (int i = 0; i < size; i++) {
+                int cell = bucket[i];
+                if (distances[cell] != distance) {
+                    continue;
+                }
+                int mask = map.getNeighbourMask(cell);
+                while (mask != 0) {
+                    int direction = Integer.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                    int neighbor = cell + Directions.offset(direction, width);
+                    int neighborDistance = distance + Directions.cost(direction);
+                    if (neighborDistance < distances[neighbor]) {
+                        distances[neighbor] = neighborDistance;
+                        directions[neighbor] = (byte) Directions.opposite(direction);
+                        push(neighbor, neighborDistance);
+                        queued++;
+                    }
+                }
+            }
+            distance++;
+        }
+    }
+
+    private void push(int cell, int distance) {
+        int slot = distance % BUCKETS;
+        int size = bucketSizes[slot];
+        if (size == buckets[slot].length) {
+            buckets[slot] = Arrays.copyOf(buckets[slot], size * 2);
+        }
+        buckets[slot][size] = cell;
+        bucketSizes[slot] = size + 1;
+    }
+}
@@ -0,0 +1,192 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * FlowFieldCache keeps the flow fields of the goals asked for most recently,
+ * so agents sharing a goal share one field.
+ * <p>
+ * Every field costs five bytes a cell, so the memory budget turns into a
+ * number of fields. When the cache is full the least recently used field is
+ * dropped and stops listening to the grid. The fields kept are repaired
+ * after obstacle changes when they are asked for next.
+ * <p>
+ * The cache may be used by many threads at once. Fields are computed
+ * outside of its lock. Every field has a read write lock of its own: repairs
+ * hold the write lock, getNextStep and getPath the read lock, so agents read
+ * a field in parallel but never while it is repaired. A field returned by
+ * getField may be repaired by another thread's call at any time, so it is
+ * only read directly while no other thread uses the cache.
+ */
+public class FlowFieldCache {
+
+    private final CompactGrid map;
+    private final int capacity;
+
+    // Fields by goal in least recently used first order
+    private final LinkedHashMap<Integer, CachedField> fields;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * CachedField is a field with the lock its readers and its repairs share
+     */
+    private static class CachedField {
+        final FlowField field;
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        CachedField(FlowField field) {
+            this.field = field;
+        }
+    }
+
+    /**
+     * @param map         grid the agents move on, without costs
+     * @param memoryBytes number of bytes the fields may take, at least one field is kept
+     * @throws IllegalArgumentException if the budget isn't positive or the map is weighted
+     */
+    public FlowFieldCache(CompactGrid map, long memoryBytes) {
+        if (memoryBytes <= 0) {
+            throw new IllegalArgumentException("Invalid memory budget " + memoryBytes);
+        }
+        FlowField.checkUniform(map);
+        long fieldBytes = (long) map.getWidth() * map.getHeight() * (Integer.SIZE / 8 + 1);
+        this.map = map;
+        this.capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBytes / fieldBytes));
+        this.fields = new LinkedHashMap<Integer, CachedField>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CachedField> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                eldest.getValue().field.detach();
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the field of a goal, computed on the first call and repaired after obstacle changes
+     *
+     * @param goal index of the target cell
+     * @return the up to date field of the goal, see the class comment before reading it
+     */
+    public FlowField getField(int goal) {
+        return repaired(lookUp(goal)).field;
+    }
+
+    /**
+     * @param from index of the cell an agent stands on
+     * @param goal index of the agent's goal
+     * @return index of the agent's next cell, -1 on the goal or if there is no path
+     */
+    public int getNextStep(int from, int goal) {
+        CachedField cached = repaired(lookUp(goal));
+        cached.lock.readLock().lock();
+        try {
+            return cached.field.getNextStep(from);
+        } finally {
+            cached.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param start index of the starting cell
+     * @param goal  index of the target cell
+     * @return indexes of the path's cells from start to goal, empty if there is no path
+     */
+    public int[] getPath(int start, int goal) {
+        CachedField cached = repaired(lookUp(goal));
+        cached.lock.readLock().lock();
+        try {
+            return cached.field.getPath(start);
+        } finally {
+            cached.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Drops every field
+     */
+    public synchronized void clear() {
+        for (CachedField cached : fields.values()) {
+            cached.field.detach();
+        }
+        fields.clear();
+    }
+
+    public synchronized int size() {
+        return fields.size();
+    }
+
+    /**
+     * @return maximum number of fields kept
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of fields dropped to make room
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Looks up the field of a goal, computing it on a miss
+    private CachedField lookUp(int goal) {
+        CachedField cached;
+        synchronized (this) {
+            cached = fields.get(goal);
+        }
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        FlowField computed = new FlowField(map, goal);
+        synchronized (this) {
+            // Another thread may have computed the same field meanwhile, the first one is kept
+            cached = fields.get(goal);
+            if (cached == null) {
+                cached = new CachedField(computed);
+                fields.put(goal, cached);
+            }
+        }
+        if (cached.field != computed) {
+            computed.detach();
+        }
+        return cached;
+    }
+
+    // Repairs a cached field under its write lock if obstacles changed since its last update
+    private CachedField repaired(CachedField cached) {
+        FlowField.checkUniform(map);
+        if (cached.field.hasChanges()) {
+            cached.lock.writeLock().lock();
+            try {
+                cached.field.update();
+            } finally {
+                cached.lock.writeLock().unlock();
+            }
+        }
+        return cached;
+    }
+}
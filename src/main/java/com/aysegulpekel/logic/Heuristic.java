@@ -0,0 +1,59 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridMap;
+
+/**
+ * Heuristic estimates the cost of the cheapest path between two cells.
+ * A* finds optimal paths as long as the estimate never exceeds the real cost.
+ * Implementations are called from many searching threads at once.
+ */
+public interface Heuristic {
+
+    /**
+     * Number of straight and diagonal moves on an empty grid, the exact cost
+     * without obstacles and the default of the searches
+     */
+    Heuristic OCTILE = new Heuristic() {
+        public int estimate(GridMap map, int from, int goal) {
+            int width = map.getWidth();
+            return Directions.octile(from % width - goal % width, from / width - goal / width);
+        }
+    };
+
+    /**
+     * Straight line distance. A diagonal move costs a little less than sqrt(2) straight
+     * moves, so the distance is scaled down to the diagonal cost to never overestimate.
+     * It is weaker than OCTILE on grids and is mostly useful for comparisons.
+     */
+    Heuristic EUCLIDEAN = new Heuristic() {
+        private final double scale = Directions.DIAGONAL_COST / Math.sqrt(2);
+
+        public int estimate(GridMap map, int from, int goal) {
+            int width = map.getWidth();
+            int dx = from % width - goal % width;
+            int dy = from / width - goal / width;
+            return (int) (Math.sqrt((double) dx * dx + (double) dy * dy) * scale);
+        }
+    };
+
+    /**
+     * Straight moves only, as the searches estimated before diagonal costs were considered.
+     * It overestimates any path with a diagonal move, so its paths may be longer than optimal.
+     */
+    Heuristic MANHATTAN = new Heuristic() {
+        public int estimate(GridMap map, int from, int goal) {
+            int width = map.getWidth();
+            return (Math.abs(from % width - goal % width) + Math.abs(from / width - goal / width))
+                    * Directions.STRAIGHT_COST;
+        }
+    };
+
+    /**
+     * @param map  grid map being searched
+     * @param from index of the cell to estimate from
+     * @param goal index of the target cell
+     * @return estimated cost from the cell to the goal
+     */
+    int estimate(GridMap map, int from, int goal);
+}
@@ -0,0 +1,525 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridListener;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * HierarchicalPlanner answers long distance queries on very large maps with HPA*.
+ * <p>
+ * The map is cut into square clusters. Wherever two neighbouring clusters
+ * share a run of free cells along their border, the run gets one or two
+ * entrances, and the distances between the entrances of each cluster are
+ * precomputed. A query first searches this small abstract graph of entrances
+ * and only then refines the abstract moves into cells, one cluster at a time.
+ * The paths are close to optimal but not always optimal.
+ * <p>
+ * Obstacle changes only mark the clusters they touch; those clusters are
+ * rebuilt before the next query. Queries may run on many threads at once,
+ * the map must not change while a query is running.
+ * <p>
+ * The entrances are numbered densely, so the search state of a query is
+ * sized by the abstract graph and one cluster, never by the map.
+ */
+public class HierarchicalPlanner implements GridListener {
+
+    // Runs of free border cells shorter than this get one entrance in the middle, longer ones one at each end
+    private static final int LONG_ENTRANCE = 6;
+
+    private final CompactGrid map;
+    private final int clusterSize;
+    private final int clustersX;
+    private final int clustersY;
+    private final Cluster[] clusters;
+
+    // Clusters waiting to be rebuilt after obstacle changes
+    private final boolean[] dirty;
+    private final AtomicBoolean hasDirty = new AtomicBoolean();
+
+    // Queries read the abstract graph while rebuilds write it
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Cell of every entrance by node id, the entrances of a cluster are numbered from its firstNode on
+    private int[] nodeCells = new int[0];
+
+    // Search state of each querying thread
+    private final ThreadLocal<Searches> searches = ThreadLocal.withInitial(Searches::new);
+
+    /**
+     * Cluster is a square of the map with its entrances
+     */
+    private static class Cluster {
+        int left;
+        int top;
+        int width;
+        int height;
+
+        // Map indexes of the entrance cells inside the cluster
+        int[] nodes = new int[0];
+
+        // Per entrance, the cells in neighbouring clusters one straight step away
+        int[][] partners = new int[0][];
+
+        // Distances between the entrances inside the cluster, nodes.length * nodes.length
+        int[] distances = new int[0];
+
+        // Node id of the cluster's first entrance
+        int firstNode;
+
+        // Position of an entrance cell in nodes, -1 if the cell isn't an entrance
+        int nodeOf(int cell) {
+            for (int i = 0; i < nodes.length; i++) {
+                if (nodes[i] == cell) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Searches is the state one thread reuses query after query
+     */
+    private final class Searches {
+        // Abstract search over the node ids, plus the start and the goal
+        final SearchContext context = new SearchContext();
+
+        // Searches from the start and to the goal inside their clusters, the first one also refines
+        final ClusterSearch startSearch = new ClusterSearch(map, clusterSize * clusterSize);
+        final ClusterSearch goalSearch = new ClusterSearch(map, clusterSize * clusterSize);
+    }
+
+    /**
+     * Builds the abstract graph and starts listening to the map's obstacle changes
+     *
+     * @param map         grid to plan on
+     * @param clusterSize side of the square clusters in cells
+     */
+    public HierarchicalPlanner(CompactGrid map, int clusterSize) {
+        this.map = map;
+        this.clusterSize = clusterSize;
+        this.clustersX = (map.getWidth() + clusterSize - 1) / clusterSize;
+        this.clustersY = (map.getHeight() + clusterSize - 1) / clusterSize;
+        this.clusters = new Cluster[clustersX * clustersY];
+        this.dirty = new boolean[clusters.length];
+
+        for (int i = 0; i < clusters.length; i++) {
+            Cluster cluster = new Cluster();
+            cluster.left = i % clustersX * clusterSize;
+            cluster.top = i / clustersX * clusterSize;
+            cluster.width = Math.min(clusterSize, map.getWidth() - cluster.left);
+            cluster.height = Math.min(clusterSize, map.getHeight() - cluster.top);
+            clusters[i] = cluster;
+        }
+
+        // Clusters only read the map while they are built, so they are built in parallel
+        IntStream.range(0, clusters.length).parallel().forEach(i -> build(clusters[i]));
+        numberNodes();
+        map.addListener(this);
+    }
+
+    /**
+     * Stops listening to the map, the planner can't be used afterwards
+     */
+    public void detach() {
+        map.removeListener(this);
+    }
+
+    public void obstacleChanged(int index, boolean obstacle) {
+        int x = index % map.getWidth();
+        int y = index / map.getWidth();
+        int clusterX = x / clusterSize;
+        int clusterY = y / clusterSize;
+
+        synchronized (dirty) {
+            dirty[clusterY * clustersX + clusterX] = true;
+            // A border cell also changes the entrances of the cluster on the other side
+            if (x % clusterSize == 0 && clusterX > 0) {
+                dirty[clusterY * clustersX + clusterX - 1] = true;
+            }
+            if (x % clusterSize == clusterSize - 1 && clusterX < clustersX - 1) {
+                dirty[clusterY * clustersX + clusterX + 1] = true;
+            }
+            if (y % clusterSize == 0 && clusterY > 0) {
+                dirty[(clusterY - 1) * clustersX + clusterX] = true;
+            }
+            if (y % clusterSize == clusterSize - 1 && clusterY < clustersY - 1) {
+                dirty[(clusterY + 1) * clustersX + clusterX] = true;
+            }
+        }
+        hasDirty.set(true);
+    }
+
+    /**
+     * Finds a path on the abstract graph and refines it into cells
+     *
+     * @param start index of the starting cell
+     * @param goal  index of the target cell
+     * @return indexes of the path's cells from start to goal, empty if there is no path
+     */
+    public int[] findPath(int start, int goal) {
+        if (hasDirty.get()) {
+            rebuildDirty();
+        }
+        lock.readLock().lock();
+        try {
+            if (map.isObstacle(start) || map.isObstacle(goal)) {
+                return new int[0];
+            }
+            if (start == goal) {
+                return new int[]{start};
+            }
+            Searches searches = this.searches.get();
+            int[] abstractPath = findAbstractPath(start, goal, searches);
+            return abstractPath.length == 0 ? abstractPath : refine(abstractPath, searches.startSearch);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getClusterSize() {
+        return clusterSize;
+    }
+
+    /**
+     * @return number of entrances in the abstract graph
+     */
+    public int getNodeCount() {
+        return nodeCells.length;
+    }
+
+    /**
+     * @return number of directed edges in the abstract graph, inside and between clusters
+     */
+    public long getEdgeCount() {
+        long count = 0;
+        for (Cluster cluster : clusters) {
+            count += (long) cluster.nodes.length * (cluster.nodes.length - 1);
+            for (int[] partners : cluster.partners) {
+                count += partners.length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return approximate heap size of the abstract graph in bytes
+     */
+    public long getMemoryBytes() {
+        // Object headers and array headers are counted as 16 bytes each
+        long bytes = clusters.length * (16L + 5 * 4 + 3 * 8) + dirty.length + 16 + 4L * nodeCells.length;
+        for (Cluster cluster : clusters) {
+            bytes += 16 + 4L * cluster.nodes.length;
+            bytes += 16 + 4L * cluster.distances.length;
+            bytes += 16 + 8L * cluster.partners.length;
+            for (int[] partners : cluster.partners) {
+                bytes += 16 + 4L * partners.length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return approximate heap size in bytes of the search state each querying thread keeps
+     */
+    public long getSearchBytes() {
+        // Like flat A*, a stamp, a score and a parent per node or cell plus an id, key and position in a heap
+        return (nodeCells.length + 2L + 2L * clusterSize * clusterSize) * (4 + 4 + 4 + 4 + 8 + 4);
+    }
+
+    // Rebuilds the clusters touched by obstacle changes
+    private void rebuildDirty() {
+        lock.writeLock().lock();
+        try {
+            hasDirty.set(false);
+            boolean rebuilt = false;
+            for (int i = 0; i < clusters.length; i++) {
+                boolean rebuild;
+                synchronized (dirty) {
+                    rebuild = dirty[i];
+                    dirty[i] = false;
+                }
+                if (rebuild) {
+                    build(clusters[i]);
+                    rebuilt = true;
+                }
+            }
+            if (rebuilt) {
+                numberNodes();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Gives the entrances their node ids, cluster after cluster
+    private void numberNodes() {
+        int count = 0;
+        for (Cluster cluster : clusters) {
+            cluster.firstNode = count;
+            count += cluster.nodes.length;
+        }
+        int[] cells = new int[count];
+        for (Cluster cluster : clusters) {
+            System.arraycopy(cluster.nodes, 0, cells, cluster.firstNode, cluster.nodes.length);
+        }
+        nodeCells = cells;
+    }
+
+    /**
+     * Finds the entrances on the four borders of a cluster and the distances between them
+     *
+     * @param cluster cluster to build
+     */
+    private void build(Cluster cluster) {
+        int width = map.getWidth();
+        int[] cells = new int[16];
+        int[] partners = new int[16];
+        int count = 0;
+
+        int right = cluster.left + cluster.width - 1;
+        int bottom = cluster.top + cluster.height - 1;
+
+        // Each border is walked along its cells, own side first and the neighbour's side second
+        int[][] borders = {
+                {cluster.left, cluster.top, 0, 1, -1, 0, cluster.height},
+                {right, cluster.top, 0, 1, 1, 0, cluster.height},
+                {cluster.left, cluster.top, 1, 0, 0, -1, cluster.width},
+                {cluster.left, bottom, 1, 0, 0, 1, cluster.width}
+        };
+        for (int[] border : borders) {
+            int x = border[0];
+            int y = border[1];
+            int stepX = border[2];
+            int stepY = border[3];
+            int outX = border[4];
+            int outY = border[5];
+            int length = border[6];
+            if (x + outX < 0 || y + outY < 0 || x + outX >= width || y + outY >= map.getHeight()) {
+                continue;
+            }
+
+            int runStart = -1;
+            for (int i = 0; i <= length; i++) {
+                boolean open = i < length
+                        && !map.isObstacle((y + i * stepY) * width + x + i * stepX)
+                        && !map.isObstacle((y + i * stepY + outY) * width + x + i * stepX + outX);
+                if (open && runStart == -1) {
+                    runStart = i;
+                } else if (!open && runStart != -1) {
+                    int runLength = i - runStart;
+                    int[] picks = runLength < LONG_ENTRANCE
+                            ? new int[]{runStart + runLength / 2} : new int[]{runStart, i - 1};
+                    for (int pick : picks) {
+                        if (count == cells.length) {
+                            cells = Arrays.copyOf(cells, count * 2);
+                            partners = Arrays.copyOf(partners, count * 2);
+                        }
+                        cells[count] = (y + pick * stepY) * width + x + pick * stepX;
+                        partners[count++] = (y + pick * stepY + outY) * width + x + pick * stepX + outX;
+                    }
+                    runStart = -1;
+                }
+            }
+        }
+
+        // A corner cell may be an entrance on two borders, it becomes one node with two partners
+        int[] nodes = new int[count];
+        int[][] nodePartners = new int[count][];
+        int nodeCount = 0;
+        for (int i = 0; i < count; i++) {
+            int node = -1;
+            for (int j = 0; j < nodeCount; j++) {
+                if (nodes[j] == cells[i]) {
+                    node = j;
+                }
+            }
+            if (node == -1) {
+                node = nodeCount++;
+                nodes[node] = cells[i];
+                nodePartners[node] = new int[0];
+            }
+            nodePartners[node] = Arrays.copyOf(nodePartners[node], nodePartners[node].length + 1);
+            nodePartners[node][nodePartners[node].length - 1] = partners[i];
+        }
+        nodes = Arrays.copyOf(nodes, nodeCount);
+        nodePartners = Arrays.copyOf(nodePartners, nodeCount);
+
+        int[] distances = new int[nodeCount * nodeCount];
+        ClusterSearch search = searchIn(cluster, searches.get().startSearch);
+        for (int i = 0; i < nodeCount; i++) {
+            search.run(nodes[i], -1);
+            for (int j = 0; j < nodeCount; j++) {
+                distances[i * nodeCount + j] = search.getDistance(nodes[j]);
+            }
+        }
+
+        cluster.nodes = nodes;
+        cluster.partners = nodePartners;
+        cluster.distances = distances;
+    }
+
+    /**
+     * Runs A* over the entrances, with the start and the goal linked
+     * to the entrances of their own clusters for this query only
+     *
+     * @param start    index of the starting cell
+     * @param goal     index of the target cell
+     * @param searches search state of the current thread
+     * @return the start, the entrances passed and the goal, empty if there is no path
+     */
+    private int[] findAbstractPath(int start, int goal, Searches searches) {
+        Cluster startCluster = clusterOf(start);
+        Cluster goalCluster = clusterOf(goal);
+        // The start and the goal get the ids after the entrances
+        int startNode = nodeCells.length;
+        int goalNode = startNode + 1;
+
+        ClusterSearch startSearch = searchIn(startCluster, searches.startSearch);
+        startSearch.run(start, -1);
+        int direct = startCluster == goalCluster ? startSearch.getDistance(goal) : ClusterSearch.INFINITY;
+
+        int[] goalDistances = new int[goalCluster.nodes.length];
+        ClusterSearch goalSearch = searchIn(goalCluster, searches.goalSearch);
+        goalSearch.run(goal, -1);
+        for (int i = 0; i < goalDistances.length; i++) {
+            goalDistances[i] = goalSearch.getDistance(goalCluster.nodes[i]);
+        }
+
+        SearchContext context = searches.context;
+        context.reset(goalNode + 1);
+        int[] gScore = context.gScore;
+        int[] cameFrom = context.cameFrom;
+        IndexedHeap openSet = context.openSet;
+
+        context.discover(startNode);
+        gScore[startNode] = 0;
+        cameFrom[startNode] = -1;
+        openSet.push(startNode, AStar.key(heuristic(start, goal), context.discovered++));
+
+        while (!openSet.isEmpty()) {
+            int current = openSet.pop();
+            if (current == goalNode) {
+                int[] path = context.getPath(goalNode);
+                for (int i = 0; i < path.length; i++) {
+                    path[i] = cellOf(path[i], start, goal);
+                }
+                return path;
+            }
+            context.close(current);
+
+            if (current == startNode) {
+                for (int i = 0; i < startCluster.nodes.length; i++) {
+                    int cell = startCluster.nodes[i];
+                    relax(context, current, startCluster.firstNode + i, cell, startSearch.getDistance(cell), goal);
+                }
+                if (direct != ClusterSearch.INFINITY) {
+                    relax(context, current, goalNode, goal, direct, goal);
+                }
+                continue;
+            }
+            Cluster cluster = clusterOf(nodeCells[current]);
+            int node = current - cluster.firstNode;
+            for (int i = 0; i < cluster.nodes.length; i++) {
+                relax(context, current, cluster.firstNode + i, cluster.nodes[i],
+                        cluster.distances[node * cluster.nodes.length + i], goal);
+            }
+            if (cluster == goalCluster) {
+                relax(context, current, goalNode, goal, goalDistances[node], goal);
+            }
+            for (int partner : cluster.partners[node]) {
+                Cluster other = clusterOf(partner);
+                int partnerNode = other.nodeOf(partner);
+                if (partnerNode != -1) {
+                    relax(context, current, other.firstNode + partnerNode, partner, Directions.STRAIGHT_COST, goal);
+                }
+            }
+        }
+        return new int[0];
+    }
+
+    // Offers a cheaper way to a node of the abstract graph
+    private void relax(SearchContext context, int current, int next, int nextCell, int distance, int goal) {
+        if (distance == ClusterSearch.INFINITY || next == current || context.isClosed(next)) {
+            return;
+        }
+        int tentativeGScore = context.gScore[current] + distance;
+        boolean isOpen = context.openSet.contains(next);
+        if (isOpen && tentativeGScore >= context.gScore[next]) {
+            return;
+        }
+        context.discover(next);
+        context.cameFrom[next] = current;
+        context.gScore[next] = tentativeGScore;
+        int fScore = tentativeGScore + heuristic(nextCell, goal);
+        if (isOpen) {
+            long order = context.openSet.getKey(next) & 0xFFFFFFFFL;
+            context.openSet.decreaseKey(next, AStar.key(fScore, order));
+        } else {
+            context.openSet.push(next, AStar.key(fScore, context.discovered++));
+        }
+    }
+
+    // Cell of a node id of the abstract search
+    private int cellOf(int node, int start, int goal) {
+        if (node < nodeCells.length) {
+            return nodeCells[node];
+        }
+        return node == nodeCells.length ? start : goal;
+    }
+
+    /**
+     * Turns each abstract move into cells. Moves between clusters are single
+     * straight steps, moves inside a cluster are searched inside that cluster.
+     *
+     * @param abstractPath the start, the entrances passed and the goal
+     * @param search       search of the current thread to refine with
+     * @return indexes of every cell on the path
+     */
+    private int[] refine(int[] abstractPath, ClusterSearch search) {
+        int[] path = new int[Math.max(16, abstractPath.length * 2)];
+        int length = 0;
+        path[length++] = abstractPath[0];
+
+        for (int i = 1; i < abstractPath.length; i++) {
+            int from = abstractPath[i - 1];
+            int to = abstractPath[i];
+            Cluster cluster = clusterOf(from);
+            int[] segment;
+            if (cluster != clusterOf(to)) {
+                segment = new int[]{to};
+            } else {
+                searchIn(cluster, search).run(from, to);
+                segment = search.getPath(to);
+            }
+            if (length + segment.length > path.length) {
+                path = Arrays.copyOf(path, Math.max(length + segment.length, path.length * 2));
+            }
+            System.arraycopy(segment, 0, path, length, segment.length);
+            length += segment.length;
+        }
+        return Arrays.copyOf(path, length);
+    }
+
+    private Cluster clusterOf(int cell) {
+        int x = cell % map.getWidth() / clusterSize;
+        int y = cell / map.getWidth() / clusterSize;
+        return clusters[y * clustersX + x];
+    }
+
+    private ClusterSearch searchIn(Cluster cluster, ClusterSearch search) {
+        search.setRectangle(cluster.left, cluster.top, cluster.width, cluster.height);
+        return search;
+    }
+
+    private int heuristic(int from, int to) {
+        int width = map.getWidth();
+        return Directions.octile(from % width - to % width, from / width - to / width);
+    }
+}
@@ -0,0 +1,94 @@
+package com.aysegulpekel.logic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram counts non negative values into buckets growing by powers of two,
+ * each split into four, so a percentile is off by at most a quarter of its value.
+ * Recording is lock free and may happen from many threads at once.
+ */
+public class Histogram {
+
+    // Sub buckets per power of two, as a number of bits
+    private static final int SUB_BITS = 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) << SUB_BITS);
+
+    /**
+     * @param value non negative value, negative values are counted as 0
+     */
+    public void record(long value) {
+        counts.incrementAndGet(bucketOf(Math.max(value, 0)));
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100
+     * @return upper bound of the bucket holding the percentile, 0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(counts.length() - 1);
+    }
+
+    /**
+     * Adds every value recorded by another histogram, e.g. to sum up per thread histograms
+     *
+     * @param other histogram whose values are added, it is left unchanged
+     */
+    public void merge(Histogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    // Values below 2^SUB_BITS get a bucket each, larger ones share one per quarter of their power of two
+    private static int bucketOf(long value) {
+        if (value < 1 << SUB_BITS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+        return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < 1 << SUB_BITS) {
+            return bucket;
+        }
+        int exponent = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+        long sub = bucket & ((1 << SUB_BITS) - 1);
+        long lower = (1L << exponent) + (sub << (exponent - SUB_BITS));
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
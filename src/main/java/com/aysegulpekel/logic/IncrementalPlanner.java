@@ -0,0 +1,301 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridListener;
+
+import java.util.Arrays;
+
+/**
+ * IncrementalPlanner keeps a path between a moving start and a fixed goal
+ * up to date while obstacles come and go, using D* Lite.
+ * <p>
+ * The search runs backwards from the goal and its tree is kept between calls.
+ * Obstacle changes are picked up from the grid as they happen, and the next
+ * computePath call repairs only the cells whose distance to the goal changed,
+ * so a replan after a small edit costs a fraction of a fresh search.
+ * On weighted maps a move costs what it costs in AStar, and cost changes are
+ * repaired like obstacle changes.
+ * <p>
+ * A planner is used by one thread; the grid may be edited from another
+ * thread, as long as no edit overlaps with a computePath call.
+ */
+public class IncrementalPlanner implements GridListener {
+
+    // Distance of cells which can't reach the goal, small enough to add costs to without overflowing
+    private static final int INFINITY = Integer.MAX_VALUE / 4;
+
+    private final CompactGrid map;
+    private final int width;
+    private final int goal;
+    private int start;
+
+    // Start at the time of the last replan, the heuristic offset grows by how far the start moved since
+    private int lastStart;
+    private int keyModifier;
+
+    // Distance of each cell to the goal as of its last expansion
+    private final int[] gScore;
+
+    // One step lookahead distance of each cell to the goal, through its best neighbour
+    private final int[] rhs;
+
+    // Cells whose gScore and rhs disagree, ordered by their D* Lite keys
+    private final IndexedHeap openSet;
+
+    // Cells whose obstacle or cost changed since the last replan
+    private int[] changedCells = new int[16];
+    private int changedCount;
+
+    /**
+     * Creates the planner and starts listening to the grid's obstacle changes
+     *
+     * @param map   grid to plan on
+     * @param start index of the starting cell
+     * @param goal  index of the target cell
+     */
+    public IncrementalPlanner(CompactGrid map, int start, int goal) {
+        int size = map.getWidth() * map.getHeight();
+        this.map = map;
+        this.width = map.getWidth();
+        this.goal = goal;
+        this.start = start;
+        this.lastStart = start;
+        this.gScore = new int[size];
+        this.rhs = new int[size];
+        this.openSet = new IndexedHeap(size);
+
+        Arrays.fill(gScore, INFINITY);
+        Arrays.fill(rhs, INFINITY);
+        rhs[goal] = 0;
+        openSet.push(goal, calculateKey(goal));
+
+        map.addListener(this);
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getGoal() {
+        return goal;
+    }
+
+    /**
+     * Moves the start, as an agent following the path does
+     * @param start index of the new starting cell
+     */
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    /**
+     * Stops listening to the grid, the planner can't be used afterwards
+     */
+    public void detach() {
+        map.removeListener(this);
+    }
+
+    public void obstacleChanged(int index, boolean obstacle) {
+        changed(index);
+    }
+
+    public void costChanged(int index, int cost) {
+        changed(index);
+    }
+
+    private synchronized void changed(int index) {
+        if (changedCount == changedCells.length) {
+            changedCells = Arrays.copyOf(changedCells, changedCount * 2);
+        }
+        changedCells[changedCount++] = index;
+    }
+
+    /**
+     * Repairs the search tree after the obstacle changes and start moves
+     * since the last call and reads the path out of it
+     *
+     * @return indexes of the path's cells from start to goal, empty if there is no path
+     */
+    public int[] computePath() {
+        applyChanges();
+        computeShortestPath();
+
+        if (gScore[start] >= INFINITY) {
+            return new int[0];
+        }
+
+        // Follow the cheapest neighbour from the start down to the goal
+        int[] path = new int[16];
+        int length = 0;
+        int current = start;
+        path[length++] = current;
+        while (current != goal && length <= gScore.length) {
+            current = bestSuccessor(current);
+            if (current == -1) {
+                return new int[0];
+            }
+            if (length == path.length) {
+                path = Arrays.copyOf(path, length * 2);
+            }
+            path[length++] = current;
+        }
+        return Arrays.copyOf(path, length);
+    }
+
+    /**
+     * @param index index of a cell
+     * @return cost of the shortest path from the cell to the goal as of the last replan
+     */
+    public int getDistance(int index) {
+        return gScore[index] >= INFINITY ? Integer.MAX_VALUE : gScore[index];
+    }
+
+    // Shifts the keys by the start's move and updates the cells touched by the pending changes
+    private void applyChanges() {
+        int[] changes;
+        int count;
+        synchronized (this) {
+            changes = Arrays.copyOf(changedCells, changedCount);
+            count = changedCount;
+            changedCount = 0;
+        }
+        // Keys already in the open set were computed from the old start, shift the new ones by the move.
+        // The start may have moved without any change, the keys compared against it must shift all the same.
+        keyModifier += heuristic(lastStart, start);
+        lastStart = start;
+        if (count == 0) {
+            return;
+        }
+
+        int height = map.getHeight();
+        for (int i = 0; i < count; i++) {
+            // An obstacle or cost change touches the moves inside its 3x3 neighbourhood only
+            int x = changes[i] % width;
+            int y = changes[i] / width;
+            for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, height - 1); ny++) {
+                for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, width - 1); nx++) {
+                    int cell = ny * width + nx;
+                    if (cell != goal) {
+                        rhs[cell] = lookahead(cell);
+                    }
+                    updateVertex(cell);
+                }
+            }
+        }
+    }
+
+    private void computeShortestPath() {
+        while (!openSet.isEmpty() && (openSet.peekKey() < calculateKey(start) || rhs[start] != gScore[start])) {
+            int current = openSet.peek();
+            long oldKey = openSet.peekKey();
+            long newKey = calculateKey(current);
+
+            if (oldKey < newKey) {
+                openSet.changeKey(current, newKey);
+            } else if (gScore[current] > rhs[current]) {
+                // The cell got cheaper, settle it and offer the new distance to its neighbours
+                gScore[current] = rhs[current];
+                openSet.remove(current);
+                int mask = map.getNeighbourMask(current);
+                while (mask != 0) {
+                    int direction = Integer.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                    int neighbor = current + Directions.offset(direction, width);
+                    int throughCurrent = gScore[current] + moveCost(direction, current);
+                    if (neighbor != goal && rhs[neighbor] > throughCurrent) {
+                        rhs[neighbor] = throughCurrent;
+                        updateVertex(neighbor);
+                    }
+                }
+            } else {
+                // The cell got more expensive, reset it and let the neighbours which relied on it look again
+                int oldGScore = gScore[current];
+                gScore[current] = INFINITY;
+                if (current != goal) {
+                    rhs[current] = lookahead(current);
+                }
+                updateVertex(current);
+                int mask = map.getNeighbourMask(current);
+                while (mask != 0) {
+                    int direction = Integer.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                    int neighbor = current + Directions.offset(direction, width);
+                    if (neighbor != goal && rhs[neighbor] == oldGScore + moveCost(direction, current)) {
+                        rhs[neighbor] = lookahead(neighbor);
+                        updateVertex(neighbor);
+                    }
+                }
+            }
+        }
+    }
+
+    // Puts the cell into the open set when its scores disagree and takes it out when they agree
+    private void updateVertex(int cell) {
+        boolean isOpen = openSet.contains(cell);
+        if (gScore[cell] != rhs[cell]) {
+            if (isOpen) {
+                openSet.changeKey(cell, calculateKey(cell));
+            } else {
+                openSet.push(cell, calculateKey(cell));
+            }
+        } else if (isOpen) {
+            openSet.remove(cell);
+        }
+    }
+
+    // Cheapest distance to the goal through any neighbour of the cell, obstacles can't be passed at all
+    private int lookahead(int cell) {
+        if (map.isObstacle(cell)) {
+            return INFINITY;
+        }
+        int best = INFINITY;
+        int mask = map.getNeighbourMask(cell);
+        while (mask != 0) {
+            int direction = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            int neighbor = cell + Directions.offset(direction, width);
+            best = Math.min(best, gScore[neighbor] + moveCost(direction, neighbor));
+        }
+        return Math.min(best, INFINITY);
+    }
+
+    // Neighbour on the cheapest way to the goal, -1 if none leads there
+    private int bestSuccessor(int cell) {
+        int best = -1;
+        int bestCost = INFINITY;
+        int mask = map.getNeighbourMask(cell);
+        while (mask != 0) {
+            int direction = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            int neighbor = cell + Directions.offset(direction, width);
+            int cost = gScore[neighbor] + moveCost(direction, neighbor);
+            if (cost < bestCost) {
+                bestCost = cost;
+                best = neighbor;
+            }
+        }
+        return best;
+    }
+
+    // Cost of a move in the direction into the cell, the search runs backwards so the cell is the one nearer the goal
+    private int moveCost(int direction, int into) {
+        return Directions.cost(direction) * map.getCost(into);
+    }
+
+    /**
+     * D* Lite orders cells by the smaller of their two scores plus the estimate to the start,
+     * then by the smaller score alone. Both parts fit in an int, so the pair packs into one long.
+     *
+     * @param cell index of the cell
+     * @return open set key of the cell
+     */
+    private long calculateKey(int cell) {
+        int score = Math.min(gScore[cell], rhs[cell]);
+        return ((long) (score + heuristic(start, cell) + keyModifier) << 32) | score;
+    }
+
+    private int heuristic(int from, int to) {
+        return Directions.octile(from % width - to % width, from / width - to / width);
+    }
+}
@@ -0,0 +1,222 @@
+package com.aysegulpekel.logic;
+
+import java.util.Arrays;
+
+/**
+ * IndexedHeap is a binary min-heap of int ids ordered by long keys.
+ * The heap position of every id is tracked, so membership checks
+ * are O(1) while push, pop and decrease-key are O(log n).
+ */
+public class IndexedHeap implements OpenSet {
+
+    // Ids in heap order, the root is the lowest keyed id
+    private int[] heap;
+
+    // Keys by id
+    private long[] keys;
+
+    // Heap position + 1 by id, 0 means the id is not in the heap
+    private int[] positions;
+
+    private int size;
+
+    public IndexedHeap() {
+        this(16);
+    }
+
+    /**
+     * @param capacity expected number of distinct ids, the heap grows beyond it when needed
+     */
+    public IndexedHeap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.heap = new int[capacity];
+        this.keys = new long[capacity];
+        this.positions = new int[capacity];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param id any non negative id
+     * @return true if the id is currently in the heap
+     */
+    public boolean contains(int id) {
+        return id < positions.length && positions[id] != 0;
+    }
+
+    /**
+     * @param position position in the heap, from 0 to size() - 1
+     * @return the id at the position, the heap is in no particular order beyond its root
+     */
+    public int get(int position) {
+        if (position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size);
+        }
+        return heap[position];
+    }
+
+    /**
+     * @param id an id which is in the heap
+     * @return the key of the id
+     */
+    public long getKey(int id) {
+        return keys[id];
+    }
+
+    /**
+     * Adds a new id to the heap
+     *
+     * @param id  non negative id which is not in the heap yet
+     * @param key ordering key, lower keys are popped first
+     */
+    public void push(int id, long key) {
+        ensureCapacity(id);
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        keys[id] = key;
+        heap[size] = id;
+        positions[id] = size + 1;
+        siftUp(size++);
+    }
+
+    /**
+     * Moves an id towards the root after its key got lower
+     *
+     * @param id  an id which is in the heap
+     * @param key new key, not greater than the current one
+     */
+    public void decreaseKey(int id, long key) {
+        keys[id] = key;
+        siftUp(positions[id] - 1);
+    }
+
+    /**
+     * Moves an id up or down after its key changed either way
+     *
+     * @param id  an id which is in the heap
+     * @param key new key
+     */
+    public void changeKey(int id, long key) {
+        long previous = keys[id];
+        keys[id] = key;
+        if (key < previous) {
+            siftUp(positions[id] - 1);
+        } else {
+            siftDown(positions[id] - 1);
+        }
+    }
+
+    /**
+     * Takes an id out of the heap wherever it is
+     *
+     * @param id an id which is in the heap
+     */
+    public void remove(int id) {
+        int position = positions[id] - 1;
+        positions[id] = 0;
+        if (--size == position) {
+            return;
+        }
+        int last = heap[size];
+        heap[position] = last;
+        positions[last] = position + 1;
+        if (position > 0 && keys[last] < keys[heap[(position - 1) >>> 1]]) {
+            siftUp(position);
+        } else {
+            siftDown(position);
+        }
+    }
+
+    /**
+     * @return the lowest key in the heap
+     */
+    public long peekKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * @return the lowest keyed id without removing it
+     */
+    public int peek() {
+        return heap[0];
+    }
+
+    /**
+     * Removes and returns the lowest keyed id
+     *
+     * @return the lowest keyed id
+     */
+    public int pop() {
+        int root = heap[0];
+        positions[root] = 0;
+        if (--size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 1;
+            siftDown(0);
+        }
+        return root;
+    }
+
+    // Removes every id, costs as much as the number of ids left in the heap
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = 0;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position) {
+        int id = heap[position];
+        long key = keys[id];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            int parentId = heap[parent];
+            if (keys[parentId] <= key) {
+                break;
+            }
+            heap[position] = parentId;
+            positions[parentId] = position + 1;
+            position = parent;
+        }
+        heap[position] = id;
+        positions[id] = position + 1;
+    }
+
+    private void siftDown(int position) {
+        int id = heap[position];
+        long key = keys[id];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            int childId = heap[child];
+            if (key <= keys[childId]) {
+                break;
+            }
+            heap[position] = childId;
+            positions[childId] = position + 1;
+            position = child;
+        }
+        heap[position] = id;
+        positions[id] = position + 1;
+    }
+
+    // Grows the id indexed arrays so that they can hold the given id
+    private void ensureCapacity(int id) {
+        if (id >= positions.length) {
+            int capacity = Math.max(id + 1, positions.length * 2);
+            positions = Arrays.copyOf(positions, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+        }
+    }
+}
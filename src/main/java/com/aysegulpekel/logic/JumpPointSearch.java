@@ -0,0 +1,298 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridMap;
+
+/**
+ * Jump point search finds optimal paths on uniform cost grids while
+ * expanding far fewer cells than A*. Instead of opening every neighbour,
+ * it keeps moving in a direction until it reaches a jump point: the goal
+ * or a cell where an obstacle forces a turn. The many symmetric paths
+ * between two jump points are never looked at.
+ * <p>
+ * Moves follow the rule of Directions.computeMask: a diagonal move may pass
+ * one obstacle corner but can't squeeze between two obstacles. Costs are
+ * estimated with the octile distance unless another heuristic is given,
+ * the paths found are optimal as long as it never overestimates.
+ * <p>
+ * Jumping skips cells without looking at their costs, so weighted maps are
+ * rejected: search them with AStar.
+ */
+public class JumpPointSearch implements Pathfinder {
+
+    // Jump result when a direction runs into a dead end
+    private static final int NO_JUMP_POINT = -1;
+
+    // Mask of the expansion count at which the deadline and interruption are checked, every 256 expansions
+    private static final int DEADLINE_CHECK_INTERVAL = 255;
+
+    private final Heuristic heuristic;
+
+    public JumpPointSearch() {
+        this(Heuristic.OCTILE);
+    }
+
+    /**
+     * @param heuristic estimate of the remaining cost, paths are optimal if it never overestimates
+     */
+    public JumpPointSearch(Heuristic heuristic) {
+        this.heuristic = heuristic;
+    }
+
+    public int[] findPath(GridMap map, int start, int goal) {
+        SearchContext context = SearchContext.forCurrentThread();
+        if (search(map, start, goal, context, AStar.NO_DEADLINE) == PathResult.Status.FOUND) {
+            return getPath(map, context, goal);
+        }
+        return new int[0];
+    }
+
+    public PathResult.Status search(GridMap map, int start, int goal, SearchContext context, long deadline) {
+        if (map.isWeighted()) {
+            throw new IllegalArgumentException("Jump point search can't search a weighted map");
+        }
+        int width = map.getWidth();
+
+        context.reset(width * map.getHeight());
+        int[] gScore = context.gScore;
+        int[] cameFrom = context.cameFrom;
+        IndexedHeap openSet = context.openSet;
+
+        boolean instrumented = SearchStats.isInstrumented(context);
+        long startNanos = instrumented ? System.nanoTime() : 0;
+        int expanded = 0;
+        int improved = 0;
+        int openSetPeak = 1;
+
+        if (start != goal && !map.isConnected(start, goal)) {
+            if (instrumented) {
+                SearchStats.report(map, context, goal, PathResult.Status.UNREACHABLE, startNanos,
+                        expanded, context.discovered, improved, 0, null);
+            }
+            return PathResult.Status.UNREACHABLE;
+        }
+
+        context.discover(start);
+        gScore[start] = 0;
+        cameFrom[start] = -1;
+        openSet.push(start, AStar.key(heuristic.estimate(map, start, goal), context.discovered++));
+
+        while (!openSet.isEmpty()) {
+            int current = openSet.pop();
+            if (current == goal) {
+                if (instrumented) {
+                    SearchStats.report(map, context, goal, PathResult.Status.FOUND, startNanos,
+                            expanded, context.discovered, improved, openSetPeak, getPath(map, context, goal));
+                }
+                return PathResult.Status.FOUND;
+            }
+            context.close(current);
+
+            if ((++expanded & DEADLINE_CHECK_INTERVAL) == 0) {
+                PathResult.Status stopped = null;
+                if (Thread.currentThread().isInterrupted()) {
+                    stopped = PathResult.Status.CANCELLED;
+                } else if (deadline != AStar.NO_DEADLINE && System.nanoTime() - deadline > 0) {
+                    stopped = PathResult.Status.TIMED_OUT;
+                }
+                if (stopped != null) {
+                    if (instrumented) {
+                        SearchStats.report(map, context, goal, stopped, startNanos,
+                                expanded, context.discovered, improved, openSetPeak, null);
+                    }
+                    return stopped;
+                }
+            }
+
+            int x = current % width;
+            int y = current / width;
+
+            int directions = prunedDirections(map, current, cameFrom[current]);
+            while (directions != 0) {
+                int direction = Integer.numberOfTrailingZeros(directions);
+                directions &= directions - 1;
+
+                int jumpPoint = jump(map, x + Directions.dx(direction), y + Directions.dy(direction),
+                        Directions.dx(direction), Directions.dy(direction), goal);
+                if (jumpPoint == NO_JUMP_POINT || context.isClosed(jumpPoint)) {
+                    continue;
+                }
+
+                int jumpX = jumpPoint % width;
+                int jumpY = jumpPoint / width;
+                int tentativeGScore = gScore[current] + Directions.octile(jumpX - x, jumpY - y);
+                boolean isOpen = openSet.contains(jumpPoint);
+                if (isOpen && tentativeGScore >= gScore[jumpPoint]) {
+                    continue;
+                }
+
+                context.discover(jumpPoint);
+                cameFrom[jumpPoint] = current;
+                gScore[jumpPoint] = tentativeGScore;
+                int fScore = tentativeGScore + heuristic.estimate(map, jumpPoint, goal);
+
+                if (isOpen) {
+                    long order = openSet.getKey(jumpPoint) & 0xFFFFFFFFL;
+                    openSet.decreaseKey(jumpPoint, AStar.key(fScore, order));
+                    improved++;
+                } else {
+                    openSet.push(jumpPoint, AStar.key(fScore, context.discovered++));
+                }
+            }
+
+            if (openSet.size() > openSetPeak) {
+                openSetPeak = openSet.size();
+            }
+        }
+        if (instrumented) {
+            SearchStats.report(map, context, goal, PathResult.Status.UNREACHABLE, startNanos,
+                    expanded, context.discovered, improved, openSetPeak, null);
+        }
+        return PathResult.Status.UNREACHABLE;
+    }
+
+    /**
+     * Expands the jump points kept in the context into every cell in between.
+     * Two consecutive jump points always lie on one straight or diagonal line.
+     */
+    public int[] getPath(GridMap map, SearchContext context, int goal) {
+        int width = map.getWidth();
+        int[] jumpPoints = context.getPath(goal);
+
+        int length = 1;
+        for (int i = 1; i < jumpPoints.length; i++) {
+            length += distance(jumpPoints[i - 1], jumpPoints[i], width);
+        }
+
+        int[] path = new int[length];
+        path[0] = jumpPoints[0];
+        int position = 1;
+        for (int i = 1; i < jumpPoints.length; i++) {
+            int from = jumpPoints[i - 1];
+            int to = jumpPoints[i];
+            int step = Integer.signum(to / width - from / width) * width
+                    + Integer.signum(to % width - from % width);
+            for (int cell = from + step; cell != to; cell += step) {
+                path[position++] = cell;
+            }
+            path[position++] = to;
+        }
+        return path;
+    }
+
+    /**
+     * Picks the directions worth following from a cell. Coming from a parent,
+     * only the natural directions and the ones forced by an obstacle are kept,
+     * every other neighbour is reached at least as cheaply through the parent.
+     *
+     * @param map    grid map to search on
+     * @param index  index of the cell
+     * @param parent index of the parent cell, -1 for the start
+     * @return bit mask of the directions to jump in
+     */
+    private int prunedDirections(GridMap map, int index, int parent) {
+        int legal = map.getNeighbourMask(index);
+        if (parent == -1) {
+            return legal;
+        }
+
+        int width = map.getWidth();
+        int x = index % width;
+        int y = index / width;
+        int dx = Integer.signum(x - parent % width);
+        int dy = Integer.signum(y - parent / width);
+
+        int directions = 1 << Directions.of(dx, dy);
+        if (dx != 0 && dy != 0) {
+            directions |= 1 << Directions.of(dx, 0) | 1 << Directions.of(0, dy);
+            if (isBlocked(map, x - dx, y)) {
+                directions |= 1 << Directions.of(-dx, dy);
+            }
+            if (isBlocked(map, x, y - dy)) {
+                directions |= 1 << Directions.of(dx, -dy);
+            }
+        } else if (dx != 0) {
+            if (isBlocked(map, x, y + 1)) {
+                directions |= 1 << Directions.of(dx, 1);
+            }
+            if (isBlocked(map, x, y - 1)) {
+                directions |= 1 << Directions.of(dx, -1);
+            }
+        } else {
+            if (isBlocked(map, x + 1, y)) {
+                directions |= 1 << Directions.of(1, dy);
+            }
+            if (isBlocked(map, x - 1, y)) {
+                directions |= 1 << Directions.of(-1, dy);
+            }
+        }
+        return directions & legal;
+    }
+
+    /**
+     * Moves from a cell in one direction until a jump point or a dead end.
+     * The step into the first cell must already be a legal move.
+     *
+     * @param map  grid map to search on
+     * @param x    horizontal position of the first cell
+     * @param y    vertical position of the first cell
+     * @param dx   horizontal step
+     * @param dy   vertical step
+     * @param goal index of the target cell
+     * @return index of the jump point, or NO_JUMP_POINT
+     */
+    private int jump(GridMap map, int x, int y, int dx, int dy, int goal) {
+        int width = map.getWidth();
+        while (true) {
+            int index = y * width + x;
+            if (index == goal) {
+                return index;
+            }
+
+            if (dx != 0 && dy != 0) {
+                // A blocked side makes the cell behind it reachable only through here
+                if ((!isBlocked(map, x - dx, y + dy) && isBlocked(map, x - dx, y))
+                        || (!isBlocked(map, x + dx, y - dy) && isBlocked(map, x, y - dy))) {
+                    return index;
+                }
+                // A diagonal move stops where one of its straight moves finds a jump point
+                if ((!isBlocked(map, x + dx, y) && jump(map, x + dx, y, dx, 0, goal) != NO_JUMP_POINT)
+                        || (!isBlocked(map, x, y + dy) && jump(map, x, y + dy, 0, dy, goal) != NO_JUMP_POINT)) {
+                    return index;
+                }
+                if (isBlocked(map, x + dx, y + dy) || (isBlocked(map, x + dx, y) && isBlocked(map, x, y + dy))) {
+                    return NO_JUMP_POINT;
+                }
+            } else if (dx != 0) {
+                if ((!isBlocked(map, x + dx, y + 1) && isBlocked(map, x, y + 1))
+                        || (!isBlocked(map, x + dx, y - 1) && isBlocked(map, x, y - 1))) {
+                    return index;
+                }
+                if (isBlocked(map, x + dx, y)) {
+                    return NO_JUMP_POINT;
+                }
+            } else {
+                if ((!isBlocked(map, x + 1, y + dy) && isBlocked(map, x + 1, y))
+                        || (!isBlocked(map, x - 1, y + dy) && isBlocked(map, x - 1, y))) {
+                    return index;
+                }
+                if (isBlocked(map, x, y + dy)) {
+                    return NO_JUMP_POINT;
+                }
+            }
+            x += dx;
+            y += dy;
+        }
+    }
+
+    // Cells outside of the map are blocked like obstacles
+    private static boolean isBlocked(GridMap map, int x, int y) {
+        return x < 0 || y < 0 || x >= map.getWidth() || y >= map.getHeight()
+                || map.isObstacle(y * map.getWidth() + x);
+    }
+
+    // Number of moves between two cells on one straight or diagonal line
+    private static int distance(int from, int to, int width) {
+        return Math.max(Math.abs(to % width - from % width), Math.abs(to / width - from / width));
+    }
+}
@@ -0,0 +1,347 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * LandmarkHeuristic is the ALT heuristic: A*, landmarks and the triangle inequality.
+ * <p>
+ * The exact distances from a few landmark cells to every cell are computed
+ * once. Moves cost the same both ways, so for any landmark L the cost from a
+ * cell n to the goal g is at least |d(L, g) - d(L, n)|. The largest of these
+ * bounds, and the octile distance, is the estimate. Around walls and in
+ * corridors it is far closer to the real cost than the octile distance alone,
+ * so the searches expand far fewer cells.
+ * <p>
+ * The tables take 4 bytes per cell and landmark and are kept off the heap,
+ * in direct buffers or in a memory mapped file written by save. They only
+ * hold for the obstacles they were computed on: the heuristic remembers the
+ * version of the map it was built or loaded for, and once the map changes it
+ * estimates the octile distance alone until it is rebuilt. Saved files carry
+ * a hash of the obstacles, and load rejects a file saved for other ones.
+ */
+public class LandmarkHeuristic implements Heuristic {
+
+    // Table value of cells the landmark can't reach
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    // "ASTL" read as a little endian int
+    private static final int MAGIC = 'A' | 'S' << 8 | 'T' << 16 | 'L' << 24;
+
+    private static final int VERSION = 2;
+
+    // Magic, version, width, height, landmark count and the obstacle hash's two halves,
+    // followed by the landmark indexes
+    private static final int HEADER_INTS = 7;
+
+    private final int width;
+    private final int height;
+    private final int[] landmarks;
+
+    // Distances from each landmark to every cell by index
+    private final IntBuffer[] tables;
+
+    // Hash of the obstacles the tables were computed on, and the map's version they still hold for
+    private final long obstacleHash;
+    private final long mapVersion;
+
+    private LandmarkHeuristic(GridMap map, int[] landmarks, IntBuffer[] tables, long obstacleHash) {
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.landmarks = landmarks;
+        this.tables = tables;
+        this.obstacleHash = obstacleHash;
+        this.mapVersion = map.getVersion();
+    }
+
+    /**
+     * Picks landmarks spread around the border of the map and computes
+     * their distance tables, one landmark per thread of the common pool
+     *
+     * @param map   grid map to build the tables for, it must not change until the tables are built
+     * @param count number of landmarks, more landmarks give better estimates and cost more memory
+     * @return the heuristic
+     */
+    public static LandmarkHeuristic build(final GridMap map, int count) {
+        long cells = (long) map.getWidth() * map.getHeight();
+        if (cells * 4 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maps over " + Integer.MAX_VALUE / 4 + " cells aren't supported");
+        }
+        final int[] landmarks = selectLandmarks(map, count);
+        final IntBuffer[] tables = new IntBuffer[landmarks.length];
+        IntStream.range(0, landmarks.length).parallel().forEach(i -> {
+            IntBuffer table = ByteBuffer.allocateDirect((int) cells * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+            table.put(distancesFrom(map, landmarks[i]));
+            tables[i] = table;
+        });
+        return new LandmarkHeuristic(map, landmarks, tables, obstacleHash(map));
+    }
+
+    /**
+     * Maps tables saved before, without reading them onto the heap
+     *
+     * @param map  grid map the tables were built for
+     * @param file file written by save
+     * @return the heuristic
+     * @throws IOException if the file can't be read or was saved for a map of another size or other obstacles
+     */
+    public static LandmarkHeuristic load(GridMap map, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_INTS * 4).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) != -1) {
+                // Keeps reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < HEADER_INTS * 4 || header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a landmark table file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported format version " + version);
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            int count = header.getInt();
+            long savedHash = header.getLong();
+            if (width != map.getWidth() || height != map.getHeight()) {
+                throw new IOException(file + " belongs to a " + width + "x" + height + " map");
+            }
+            long obstacleHash = obstacleHash(map);
+            if (savedHash != obstacleHash) {
+                throw new IOException(file + " was saved for other obstacles");
+            }
+
+            long cells = (long) width * height;
+            long tablesOffset = (HEADER_INTS + count) * 4L;
+            if (count <= 0 || channel.size() < tablesOffset + cells * 4 * count) {
+                throw new IOException(file + " is truncated");
+            }
+
+            ByteBuffer indexes = ByteBuffer.allocate(count * 4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(indexes, HEADER_INTS * 4);
+            indexes.flip();
+            int[] landmarks = new int[count];
+            for (int i = 0; i < count; i++) {
+                landmarks[i] = indexes.getInt();
+            }
+
+            IntBuffer[] tables = new IntBuffer[count];
+            for (int i = 0; i < count; i++) {
+                tables[i] = channel.map(FileChannel.MapMode.READ_ONLY, tablesOffset + cells * 4 * i, cells * 4)
+                        .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            }
+            return new LandmarkHeuristic(map, landmarks, tables, obstacleHash);
+        }
+    }
+
+    /**
+     * Writes the tables into a file which load can map back
+     *
+     * @param file file to create or overwrite
+     * @throws IOException if the file can't be written
+     */
+    public void save(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(landmarks.length)
+                    .putLong(obstacleHash);
+            for (int landmark : landmarks) {
+                if (!buffer.hasRemaining()) {
+                    write(channel, buffer);
+                }
+                buffer.putInt(landmark);
+            }
+            for (IntBuffer table : tables) {
+                for (int i = 0; i < table.capacity(); i++) {
+                    if (buffer.remaining() < 4) {
+                        write(channel, buffer);
+                    }
+                    buffer.putInt(table.get(i));
+                }
+            }
+            write(channel, buffer);
+        }
+    }
+
+    /**
+     * @param map  grid map being searched, the one the tables were built or loaded for
+     * @param from index of the cell to estimate from
+     * @param goal index of the target cell
+     * @return estimated cost from the cell to the goal, the octile distance once the map changed
+     */
+    public int estimate(GridMap map, int from, int goal) {
+        int best = Directions.octile(from % width - goal % width, from / width - goal / width);
+        // Distances around changed obstacles may have shrunk, so the tables could overestimate
+        if (map.getVersion() != mapVersion) {
+            return best;
+        }
+        for (IntBuffer table : tables) {
+            int toFrom = table.get(from);
+            int toGoal = table.get(goal);
+            // A landmark which can't reach one of the cells tells nothing about them
+            if (toFrom != UNREACHABLE && toGoal != UNREACHABLE) {
+                best = Math.max(best, Math.abs(toGoal - toFrom));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param map grid map the tables were built or loaded for
+     * @return true if the map didn't change since, and the tables are used
+     */
+    public boolean isCurrent(GridMap map) {
+        return map.getVersion() == mapVersion;
+    }
+
+    /**
+     * @return indexes of the landmark cells
+     */
+    public int[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    /**
+     * @return bytes the tables take off the heap
+     */
+    public long getTableBytes() {
+        return (long) width * height * 4 * tables.length;
+    }
+
+    /**
+     * Picks the free cells closest to points evenly spread around the border,
+     * far apart landmarks behind the goal as seen from the start give the best bounds
+     *
+     * @param map   grid map to pick from
+     * @param count number of landmarks
+     * @return landmark indexes, fewer than count if the map has too few free cells
+     */
+    private static int[] selectLandmarks(GridMap map, int count) {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        long perimeter = 2L * (width + height);
+        int[] landmarks = new int[count];
+        int found = 0;
+
+        for (int i = 0; i < count; i++) {
+            // Walks the border clockwise from the top left corner
+            long position = perimeter * i / count;
+            int x;
+            int y;
+            if (position < width) {
+                x = (int) position;
+                y = 0;
+            } else if (position < width + height) {
+                x = width - 1;
+                y = (int) (position - width);
+            } else if (position < 2L * width + height) {
+                x = (int) (2L * width + height - 1 - position);
+                y = height - 1;
+            } else {
+                x = 0;
+                y = (int) Math.max(0, perimeter - 1 - position);
+            }
+
+            int landmark = nearestFreeCell(map, x, y);
+            boolean duplicate = landmark == -1;
+            for (int j = 0; j < found && !duplicate; j++) {
+                duplicate = landmarks[j] == landmark;
+            }
+            if (!duplicate) {
+                landmarks[found++] = landmark;
+            }
+        }
+        return Arrays.copyOf(landmarks, found);
+    }
+
+    // Searches growing squares around a position for a free cell, -1 if there is none
+    private static int nearestFreeCell(GridMap map, int x, int y) {
+        int width = map.getWidth();
+        int height = map.getHeight();
+        int maxRadius = Math.max(width, height);
+        for (int radius = 0; radius < maxRadius; radius++) {
+            for (int ny = Math.max(y - radius, 0); ny <= Math.min(y + radius, height - 1); ny++) {
+                for (int nx = Math.max(x - radius, 0); nx <= Math.min(x + radius, width - 1); nx++) {
+                    boolean onRing = Math.abs(nx - x) == radius || Math.abs(ny - y) == radius;
+                    if (onRing && !map.isObstacle(ny * width + nx)) {
+                        return ny * width + nx;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Dijkstra from one cell to every cell of the map
+     *
+     * @param map    grid map to search on
+     * @param source index of the landmark
+     * @return distance of each cell by index, UNREACHABLE if the landmark can't reach it
+     */
+    private static int[] distancesFrom(GridMap map, int source) {
+        int width = map.getWidth();
+        int[] distances = new int[width * map.getHeight()];
+        Arrays.fill(distances, UNREACHABLE);
+        IndexedHeap openSet = new IndexedHeap(distances.length);
+
+        distances[source] = 0;
+        openSet.push(source, 0);
+        while (!openSet.isEmpty()) {
+            int current = openSet.pop();
+            int mask = map.getNeighbourMask(current);
+            while (mask != 0) {
+                int direction = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                int neighbor = current + Directions.offset(direction, width);
+                int distance = distances[current] + Directions.cost(direction);
+                if (distance < distances[neighbor]) {
+                    if (openSet.contains(neighbor)) {
+                        openSet.decreaseKey(neighbor, distance);
+                    } else {
+                        openSet.push(neighbor, distance);
+                    }
+                    distances[neighbor] = distance;
+                }
+            }
+        }
+        return distances;
+    }
+
+    // Hash of the obstacles, 64 cells at a time
+    private static long obstacleHash(GridMap map) {
+        int cells = map.getWidth() * map.getHeight();
+        long hash = cells;
+        long word = 0;
+        for (int index = 0; index < cells; index++) {
+            if (map.isObstacle(index)) {
+                word |= 1L << (index & 63);
+            }
+            if ((index & 63) == 63 || index == cells - 1) {
+                hash = (hash ^ word) * 0x9E3779B97F4A7C15L;
+                hash ^= hash >>> 29;
+                word = 0;
+            }
+        }
+        return hash;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,53 @@
+package com.aysegulpekel.logic;
+
+/**
+ * OpenSet is the queue of cells a search has discovered but not expanded yet.
+ * Keys are made by AStar.key: the f score in the high half and the discovery
+ * order in the low half.
+ */
+public interface OpenSet {
+
+    boolean isEmpty();
+
+    int size();
+
+    /**
+     * @param id any non negative id
+     * @return true if the id is currently in the set
+     */
+    boolean contains(int id);
+
+    /**
+     * @param id an id which is in the set
+     * @return the key of the id
+     */
+    long getKey(int id);
+
+    /**
+     * Adds a new id to the set
+     *
+     * @param id  non negative id which is not in the set yet
+     * @param key ordering key, lower keys are popped first
+     */
+    void push(int id, long key);
+
+    /**
+     * Lowers the key of an id
+     *
+     * @param id  an id which is in the set
+     * @param key new key, not greater than the current one
+     */
+    void decreaseKey(int id, long key);
+
+    /**
+     * Removes and returns the lowest keyed id
+     *
+     * @return the lowest keyed id
+     */
+    int pop();
+
+    /**
+     * Removes every id
+     */
+    void clear();
+}
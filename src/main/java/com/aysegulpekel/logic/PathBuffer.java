@@ -0,0 +1,129 @@
+package com.aysegulpekel.logic;
+
+import java.util.Arrays;
+
+/**
+ * PathBuffer receives the path of a search as cell indexes from start to goal.
+ * A caller running many searches keeps one buffer and hands it to every search,
+ * which writes into it instead of allocating a path: the buffer only grows when
+ * a path is longer than any before, so warmed up searches allocate nothing.
+ * <p>
+ * The path may be compressed into its waypoints, the start, the goal and the
+ * cells where it turns. The cells between two waypoints are a straight run.
+ */
+public class PathBuffer {
+
+    private int[] cells;
+    private int length;
+
+    public PathBuffer() {
+        this(256);
+    }
+
+    /**
+     * @param capacity expected number of cells on a path, the buffer grows beyond it when needed
+     */
+    public PathBuffer(int capacity) {
+        this.cells = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * @return number of cells on the path, 0 without a path
+     */
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * @param position position on the path, from 0 at the start to length() - 1 at the goal
+     * @return index of the cell at the position
+     */
+    public int get(int position) {
+        if (position >= length) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + length);
+        }
+        return cells[position];
+    }
+
+    /**
+     * @return the backing array, holding the path in its first length() entries, overwritten by the next search
+     */
+    public int[] array() {
+        return cells;
+    }
+
+    /**
+     * @return a copy of the path
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(cells, length);
+    }
+
+    public void clear() {
+        length = 0;
+    }
+
+    /**
+     * Keeps only the waypoints of the path, in place
+     *
+     * @param width width of the grid map the path is on
+     * @return number of waypoints left
+     */
+    public int compress(int width) {
+        if (length <= 2) {
+            return length;
+        }
+        int kept = 1;
+        int dx = cells[1] % width - cells[0] % width;
+        int dy = cells[1] / width - cells[0] / width;
+        for (int i = 1; i < length - 1; i++) {
+            int nextDx = cells[i + 1] % width - cells[i] % width;
+            int nextDy = cells[i + 1] / width - cells[i] / width;
+            if (nextDx != dx || nextDy != dy) {
+                cells[kept++] = cells[i];
+                dx = nextDx;
+                dy = nextDy;
+            }
+        }
+        cells[kept++] = cells[length - 1];
+        length = kept;
+        return length;
+    }
+
+    /**
+     * Fills the buffer by walking the parents back from the goal
+     *
+     * @param cameFrom previous cell index of each passed cell, -1 for the start
+     * @param goal     index of the target cell
+     */
+    void fill(int[] cameFrom, int goal) {
+        int count = 0;
+        for (int cell = goal; cell != -1; cell = cameFrom[cell]) {
+            count++;
+        }
+        ensureCapacity(count);
+        length = count;
+        for (int cell = goal; cell != -1; cell = cameFrom[cell]) {
+            cells[--count] = cell;
+        }
+    }
+
+    /**
+     * @param path indexes of the path's cells from start to goal
+     */
+    void set(int[] path) {
+        ensureCapacity(path.length);
+        System.arraycopy(path, 0, cells, 0, path.length);
+        length = path.length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > cells.length) {
+            cells = new int[Math.max(capacity, cells.length * 2)];
+        }
+    }
+}
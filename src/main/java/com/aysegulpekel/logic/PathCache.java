@@ -0,0 +1,250 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.GridMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PathCache sits in front of a pathfinder and remembers the paths it found,
+ * so repeated queries against an unchanged map skip the search.
+ * <p>
+ * Every cached path belongs to the map version it was found on. Once an
+ * obstacle changes, the map's version moves on and the cached paths are
+ * dropped by the next query. At most capacity paths are kept, the least
+ * recently used one goes first when the cache is full.
+ * <p>
+ * A query is also served by any cached path which passes through both of
+ * its endpoints: the part in between is a path too. On maps without cell
+ * costs moves cost the same both ways, so the part is read backwards as
+ * well. On weighted maps a move costs what the cell it enters costs, and
+ * only parts running from start to goal in the path's own direction are
+ * used. With an optimal pathfinder such a part is optimal again.
+ * <p>
+ * The cache may be used by many threads at once. Searches run outside of its lock.
+ */
+public class PathCache {
+
+    private final GridMap map;
+    private final Pathfinder pathfinder;
+    private final int capacity;
+
+    // Version of the map the cached paths were found on
+    private long version;
+
+    // Paths by start and goal in least recently used first order, empty if the goal is unreachable
+    private final LinkedHashMap<Long, CachedPath> entries;
+
+    // Cached paths passing through each cell
+    private final Map<Integer, List<CachedPath>> passingThrough = new HashMap<Integer, List<CachedPath>>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder subPathHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * CachedPath is a path in the cache with the position of each of its cells
+     */
+    private static class CachedPath {
+        final int[] path;
+        final Map<Integer, Integer> positions;
+
+        CachedPath(int[] path) {
+            this.path = path;
+            this.positions = new HashMap<Integer, Integer>(path.length * 2);
+            for (int i = 0; i < path.length; i++) {
+                positions.put(path[i], i);
+            }
+        }
+    }
+
+    /**
+     * @param map        grid map the queries run on
+     * @param pathfinder search mode which answers the queries missing from the cache
+     * @param capacity   maximum number of cached paths
+     */
+    public PathCache(GridMap map, Pathfinder pathfinder, final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid cache capacity " + capacity);
+        }
+        this.map = map;
+        this.pathfinder = pathfinder;
+        this.capacity = capacity;
+        this.version = map.getVersion();
+        this.entries = new LinkedHashMap<Long, CachedPath>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedPath> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                unindex(eldest.getValue());
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Answers a query from the cache, or searches and caches the answer
+     *
+     * @param start index of the starting cell
+     * @param goal  index of the target cell
+     * @return indexes of the path's cells from start to goal, empty if there is no path
+     */
+    public int[] findPath(int start, int goal) {
+        long searchVersion;
+        synchronized (this) {
+            dropIfChanged();
+            searchVersion = version;
+
+            CachedPath entry = entries.get(key(start, goal));
+            if (entry != null) {
+                hits.increment();
+                return entry.path.clone();
+            }
+            int[] subPath = findSubPath(start, goal);
+            if (subPath != null) {
+                hits.increment();
+                subPathHits.increment();
+                return subPath;
+            }
+        }
+
+        misses.increment();
+        int[] path = pathfinder.findPath(map, start, goal);
+
+        synchronized (this) {
+            // A path found on a map which changed meanwhile is returned but not kept
+            dropIfChanged();
+            if (version == searchVersion && !entries.containsKey(key(start, goal))) {
+                CachedPath entry = new CachedPath(path.clone());
+                entries.put(key(start, goal), entry);
+                index(entry);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Drops every cached path
+     */
+    public synchronized void clear() {
+        entries.clear();
+        passingThrough.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of queries answered from the cache, including sub path hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of queries answered by a part of a longer cached path
+     */
+    public long getSubPathHits() {
+        return subPathHits.sum();
+    }
+
+    /**
+     * @return number of queries which had to search
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of paths dropped to make room, paths dropped after a map change are not counted
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Drops the cached paths when the map changed since they were found, called with the lock held
+    private void dropIfChanged() {
+        long current = map.getVersion();
+        if (current != version) {
+            version = current;
+            clear();
+        }
+    }
+
+    // Part of a cached path between the endpoints, null if no cached path passes through both
+    private int[] findSubPath(int start, int goal) {
+        List<CachedPath> throughStart = passingThrough.get(start);
+        List<CachedPath> throughGoal = passingThrough.get(goal);
+        if (throughStart == null || throughGoal == null) {
+            return null;
+        }
+
+        // Only the paths of the shorter list need to be looked at
+        boolean weighted = map.isWeighted();
+        boolean byStart = throughStart.size() <= throughGoal.size();
+        for (CachedPath entry : byStart ? throughStart : throughGoal) {
+            Integer to = entry.positions.get(byStart ? goal : start);
+            if (to == null) {
+                continue;
+            }
+            int from = entry.positions.get(byStart ? start : goal);
+            if (!byStart) {
+                int swap = from;
+                from = to;
+                to = swap;
+            }
+            // Read backwards, the moves would enter other cells and cost differently
+            if (weighted && from > to) {
+                continue;
+            }
+
+            // Marks the path as recently used
+            entries.get(key(entry.path[0], entry.path[entry.path.length - 1]));
+
+            int[] subPath = new int[Math.abs(to - from) + 1];
+            int step = from <= to ? 1 : -1;
+            for (int i = 0; i < subPath.length; i++) {
+                subPath[i] = entry.path[from + i * step];
+            }
+            return subPath;
+        }
+        return null;
+    }
+
+    private void index(CachedPath entry) {
+        for (int cell : entry.path) {
+            List<CachedPath> list = passingThrough.get(cell);
+            if (list == null) {
+                list = new ArrayList<CachedPath>(2);
+                passingThrough.put(cell, list);
+            }
+            list.add(entry);
+        }
+    }
+
+    private void unindex(CachedPath entry) {
+        for (int cell : entry.path) {
+            List<CachedPath> list = passingThrough.get(cell);
+            list.remove(entry);
+            if (list.isEmpty()) {
+                passingThrough.remove(cell);
+            }
+        }
+    }
+
+    private static long key(int start, int goal) {
+        return ((long) start << 32) | (goal & 0xFFFFFFFFL);
+    }
+}
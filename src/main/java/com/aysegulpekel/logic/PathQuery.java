@@ -0,0 +1,31 @@
+package com.aysegulpekel.logic;
+
+/**
+ * PathQuery is a request for the path between two cells of a grid map
+ */
+public class PathQuery {
+
+    // Index of the starting cell
+    private final int start;
+
+    // Index of the target cell
+    private final int goal;
+
+    public PathQuery(int start, int goal) {
+        this.start = start;
+        this.goal = goal;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getGoal() {
+        return goal;
+    }
+
+    @Override
+    public String toString() {
+        return "PathQuery[" + start + " -> " + goal + "]";
+    }
+}
@@ -0,0 +1,69 @@
+package com.aysegulpekel.logic;
+
+/**
+ * PathResult is the answer to a PathQuery
+ */
+public class PathResult {
+
+    /**
+     * How a search ended
+     */
+    public enum Status {
+        // The goal was reached, the path holds the way to it
+        FOUND,
+        // Every reachable cell was searched without reaching the goal
+        UNREACHABLE,
+        // The search gave up at its deadline
+        TIMED_OUT,
+        // The searching thread was interrupted
+        CANCELLED
+    }
+
+    private static final int[] NO_PATH = new int[0];
+
+    private final PathQuery query;
+    private final Status status;
+
+    // Cell indexes from start to goal, empty unless the goal was found
+    private final int[] path;
+
+    // Work the search took, null unless stats were enabled
+    private final SearchStats stats;
+
+    public PathResult(PathQuery query, Status status, int[] path) {
+        this(query, status, path, null);
+    }
+
+    public PathResult(PathQuery query, Status status, int[] path, SearchStats stats) {
+        this.query = query;
+        this.status = status;
+        this.path = path == null ? NO_PATH : path;
+        this.stats = stats;
+    }
+
+    public PathQuery getQuery() {
+        return query;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isFound() {
+        return status == Status.FOUND;
+    }
+
+    /**
+     * @return cell indexes from start to goal, empty if the path was not found
+     */
+    public int[] getPath() {
+        return path;
+    }
+
+    /**
+     * @return work the search took, null unless stats were enabled
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,63 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.GridMap;
+
+/**
+ * Pathfinder is a search mode which finds paths on a grid map.
+ * Searches keep their state in a SearchContext, so one pathfinder
+ * can serve many threads at once.
+ */
+public interface Pathfinder {
+
+    /**
+     * Searches with the context pooled for the current thread
+     *
+     * @param map   grid map to search on
+     * @param start index of the starting cell
+     * @param goal  index of the target cell
+     * @return indexes of the path's cells from start to goal, empty if there is no path
+     */
+    int[] findPath(GridMap map, int start, int goal);
+
+    /**
+     * Searches and writes the path into a buffer the caller reuses, instead of allocating one
+     *
+     * @param map     grid map to search on, it is only read
+     * @param start   index of the starting cell
+     * @param goal    index of the target cell
+     * @param context search state, reset before the search starts
+     * @param path    buffer receiving the path's cells from start to goal, emptied if there is no path
+     * @return true if the path was found
+     */
+    default boolean findPath(GridMap map, int start, int goal, SearchContext context, PathBuffer path) {
+        if (search(map, start, goal, context, AStar.NO_DEADLINE) == PathResult.Status.FOUND) {
+            path.set(getPath(map, context, goal));
+            return true;
+        }
+        path.clear();
+        return false;
+    }
+
+    /**
+     * Searches until the goal is found, the map is exhausted, the deadline passes
+     * or the searching thread is interrupted
+     *
+     * @param map      grid map to search on, it is only read
+     * @param start    index of the starting cell
+     * @param goal     index of the target cell
+     * @param context  search state, reset before the search starts
+     * @param deadline System.nanoTime() value to give up at, or AStar.NO_DEADLINE
+     * @return FOUND, UNREACHABLE, TIMED_OUT or CANCELLED
+     */
+    PathResult.Status search(GridMap map, int start, int goal, SearchContext context, long deadline);
+
+    /**
+     * Reads the path back after a search which found its goal
+     *
+     * @param map     grid map which was searched
+     * @param context context of the search
+     * @param goal    index of the target cell
+     * @return indexes of every cell on the path from start to goal
+     */
+    int[] getPath(GridMap map, SearchContext context, int goal);
+}
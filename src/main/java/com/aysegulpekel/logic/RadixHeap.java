@@ -0,0 +1,185 @@
+package com.aysegulpekel.logic;
+
+import java.util.Arrays;
+
+/**
+ * RadixHeap is a monotone open set for A* with a consistent heuristic, where
+ * the f scores popped never decrease. It orders ids by the f score in the
+ * high half of their keys only, and pops ties in last in first out order.
+ * <p>
+ * Bucket 0 holds the ids whose f score equals the last one popped, and bucket
+ * b the ids whose f score first differs from it at bit b - 1. Pushing is O(1).
+ * When bucket 0 runs empty, the lowest f score of the first non empty bucket
+ * becomes the last one and that bucket is spread over the buckets below it, so
+ * every id moves down at most 32 times however large the costs are.
+ * <p>
+ * An f score lower than the last one popped, which only an inconsistent
+ * heuristic gives, goes to bucket 0 and is popped next.
+ */
+public class RadixHeap implements OpenSet {
+
+    // Bucket 0 for the last f score popped and one bucket for each bit of a higher one
+    private static final int BUCKETS = Integer.SIZE + 1;
+
+    // Ids of each bucket in no particular order
+    private final int[][] buckets = new int[BUCKETS][];
+    private final int[] bucketSizes = new int[BUCKETS];
+
+    // Keys by id
+    private long[] keys;
+
+    // Bucket + 1 by id, 0 means the id is not in the heap
+    private byte[] bucketOf;
+
+    // Position in its bucket by id
+    private int[] slots;
+
+    // F score of the last id popped, no id in the heap is lower unless its heuristic was inconsistent
+    private int last;
+
+    private int size;
+
+    public RadixHeap() {
+        this(16);
+    }
+
+    /**
+     * @param capacity expected number of distinct ids, the heap grows beyond it when needed
+     */
+    public RadixHeap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.keys = new long[capacity];
+        this.bucketOf = new byte[capacity];
+        this.slots = new int[capacity];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new int[16];
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int id) {
+        return id < bucketOf.length && bucketOf[id] != 0;
+    }
+
+    /**
+     * @param position position in the heap, from 0 to size() - 1
+     * @return the id at the position, the buckets are walked from the lowest one up
+     */
+    public int get(int position) {
+        if (position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size);
+        }
+        int b = 0;
+        while (position >= bucketSizes[b]) {
+            position -= bucketSizes[b++];
+        }
+        return buckets[b][position];
+    }
+
+    public long getKey(int id) {
+        return keys[id];
+    }
+
+    public void push(int id, long key) {
+        ensureCapacity(id);
+        keys[id] = key;
+        add(id, bucket(key));
+        size++;
+    }
+
+    public void decreaseKey(int id, long key) {
+        removeFromBucket(id);
+        keys[id] = key;
+        add(id, bucket(key));
+    }
+
+    public int pop() {
+        if (bucketSizes[0] == 0) {
+            refill();
+        }
+        int id = buckets[0][--bucketSizes[0]];
+        bucketOf[id] = 0;
+        size--;
+        return id;
+    }
+
+    // Removes every id, costs as much as the number of ids left in the heap
+    public void clear() {
+        for (int b = 0; b < BUCKETS; b++) {
+            int[] bucket = buckets[b];
+            for (int i = 0; i < bucketSizes[b]; i++) {
+                bucketOf[bucket[i]] = 0;
+            }
+            bucketSizes[b] = 0;
+        }
+        size = 0;
+        last = 0;
+    }
+
+    // Moves the lowest f score of the first non empty bucket into the last one popped and spreads that bucket
+    private void refill() {
+        int b = 1;
+        while (bucketSizes[b] == 0) {
+            b++;
+        }
+        int[] bucket = buckets[b];
+        int count = bucketSizes[b];
+        int lowest = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            lowest = Math.min(lowest, fScore(keys[bucket[i]]));
+        }
+        last = lowest;
+        bucketSizes[b] = 0;
+        // Every id of the bucket lands in a lower one, so the bucket isn't written while it is read
+        for (int i = 0; i < count; i++) {
+            int id = bucket[i];
+            add(id, bucket(keys[id]));
+        }
+    }
+
+    private int bucket(long key) {
+        int fScore = fScore(key);
+        return fScore <= last ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(fScore ^ last);
+    }
+
+    private static int fScore(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private void add(int id, int b) {
+        int count = bucketSizes[b];
+        if (count == buckets[b].length) {
+            buckets[b] = Arrays.copyOf(buckets[b], count * 2);
+        }
+        buckets[b][count] = id;
+        bucketSizes[b] = count + 1;
+        bucketOf[id] = (byte) (b + 1);
+        slots[id] = count;
+    }
+
+    // Fills the id's place with the last id of its bucket
+    private void removeFromBucket(int id) {
+        int b = bucketOf[id] - 1;
+        int slot = slots[id];
+        int lastId = buckets[b][--bucketSizes[b]];
+        buckets[b][slot] = lastId;
+        slots[lastId] = slot;
+    }
+
+    // Grows the id indexed arrays so that they can hold the given id
+    private void ensureCapacity(int id) {
+        if (id >= bucketOf.length) {
+            int capacity = Math.max(id + 1, bucketOf.length * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            bucketOf = Arrays.copyOf(bucketOf, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+        }
+    }
+}
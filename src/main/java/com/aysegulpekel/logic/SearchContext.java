@@ -0,0 +1,184 @@
+package com.aysegulpekel.logic;
+
+import java.util.Arrays;
+
+/**
+ * SearchContext holds the per query state of a search: scores, parents,
+ * the open set and the closed set. The grid map itself is never written,
+ * so any number of threads can search one map with their own contexts.
+ * <p>
+ * Cells are stamped with the generation of the search which touched them,
+ * so resetting the context for the next search is O(1) instead of
+ * clearing every array. A context must only be used by one search at a time.
+ */
+public class SearchContext {
+
+    // One pooled context per thread, grown to the largest grid the thread searched
+    private static final ThreadLocal<SearchContext> CONTEXTS = new ThreadLocal<SearchContext>() {
+        @Override
+        protected SearchContext initialValue() {
+            return new SearchContext();
+        }
+    };
+
+    // Generation of the running search, stamps are generation * 2 (discovered) or generation * 2 + 1 (closed)
+    private int generation;
+
+    // Stamp of each cell, anything older than the running generation means untouched
+    private int[] stamps;
+
+    // Cost of the best known way from the start to each discovered cell
+    int[] gScore;
+
+    // Previous cell of each discovered cell, -1 for the start
+    int[] cameFrom;
+
+    // Open set ordered by f score and then by discovery order
+    IndexedHeap openSet;
+
+    // Open set ordered by f score only, null until a search asks for it
+    RadixHeap radixHeap;
+
+    // Open set of the running search, one of the two above
+    OpenSet open;
+
+    // Counts the discovered cells to break f score ties
+    int discovered;
+
+    // Stats of the last search, null unless enabled
+    SearchStats stats;
+
+    public SearchContext() {
+        this(0);
+    }
+
+    /**
+     * @param capacity number of cells the context is prepared for, it grows when needed
+     */
+    public SearchContext(int capacity) {
+        this.stamps = new int[capacity];
+        this.gScore = new int[capacity];
+        this.cameFrom = new int[capacity];
+        this.openSet = new IndexedHeap(capacity);
+        this.open = openSet;
+    }
+
+    /**
+     * @return the context pooled for the current thread
+     */
+    public static SearchContext forCurrentThread() {
+        return CONTEXTS.get();
+    }
+
+    /**
+     * Turns the per query stats of the searches run with this context on or off
+     *
+     * @param enabled true to fill in the stats after every search
+     */
+    public void setStatsEnabled(boolean enabled) {
+        stats = enabled ? (stats != null ? stats : new SearchStats()) : null;
+    }
+
+    /**
+     * @return stats of the last search, overwritten by the next one, null unless enabled
+     */
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Prepares the context for a new search
+     *
+     * @param size number of cells of the grid map to search
+     */
+    public void reset(int size) {
+        reset(size, false);
+    }
+
+    /**
+     * Prepares the context for a new search
+     *
+     * @param size      number of cells of the grid map to search
+     * @param radixHeap true to queue the open cells in the radix heap instead of the binary heap
+     */
+    void reset(int size, boolean radixHeap) {
+        if (size > stamps.length) {
+            stamps = new int[size];
+            gScore = new int[size];
+            cameFrom = new int[size];
+            openSet = new IndexedHeap(size);
+            this.radixHeap = null;
+            generation = 0;
+        }
+        open.clear();
+        if (radixHeap && this.radixHeap == null) {
+            this.radixHeap = new RadixHeap(stamps.length);
+        }
+        open = radixHeap ? this.radixHeap : openSet;
+        discovered = 0;
+
+        // Stamps run out after about a billion searches, then start over from clean arrays
+        if (++generation == 1 << 30) {
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * @param index index of a cell
+     * @return true if the running search has reached the cell
+     */
+    public boolean isDiscovered(int index) {
+        return stamps[index] >= generation << 1;
+    }
+
+    /**
+     * @param index index of a cell
+     * @return true if the running search has already expanded the cell
+     */
+    public boolean isClosed(int index) {
+        return stamps[index] == (generation << 1 | 1);
+    }
+
+    /**
+     * @param index index of a cell
+     * @return true if the cell waits in the open set
+     */
+    public boolean isOpen(int index) {
+        return open.contains(index);
+    }
+
+    /**
+     * @param index index of a discovered cell
+     * @return cost of the best known way from the start to the cell
+     */
+    public int getgScore(int index) {
+        return gScore[index];
+    }
+
+    /**
+     * @param index index of a discovered cell
+     * @return previous cell of the cell on the best known way, -1 for the start
+     */
+    public int getCameFrom(int index) {
+        return cameFrom[index];
+    }
+
+    /**
+     * @param goal index of a discovered cell
+     * @return indexes of the cells on the best known way from the start to the goal
+     */
+    public int[] getPath(int goal) {
+        return AStar.reconstructPath(cameFrom, goal);
+    }
+
+    // Marks the cell as reached by the running search
+    void discover(int index) {
+        stamps[index] = generation << 1;
+    }
+
+    // Marks the cell as expanded by the running search
+    void close(int index) {
+        stamps[index] = generation << 1 | 1;
+    }
+}
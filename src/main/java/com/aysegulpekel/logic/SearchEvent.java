@@ -0,0 +1,79 @@
+package com.aysegulpekel.logic;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * SearchEvent is the Flight Recorder event of one search.
+ * It is only committed while a recording has the event enabled, e.g.
+ * java -XX:StartFlightRecording:filename=search.jfr,settings=profile ...
+ * and then shows up in JDK Mission Control next to GC and thread events.
+ */
+@Name("com.aysegulpekel.Search")
+@Label("Path Search")
+@Category("A Star")
+@Description("One path query with the work it took")
+@StackTrace(false)
+public class SearchEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(SearchEvent.class);
+
+    @Label("Status")
+    String status;
+
+    @Label("Expanded")
+    int expanded;
+
+    @Label("Generated")
+    int generated;
+
+    @Label("Improved")
+    int improved;
+
+    @Label("Open Set Peak")
+    int openSetPeak;
+
+    @Label("Path Length")
+    int pathLength;
+
+    @Label("Path Cost")
+    int pathCost;
+
+    @Label("Wall Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long wallTime;
+
+    /**
+     * @return true while a recording has the event enabled
+     */
+    static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+
+    /**
+     * Commits an event for a finished search if a recording wants it
+     *
+     * @param stats stats of the search
+     */
+    static void commit(SearchStats stats) {
+        if (!TYPE.isEnabled()) {
+            return;
+        }
+        SearchEvent event = new SearchEvent();
+        event.status = stats.getStatus().name();
+        event.expanded = stats.getExpanded();
+        event.generated = stats.getGenerated();
+        event.improved = stats.getImproved();
+        event.openSetPeak = stats.getOpenSetPeak();
+        event.pathLength = stats.getPathLength();
+        event.pathCost = stats.getPathCost();
+        event.wallTime = stats.getWallTimeNanos();
+        event.commit();
+    }
+}
@@ -0,0 +1,132 @@
+package com.aysegulpekel.logic;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SearchMetrics adds up the stats of every search run while it is enabled,
+ * as counters and as histograms of the per query work and wall time.
+ * Only one instance collects at a time. While none is enabled, searches
+ * skip the reporting entirely.
+ */
+public class SearchMetrics {
+
+    // Metrics collecting right now, null while disabled
+    private static volatile SearchMetrics current;
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder found = new LongAdder();
+    private final LongAdder unreachable = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder expanded = new LongAdder();
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder improved = new LongAdder();
+
+    private final Histogram wallTimeNanos = new Histogram();
+    private final Histogram expandedPerQuery = new Histogram();
+    private final Histogram openSetPeak = new Histogram();
+
+    /**
+     * Starts collecting into the given metrics, replacing the ones collecting so far
+     *
+     * @param metrics metrics to collect into
+     */
+    public static void enable(SearchMetrics metrics) {
+        current = metrics;
+    }
+
+    /**
+     * Stops collecting
+     */
+    public static void disable() {
+        current = null;
+    }
+
+    /**
+     * @return the metrics collecting right now, null while disabled
+     */
+    public static SearchMetrics current() {
+        return current;
+    }
+
+    /**
+     * Adds the stats of one finished search
+     *
+     * @param stats stats of the search
+     */
+    public void record(SearchStats stats) {
+        queries.increment();
+        switch (stats.getStatus()) {
+            case FOUND:
+                found.increment();
+                break;
+            case UNREACHABLE:
+                unreachable.increment();
+                break;
+            case CANCELLED:
+                cancelled.increment();
+                break;
+            default:
+                timedOut.increment();
+        }
+        expanded.add(stats.getExpanded());
+        generated.add(stats.getGenerated());
+        improved.add(stats.getImproved());
+        wallTimeNanos.record(stats.getWallTimeNanos());
+        expandedPerQuery.record(stats.getExpanded());
+        openSetPeak.record(stats.getOpenSetPeak());
+    }
+
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    public long getFound() {
+        return found.sum();
+    }
+
+    public long getUnreachable() {
+        return unreachable.sum();
+    }
+
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    public long getExpanded() {
+        return expanded.sum();
+    }
+
+    public long getGenerated() {
+        return generated.sum();
+    }
+
+    public long getImproved() {
+        return improved.sum();
+    }
+
+    public Histogram getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    public Histogram getExpandedPerQuery() {
+        return expandedPerQuery;
+    }
+
+    public Histogram getOpenSetPeak() {
+        return openSetPeak;
+    }
+
+    @Override
+    public String toString() {
+        return "queries=" + getQueries() + " found=" + getFound() + " unreachable=" + getUnreachable()
+                + " timedOut=" + getTimedOut() + " cancelled=" + getCancelled() + " expanded=" + getExpanded() + " generated=" + getGenerated()
+                + " wallTime p50=" + wallTimeNanos.getPercentile(50) / 1000 + "us"
+                + " p99=" + wallTimeNanos.getPercentile(99) / 1000 + "us"
+                + " p99.9=" + wallTimeNanos.getPercentile(99.9) / 1000 + "us";
+    }
+}
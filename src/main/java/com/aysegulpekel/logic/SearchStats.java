@@ -0,0 +1,147 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridMap;
+
+/**
+ * SearchStats tells how much work one query took.
+ * A search fills it in only when instrumentation is turned on, see
+ * SearchContext.setStatsEnabled, SearchMetrics.enable and SearchEvent.
+ */
+public class SearchStats {
+
+    private PathResult.Status status;
+
+    // Cells taken out of the open set
+    private int expanded;
+
+    // Cells put into the open set for the first time
+    private int generated;
+
+    // Cells of the open set reached again on a cheaper way, expanded cells are never opened again
+    private int improved;
+
+    // Largest size of the open set
+    private int openSetPeak;
+
+    // Cells on the path, start and goal included, 0 without a path
+    private int pathLength;
+
+    // Move cost of the path with the cell costs of weighted maps, 0 without a path
+    private int pathCost;
+
+    private long wallTimeNanos;
+
+    public PathResult.Status getStatus() {
+        return status;
+    }
+
+    public int getExpanded() {
+        return expanded;
+    }
+
+    public int getGenerated() {
+        return generated;
+    }
+
+    public int getImproved() {
+        return improved;
+    }
+
+    public int getOpenSetPeak() {
+        return openSetPeak;
+    }
+
+    public int getPathLength() {
+        return pathLength;
+    }
+
+    public int getPathCost() {
+        return pathCost;
+    }
+
+    public long getWallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    /**
+     * @return a copy which later searches won't overwrite
+     */
+    public SearchStats copy() {
+        SearchStats copy = new SearchStats();
+        copy.status = status;
+        copy.expanded = expanded;
+        copy.generated = generated;
+        copy.improved = improved;
+        copy.openSetPeak = openSetPeak;
+        copy.pathLength = pathLength;
+        copy.pathCost = pathCost;
+        copy.wallTimeNanos = wallTimeNanos;
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return status + " expanded=" + expanded + " generated=" + generated + " improved=" + improved
+                + " openSetPeak=" + openSetPeak + " pathLength=" + pathLength + " pathCost=" + pathCost
+                + " wallTime=" + wallTimeNanos / 1000 + "us";
+    }
+
+    /**
+     * Tells whether a search should look at the clock and report its counters.
+     * Searches ask once per query, the counting itself stays in local variables.
+     *
+     * @param context context of the search
+     * @return true if any instrumentation is turned on
+     */
+    static boolean isInstrumented(SearchContext context) {
+        return context.stats != null || SearchMetrics.current() != null || SearchEvent.isRecording();
+    }
+
+    /**
+     * Hands the counters of a finished search to every turned on instrumentation
+     *
+     * @param map         grid map which was searched
+     * @param context     context of the search, holding its path when the goal was found
+     * @param goal        index of the target cell
+     * @param status      how the search ended
+     * @param startNanos  System.nanoTime() value when the search started
+     * @param expanded    cells taken out of the open set
+     * @param generated   cells put into the open set for the first time
+     * @param improved    open cells reached again on a cheaper way
+     * @param openSetPeak largest size of the open set
+     * @param path        cells of the path, null to read the path from the context's parents
+     */
+    static void report(GridMap map, SearchContext context, int goal, PathResult.Status status, long startNanos,
+                       int expanded, int generated, int improved, int openSetPeak, int[] path) {
+        SearchStats stats = context.stats != null ? context.stats : new SearchStats();
+        stats.wallTimeNanos = System.nanoTime() - startNanos;
+        stats.status = status;
+        stats.expanded = expanded;
+        stats.generated = generated;
+        stats.improved = improved;
+        stats.openSetPeak = openSetPeak;
+        stats.pathLength = 0;
+        stats.pathCost = 0;
+
+        if (status == PathResult.Status.FOUND) {
+            if (path == null) {
+                path = context.getPath(goal);
+            }
+            int width = map.getWidth();
+            stats.pathLength = path.length;
+            boolean weighted = map.isWeighted();
+            for (int i = 1; i < path.length; i++) {
+                int cost = Directions.octile(path[i] % width - path[i - 1] % width,
+                        path[i] / width - path[i - 1] / width);
+                stats.pathCost += weighted ? cost * map.getCost(path[i]) : cost;
+            }
+        }
+
+        SearchMetrics metrics = SearchMetrics.current();
+        if (metrics != null) {
+            metrics.record(stats);
+        }
+        SearchEvent.commit(stats);
+    }
+}
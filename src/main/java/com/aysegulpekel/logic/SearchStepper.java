@@ -0,0 +1,194 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridMap;
+
+import java.util.Arrays;
+
+/**
+ * SearchStepper runs an A* search a few expansions at a time, so it can be
+ * watched while it runs. Between steps the open and closed cells are read
+ * through views of the search's own state, nothing is copied.
+ * <p>
+ * The cells are expanded in exactly the order AStar.search expands them,
+ * which is kept free of any stepping code: the stepper queues the open cells
+ * in the same kind of queue and breaks ties the same way. A stepper is
+ * created by AStar.stepper and belongs to one query and one thread.
+ */
+public class SearchStepper {
+
+    private final GridMap map;
+    private final int goal;
+    private final Heuristic heuristic;
+    private final SearchContext context;
+
+    // Expanded cells in expansion order
+    private int[] closed = new int[64];
+    private int closedCount;
+
+    // Cell expanded by the last step, -1 before the first one
+    private int current = -1;
+
+    // How the search ended, null while it runs
+    private PathResult.Status status;
+
+    private final CellView frontier = new CellView() {
+        public int size() {
+            return context.open.size();
+        }
+
+        public int get(int position) {
+            return context.open == context.openSet ? context.openSet.get(position) : context.radixHeap.get(position);
+        }
+
+        public boolean contains(int index) {
+            return context.isOpen(index);
+        }
+    };
+
+    private final CellView closedView = new CellView() {
+        public int size() {
+            return closedCount;
+        }
+
+        public int get(int position) {
+            if (position >= closedCount) {
+                throw new IndexOutOfBoundsException("Position " + position + " of " + closedCount);
+            }
+            return closed[position];
+        }
+
+        public boolean contains(int index) {
+            return context.isClosed(index);
+        }
+    };
+
+    SearchStepper(GridMap map, int start, int goal, Heuristic heuristic, AStar.QueueType queueType) {
+        this.map = map;
+        this.goal = goal;
+        this.heuristic = heuristic;
+        this.context = new SearchContext(map.getWidth() * map.getHeight());
+
+        context.reset(map.getWidth() * map.getHeight(), queueType == AStar.QueueType.RADIX_HEAP);
+        if (start != goal && !map.isConnected(start, goal)) {
+            status = PathResult.Status.UNREACHABLE;
+            return;
+        }
+        context.discover(start);
+        context.gScore[start] = 0;
+        context.cameFrom[start] = -1;
+        context.open.push(start, AStar.key(heuristic.estimate(map, start, goal), context.discovered++));
+    }
+
+    /**
+     * Expands up to the given number of cells, stopping early when the search ends
+     *
+     * @param expansions number of cells to expand
+     * @return number of cells expanded
+     */
+    public int step(int expansions) {
+        int width = map.getWidth();
+        int[] gScore = context.gScore;
+        int[] cameFrom = context.cameFrom;
+        OpenSet openSet = context.open;
+        boolean weighted = map.isWeighted();
+
+        int expanded = 0;
+        while (status == null && expanded < expansions) {
+            if (openSet.isEmpty()) {
+                status = PathResult.Status.UNREACHABLE;
+                break;
+            }
+            current = openSet.pop();
+            if (current == goal) {
+                status = PathResult.Status.FOUND;
+                break;
+            }
+            context.close(current);
+            if (closedCount == closed.length) {
+                closed = Arrays.copyOf(closed, closedCount * 2);
+            }
+            closed[closedCount++] = current;
+            expanded++;
+
+            int mask = map.getNeighbourMask(current);
+            while (mask != 0) {
+                int direction = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                int neighbor = current + Directions.offset(direction, width);
+                if (context.isClosed(neighbor)) {
+                    continue;
+                }
+
+                int moveCost = Directions.cost(direction);
+                if (weighted) {
+                    moveCost *= map.getCost(neighbor);
+                }
+                int tentativeGScore = gScore[current] + moveCost;
+                boolean isOpen = openSet.contains(neighbor);
+                if (isOpen && tentativeGScore >= gScore[neighbor]) {
+                    continue;
+                }
+
+                context.discover(neighbor);
+                cameFrom[neighbor] = current;
+                gScore[neighbor] = tentativeGScore;
+                int fScore = tentativeGScore + heuristic.estimate(map, neighbor, goal);
+                if (isOpen) {
+                    long order = openSet.getKey(neighbor) & 0xFFFFFFFFL;
+                    openSet.decreaseKey(neighbor, AStar.key(fScore, order));
+                } else {
+                    openSet.push(neighbor, AStar.key(fScore, context.discovered++));
+                }
+            }
+        }
+        return expanded;
+    }
+
+    public boolean isFinished() {
+        return status != null;
+    }
+
+    /**
+     * @return FOUND or UNREACHABLE once the search ended, null while it runs
+     */
+    public PathResult.Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return cell expanded by the last step, -1 before the first one
+     */
+    public int getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return the cells waiting in the open set, in the queue's own order
+     */
+    public CellView getFrontier() {
+        return frontier;
+    }
+
+    /**
+     * @return the expanded cells, in expansion order
+     */
+    public CellView getClosed() {
+        return closedView;
+    }
+
+    /**
+     * @param cell index of a discovered cell, such as the last expanded one
+     * @return indexes of the cells on the best known way from the start to the cell
+     */
+    public int[] getPathTo(int cell) {
+        return context.getPath(cell);
+    }
+
+    /**
+     * @return indexes of the path's cells from start to goal, empty unless the goal was found
+     */
+    public int[] getPath() {
+        return status == PathResult.Status.FOUND ? context.getPath(goal) : new int[0];
+    }
+}
@@ -0,0 +1,449 @@
+package com.aysegulpekel.logic.multiagent;
+
+import com.aysegulpekel.core.Grid;
+import com.aysegulpekel.core.GridMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * CooperativePlanner routes many agents over one map without collisions,
+ * with windowed hierarchical cooperative A* (WHCA*).
+ * <p>
+ * A replan searches every agent's next window of time steps in space and
+ * time, in priority order. An agent moves to a neighbour or waits on each
+ * step, and may neither enter a cell another agent reserved for that step
+ * nor swap cells with it. Its window is then reserved for the agents after
+ * it. The end of a window is scored by the agent's true distance to its
+ * goal, so agents keep heading home beyond the window. The agents carry out
+ * the first half of their windows before everyone plans again, and the
+ * priorities rotate on every replan so no agent always has to step aside.
+ * Like any WHCA*, it is not complete: agents meeting head on in a corridor
+ * one cell wide may keep each other away from their goals.
+ * <p>
+ * Agents more than two windows apart can't meet within a window, so replan
+ * groups the agents which can meet and plans every group on its own into the
+ * one concurrent ReservationTable. Given an executor the groups are planned in
+ * parallel, otherwise one after the other, and the plans are the same.
+ * <p>
+ * The map must not change while the agents are planned.
+ */
+public class CooperativePlanner {
+
+    private final GridMap map;
+    private final int window;
+    private final List<Agent> agents = new ArrayList<Agent>();
+
+    // Window searches left over from the last replan, one is used by a thread at a time
+    private final ConcurrentLinkedQueue<WindowSearch> searches = new ConcurrentLinkedQueue<WindowSearch>();
+
+    private ReservationTable reservations;
+
+    // Time step the agents are at, and the agent planned first by the next replan
+    private int time;
+    private int first;
+
+    // Whether the windows were planned since the agents last moved
+    private boolean planned;
+
+    /**
+     * @param grid   grid the agents move on
+     * @param window number of time steps every agent plans ahead
+     */
+    public CooperativePlanner(Grid grid, int window) {
+        this(grid.getMap(), window);
+    }
+
+    /**
+     * @param map    grid map the agents move on
+     * @param window number of time steps every agent plans ahead
+     */
+    public CooperativePlanner(GridMap map, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be at least one step, was " + window);
+        }
+        this.map = map;
+        this.window = window;
+    }
+
+    /**
+     * Adds an agent, which is planned after the agents added before it until the priorities rotate.
+     * An agent which can't reach its goal keeps out of the others' way, and the agents never finish.
+     *
+     * @param start index of the free cell the agent stands on
+     * @param goal  index of the free cell the agent heads for
+     * @return id of the agent
+     * @throws IllegalArgumentException if a cell is out of the map or an obstacle,
+     *                                  or another agent stands on the start or heads for the goal
+     */
+    public int addAgent(int start, int goal) {
+        checkCell(start);
+        checkCell(goal);
+        for (Agent agent : agents) {
+            if (agent.position == start) {
+                throw new IllegalArgumentException("Another agent stands on cell " + start);
+            }
+            if (agent.goal == goal) {
+                throw new IllegalArgumentException("Another agent heads for cell " + goal);
+            }
+        }
+        Agent agent = new Agent(agents.size(), start, goal, new TrueDistance(map, goal, start), window);
+        agents.add(agent);
+        planned = false;
+        return agent.id;
+    }
+
+    public int getAgentCount() {
+        return agents.size();
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * @return time step the agents are at, 0 before they moved
+     */
+    public int getTime() {
+        return time;
+    }
+
+    /**
+     * @param agent id of the agent
+     * @return index of the cell the agent stands on
+     */
+    public int getPosition(int agent) {
+        return agents.get(agent).position;
+    }
+
+    /**
+     * @param agent id of the agent
+     * @return index of the cell the agent stands on at every time step so far, its start first
+     */
+    public int[] getPath(int agent) {
+        Agent state = agents.get(agent);
+        return Arrays.copyOf(state.history, state.historyLength);
+    }
+
+    /**
+     * @return true if every agent stands on its goal
+     */
+    public boolean isFinished() {
+        for (Agent agent : agents) {
+            if (agent.position != agent.goal) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Plans the next window of every agent
+     *
+     * @param executor executor planning the groups of agents which can't meet in parallel,
+     *                 null to plan every agent on the calling thread
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the groups
+     */
+    public void replan(ExecutorService executor) throws InterruptedException {
+        int count = agents.size();
+        // Every agent reserves its window and its cell on the step after the current one,
+        // released reservations of agents planned again keep their slots, so there is room for twice as many
+        int capacity = count * (window + 2) * 2;
+        if (reservations == null || reservations.getCapacity() < capacity * 2) {
+            reservations = new ReservationTable(capacity);
+        } else {
+            reservations.clear();
+        }
+
+        // Agents planned later keep their cells for a step, so they can always wait if boxed in
+        for (Agent agent : agents) {
+            reservations.reserve(agent.position, time, agent.id);
+            reservations.reserve(agent.position, time + 1, agent.id);
+        }
+
+        int[] order = new int[count];
+        for (int rank = 0; rank < count; rank++) {
+            order[rank] = (first + rank) % count;
+        }
+        List<int[]> groups = group(order);
+        if (executor == null) {
+            for (int[] group : groups) {
+                plan(group);
+            }
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (final int[] group : groups) {
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        plan(group);
+                        return null;
+                    }
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        }
+        planned = true;
+    }
+
+    /**
+     * Moves every agent along its planned window and rotates the priorities
+     *
+     * @param steps number of time steps to move, at most the window
+     * @throws IllegalStateException if the agents were not planned since they last moved
+     */
+    public void advance(int steps) {
+        if (!planned) {
+            throw new IllegalStateException("The agents must be planned before they move");
+        }
+        if (steps < 1 || steps > window) {
+            throw new IllegalArgumentException("Steps must be between 1 and " + window + ", was " + steps);
+        }
+        for (Agent agent : agents) {
+            for (int step = 1; step <= steps; step++) {
+                agent.append(agent.window[step]);
+            }
+            agent.position = agent.window[steps];
+        }
+        time += steps;
+        if (!agents.isEmpty()) {
+            first = (first + 1) % agents.size();
+        }
+        planned = false;
+    }
+
+    /**
+     * Plans and moves the agents half a window at a time until every one stands on its goal
+     *
+     * @param maxTime  time step to give up at
+     * @param executor executor planning the groups of agents in parallel, null to plan on the calling thread
+     * @return the path of every agent by id, see getPath
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the groups
+     */
+    public int[][] solve(int maxTime, ExecutorService executor) throws InterruptedException {
+        int stride = Math.max(1, window / 2);
+        while (!isFinished() && time < maxTime) {
+            replan(executor);
+            advance(Math.min(stride, maxTime - time));
+        }
+        int[][] paths = new int[agents.size()][];
+        for (int agent = 0; agent < paths.length; agent++) {
+            paths[agent] = getPath(agent);
+        }
+        return paths;
+    }
+
+    /**
+     * Counts the collisions between paths: two agents on one cell at the same
+     * time step, or two agents swapping cells. An agent stays on the last cell
+     * of its path once it ends.
+     *
+     * @param paths cells of every agent by time step
+     * @return number of collisions
+     */
+    public static int countConflicts(int[][] paths) {
+        int length = 0;
+        for (int[] path : paths) {
+            length = Math.max(length, path.length);
+        }
+        int conflicts = 0;
+        Map<Integer, Integer> holders = new HashMap<Integer, Integer>();
+        for (int time = 0; time < length; time++) {
+            holders.clear();
+            for (int agent = 0; agent < paths.length; agent++) {
+                if (holders.put(cellAt(paths[agent], time), agent) != null) {
+                    conflicts++;
+                }
+            }
+            if (time + 1 == length) {
+                break;
+            }
+            for (int agent = 0; agent < paths.length; agent++) {
+                int from = cellAt(paths[agent], time);
+                int to = cellAt(paths[agent], time + 1);
+                Integer other = holders.get(to);
+                if (from != to && other != null && other > agent && cellAt(paths[other], time + 1) == from) {
+                    conflicts++;
+                }
+            }
+        }
+        return conflicts;
+    }
+
+    private static int cellAt(int[] path, int time) {
+        return path[Math.min(time, path.length - 1)];
+    }
+
+    /**
+     * Plans the agents one after the other with a borrowed window search. An agent
+     * boxed in before the end of its window would have to wait on cells the agents
+     * before it pass through, so it is moved to the front and the agents are planned
+     * again. Planned first it can always wait, as nobody else reserved its cell.
+     * When the agents keep boxing each other in, every agent is planned in the last
+     * order tried and the ones boxed in wait where they got to.
+     *
+     * @param ids ids of the agents in priority order, reordered when an agent is boxed in
+     */
+    private void plan(int[] ids) {
+        WindowSearch search = searches.poll();
+        if (search == null) {
+            search = new WindowSearch();
+        }
+        try {
+            for (int attempt = 0; attempt < ids.length; attempt++) {
+                int boxedIn = planInOrder(search, ids, true);
+                if (boxedIn == -1) {
+                    return;
+                }
+                for (int rank = 0; rank <= boxedIn; rank++) {
+                    release(agents.get(ids[rank]));
+                }
+                int id = ids[boxedIn];
+                System.arraycopy(ids, 0, ids, 1, boxedIn);
+                ids[0] = id;
+            }
+            planInOrder(search, ids, false);
+        } finally {
+            searches.offer(search);
+        }
+    }
+
+    /**
+     * Plans and reserves the windows of the agents. The agent planned first waits
+     * where it got to if it is boxed in, moving it to the front would change nothing.
+     *
+     * @param ids             ids of the agents in priority order
+     * @param stopWhenBoxedIn whether to stop at the first agent after the first one which is boxed in
+     * @return the rank of the agent it stopped at, -1 if every agent was planned
+     */
+    private int planInOrder(WindowSearch search, int[] ids, boolean stopWhenBoxedIn) {
+        for (int rank = 0; rank < ids.length; rank++) {
+            Agent agent = agents.get(ids[rank]);
+            int depth = search.search(map, reservations, agent.id, agent.position, agent.distance, time, agent.window);
+            for (int step = 0; step <= window; step++) {
+                reservations.reserve(agent.window[step], time + step, agent.id);
+            }
+            if (stopWhenBoxedIn && depth < window && rank > 0) {
+                return rank;
+            }
+        }
+        return -1;
+    }
+
+    // Releases the window of an agent, except for the cell it keeps for the current step and the next one
+    private void release(Agent agent) {
+        for (int step = 1; step <= window; step++) {
+            if (step > 1 || agent.window[step] != agent.position) {
+                reservations.release(agent.window[step], time + step, agent.id);
+            }
+        }
+    }
+
+    /**
+     * Splits the agents into groups which can't meet within a window, two agents can
+     * only meet when they stand at most two windows and a swap apart
+     *
+     * @param order ids of the agents in priority order
+     * @return ids of the agents of every group, each in priority order
+     */
+    private List<int[]> group(int[] order) {
+        int count = order.length;
+        int width = map.getWidth();
+        int reach = 2 * window + 1;
+        int[] parents = new int[count];
+        for (int i = 0; i < count; i++) {
+            parents[i] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            int from = agents.get(i).position;
+            for (int j = i + 1; j < count; j++) {
+                int to = agents.get(j).position;
+                if (Math.abs(from % width - to % width) <= reach && Math.abs(from / width - to / width) <= reach) {
+                    parents[find(parents, i)] = find(parents, j);
+                }
+            }
+        }
+
+        int[] sizes = new int[count];
+        for (int id : order) {
+            sizes[find(parents, id)]++;
+        }
+        int[][] byRoot = new int[count][];
+        int[] filled = new int[count];
+        List<int[]> groups = new ArrayList<int[]>();
+        for (int id : order) {
+            int root = find(parents, id);
+            if (byRoot[root] == null) {
+                byRoot[root] = new int[sizes[root]];
+                groups.add(byRoot[root]);
+            }
+            byRoot[root][filled[root]++] = id;
+        }
+        return groups;
+    }
+
+    private static int find(int[] parents, int id) {
+        while (parents[id] != id) {
+            parents[id] = parents[parents[id]];
+            id = parents[id];
+        }
+        return id;
+    }
+
+    private void checkCell(int cell) {
+        if (cell < 0 || cell >= map.getWidth() * map.getHeight() || map.isObstacle(cell)) {
+            throw new IllegalArgumentException("Cell " + cell + " is not a free cell of the map");
+        }
+    }
+
+    /**
+     * Agent is the state of one agent between replans
+     */
+    private static class Agent {
+        private final int id;
+        private final int goal;
+        private final TrueDistance distance;
+
+        // Cells of the planned window by time step, the current cell first
+        private final int[] window;
+
+        private int position;
+        private int[] history = new int[16];
+        private int historyLength;
+
+        Agent(int id, int start, int goal, TrueDistance distance, int window) {
+            this.id = id;
+            this.position = start;
+            this.goal = goal;
+            this.distance = distance;
+            this.window = new int[window + 1];
+            append(start);
+        }
+
+        void append(int cell) {
+            if (historyLength == history.length) {
+                history = Arrays.copyOf(history, historyLength * 2);
+            }
+            history[historyLength++] = cell;
+        }
+    }
+}
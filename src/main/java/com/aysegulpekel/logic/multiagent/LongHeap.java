@@ -0,0 +1,60 @@
+package com.aysegulpekel.logic.multiagent;
+
+import java.util.Arrays;
+
+/**
+ * LongHeap is a binary min-heap of plain longs. The searches pack the f score
+ * into the high half and the node into the low half, and skip the entries of
+ * nodes closed meanwhile instead of updating them.
+ */
+class LongHeap {
+
+    private long[] heap = new long[64];
+    private int size;
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void push(long value) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        int position = size++;
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = value;
+    }
+
+    long pop() {
+        long root = heap[0];
+        long last = heap[--size];
+        int position = 0;
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (last <= heap[child]) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = last;
+        return root;
+    }
+}
@@ -0,0 +1,165 @@
+package com.aysegulpekel.logic.multiagent;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ReservationTable records which agent holds a cell at a time step.
+ * <p>
+ * A reservation is a slot of an open addressing table keyed by time and
+ * cell, so the table costs 12 bytes a slot whatever the size of the map.
+ * Keys and holders are claimed with compare and set, so agents whose
+ * windows don't interact can reserve from several threads at once.
+ * A released reservation keeps its slot, clear empties the table.
+ */
+public class ReservationTable {
+
+    // Holder of a slot nobody reserved
+    public static final int FREE = -1;
+
+    // Key of a slot never used
+    private static final long EMPTY = -1;
+
+    private final AtomicLongArray keys;
+    private final AtomicIntegerArray holders;
+    private final int mask;
+    private final int shift;
+
+    /**
+     * @param capacity number of reservations the table must hold, it is sized for twice as many
+     */
+    public ReservationTable(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(capacity, 8) * 2 - 1) << 1;
+        this.keys = new AtomicLongArray(slots);
+        this.holders = new AtomicIntegerArray(slots);
+        this.mask = slots - 1;
+        this.shift = 64 - Integer.numberOfTrailingZeros(slots);
+        clear();
+    }
+
+    public int getCapacity() {
+        return keys.length();
+    }
+
+    /**
+     * Drops every reservation, no other thread may use the table meanwhile
+     */
+    public void clear() {
+        for (int slot = 0; slot < keys.length(); slot++) {
+            keys.set(slot, EMPTY);
+            holders.set(slot, FREE);
+        }
+    }
+
+    /**
+     * @param cell  index of a cell
+     * @param time  time step
+     * @param agent id of the agent
+     * @return true if the agent holds the cell at the time now, false if another agent does
+     * @throws IllegalStateException if the table is full
+     */
+    public boolean reserve(int cell, int time, int agent) {
+        int slot = claim(key(cell, time));
+        return holders.compareAndSet(slot, FREE, agent) || holders.get(slot) == agent;
+    }
+
+    /**
+     * Gives a cell up at a time step, if the agent holds it
+     *
+     * @param cell  index of a cell
+     * @param time  time step
+     * @param agent id of the agent
+     */
+    public void release(int cell, int time, int agent) {
+        long key = key(cell, time);
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            long current = keys.get(slot);
+            if (current == key) {
+                holders.compareAndSet(slot, agent, FREE);
+                return;
+            }
+            if (current == EMPTY) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param cell index of a cell
+     * @param time time step
+     * @return id of the agent holding the cell at the time, FREE if none
+     */
+    public int getHolder(int cell, int time) {
+        long key = key(cell, time);
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            long current = keys.get(slot);
+            if (current == key) {
+                return holders.get(slot);
+            }
+            if (current == EMPTY) {
+                return FREE;
+            }
+        }
+    }
+
+    /**
+     * @param cell  index of a cell
+     * @param time  time step
+     * @param agent id of the agent
+     * @return true if no other agent holds the cell at the time
+     */
+    public boolean isFree(int cell, int time, int agent) {
+        int holder = getHolder(cell, time);
+        return holder == FREE || holder == agent;
+    }
+
+    /**
+     * Checks both conflicts of a move: another agent in the target cell
+     * when the move ends, or another agent coming the other way
+     *
+     * @param from  cell the agent moves from
+     * @param to    cell the agent moves to, the same as from to wait
+     * @param time  time step the move starts at
+     * @param agent id of the agent
+     * @return true if the move conflicts with no reservation of another agent
+     */
+    public boolean canMove(int from, int to, int time, int agent) {
+        if (!isFree(to, time + 1, agent)) {
+            return false;
+        }
+        if (from == to) {
+            return true;
+        }
+        int oncoming = getHolder(to, time);
+        return oncoming == FREE || oncoming == agent || getHolder(from, time + 1) != oncoming;
+    }
+
+    // Finds the slot of a key, taking an empty one if the key isn't in the table yet
+    private int claim(long key) {
+        int slot = slot(key);
+        for (int probes = 0; probes <= mask; probes++, slot = (slot + 1) & mask) {
+            long current = keys.get(slot);
+            if (current == key) {
+                return slot;
+            }
+            if (current == EMPTY) {
+                if (keys.compareAndSet(slot, EMPTY, key)) {
+                    return slot;
+                }
+                // Another thread took the slot first, it may have taken it for the same key
+                if (keys.get(slot) == key) {
+                    return slot;
+                }
+            }
+        }
+        throw new IllegalStateException("Reservation table is full at " + keys.length() + " slots");
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift) & mask;
+    }
+
+    private static long key(int cell, int time) {
+        return (long) time << 32 | cell;
+    }
+}
@@ -0,0 +1,88 @@
+package com.aysegulpekel.logic.multiagent;
+
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridMap;
+import com.aysegulpekel.logic.Heuristic;
+
+/**
+ * TrueDistance answers the cost of the shortest path from any cell to one goal,
+ * ignoring the other agents. It is a reverse resumable A*: an A* from the goal
+ * towards the agent's start, which is resumed whenever a cell it did not close
+ * yet is asked for. A backward step from a cell to its neighbour costs what
+ * the forward move from the neighbour into the cell costs, so the costs found
+ * backwards are the costs of going forwards on weighted maps too.
+ * <p>
+ * Only the cells the search reached are stored, one agent uses it at a time.
+ */
+class TrueDistance {
+
+    // Distance of a cell which can't reach the goal
+    static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final GridMap map;
+    private final int goal;
+    private final int origin;
+
+    // Cost from the goal by cell, shifted left once with the lowest bit set once the cell is closed
+    private final LongIntMap costs = new LongIntMap();
+    private final LongHeap openSet = new LongHeap();
+
+    /**
+     * @param map    grid map the agent moves on
+     * @param goal   index of the agent's goal
+     * @param origin index of the cell the search heads for, the agent's start
+     */
+    TrueDistance(GridMap map, int goal, int origin) {
+        this.map = map;
+        this.goal = goal;
+        this.origin = origin;
+        costs.put(goal, 0);
+        openSet.push((long) Heuristic.OCTILE.estimate(map, goal, origin) << 32 | goal);
+    }
+
+    int getGoal() {
+        return goal;
+    }
+
+    /**
+     * @param cell index of a free cell
+     * @return cost of the cheapest path from the cell to the goal, UNREACHABLE if there is none
+     */
+    int distance(int cell) {
+        int value = costs.get(cell);
+        if (value != LongIntMap.MISSING && (value & 1) != 0) {
+            return value >>> 1;
+        }
+
+        int width = map.getWidth();
+        while (!openSet.isEmpty()) {
+            int current = (int) openSet.pop();
+            int currentValue = costs.get(current);
+            if ((currentValue & 1) != 0) {
+                continue;
+            }
+            costs.put(current, currentValue | 1);
+            int cost = currentValue >>> 1;
+            int cellCost = map.isWeighted() ? map.getCost(current) : 1;
+
+            int mask = map.getNeighbourMask(current);
+            while (mask != 0) {
+                int direction = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                int neighbor = current + Directions.offset(direction, width);
+                int neighborCost = cost + Directions.cost(direction) * cellCost;
+                int neighborValue = costs.get(neighbor);
+                if (neighborValue == LongIntMap.MISSING
+                        || ((neighborValue & 1) == 0 && neighborCost < neighborValue >>> 1)) {
+                    costs.put(neighbor, neighborCost << 1);
+                    openSet.push((long) (neighborCost + Heuristic.OCTILE.estimate(map, neighbor, origin)) << 32
+                            | neighbor);
+                }
+            }
+            if (current == cell) {
+                return cost;
+            }
+        }
+        return UNREACHABLE;
+    }
+}
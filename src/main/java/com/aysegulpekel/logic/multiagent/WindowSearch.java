@@ -0,0 +1,151 @@
+package com.aysegulpekel.logic.multiagent;
+
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridMap;
+
+import java.util.Arrays;
+
+/**
+ * WindowSearch is the space-time A* of one agent over the next window of time steps.
+ * A node is a cell at a time step, the agent moves to a neighbour or waits on each step.
+ * Moves into another agent's reservation are left out, and the search ends at the first
+ * node a window deep, scored by the true distance left to the goal.
+ * On weighted maps a move costs what it costs in AStar, waiting always costs the same.
+ * An agent which can't reach its goal at all still plans its window, scored by cost
+ * alone, so it waits where it stands or steps aside for the others.
+ * <p>
+ * Its node arrays are reused by the next search, so one thread uses it at a time.
+ */
+class WindowSearch {
+
+    // Waiting costs like a straight move, except on the goal where the agent is meant to stay
+    private static final int WAIT_COST = Directions.STRAIGHT_COST;
+
+    // Node by time step in the high half and cell in the low half
+    private final LongIntMap nodes = new LongIntMap();
+    private final LongHeap openSet = new LongHeap();
+
+    private int[] nodeCells = new int[64];
+    private int[] nodeTimes = new int[64];
+    private int[] nodeCosts = new int[64];
+    private int[] nodeParents = new int[64];
+    private boolean[] closed = new boolean[64];
+    private int nodeCount;
+
+    // The query being searched
+    private ReservationTable reservations;
+    private TrueDistance distance;
+    private boolean reachable;
+    private int agent;
+    private int startTime;
+
+    /**
+     * Searches the agent's moves over the window and writes the cell of every time step into the path.
+     * If no move sequence lasts the whole window, the agent goes as deep as it can and waits there.
+     *
+     * @param map          grid map the agents move on
+     * @param reservations reservations of the agents planned before
+     * @param agent        id of the agent
+     * @param start        cell of the agent at the start time
+     * @param distance     true distance to the agent's goal
+     * @param startTime    time step the window starts at
+     * @param path         receives the cells from the start time on, its length is the window plus one
+     * @return the number of steps the agent could move for, the window unless it is boxed in
+     */
+    int search(GridMap map, ReservationTable reservations, int agent, int start, TrueDistance distance,
+                int startTime, int[] path) {
+        int window = path.length - 1;
+        int startDistance = distance.distance(start);
+        this.reservations = reservations;
+        this.distance = distance;
+        this.reachable = startDistance != TrueDistance.UNREACHABLE;
+        this.agent = agent;
+        this.startTime = startTime;
+        nodes.clear();
+        openSet.clear();
+        nodeCount = 0;
+
+        int width = map.getWidth();
+        boolean weighted = map.isWeighted();
+        int goal = distance.getGoal();
+        int deepest = add(start, 0, 0, -1);
+        openSet.push((long) (reachable ? startDistance : 0) << 32 | deepest);
+        while (!openSet.isEmpty()) {
+            int node = (int) openSet.pop();
+            if (closed[node]) {
+                continue;
+            }
+            closed[node] = true;
+
+            // The first node popped at a time step scores lowest of its step
+            int time = nodeTimes[node];
+            if (time > nodeTimes[deepest]) {
+                deepest = node;
+            }
+            if (time == window) {
+                break;
+            }
+
+            int cell = nodeCells[node];
+            int cost = nodeCosts[node];
+            relax(node, cell, cost + (cell == goal ? 0 : WAIT_COST));
+            int mask = map.getNeighbourMask(cell);
+            while (mask != 0) {
+                int direction = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+                int neighbor = cell + Directions.offset(direction, width);
+                relax(node, neighbor, cost + Directions.cost(direction) * (weighted ? map.getCost(neighbor) : 1));
+            }
+        }
+
+        // Walk back from the deepest node and wait on its cell for the rest of the window
+        int depth = nodeTimes[deepest];
+        Arrays.fill(path, depth, path.length, nodeCells[deepest]);
+        for (int node = deepest; node != -1; node = nodeParents[node]) {
+            path[nodeTimes[node]] = nodeCells[node];
+        }
+        return depth;
+    }
+
+    private void relax(int parent, int cell, int cost) {
+        int time = nodeTimes[parent] + 1;
+        if (!reservations.canMove(nodeCells[parent], cell, startTime + time - 1, agent)) {
+            return;
+        }
+        int remaining = reachable ? distance.distance(cell) : 0;
+        if (remaining == TrueDistance.UNREACHABLE) {
+            return;
+        }
+
+        long key = (long) time << 32 | cell;
+        int node = nodes.get(key);
+        if (node == LongIntMap.MISSING) {
+            node = add(cell, time, cost, parent);
+        } else if (closed[node] || cost >= nodeCosts[node]) {
+            return;
+        } else {
+            nodeCosts[node] = cost;
+            nodeParents[node] = parent;
+        }
+        openSet.push((long) (cost + remaining) << 32 | node);
+    }
+
+    private int add(int cell, int time, int cost, int parent) {
+        if (nodeCount == nodeCells.length) {
+            int capacity = nodeCount * 2;
+            nodeCells = Arrays.copyOf(nodeCells, capacity);
+            nodeTimes = Arrays.copyOf(nodeTimes, capacity);
+            nodeCosts = Arrays.copyOf(nodeCosts, capacity);
+            nodeParents = Arrays.copyOf(nodeParents, capacity);
+            closed = Arrays.copyOf(closed, capacity);
+        }
+        int node = nodeCount++;
+        nodeCells[node] = cell;
+        nodeTimes[node] = time;
+        nodeCosts[node] = cost;
+        nodeParents[node] = parent;
+        closed[node] = false;
+        nodes.put((long) time << 32 | cell, node);
+        return node;
+    }
+}
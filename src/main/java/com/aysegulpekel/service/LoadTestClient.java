@@ -0,0 +1,217 @@
+package com.aysegulpekel.service;
+
+import com.aysegulpekel.logic.Histogram;
+import com.aysegulpekel.logic.PathResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoadTestClient sends random path queries to a PathServer socket and reports
+ * the throughput and the latency percentiles.
+ * <p>
+ * Every connection keeps a fixed number of queries in flight: a writer thread
+ * sends a query whenever an answer frees a slot, and a reader thread takes
+ * the answers. The latency is measured from sending a query to reading its answer.
+ * A query turned away as BUSY is counted and its slot backs off for a moment.
+ */
+public class LoadTestClient {
+
+    // Pause before a slot whose query found the server busy sends again
+    private static final long BUSY_BACKOFF_MILLIS = 1;
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int inFlight;
+
+    private final Histogram latencyNanos = new Histogram();
+    private final LongAdder[] statuses = new LongAdder[PathResult.Status.values().length];
+    private final LongAdder busy = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+
+    private volatile boolean running;
+
+    /**
+     * @param host        host of the server
+     * @param port        socket port of the server
+     * @param connections number of connections sending queries at once
+     * @param inFlight    number of queries each connection keeps in flight
+     */
+    public LoadTestClient(String host, int port, int connections, int inFlight) {
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.inFlight = inFlight;
+        for (int i = 0; i < statuses.length; i++) {
+            statuses[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Sends queries for a while and waits for the answers still in flight
+     *
+     * @param duration time to send queries for
+     * @param unit     unit of the duration
+     * @param seed     seed of the random endpoints
+     * @return a report of the throughput and the latencies
+     * @throws IOException          if the server can't be reached
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public String run(long duration, TimeUnit unit, long seed) throws IOException, InterruptedException {
+        running = true;
+        List<Thread> threads = new ArrayList<Thread>();
+        List<Socket> sockets = new ArrayList<Socket>();
+        for (int i = 0; i < connections; i++) {
+            Socket socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            sockets.add(socket);
+            threads.addAll(connect(socket, new Random(seed + i)));
+        }
+
+        long startNanos = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(unit.toMillis(duration));
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+
+        long answered = latencyNanos.getCount();
+        StringBuilder report = new StringBuilder();
+        report.append("answered=").append(answered)
+                .append(" throughput=").append(answered * 1000000000L / elapsedNanos).append("/s")
+                .append(" busy=").append(busy.sum())
+                .append(" invalid=").append(invalid.sum());
+        for (PathResult.Status status : PathResult.Status.values()) {
+            report.append(' ').append(status.name().toLowerCase()).append('=').append(statuses[status.ordinal()].sum());
+        }
+        report.append(" latency p50=").append(latencyNanos.getPercentile(50) / 1000).append("us")
+                .append(" p99=").append(latencyNanos.getPercentile(99) / 1000).append("us")
+                .append(" p99.9=").append(latencyNanos.getPercentile(99.9) / 1000).append("us");
+        return report.toString();
+    }
+
+    // Creates the writer and the reader thread of one connection, the query ids are the slots in flight
+    private List<Thread> connect(Socket socket, final Random random) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        final int cells = in.readInt() * in.readInt();
+
+        final BlockingQueue<Integer> freeSlots = new ArrayBlockingQueue<Integer>(inFlight);
+        for (int slot = 0; slot < inFlight; slot++) {
+            freeSlots.add(slot);
+        }
+        final AtomicLongArray sentNanos = new AtomicLongArray(inFlight);
+        // Slots whose last query was turned away, the writer backs off before reusing them
+        final boolean[] turnedAway = new boolean[inFlight];
+
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (running) {
+                        Integer slot = freeSlots.poll(100, TimeUnit.MILLISECONDS);
+                        if (slot == null) {
+                            continue;
+                        }
+                        if (turnedAway[slot]) {
+                            turnedAway[slot] = false;
+                            out.flush();
+                            Thread.sleep(BUSY_BACKOFF_MILLIS);
+                        }
+                        sentNanos.set(slot, System.nanoTime());
+                        PathProtocol.writeRequest(out, slot, random.nextInt(cells), random.nextInt(cells));
+                        // Sends at once when nothing else is ready, batches the writes under load
+                        if (freeSlots.isEmpty()) {
+                            out.flush();
+                        }
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Connection lost", e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "load-writer");
+
+        Thread reader = new Thread(new Runnable() {
+            public void run() {
+                int[] path = new int[1024];
+                try {
+                    // Reads on until every slot is free again after the writer stopped
+                    while (running || freeSlots.size() < inFlight) {
+                        PathProtocol.Response response = PathProtocol.readResponse(in, path);
+                        path = response.getPath();
+                        int slot = response.getId();
+                        PathResult.Status status = PathProtocol.status(response.getStatus());
+                        if (status != null) {
+                            latencyNanos.record(System.nanoTime() - sentNanos.get(slot));
+                            statuses[status.ordinal()].increment();
+                        } else if (response.getStatus() == PathProtocol.BUSY) {
+                            busy.increment();
+                            turnedAway[slot] = true;
+                        } else {
+                            invalid.increment();
+                        }
+                        freeSlots.add(slot);
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException("Connection lost", e);
+                }
+            }
+        }, "load-reader");
+        return Arrays.asList(writer, reader);
+    }
+
+    /**
+     * Runs a load test against a running PathServer
+     *
+     * @param args host and port of the server followed by the options
+     *             --connections n, --inflight n, --seconds n and --seed n
+     * @throws Exception if the server can't be reached
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: LoadTestClient <host> <port> [--connections n] [--inflight n]"
+                    + " [--seconds n] [--seed n]");
+            System.exit(1);
+        }
+        int connections = 4;
+        int inFlight = 64;
+        long seconds = 10;
+        long seed = 42;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            if ("--connections".equals(args[i])) {
+                connections = Integer.parseInt(args[i + 1]);
+            } else if ("--inflight".equals(args[i])) {
+                inFlight = Integer.parseInt(args[i + 1]);
+            } else if ("--seconds".equals(args[i])) {
+                seconds = Long.parseLong(args[i + 1]);
+            } else if ("--seed".equals(args[i])) {
+                seed = Long.parseLong(args[i + 1]);
+            }
+        }
+        LoadTestClient client = new LoadTestClient(args[0], Integer.parseInt(args[1]), connections, inFlight);
+        System.out.println(client.run(seconds, TimeUnit.SECONDS, seed));
+    }
+}
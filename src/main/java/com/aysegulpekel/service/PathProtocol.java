@@ -0,0 +1,123 @@
+package com.aysegulpekel.service;
+
+import com.aysegulpekel.logic.PathResult;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * PathProtocol is the binary protocol of the path server's socket, all numbers big endian.
+ * <p>
+ * On connecting, the server sends the map size: int width, int height.
+ * A request is int id, int start, int goal, with cells given by index.
+ * A response is int id, byte status, int length and length ints of path
+ * cells from start to goal. Requests may be pipelined, the responses come
+ * back in the order the searches finish, matched to the requests by id.
+ */
+public final class PathProtocol {
+
+    // Status bytes other than the ordinals of PathResult.Status
+    public static final byte BUSY = (byte) 0xFF;
+    public static final byte INVALID = (byte) 0xFE;
+
+    private static final PathResult.Status[] STATUSES = PathResult.Status.values();
+
+    private PathProtocol() {
+    }
+
+    public static void writeRequest(DataOutputStream out, int id, int start, int goal) throws IOException {
+        out.writeInt(id);
+        out.writeInt(start);
+        out.writeInt(goal);
+    }
+
+    /**
+     * @param out    stream to write to
+     * @param id     id of the request
+     * @param status ordinal of the result's status, BUSY or INVALID
+     * @param path   path cells, empty unless the path was found
+     * @throws IOException if the stream can't be written
+     */
+    public static void writeResponse(DataOutputStream out, int id, byte status, int[] path) throws IOException {
+        out.writeInt(id);
+        out.writeByte(status);
+        out.writeInt(path.length);
+        for (int cell : path) {
+            out.writeInt(cell);
+        }
+    }
+
+    /**
+     * @param status status of a result
+     * @return its status byte
+     */
+    public static byte statusByte(PathResult.Status status) {
+        return (byte) status.ordinal();
+    }
+
+    /**
+     * @param status status byte of a response
+     * @return its status, null for BUSY and INVALID
+     */
+    public static PathResult.Status status(byte status) {
+        return status >= 0 && status < STATUSES.length ? STATUSES[status] : null;
+    }
+
+    /**
+     * Reads a response into the given path buffer, growing it if needed
+     *
+     * @param in   stream to read from
+     * @param path buffer for the path cells
+     * @return the response
+     * @throws IOException if the stream can't be read
+     */
+    public static Response readResponse(DataInputStream in, int[] path) throws IOException {
+        int id = in.readInt();
+        byte status = in.readByte();
+        int length = in.readInt();
+        if (length > path.length) {
+            path = new int[length];
+        }
+        for (int i = 0; i < length; i++) {
+            path[i] = in.readInt();
+        }
+        return new Response(id, status, path, length);
+    }
+
+    /**
+     * Response is one answer read from the socket
+     */
+    public static class Response {
+        private final int id;
+        private final byte status;
+        private final int[] path;
+        private final int length;
+
+        Response(int id, byte status, int[] path, int length) {
+            this.id = id;
+            this.status = status;
+            this.path = path;
+            this.length = length;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public byte getStatus() {
+            return status;
+        }
+
+        /**
+         * @return buffer holding the path cells in its first getLength() elements
+         */
+        public int[] getPath() {
+            return path;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.aysegulpekel.service;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.GridMap;
+import com.aysegulpekel.io.MapFile;
+import com.aysegulpekel.io.MovingAiImporter;
+import com.aysegulpekel.logic.BatchPathfinder;
+import com.aysegulpekel.logic.PathQuery;
+import com.aysegulpekel.logic.PathResult;
+import com.aysegulpekel.logic.SearchMetrics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PathServer answers path queries on one map for other processes, without the Swing interface.
+ * <p>
+ * The map is loaded once. Queries come in over a TCP socket in the binary
+ * PathProtocol, or over HTTP as GET /path?start=..&amp;goal=.. with a JSON
+ * answer. Both go through one QueryBatcher, so concurrent queries are run
+ * in batches on the worker pool, and a full queue is answered with BUSY or
+ * HTTP 503 right away. GET /stats reports the batches and the search metrics.
+ */
+public class PathServer implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(PathServer.class);
+
+    private final GridMap map;
+    private final ExecutorService workers;
+    private final QueryBatcher batcher;
+    private final SearchMetrics metrics = new SearchMetrics();
+
+    private ServerSocket serverSocket;
+    private HttpServer httpServer;
+    private ExecutorService httpThreads;
+
+    /**
+     * @param map           map to answer the queries on, it must not change while the server runs
+     * @param workers       number of threads running the searches
+     * @param queueCapacity maximum number of queries waiting for a batch
+     * @param maxBatchSize  maximum number of queries run together
+     * @param timeoutMillis time each query may search for
+     */
+    public PathServer(GridMap map, int workers, int queueCapacity, int maxBatchSize, long timeoutMillis) {
+        this.map = map;
+        this.workers = Executors.newFixedThreadPool(workers);
+        this.batcher = new QueryBatcher(new BatchPathfinder(map, this.workers),
+                map.getWidth() * map.getHeight(), queueCapacity, maxBatchSize, timeoutMillis, TimeUnit.MILLISECONDS);
+        SearchMetrics.enable(metrics);
+    }
+
+    public QueryBatcher getBatcher() {
+        return batcher;
+    }
+
+    /**
+     * Starts accepting socket connections, each one read by its own thread.
+     * The accepting thread keeps the process alive until the server is closed.
+     *
+     * @param port port to listen on, 0 for any free port
+     * @return the port listened on
+     * @throws IOException if the port can't be bound
+     */
+    public int startSocket(int port) throws IOException {
+        serverSocket = new ServerSocket(port);
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                accept();
+            }
+        }, "path-server-accept");
+        acceptor.start();
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Starts the HTTP endpoints
+     *
+     * @param port    port to listen on, 0 for any free port
+     * @param threads number of threads waiting for the answers of HTTP requests
+     * @return the port listened on
+     * @throws IOException if the port can't be bound
+     */
+    public int startHttp(int port, int threads) throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpThreads = Executors.newFixedThreadPool(threads);
+        httpServer.setExecutor(httpThreads);
+        httpServer.createContext("/path", this::handlePath);
+        httpServer.createContext("/stats", this::handleStats);
+        httpServer.start();
+        return httpServer.getAddress().getPort();
+    }
+
+    public void close() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpThreads.shutdown();
+        }
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                LOGGER.info(e.getMessage(), e);
+            }
+        }
+        batcher.close();
+        workers.shutdown();
+        SearchMetrics.disable();
+    }
+
+    /**
+     * @return the batches and the search metrics so far
+     */
+    public String getStats() {
+        return "batches=" + batcher.getBatches() + " averageBatchSize=" + String.format("%.1f",
+                batcher.getAverageBatchSize()) + " rejected=" + batcher.getRejected()
+                + " queued=" + batcher.getQueueSize() + " " + metrics;
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                Thread reader = new Thread(new Runnable() {
+                    public void run() {
+                        serve(socket);
+                    }
+                }, "path-server-" + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    LOGGER.info(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    // Reads the requests of one connection, the answers are written by whichever thread finishes them
+    private void serve(Socket socket) {
+        try (Socket connection = socket) {
+            connection.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            synchronized (out) {
+                out.writeInt(map.getWidth());
+                out.writeInt(map.getHeight());
+                out.flush();
+            }
+
+            while (true) {
+                final int id;
+                try {
+                    id = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                int start = in.readInt();
+                int goal = in.readInt();
+
+                CompletableFuture<PathResult> future;
+                try {
+                    future = batcher.submit(new PathQuery(start, goal));
+                } catch (IllegalArgumentException e) {
+                    respond(out, id, PathProtocol.INVALID, new int[0]);
+                    continue;
+                }
+                if (future == null) {
+                    respond(out, id, PathProtocol.BUSY, new int[0]);
+                    continue;
+                }
+                future.whenComplete((result, failure) -> {
+                    try {
+                        if (result != null) {
+                            respond(out, id, PathProtocol.statusByte(result.getStatus()), result.getPath());
+                        } else {
+                            respond(out, id, PathProtocol.BUSY, new int[0]);
+                        }
+                    } catch (IOException e) {
+                        // The client is gone, its reader thread notices too
+                        LOGGER.debug(e.getMessage(), e);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            LOGGER.info(e.getMessage(), e);
+        }
+    }
+
+    private static void respond(DataOutputStream out, int id, byte status, int[] path) throws IOException {
+        synchronized (out) {
+            PathProtocol.writeResponse(out, id, status, path);
+            out.flush();
+        }
+    }
+
+    private void handlePath(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+        int start;
+        int goal;
+        try {
+            start = Integer.parseInt(parameters.get("start"));
+            goal = Integer.parseInt(parameters.get("goal"));
+        } catch (NumberFormatException e) {
+            send(exchange, 400, "{\"error\":\"start and goal cell indexes are required\"}");
+            return;
+        }
+
+        CompletableFuture<PathResult> future;
+        try {
+            future = batcher.submit(new PathQuery(start, goal));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, "{\"error\":\"cell out of the map\"}");
+            return;
+        }
+        if (future == null) {
+            send(exchange, 503, "{\"error\":\"busy\"}");
+            return;
+        }
+
+        PathResult result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, "{\"error\":\"shutting down\"}");
+            return;
+        } catch (ExecutionException e) {
+            send(exchange, 500, "{\"error\":\"search failed\"}");
+            return;
+        }
+
+        int[] path = result.getPath();
+        StringBuilder json = new StringBuilder(32 + path.length * 8);
+        json.append("{\"status\":\"").append(result.getStatus()).append("\",\"path\":[");
+        for (int i = 0; i < path.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(path[i]);
+        }
+        json.append("]}");
+        send(exchange, 200, json.toString());
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        send(exchange, 200, getStats());
+    }
+
+    private static void send(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", body.startsWith("{") ? "application/json" : "text/plain");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(pair.substring(0, equals), pair.substring(equals + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Loads a map and serves it until the process is stopped
+     *
+     * @param args map file (.map for MovingAI maps, map files otherwise) followed by the options
+     *             --tcp port, --http port, --workers n, --queue n, --batch n and --timeout millis
+     * @throws IOException if the map can't be loaded or a port can't be bound
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: PathServer <map file> [--tcp port] [--http port] [--workers n]"
+                    + " [--queue n] [--batch n] [--timeout millis]");
+            System.exit(1);
+        }
+        Map<String, String> options = new HashMap<String, String>();
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            options.put(args[i], args[i + 1]);
+        }
+        int tcpPort = Integer.parseInt(option(options, "--tcp", "7070"));
+        int httpPort = Integer.parseInt(option(options, "--http", "-1"));
+        int workers = Integer.parseInt(option(options, "--workers",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int queue = Integer.parseInt(option(options, "--queue", "4096"));
+        int batch = Integer.parseInt(option(options, "--batch", "256"));
+        long timeout = Long.parseLong(option(options, "--timeout", "1000"));
+
+        Path file = Paths.get(args[0]);
+        GridMap map;
+        if (file.toString().endsWith(".map")) {
+            CompactGrid grid = MovingAiImporter.read(file);
+            // Unreachable goals are the slowest queries, the labels answer them at once
+            grid.getComponents();
+            map = grid;
+        } else {
+            map = MapFile.open(file);
+        }
+
+        PathServer server = new PathServer(map, workers, queue, batch, timeout);
+        if (tcpPort >= 0) {
+            System.out.println("Serving " + file + " on tcp port " + server.startSocket(tcpPort));
+        }
+        if (httpPort >= 0) {
+            System.out.println("Serving " + file + " on http port " + server.startHttp(httpPort, workers * 4));
+        }
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+}
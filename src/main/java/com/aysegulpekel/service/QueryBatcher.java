@@ -0,0 +1,223 @@
+package com.aysegulpekel.service;
+
+import com.aysegulpekel.logic.BatchPathfinder;
+import com.aysegulpekel.logic.PathQuery;
+import com.aysegulpekel.logic.PathResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * QueryBatcher gathers the queries of many concurrent clients into batches.
+ * <p>
+ * Queries wait in a bounded queue. A dispatcher thread takes whatever has
+ * queued up, up to the batch size, and hands each query to the batch
+ * pathfinder's workers on its own. At most the batch size of queries run at
+ * once, and a query starts as soon as any running one finishes, so a slow
+ * query never holds back the ones queued behind it. The batches grow with
+ * the load and a lone query doesn't wait for company.
+ * <p>
+ * A full queue turns queries away instead of letting them pile up, the
+ * callers pass the refusal on to their clients, which should back off.
+ */
+public class QueryBatcher implements AutoCloseable {
+
+    private final BatchPathfinder pathfinder;
+    private final int cells;
+    private final int maxBatchSize;
+    private final long timeoutNanos;
+
+    private final BlockingQueue<Pending> queue;
+    private final Thread dispatcher;
+
+    // A permit per query running, taken by the dispatcher and given back when the query finishes
+    private final Semaphore running;
+
+    // Queries handed to the workers and not finished yet, cancelled on close
+    private final Set<Pending> started = Collections.newSetFromMap(new ConcurrentHashMap<Pending, Boolean>());
+    private volatile boolean closed;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedQueries = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Pending is a queued query and the future its result goes to
+     */
+    private static class Pending {
+        final PathQuery query;
+        final CompletableFuture<PathResult> result = new CompletableFuture<PathResult>();
+
+        Pending(PathQuery query) {
+            this.query = query;
+        }
+    }
+
+    /**
+     * @param pathfinder    batch pathfinder running the queries, it is not shut down by the batcher
+     * @param cells         number of cells of the pathfinder's map, queries outside of it are refused
+     * @param queueCapacity maximum number of waiting queries
+     * @param maxBatchSize  maximum number of queries run together
+     * @param timeout       time each query may search for
+     * @param unit          unit of the timeout
+     */
+    public QueryBatcher(BatchPathfinder pathfinder, int cells, int queueCapacity, int maxBatchSize,
+                        long timeout, TimeUnit unit) {
+        if (queueCapacity <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Invalid queue capacity " + queueCapacity
+                    + " or batch size " + maxBatchSize);
+        }
+        this.pathfinder = pathfinder;
+        this.cells = cells;
+        this.maxBatchSize = maxBatchSize;
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.queue = new ArrayBlockingQueue<Pending>(queueCapacity);
+        this.running = new Semaphore(maxBatchSize);
+        this.dispatcher = new Thread(new Runnable() {
+            public void run() {
+                dispatch();
+            }
+        }, "query-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queues a query unless the queue is full
+     *
+     * @param query query to run
+     * @return future of the result, or null if the queue is full and the client should retry later
+     * @throws IllegalArgumentException if a cell of the query is outside of the map
+     * @throws IllegalStateException    if the batcher is closed
+     */
+    public CompletableFuture<PathResult> submit(PathQuery query) {
+        if (query.getStart() < 0 || query.getStart() >= cells || query.getGoal() < 0 || query.getGoal() >= cells) {
+            throw new IllegalArgumentException("Cell out of the map: " + query);
+        }
+        if (closed) {
+            throw new IllegalStateException("Batcher is closed");
+        }
+        Pending pending = new Pending(query);
+        if (!queue.offer(pending)) {
+            rejected.increment();
+            return null;
+        }
+        return pending.result;
+    }
+
+    /**
+     * @return number of batches run so far
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return average number of queries per batch
+     */
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) batchedQueries.sum() / count;
+    }
+
+    /**
+     * @return number of queries turned away by a full queue
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return number of queries waiting for a batch
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Stops taking queries, the waiting and running ones are cancelled
+     */
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Pending pending = queue.poll(); pending != null; pending = queue.poll()) {
+            pending.result.cancel(false);
+        }
+        for (Pending pending : new ArrayList<Pending>(started)) {
+            pending.result.cancel(false);
+        }
+    }
+
+    private void dispatch() {
+        List<Pending> batch = new ArrayList<Pending>(maxBatchSize);
+        try {
+            while (!closed) {
+                // A batch takes the queued queries there is room for, at least one
+                running.acquire();
+                batch.add(queue.take());
+                while (batch.size() < maxBatchSize && running.tryAcquire()) {
+                    Pending next = queue.poll();
+                    if (next == null) {
+                        running.release();
+                        break;
+                    }
+                    batch.add(next);
+                }
+                batches.increment();
+                batchedQueries.add(batch.size());
+
+                for (Pending pending : batch) {
+                    start(pending);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Closed while waiting, the batch taken so far never started
+            for (Pending pending : batch) {
+                pending.result.cancel(false);
+            }
+        }
+    }
+
+    // Runs a query holding a permit, the permit is given back once it finishes
+    private void start(Pending pending) {
+        CompletableFuture<PathResult> search;
+        try {
+            search = pathfinder.submit(pending.query, timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (RuntimeException e) {
+            running.release();
+            pending.result.completeExceptionally(e);
+            return;
+        }
+        started.add(pending);
+        search.whenComplete((result, error) -> {
+            started.remove(pending);
+            running.release();
+            if (error != null) {
+                pending.result.completeExceptionally(error);
+            } else {
+                pending.result.complete(result);
+            }
+        });
+        // A client giving up, or the batcher closing, stops the search
+        pending.result.whenComplete((result, error) -> {
+            if (pending.result.isCancelled()) {
+                search.cancel(false);
+            }
+        });
+    }
+}
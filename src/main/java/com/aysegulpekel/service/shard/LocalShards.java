@@ -0,0 +1,119 @@
+package com.aysegulpekel.service.shard;
+
+import com.aysegulpekel.io.MapFile;
+import com.aysegulpekel.io.MappedGrid;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * LocalShards splits a map file into a grid of shards and starts a worker
+ * process for each on this machine, so a map too large for one heap can be
+ * planned on without another host. The workers run on the same class path
+ * as the caller, every one with the given JVM options, and are stopped on close.
+ */
+public class LocalShards implements AutoCloseable {
+
+    private final List<Process> processes = new ArrayList<Process>();
+    private final List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+
+    /**
+     * Starts the workers and waits until every one has built its shard
+     *
+     * @param mapFile    map file written by MapFile
+     * @param columns    number of shards across the map
+     * @param rows       number of shards down the map
+     * @param jvmOptions options of every worker's JVM, such as -Xmx512m
+     * @throws IOException if the map can't be read or a worker fails to start
+     */
+    public LocalShards(Path mapFile, int columns, int rows, String... jvmOptions) throws IOException {
+        MappedGrid map = MapFile.open(mapFile);
+        int width = map.getWidth();
+        int height = map.getHeight();
+        if (columns <= 0 || rows <= 0 || columns > width || rows > height) {
+            throw new IllegalArgumentException("Can't split a " + width + "x" + height + " map into "
+                    + columns + "x" + rows + " shards");
+        }
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        try {
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    int left = width * column / columns;
+                    int top = height * row / rows;
+                    List<String> command = new ArrayList<String>();
+                    command.add(java);
+                    command.addAll(Arrays.asList(jvmOptions));
+                    command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"),
+                            ShardWorker.class.getName(), mapFile.toString(),
+                            String.valueOf(left), String.valueOf(top),
+                            String.valueOf(width * (column + 1) / columns - left),
+                            String.valueOf(height * (row + 1) / rows - top)));
+                    processes.add(new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start());
+                }
+            }
+            // The workers build their shards at the same time, the ports come in as they finish
+            for (Process process : processes) {
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), readPort(process)));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return addresses of the workers, row by row
+     */
+    public List<InetSocketAddress> getAddresses() {
+        return Collections.unmodifiableList(addresses);
+    }
+
+    /**
+     * @return a new coordinator connected to the workers
+     * @throws IOException if a worker can't be reached
+     */
+    public ShardCoordinator connect() throws IOException {
+        return new ShardCoordinator(addresses);
+    }
+
+    /**
+     * Stops the workers and waits for them to exit
+     */
+    public void close() {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Reads the worker's output up to the line announcing its port
+    private static int readPort(Process process) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("READY ")) {
+                return Integer.parseInt(line.substring("READY ".length()).trim());
+            }
+        }
+        throw new IOException("Shard worker exited before it was ready");
+    }
+}
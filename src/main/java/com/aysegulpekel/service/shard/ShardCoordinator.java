@@ -0,0 +1,476 @@
+package com.aysegulpekel.service.shard;
+
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.logic.IndexedHeap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ShardCoordinator plans paths on a map split between shard workers, none of which holds the whole map.
+ * <p>
+ * On connecting it fetches every shard's boundary nodes and their distances
+ * and joins them into one abstract graph, the partner nodes of neighbouring
+ * shards one straight step apart. A query links its start and goal to the
+ * nodes of their shards, searches the abstract graph and then asks the shards
+ * for the segments between consecutive nodes, stitching them into one path.
+ * Like hierarchical planning the path is near optimal rather than optimal:
+ * it crosses shard borders only at boundary nodes.
+ * <p>
+ * The workers copy the obstacles of their shards only, so the paths of a
+ * weighted map are planned as if every free cell cost 1.
+ * <p>
+ * Queries may run from any number of threads, each borrows its own connection to a worker.
+ */
+public class ShardCoordinator implements AutoCloseable {
+
+    private final int mapWidth;
+    private final int mapHeight;
+    private final Shard[] shards;
+
+    // Per node, the shard holding it, its index among the shard's nodes and its map cell
+    private final int[] nodeShard;
+    private final int[] nodeLocal;
+    private final int[] nodeCell;
+
+    // Per node, the nodes of neighbouring shards one straight step away
+    private final int[][] crossings;
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * Connects to the workers and builds the abstract graph from their boundary nodes
+     *
+     * @param workers addresses of the workers, together covering the map
+     * @throws IOException if a worker can't be reached
+     */
+    public ShardCoordinator(List<InetSocketAddress> workers) throws IOException {
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("No shard workers");
+        }
+        shards = new Shard[workers.size()];
+        int nodeCount = 0;
+        int width = 0;
+        int height = 0;
+        for (int s = 0; s < shards.length; s++) {
+            shards[s] = new Shard(workers.get(s));
+            Connection connection = shards[s].borrow();
+            try {
+                connection.out.writeByte(ShardProtocol.GRAPH);
+                connection.out.flush();
+                shards[s].readGraph(connection.in);
+            } catch (IOException e) {
+                connection.close();
+                throw e;
+            }
+            shards[s].release(connection);
+            if (s > 0 && (shards[s].mapWidth != width || shards[s].mapHeight != height)) {
+                throw new IllegalArgumentException("Worker " + workers.get(s) + " serves another map");
+            }
+            width = shards[s].mapWidth;
+            height = shards[s].mapHeight;
+            nodeCount += shards[s].nodes.length;
+        }
+        this.mapWidth = width;
+        this.mapHeight = height;
+
+        nodeShard = new int[nodeCount];
+        nodeLocal = new int[nodeCount];
+        nodeCell = new int[nodeCount];
+        Map<Integer, Integer> byCell = new HashMap<Integer, Integer>(nodeCount * 2);
+        int node = 0;
+        for (int s = 0; s < shards.length; s++) {
+            shards[s].firstNode = node;
+            for (int i = 0; i < shards[s].nodes.length; i++) {
+                nodeShard[node] = s;
+                nodeLocal[node] = i;
+                nodeCell[node] = shards[s].nodes[i];
+                byCell.put(nodeCell[node], node);
+                node++;
+            }
+        }
+
+        // A partner without a node on its side, where the shards disagree, is left out
+        crossings = new int[nodeCount][];
+        for (node = 0; node < nodeCount; node++) {
+            int[] partners = shards[nodeShard[node]].partners[nodeLocal[node]];
+            int[] across = new int[partners.length];
+            int count = 0;
+            for (int partner : partners) {
+                Integer other = byCell.get(partner);
+                if (other != null) {
+                    across[count++] = other;
+                }
+            }
+            crossings[node] = Arrays.copyOf(across, count);
+        }
+    }
+
+    public int getWidth() {
+        return mapWidth;
+    }
+
+    public int getHeight() {
+        return mapHeight;
+    }
+
+    /**
+     * @return number of boundary nodes over all shards
+     */
+    public int getNodeCount() {
+        return nodeCell.length;
+    }
+
+    /**
+     * @return number of queries planned so far
+     */
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    /**
+     * @return number of requests sent to the workers so far, GRAPH requests left out
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Plans a path across the shards
+     *
+     * @param start index of the starting cell in the whole map
+     * @param goal  index of the target cell in the whole map
+     * @return indexes of the path's cells from start to goal, empty if there is none
+     * @throws IOException if a worker can't be reached
+     */
+    public int[] findPath(int start, int goal) throws IOException {
+        queries.increment();
+        int startShard = shardOf(start);
+        int goalShard = shardOf(goal);
+        if (startShard == -1 || goalShard == -1) {
+            return new int[0];
+        }
+        boolean sameShard = startShard == goalShard;
+        if (sameShard && shards[startShard].nodes.length == 0) {
+            return segment(startShard, start, goal);
+        }
+
+        // Both links are asked for before either answer is read, so the two workers compute them at once.
+        // Distances run both ways on the grid, so the goal's link gives the distances from the nodes to it.
+        Connection startConnection = sendLink(startShard, start, sameShard ? goal : -1);
+        Connection goalConnection;
+        try {
+            goalConnection = sendLink(goalShard, goal, -1);
+        } catch (IOException e) {
+            startConnection.close();
+            throw e;
+        }
+        int[] startLink;
+        try {
+            startLink = readLink(startShard, startConnection);
+        } catch (IOException e) {
+            goalConnection.close();
+            throw e;
+        }
+        int[] goalLink = readLink(goalShard, goalConnection);
+        if (startLink == null || goalLink == null) {
+            return new int[0];
+        }
+
+        int[] route = route(goal, startShard, startLink, goalShard, goalLink, sameShard);
+        if (route == null) {
+            return new int[0];
+        }
+
+        // The route's cells are the start, the boundary nodes passed and the goal
+        int[] path = new int[64];
+        int length = 0;
+        path[length++] = start;
+        int from = start;
+        int fromShard = startShard;
+        for (int i = 1; i < route.length; i++) {
+            int to = route[i] == -1 ? goal : nodeCell[route[i]];
+            int toShard = route[i] == -1 ? goalShard : nodeShard[route[i]];
+            int[] step = fromShard == toShard ? segment(fromShard, from, to) : new int[]{from, to};
+            if (step.length == 0) {
+                return new int[0];
+            }
+            if (length + step.length > path.length) {
+                path = Arrays.copyOf(path, Math.max(path.length * 2, length + step.length));
+            }
+            System.arraycopy(step, 1, path, length, step.length - 1);
+            length += step.length - 1;
+            from = to;
+            fromShard = toShard;
+        }
+        return Arrays.copyOf(path, length);
+    }
+
+    /**
+     * Searches the abstract graph, the start and the goal taking the ids after the boundary nodes
+     *
+     * @return the nodes passed from the start to the goal, the start and the goal given as -1, or null
+     */
+    private int[] route(int goal, int startShard, int[] startLink, int goalShard, int[] goalLink,
+                        boolean sameShard) {
+        int nodeCount = nodeCell.length;
+        int startId = nodeCount;
+        int goalId = nodeCount + 1;
+        int[] gScore = new int[nodeCount + 2];
+        int[] cameFrom = new int[nodeCount + 2];
+        boolean[] closed = new boolean[nodeCount + 2];
+        Arrays.fill(gScore, Integer.MAX_VALUE);
+        IndexedHeap open = new IndexedHeap(nodeCount + 2);
+        long order = 0;
+
+        gScore[startId] = 0;
+        cameFrom[startId] = -1;
+        open.push(startId, 0);
+        // The last distance of a link is the one to its target, the goal when it shares the start's shard
+        int direct = sameShard ? startLink[startLink.length - 1] : ShardProtocol.NO_DISTANCE;
+
+        while (!open.isEmpty()) {
+            int current = open.pop();
+            if (current == goalId) {
+                int count = 0;
+                for (int id = current; id != -1; id = cameFrom[id]) {
+                    count++;
+                }
+                int[] route = new int[count];
+                for (int id = current; id != -1; id = cameFrom[id]) {
+                    route[--count] = id >= nodeCount ? -1 : id;
+                }
+                return route;
+            }
+            closed[current] = true;
+            int g = gScore[current];
+
+            if (current == startId) {
+                Shard side = shards[startShard];
+                for (int i = 0; i < side.nodes.length; i++) {
+                    order = relax(open, gScore, cameFrom, closed, goal, current, side.firstNode + i,
+                            g, startLink[i], order);
+                }
+                order = relax(open, gScore, cameFrom, closed, goal, current, goalId, g, direct, order);
+                continue;
+            }
+
+            Shard side = shards[nodeShard[current]];
+            int local = nodeLocal[current];
+            int count = side.nodes.length;
+            for (int i = 0; i < count; i++) {
+                order = relax(open, gScore, cameFrom, closed, goal, current, side.firstNode + i,
+                        g, side.distances[local * count + i], order);
+            }
+            for (int across : crossings[current]) {
+                order = relax(open, gScore, cameFrom, closed, goal, current, across,
+                        g, Directions.STRAIGHT_COST, order);
+            }
+            if (nodeShard[current] == goalShard) {
+                order = relax(open, gScore, cameFrom, closed, goal, current, goalId, g, goalLink[local], order);
+            }
+        }
+        return null;
+    }
+
+    // Lowers a node's g score through the current node, returns the discovery order for the next node
+    private long relax(IndexedHeap open, int[] gScore, int[] cameFrom, boolean[] closed, int goal,
+                       int current, int next, int g, int distance, long order) {
+        if (distance == ShardProtocol.NO_DISTANCE || closed[next]) {
+            return order;
+        }
+        int tentative = g + distance;
+        if (tentative >= gScore[next]) {
+            return order;
+        }
+        gScore[next] = tentative;
+        cameFrom[next] = current;
+        int cell = next < nodeCell.length ? nodeCell[next] : goal;
+        int fScore = tentative + Directions.octile(cell % mapWidth - goal % mapWidth, cell / mapWidth - goal / mapWidth);
+        long key = ((long) fScore << 32) | order;
+        if (open.contains(next)) {
+            open.decreaseKey(next, key);
+        } else {
+            open.push(next, key);
+        }
+        return order + 1;
+    }
+
+    // Sends a LINK request on a borrowed connection, its answer is read by readLink
+    private Connection sendLink(int shard, int cell, int target) throws IOException {
+        Connection connection = shards[shard].borrow();
+        try {
+            connection.out.writeByte(ShardProtocol.LINK);
+            connection.out.writeInt(cell);
+            connection.out.writeInt(target);
+            connection.out.flush();
+            requests.increment();
+            return connection;
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return distances from the cell to the shard's nodes followed by the distance to the target,
+     * null if the worker turned the cell down
+     */
+    private int[] readLink(int shard, Connection connection) throws IOException {
+        Shard side = shards[shard];
+        try {
+            int[] distances = null;
+            if (connection.in.readByte() == ShardProtocol.OK) {
+                distances = ShardProtocol.readInts(connection.in, side.nodes.length + 1);
+            }
+            side.release(connection);
+            return distances;
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the path between two cells of the shard, empty if there is none
+     */
+    private int[] segment(int shard, int from, int to) throws IOException {
+        Shard side = shards[shard];
+        Connection connection = side.borrow();
+        try {
+            connection.out.writeByte(ShardProtocol.SEGMENT);
+            connection.out.writeInt(from);
+            connection.out.writeInt(to);
+            connection.out.flush();
+            requests.increment();
+            int[] path = new int[0];
+            if (connection.in.readByte() == ShardProtocol.OK) {
+                path = ShardProtocol.readInts(connection.in, connection.in.readInt());
+            }
+            side.release(connection);
+            return path;
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    // Shards are few, a scan finds the one holding the cell
+    private int shardOf(int cell) {
+        if (cell < 0 || cell >= mapWidth * mapHeight) {
+            return -1;
+        }
+        int x = cell % mapWidth;
+        int y = cell / mapWidth;
+        for (int s = 0; s < shards.length; s++) {
+            Shard shard = shards[s];
+            if (x >= shard.left && y >= shard.top && x < shard.left + shard.width && y < shard.top + shard.height) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Closes the idle connections to the workers, the workers keep running
+     */
+    public void close() {
+        for (Shard shard : shards) {
+            if (shard != null) {
+                Connection connection;
+                while ((connection = shard.idle.poll()) != null) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Shard holds what the coordinator knows about one worker and its idle connections
+     */
+    private static class Shard {
+
+        private final InetSocketAddress address;
+        private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<Connection>();
+
+        private int mapWidth;
+        private int mapHeight;
+        private int left;
+        private int top;
+        private int width;
+        private int height;
+        private int[] nodes;
+        private int[][] partners;
+        private int[] distances;
+
+        // Id of the shard's first node in the abstract graph
+        private int firstNode;
+
+        Shard(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void readGraph(DataInputStream in) throws IOException {
+            mapWidth = in.readInt();
+            mapHeight = in.readInt();
+            left = in.readInt();
+            top = in.readInt();
+            width = in.readInt();
+            height = in.readInt();
+            int count = in.readInt();
+            nodes = new int[count];
+            partners = new int[count][];
+            for (int i = 0; i < count; i++) {
+                nodes[i] = in.readInt();
+                partners[i] = ShardProtocol.readInts(in, in.readInt());
+            }
+            distances = ShardProtocol.readInts(in, count * count);
+        }
+
+        Connection borrow() throws IOException {
+            Connection connection = idle.poll();
+            return connection != null ? connection : new Connection(address);
+        }
+
+        void release(Connection connection) {
+            idle.add(connection);
+        }
+    }
+
+    /**
+     * Connection is one socket to a worker, used by one query at a time
+     */
+    private static class Connection {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        Connection(InetSocketAddress address) throws IOException {
+            socket = new Socket(address.getAddress(), address.getPort());
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // The connection is dropped either way
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.aysegulpekel.service.shard;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * ShardProtocol is the binary protocol between the coordinator and the shard workers, all numbers big endian.
+ * Cells are always given by their index in the whole map, never in the shard.
+ * <p>
+ * A request is one operation byte and its ints, answered before the next request on the same connection:
+ * <ul>
+ * <li>GRAPH: the answer is the map's width and height, the shard's left, top, width and height,
+ * the number of boundary nodes, then per node its cell, its number of partners and the partner
+ * cells across the shard's border, and finally the distances between every two nodes.</li>
+ * <li>LINK cell target: the answer is a status byte, then the distance from the cell to every node
+ * and to the target, which may be -1 for none.</li>
+ * <li>SEGMENT from to: the answer is a status byte, the path length and the path cells inside the shard.</li>
+ * </ul>
+ * Distances are NO_DISTANCE where there is no way inside the shard.
+ */
+public final class ShardProtocol {
+
+    // Operations
+    public static final byte GRAPH = 1;
+    public static final byte LINK = 2;
+    public static final byte SEGMENT = 3;
+
+    // Status bytes
+    public static final byte OK = 0;
+    public static final byte INVALID = (byte) 0xFE;
+
+    // Distance between cells which aren't connected inside the shard
+    public static final int NO_DISTANCE = Integer.MAX_VALUE;
+
+    private ShardProtocol() {
+    }
+
+    static void writeInts(DataOutputStream out, int[] values, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    static int[] readInts(DataInputStream in, int length) throws IOException {
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+}
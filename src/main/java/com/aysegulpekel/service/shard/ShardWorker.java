@@ -0,0 +1,365 @@
+package com.aysegulpekel.service.shard;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.GridMap;
+import com.aysegulpekel.io.MapFile;
+import com.aysegulpekel.logic.AStar;
+import com.aysegulpekel.logic.DistanceSearch;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * ShardWorker owns one rectangle of a map, its shard, and answers the coordinator's requests about it.
+ * <p>
+ * Only the shard's cells are copied onto the heap, the rest of the map stays
+ * in the memory mapped file. Wherever the shard and a neighbouring shard share
+ * a run of free cells along their border, the run gets one or two boundary
+ * nodes, picked the same way on both sides, and the distances between the
+ * nodes inside the shard are computed once. Searches never leave the shard:
+ * moves between shards are straight steps between partner nodes, planned by
+ * the coordinator.
+ * <p>
+ * Distances are measured with a Dijkstra which stops once the nodes and the
+ * target are settled. The shard's components are labelled, so nodes walled
+ * off from a cell are not waited for.
+ * <p>
+ * The shard copies the obstacles only. The costs of a weighted map are left
+ * behind, so every free cell costs 1 to enter.
+ * <p>
+ * Connections are served by a thread each, any number of them at once, and
+ * every thread keeps its own search state from one request to the next.
+ */
+public class ShardWorker implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ShardWorker.class);
+
+    // Runs of free border cells shorter than this get one node in the middle, longer ones one at each end
+    private static final int LONG_ENTRANCE = 6;
+
+    private final int mapWidth;
+    private final int mapHeight;
+    private final int left;
+    private final int top;
+    private final int width;
+    private final int height;
+
+    // Obstacles of the shard, indexed inside the shard
+    private final CompactGrid shard;
+
+    private final AStar aStar = new AStar();
+
+    // Search state of each thread, kept from one request to the next
+    private final ThreadLocal<DistanceSearch> searches = ThreadLocal.withInitial(DistanceSearch::new);
+
+    // Map cells of the boundary nodes
+    private final int[] nodes;
+
+    // Shard cells of the boundary nodes
+    private final int[] shardNodes;
+
+    // Per node, the map cells one straight step away in neighbouring shards
+    private final int[][] partners;
+
+    // Distances between the nodes inside the shard, nodes.length * nodes.length
+    private final int[] distances;
+
+    private ServerSocket serverSocket;
+
+    /**
+     * Copies the shard out of the map and builds its boundary nodes
+     *
+     * @param map    whole map, only the obstacles of the shard and the cells along its border are read
+     * @param left   horizontal position of the shard's top left cell
+     * @param top    vertical position of the shard's top left cell
+     * @param width  horizontal size of the shard
+     * @param height vertical size of the shard
+     */
+    public ShardWorker(GridMap map, int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || width <= 0 || height <= 0
+                || left + width > map.getWidth() || top + height > map.getHeight()) {
+            throw new IllegalArgumentException("Shard " + width + "x" + height + " at " + left + "," + top
+                    + " is out of the " + map.getWidth() + "x" + map.getHeight() + " map");
+        }
+        this.mapWidth = map.getWidth();
+        this.mapHeight = map.getHeight();
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+
+        this.shard = new CompactGrid(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (map.isObstacle((top + y) * mapWidth + left + x)) {
+                    shard.setObstacle(x, y, true);
+                }
+            }
+        }
+        shard.getComponents();
+
+        // A corner cell may be a node on two borders, it becomes one node with two partners
+        int[][] found = findEntrances(map);
+        int[] cells = found[0];
+        int[] across = found[1];
+        int[] nodes = new int[cells.length];
+        int[][] partners = new int[cells.length][];
+        Map<Integer, Integer> nodeOfCell = new HashMap<Integer, Integer>(cells.length * 2);
+        for (int i = 0; i < cells.length; i++) {
+            Integer node = nodeOfCell.get(cells[i]);
+            if (node == null) {
+                node = nodeOfCell.size();
+                nodeOfCell.put(cells[i], node);
+                nodes[node] = cells[i];
+                partners[node] = new int[0];
+            }
+            partners[node] = Arrays.copyOf(partners[node], partners[node].length + 1);
+            partners[node][partners[node].length - 1] = across[i];
+        }
+        int count = nodeOfCell.size();
+        this.nodes = Arrays.copyOf(nodes, count);
+        this.partners = Arrays.copyOf(partners, count);
+        this.shardNodes = new int[count];
+        for (int i = 0; i < count; i++) {
+            shardNodes[i] = toShard(this.nodes[i]);
+        }
+
+        // Every node's distances come from its own search, the searches are independent.
+        // The pool's threads keep no search state once the shard is built.
+        int[] distances = new int[count * count];
+        ThreadLocal<DistanceSearch> building = ThreadLocal.withInitial(DistanceSearch::new);
+        IntStream.range(0, count).parallel().forEach(i -> {
+            int[] row = new int[count];
+            building.get().run(shard, shardNodes[i], shardNodes, count, row);
+            System.arraycopy(row, 0, distances, i * count, count);
+        });
+        this.distances = distances;
+    }
+
+    /**
+     * @return number of boundary nodes of the shard
+     */
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    /**
+     * Starts accepting the coordinator's connections
+     *
+     * @param port port to listen on, 0 for any free port
+     * @return the port listened on
+     * @throws IOException if the port can't be bound
+     */
+    public int start(int port) throws IOException {
+        serverSocket = new ServerSocket(port);
+        Thread acceptor = new Thread(this::accept, "shard-worker-accept");
+        acceptor.start();
+        return serverSocket.getLocalPort();
+    }
+
+    public void close() {
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                LOGGER.info(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread reader = new Thread(() -> serve(socket), "shard-worker-" + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    LOGGER.info(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    // Answers the requests of one connection in order
+    private void serve(Socket socket) {
+        try (Socket connection = socket) {
+            connection.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            while (true) {
+                byte operation;
+                try {
+                    operation = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (operation == ShardProtocol.GRAPH) {
+                    writeGraph(out);
+                } else if (operation == ShardProtocol.LINK) {
+                    link(out, in.readInt(), in.readInt());
+                } else if (operation == ShardProtocol.SEGMENT) {
+                    segment(out, in.readInt(), in.readInt());
+                } else {
+                    throw new IOException("Unknown operation " + operation);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            LOGGER.info(e.getMessage(), e);
+        }
+    }
+
+    private void writeGraph(DataOutputStream out) throws IOException {
+        out.writeInt(mapWidth);
+        out.writeInt(mapHeight);
+        out.writeInt(left);
+        out.writeInt(top);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            out.writeInt(nodes[i]);
+            out.writeInt(partners[i].length);
+            ShardProtocol.writeInts(out, partners[i], partners[i].length);
+        }
+        ShardProtocol.writeInts(out, distances, distances.length);
+    }
+
+    // Distances from a cell of the shard to every node and to a target
+    private void link(DataOutputStream out, int cell, int target) throws IOException {
+        if (!contains(cell)) {
+            out.writeByte(ShardProtocol.INVALID);
+            return;
+        }
+        // The target, if any, is searched for after the nodes
+        int count = shardNodes.length;
+        int[] targets = Arrays.copyOf(shardNodes, count + 1);
+        boolean hasTarget = target != -1 && contains(target);
+        if (hasTarget) {
+            targets[count++] = toShard(target);
+        }
+        int[] distances = new int[count];
+        searches.get().run(shard, toShard(cell), targets, count, distances);
+
+        out.writeByte(ShardProtocol.OK);
+        ShardProtocol.writeInts(out, distances, shardNodes.length);
+        out.writeInt(hasTarget ? distances[count - 1] : ShardProtocol.NO_DISTANCE);
+    }
+
+    // Path between two cells of the shard which stays inside it
+    private void segment(DataOutputStream out, int from, int to) throws IOException {
+        if (!contains(from) || !contains(to)) {
+            out.writeByte(ShardProtocol.INVALID);
+            return;
+        }
+        int[] path = aStar.findPath(shard, toShard(from), toShard(to));
+        out.writeByte(ShardProtocol.OK);
+        out.writeInt(path.length);
+        for (int cell : path) {
+            out.writeInt((top + cell / width) * mapWidth + left + cell % width);
+        }
+    }
+
+    /**
+     * Walks the four borders of the shard which face another shard, own side first and the other side second
+     *
+     * @param map whole map
+     * @return the map cells of the entrances and the cells across the border from them
+     */
+    private int[][] findEntrances(GridMap map) {
+        int[] cells = new int[16];
+        int[] across = new int[16];
+        int count = 0;
+        int right = left + width - 1;
+        int bottom = top + height - 1;
+        int[][] borders = {
+                {left, top, 0, 1, -1, 0, height},
+                {right, top, 0, 1, 1, 0, height},
+                {left, top, 1, 0, 0, -1, width},
+                {left, bottom, 1, 0, 0, 1, width}
+        };
+        for (int[] border : borders) {
+            int x = border[0];
+            int y = border[1];
+            int stepX = border[2];
+            int stepY = border[3];
+            int outX = border[4];
+            int outY = border[5];
+            int length = border[6];
+            if (x + outX < 0 || y + outY < 0 || x + outX >= mapWidth || y + outY >= mapHeight) {
+                continue;
+            }
+
+            int runStart = -1;
+            for (int i = 0; i <= length; i++) {
+                boolean open = i < length
+                        && !map.isObstacle((y + i * stepY) * mapWidth + x + i * stepX)
+                        && !map.isObstacle((y + i * stepY + outY) * mapWidth + x + i * stepX + outX);
+                if (open && runStart == -1) {
+                    runStart = i;
+                } else if (!open && runStart != -1) {
+                    int runLength = i - runStart;
+                    int[] picks = runLength < LONG_ENTRANCE
+                            ? new int[]{runStart + runLength / 2} : new int[]{runStart, i - 1};
+                    for (int pick : picks) {
+                        if (count == cells.length) {
+                            cells = Arrays.copyOf(cells, count * 2);
+                            across = Arrays.copyOf(across, count * 2);
+                        }
+                        cells[count] = (y + pick * stepY) * mapWidth + x + pick * stepX;
+                        across[count++] = (y + pick * stepY + outY) * mapWidth + x + pick * stepX + outX;
+                    }
+                    runStart = -1;
+                }
+            }
+        }
+        return new int[][]{Arrays.copyOf(cells, count), Arrays.copyOf(across, count)};
+    }
+
+    private boolean contains(int cell) {
+        if (cell < 0 || cell >= mapWidth * mapHeight) {
+            return false;
+        }
+        int x = cell % mapWidth - left;
+        int y = cell / mapWidth - top;
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    private int toShard(int cell) {
+        return (cell / mapWidth - top) * width + cell % mapWidth - left;
+    }
+
+    /**
+     * Serves one shard of a map file until the process is stopped. Once the shard is
+     * built, "READY" and the port are printed on a line of their own.
+     *
+     * @param args map file, the shard's left, top, width and height, then --port n
+     * @throws IOException if the map can't be read or the port can't be bound
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.err.println("Usage: ShardWorker <map file> <left> <top> <width> <height> [--port n]");
+            System.exit(1);
+        }
+        int port = args.length >= 7 && "--port".equals(args[5]) ? Integer.parseInt(args[6]) : 0;
+        ShardWorker worker = new ShardWorker(MapFile.open(Paths.get(args[0])), Integer.parseInt(args[1]),
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+        System.out.println("READY " + worker.start(port));
+        System.out.flush();
+    }
+}
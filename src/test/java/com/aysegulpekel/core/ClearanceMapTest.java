@@ -0,0 +1,72 @@
+package com.aysegulpekel.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClearanceMapTest {
+
+    private static final int SIZE = 40;
+
+    @Test
+    public void clearancesMatchTheLargestFreeSquareThroughObstacleChanges() {
+        Random random = new Random(21);
+        CompactGrid map = new CompactGrid(SIZE, SIZE);
+        for (int index = 0; index < SIZE * SIZE; index++) {
+            map.setObstacle(index, random.nextInt(12) == 0);
+        }
+        ClearanceMap clearance = map.getClearance();
+        assertLargestFreeSquares(map, clearance);
+
+        for (int change = 0; change < 200; change++) {
+            int index = random.nextInt(SIZE * SIZE);
+            map.setObstacle(index, !map.isObstacle(index));
+            assertLargestFreeSquares(map, clearance);
+        }
+    }
+
+    @Test
+    public void agentViewsBlockCellsTheAgentDoesNotFitOn() {
+        CompactGrid map = new CompactGrid(4, 4);
+        map.setObstacle(2, 2, true);
+        GridMap pair = map.getClearance().forAgentSize(2);
+
+        assertFalse(pair.isObstacle(0));
+        assertTrue(pair.isObstacle(1 * 4 + 1));
+        assertTrue(pair.isObstacle(3));
+        assertTrue(map.getClearance().fits(0, 2));
+        assertFalse(map.getClearance().fits(0, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAgentsLargerThanTheMaximumClearance() {
+        new CompactGrid(4, 4).getClearance().forAgentSize(ClearanceMap.MAX_CLEARANCE + 1);
+    }
+
+    private static void assertLargestFreeSquares(CompactGrid map, ClearanceMap clearance) {
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int side = 0;
+                while (x + side < SIZE && y + side < SIZE && isFree(map, x, y, side + 1)) {
+                    side++;
+                }
+                assertEquals("Cell " + x + ", " + y, side, clearance.getClearance(y * SIZE + x));
+            }
+        }
+    }
+
+    private static boolean isFree(CompactGrid map, int left, int top, int side) {
+        for (int y = top; y < top + side; y++) {
+            for (int x = left; x < left + side; x++) {
+                if (map.isObstacle(x, y)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,146 @@
+package com.aysegulpekel.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectedComponentsTest {
+
+    private static final int SIZE = 40;
+
+    @Test
+    public void labelsMatchAFloodFillThroughObstacleChanges() {
+        Random random = new Random(15);
+        CompactGrid map = new CompactGrid(SIZE, SIZE);
+        for (int index = 0; index < SIZE * SIZE; index++) {
+            map.setObstacle(index, random.nextInt(3) == 0);
+        }
+        ConnectedComponents components = map.getComponents();
+        assertSamePartition(map, components);
+
+        for (int change = 0; change < 300; change++) {
+            int index = random.nextInt(SIZE * SIZE);
+            map.setObstacle(index, !map.isObstacle(index));
+            assertSamePartition(map, components);
+        }
+    }
+
+    @Test
+    public void readersKeepGettingComponentsWhileTheLabelsAreRebuilt() throws Exception {
+        // A wide strip split by every wall across it runs out of labels and rebuilds often
+        int width = 256;
+        int height = 3;
+        CompactGrid map = new CompactGrid(width, height);
+        ConnectedComponents components = map.getComponents();
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (int reader = 0; reader < 2; reader++) {
+                results.add(readers.submit(() -> {
+                    Random random = new Random();
+                    while (running.get()) {
+                        int index = random.nextInt(width * height);
+                        int component = components.getComponent(index);
+                        assertTrue(component >= ConnectedComponents.NO_COMPONENT);
+                        components.isConnected(index, random.nextInt(width * height));
+                    }
+                }));
+            }
+
+            Random random = new Random(16);
+            for (int change = 0; change < 20000; change++) {
+                int x = 1 + random.nextInt(width - 2);
+                boolean wall = !map.isObstacle(x, 1);
+                for (int y = 0; y < height; y++) {
+                    map.setObstacle(x, y, wall);
+                }
+            }
+            running.set(false);
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void splitsAndJoinsAreasAcrossAWall() {
+        Grid grid = new Grid(5, 5);
+        Cell left = grid.getGrid()[0][2];
+        Cell right = grid.getGrid()[4][2];
+        assertTrue(grid.isConnected(left, right));
+
+        for (int y = 0; y < 5; y++) {
+            grid.getGrid()[2][y].setObstacle(true);
+        }
+        assertFalse(grid.isConnected(left, right));
+        assertNotEquals(grid.getComponentId(left), grid.getComponentId(right));
+        assertEquals(ConnectedComponents.NO_COMPONENT, grid.getComponentId(grid.getGrid()[2][2]));
+
+        grid.getGrid()[2][4].setObstacle(false);
+        assertTrue(grid.isConnected(left, right));
+        assertEquals(grid.getComponentId(left), grid.getComponentId(right));
+    }
+
+    // Labels the areas with a flood fill and expects the components to pair up with them one to one
+    private static void assertSamePartition(CompactGrid map, ConnectedComponents components) {
+        int[] flood = new int[SIZE * SIZE];
+        Arrays.fill(flood, ConnectedComponents.NO_COMPONENT);
+        int[] queue = new int[SIZE * SIZE];
+        int areas = 0;
+        for (int seed = 0; seed < flood.length; seed++) {
+            if (map.isObstacle(seed) || flood[seed] != ConnectedComponents.NO_COMPONENT) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = seed;
+            flood[seed] = areas;
+            while (head < tail) {
+                int current = queue[head++];
+                int mask = map.getNeighbourMask(current);
+                while (mask != 0) {
+                    int direction = Integer.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                    int neighbor = current + Directions.offset(direction, SIZE);
+                    if (flood[neighbor] == ConnectedComponents.NO_COMPONENT) {
+                        flood[neighbor] = areas;
+                        queue[tail++] = neighbor;
+                    }
+                }
+            }
+            areas++;
+        }
+
+        Map<Integer, Integer> componentOfArea = new HashMap<Integer, Integer>();
+        Map<Integer, Integer> areaOfComponent = new HashMap<Integer, Integer>();
+        for (int index = 0; index < flood.length; index++) {
+            int component = components.getComponent(index);
+            if (flood[index] == ConnectedComponents.NO_COMPONENT) {
+                assertEquals(ConnectedComponents.NO_COMPONENT, component);
+                continue;
+            }
+            Integer known = componentOfArea.put(flood[index], component);
+            assertTrue(known == null || known == component);
+            known = areaOfComponent.put(component, flood[index]);
+            assertTrue(known == null || known == flood[index]);
+        }
+    }
+}
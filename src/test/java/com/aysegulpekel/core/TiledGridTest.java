@@ -0,0 +1,109 @@
+package com.aysegulpekel.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TiledGridTest {
+
+    // Not a multiple of the tile size, so the last tiles are partly outside the grid
+    private static final int WIDTH = 150;
+    private static final int HEIGHT = 90;
+
+    @Test
+    public void snapshotsLookLikeACompactGridEditedTheSameWay() {
+        Random random = new Random(23);
+        CompactGrid expected = new CompactGrid(WIDTH, HEIGHT);
+        TiledGrid grid = new TiledGrid(WIDTH, HEIGHT);
+        assertSameCells(expected, grid.snapshot());
+
+        for (int round = 0; round < 20; round++) {
+            for (int edit = 0; edit < 50; edit++) {
+                int index = random.nextInt(WIDTH * HEIGHT);
+                if (random.nextInt(3) == 0) {
+                    int cost = 1 + random.nextInt(GridMap.MAX_COST);
+                    expected.setCost(index, cost);
+                    grid.setCost(index, cost);
+                } else {
+                    boolean obstacle = !expected.isObstacle(index);
+                    expected.setObstacle(index, obstacle);
+                    grid.setObstacle(index, obstacle);
+                }
+            }
+            assertSameCells(expected, grid.snapshot());
+            assertSameCells(expected, TiledGrid.copyOf(expected).snapshot());
+        }
+    }
+
+    @Test
+    public void snapshotsStayTheSameWhileTheGridIsEdited() {
+        TiledGrid grid = new TiledGrid(WIDTH, HEIGHT);
+        TiledGrid.Snapshot before = grid.snapshot();
+
+        TiledGrid.Snapshot after = grid.edit(editor -> {
+            editor.setObstacle(5, true);
+            editor.setObstacle(WIDTH * HEIGHT - 1, true);
+            editor.setCost(7, 3);
+        });
+
+        assertFalse(before.isObstacle(5));
+        assertEquals(1, before.getCost(7));
+        assertFalse(before.isWeighted());
+        assertTrue(after.isObstacle(5));
+        assertTrue(after.isObstacle(WIDTH * HEIGHT - 1));
+        assertEquals(3, after.getCost(7));
+        assertEquals(before.getVersion() + 1, after.getVersion());
+        assertSame(after, grid.snapshot());
+
+        // An edit changing nothing publishes nothing
+        assertSame(after, grid.setObstacle(5, true));
+    }
+
+    @Test
+    public void readersSeeAConsistentVersionDuringEdits() throws InterruptedException {
+        final TiledGrid grid = new TiledGrid(WIDTH, HEIGHT);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+
+        // Every version has as many obstacles as its version number, a torn read would count another number
+        Thread reader = new Thread(() -> {
+            while (!done.get() && failure.get() == null) {
+                TiledGrid.Snapshot snapshot = grid.snapshot();
+                int obstacles = 0;
+                for (int index = 0; index < WIDTH * HEIGHT; index++) {
+                    if (snapshot.isObstacle(index)) {
+                        obstacles++;
+                    }
+                }
+                if (obstacles != snapshot.getVersion()) {
+                    failure.set("Version " + snapshot.getVersion() + " had " + obstacles + " obstacles");
+                }
+            }
+        });
+        reader.start();
+        for (int index = 0; index < 2000; index++) {
+            grid.setObstacle(index * 7 % (WIDTH * HEIGHT), true);
+        }
+        done.set(true);
+        reader.join();
+
+        assertNull(failure.get());
+    }
+
+    private static void assertSameCells(CompactGrid expected, TiledGrid.Snapshot snapshot) {
+        assertEquals(expected.isWeighted(), snapshot.isWeighted());
+        for (int index = 0; index < WIDTH * HEIGHT; index++) {
+            assertEquals(expected.isObstacle(index), snapshot.isObstacle(index));
+            assertEquals(expected.getNeighbourMask(index), snapshot.getNeighbourMask(index));
+            assertEquals(expected.getCost(index), snapshot.getCost(index));
+        }
+    }
+}
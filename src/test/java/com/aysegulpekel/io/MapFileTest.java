@@ -0,0 +1,150 @@
+package com.aysegulpekel.io;
+
+import com.aysegulpekel.core.CompactGrid;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MapFileTest {
+
+    // Neither side a multiple of 64, so the last long of the bitmap is partly filled
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mapsBackTheObstaclesItWrote() throws IOException {
+        CompactGrid map = randomGrid(new Random(12), false);
+        Path file = folder.newFile("map.bin").toPath();
+
+        MapFile.write(map, file);
+        MappedGrid mapped = MapFile.open(file);
+
+        assertEquals(MapFile.costsOffset((long) WIDTH * HEIGHT), Files.size(file));
+        assertSameCells(map, mapped);
+        assertFalse(mapped.hasCosts());
+        assertFalse(mapped.isWeighted());
+    }
+
+    @Test
+    public void mapsBackTheCostsItWrote() throws IOException {
+        CompactGrid map = randomGrid(new Random(13), true);
+        Path file = folder.newFile("map.bin").toPath();
+
+        MapFile.write(map, file);
+        MappedGrid mapped = MapFile.open(file);
+
+        assertTrue(mapped.hasCosts());
+        assertTrue(mapped.isWeighted());
+        assertSameCells(map, mapped);
+    }
+
+    @Test
+    public void readsCostBytesOfZeroAsOne() throws IOException {
+        CompactGrid map = new CompactGrid(WIDTH, HEIGHT);
+        byte[] costs = new byte[WIDTH * HEIGHT];
+        costs[5] = (byte) 200;
+        Path file = folder.newFile("map.bin").toPath();
+
+        MapFile.write(map, costs, file);
+        MappedGrid mapped = MapFile.open(file);
+
+        assertEquals(1, mapped.getCost(0));
+        assertEquals(200, mapped.getCost(5));
+    }
+
+    @Test
+    public void rejectsATruncatedFile() throws IOException {
+        Path file = folder.newFile("map.bin").toPath();
+        MapFile.write(randomGrid(new Random(14), true), file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        // Cut in the costs, in the bitmap and in the header
+        for (int length : new int[]{bytes.length - 1, MapFile.HEADER_SIZE + 8, MapFile.HEADER_SIZE - 1, 0}) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertRejected(file);
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        Path file = folder.newFile("map.bin").toPath();
+        MapFile.write(randomGrid(new Random(15), false), file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        byte[] badMagic = bytes.clone();
+        badMagic[0] = 'X';
+        Files.write(file, badMagic);
+        assertRejected(file);
+
+        Files.write(file, header(bytes).putInt(4, MapFile.VERSION + 1).array());
+        assertRejected(file);
+
+        Files.write(file, header(bytes).putInt(8, 0).array());
+        assertRejected(file);
+    }
+
+    @Test
+    public void refusesToCloseBeforeEveryCellWasWritten() throws IOException {
+        Path file = folder.newFile("map.bin").toPath();
+        MapFile.Writer writer = new MapFile.Writer(file, WIDTH, HEIGHT, false);
+        writer.add(true);
+        try {
+            writer.close();
+            fail("Closed a file with one cell of " + WIDTH * HEIGHT);
+        } catch (IllegalStateException expected) {
+            // The map would read back the unwritten cells as garbage
+        }
+    }
+
+    private static CompactGrid randomGrid(Random random, boolean weighted) {
+        CompactGrid map = new CompactGrid(WIDTH, HEIGHT);
+        for (int index = 0; index < WIDTH * HEIGHT; index++) {
+            if (random.nextInt(100) < 30) {
+                map.setObstacle(index, true);
+            } else if (weighted) {
+                map.setCost(index, 1 + random.nextInt(9));
+            }
+        }
+        return map;
+    }
+
+    private static void assertSameCells(CompactGrid map, MappedGrid mapped) {
+        assertEquals(map.getWidth(), mapped.getWidth());
+        assertEquals(map.getHeight(), mapped.getHeight());
+        for (int index = 0; index < WIDTH * HEIGHT; index++) {
+            assertEquals("Cell " + index, map.isObstacle(index), mapped.isObstacle(index));
+            assertEquals("Cell " + index, map.getNeighbourMask(index), mapped.getNeighbourMask(index));
+            assertEquals("Cell " + index, map.getCost(index), mapped.getCost(index));
+        }
+    }
+
+    // The file's bytes, ready to have their header ints replaced
+    private static ByteBuffer header(byte[] bytes) {
+        return ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void assertRejected(Path file) {
+        try {
+            MapFile.open(file);
+            fail("Opened a broken map file");
+        } catch (IOException expected) {
+            // The file isn't a complete binary map
+        }
+    }
+}
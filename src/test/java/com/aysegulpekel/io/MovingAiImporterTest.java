@@ -0,0 +1,102 @@
+package com.aysegulpekel.io;
+
+import com.aysegulpekel.core.CompactGrid;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MovingAiImporterTest {
+
+    private static final String MAP = "type octile\n"
+            + "height 3\n"
+            + "width 5\n"
+            + "map\n"
+            + ".GS@O\n"
+            + "T.W..\n"
+            + "..... trailing text\n";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsTheTerrainOfEveryCell() throws IOException {
+        CompactGrid map = MovingAiImporter.read(file(MAP));
+
+        assertEquals(5, map.getWidth());
+        assertEquals(3, map.getHeight());
+        String obstacles = "...xx" + "x.x.." + ".....";
+        for (int index = 0; index < obstacles.length(); index++) {
+            assertEquals("Cell " + index, obstacles.charAt(index) == 'x', map.isObstacle(index));
+        }
+    }
+
+    @Test
+    public void convertsToTheSameObstacles() throws IOException {
+        Path source = file(MAP);
+        Path target = folder.newFile("map.bin").toPath();
+
+        MovingAiImporter.convert(source, target);
+        CompactGrid map = MovingAiImporter.read(source);
+        MappedGrid mapped = MapFile.open(target);
+
+        assertEquals(map.getWidth(), mapped.getWidth());
+        assertEquals(map.getHeight(), mapped.getHeight());
+        assertFalse(mapped.hasCosts());
+        for (int index = 0; index < 15; index++) {
+            assertEquals(map.isObstacle(index), mapped.isObstacle(index));
+        }
+    }
+
+    @Test
+    public void rejectsMalformedFiles() throws IOException {
+        String rows = ".....\n.....\n.....\n";
+        assertRejected("type octile\nheight 3\nmap\n" + rows);
+        assertRejected("type octile\nheight 3\nwidth five\nmap\n" + rows);
+        assertRejected("type octile\nheight 3\nwidth 0\nmap\n" + rows);
+        assertRejected("type octile\nheight 3\nwidth 5\n");
+        assertRejected("type octile\nheight 3\nwidth 5\nmap\n.....\n....\n.....\n");
+        assertRejected("type octile\nheight 3\nwidth 5\nmap\n.....\n.....\n");
+    }
+
+    @Test
+    public void passesGroundAndSwampOnly() {
+        for (char terrain : ".GS".toCharArray()) {
+            assertTrue(MovingAiImporter.isPassable(terrain));
+        }
+        for (char terrain : "TW@O".toCharArray()) {
+            assertFalse(MovingAiImporter.isPassable(terrain));
+        }
+    }
+
+    private Path file(String content) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    private void assertRejected(String content) throws IOException {
+        Path file = file(content);
+        try {
+            MovingAiImporter.read(file);
+            fail("Read a malformed map:\n" + content);
+        } catch (IOException expected) {
+            // The header or the rows don't add up
+        }
+        try {
+            MovingAiImporter.convert(file, folder.newFile().toPath());
+            fail("Converted a malformed map:\n" + content);
+        } catch (IOException expected) {
+            // Same check while streaming
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.Cell;
+import com.aysegulpekel.core.ClearanceMap;
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.Grid;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.aysegulpekel.logic.TestMaps.cost;
+import static com.aysegulpekel.logic.TestMaps.randomGrid;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AStarTest {
+
+    @Test
+    public void searchesStandAloneCellsThroughTheirNeighbourLists() {
+        Cell a = cell(0, 0);
+        Cell b = cell(1, 0);
+        Cell c = cell(2, 1);
+        Cell detour = cell(0, 1);
+        a.setNeighbors(Arrays.asList(detour, b));
+        b.setNeighbors(Collections.singletonList(c));
+        detour.setNeighbors(Collections.singletonList(c));
+
+        assertEquals(Arrays.asList(c, b, a), new AStar().runAStar(a, c));
+    }
+
+    @Test
+    public void returnsNoPathBetweenUnlinkedStandAloneCells() {
+        Cell a = cell(0, 0);
+        Cell b = cell(3, 3);
+        a.setNeighbors(Collections.singletonList(cell(1, 1)));
+
+        assertTrue(new AStar().runAStar(a, b).isEmpty());
+    }
+
+    @Test
+    public void searchesGridCellsOnTheGridMap() {
+        Grid grid = grid(5, 3);
+        for (int y = 0; y < 2; y++) {
+            grid.getGrid()[2][y].setObstacle(true);
+        }
+
+        List<Cell> path = new AStar().runAStar(grid.getGrid()[0][0], grid.getGrid()[4][0]);
+
+        assertEquals(grid.getGrid()[4][0], path.get(0));
+        assertEquals(grid.getGrid()[0][0], path.get(path.size() - 1));
+        assertTrue(path.contains(grid.getGrid()[2][2]));
+    }
+
+    @Test
+    public void returnsNoPathToAWalledOffGridCell() {
+        Grid grid = grid(5, 3);
+        for (int y = 0; y < 3; y++) {
+            grid.getGrid()[2][y].setObstacle(true);
+        }
+
+        assertTrue(new AStar().runAStar(grid.getGrid()[0][0], grid.getGrid()[4][0]).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCellsOfDifferentGrids() {
+        new AStar().runAStar(grid(2, 2).getGrid()[0][0], grid(2, 2).getGrid()[1][1]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsNeighbourListsOnGridCells() {
+        grid(2, 2).getGrid()[0][0].setNeighbors(Collections.<Cell>emptyList());
+    }
+
+    @Test
+    public void findsTheSamePathsAsTheListScanOnRandomGrids() {
+        Random random = new Random(1);
+        AStar aStar = new AStar(Heuristic.MANHATTAN);
+        for (int round = 0; round < 20; round++) {
+            Grid grid = grid(20, 20);
+            for (Cell[] column : grid.getGrid()) {
+                for (Cell cell : column) {
+                    cell.setObstacle(random.nextInt(4) == 0);
+                }
+            }
+            for (int query = 0; query < 10; query++) {
+                Cell start = grid.getGrid()[random.nextInt(20)][random.nextInt(20)];
+                Cell goal = grid.getGrid()[random.nextInt(20)][random.nextInt(20)];
+                if (start.isObstacle() || goal.isObstacle()) {
+                    continue;
+                }
+
+                assertEquals(listScan(start, goal), aStar.runAStar(start, goal));
+            }
+        }
+    }
+
+    @Test
+    public void searchesLargeAgentsLikeOnAGridWithInflatedObstacles() {
+        Random random = new Random(21);
+        AStar aStar = new AStar();
+        for (int round = 0; round < 10; round++) {
+            CompactGrid map = randomGrid(random, 32, 6);
+            for (int size = 1; size <= 3; size++) {
+                // The grid each vehicle size used to get: a cell is blocked when the agent doesn't fit on it
+                ClearanceMap clearance = map.getClearance();
+                CompactGrid inflated = new CompactGrid(32, 32);
+                for (int index = 0; index < 32 * 32; index++) {
+                    inflated.setObstacle(index, !clearance.fits(index, size));
+                }
+                for (int query = 0; query < 10; query++) {
+                    int start = random.nextInt(32 * 32);
+                    int goal = random.nextInt(32 * 32);
+                    if (!clearance.fits(start, size) || !clearance.fits(goal, size)) {
+                        continue;
+                    }
+
+                    int[] expected = aStar.findPath(inflated, start, goal);
+                    int[] path = aStar.findPath(map, start, goal, size);
+
+                    assertEquals(expected.length == 0, path.length == 0);
+                    assertEquals(cost(inflated, expected), cost(map, path));
+                    for (int cell : path) {
+                        assertTrue(clearance.fits(cell, size));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void keepsLargeAgentsOutOfNarrowGaps() {
+        CompactGrid map = new CompactGrid(7, 7);
+        for (int y = 0; y < 7; y++) {
+            map.setObstacle(3, y, y != 3);
+        }
+
+        assertTrue(new AStar().findPath(map, 0, 6, 1).length > 0);
+        assertEquals(0, new AStar().findPath(map, 0, 5, 2).length);
+    }
+
+    /**
+     * The search as it was before the open set became a heap: the open set is
+     * a list scanned for the first cell with the lowest f score, and the
+     * heuristic is the Manhattan distance
+     */
+    private static List<Cell> listScan(Cell start, Cell goal) {
+        List<Cell> openSet = new ArrayList<Cell>();
+        List<Cell> closedSet = new ArrayList<Cell>();
+        Map<Cell, Cell> cameFrom = new HashMap<Cell, Cell>();
+        Map<Cell, Integer> gScore = new HashMap<Cell, Integer>();
+        Map<Cell, Integer> fScore = new HashMap<Cell, Integer>();
+
+        openSet.add(start);
+        gScore.put(start, 0);
+        fScore.put(start, manhattan(start, goal));
+        while (!openSet.isEmpty()) {
+            Cell current = openSet.get(0);
+            for (Cell cell : openSet) {
+                if (fScore.get(cell) < fScore.get(current)) {
+                    current = cell;
+                }
+            }
+            if (current == goal) {
+                List<Cell> totalPath = new ArrayList<Cell>();
+                for (Cell cell = current; cell != null; cell = cameFrom.get(cell)) {
+                    totalPath.add(cell);
+                }
+                return totalPath;
+            }
+            openSet.remove(current);
+            closedSet.add(current);
+
+            for (Cell neighbor : current.getNeighbors()) {
+                if (closedSet.contains(neighbor)) {
+                    continue;
+                }
+                boolean diagonal = current.getX() != neighbor.getX() && current.getY() != neighbor.getY();
+                int tentativeGScore = gScore.get(current) + (diagonal ? 14 : 10);
+                if (!openSet.contains(neighbor)) {
+                    openSet.add(neighbor);
+                } else if (tentativeGScore >= gScore.get(neighbor)) {
+                    continue;
+                }
+                cameFrom.put(neighbor, current);
+                gScore.put(neighbor, tentativeGScore);
+                fScore.put(neighbor, tentativeGScore + manhattan(neighbor, goal));
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private static int manhattan(Cell from, Cell to) {
+        return (Math.abs(from.getX() - to.getX()) + Math.abs(from.getY() - to.getY())) * 10;
+    }
+
+    private static Cell cell(int x, int y) {
+        Cell cell = new Cell();
+        cell.setX(x);
+        cell.setY(y);
+        return cell;
+    }
+
+    private static Grid grid(int width, int height) {
+        Grid grid = new Grid(width, height);
+        Cell[][] cells = new Cell[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                cells[x][y] = cell(x, y);
+            }
+        }
+        grid.setGrid(cells);
+        return grid;
+    }
+}
@@ -0,0 +1,85 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import static com.aysegulpekel.logic.TestMaps.weightedGrid;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Warmed up searches into a reused path buffer must allocate nothing. The
+ * bytes the thread allocated are read from the JVM's allocation counter
+ * around a run of searches, with either open set, on maps with and without
+ * costs and with and without compressing the path.
+ */
+public class AllocationTest {
+
+    private static final int SIZE = 128;
+    private static final int WARMUP_SEARCHES = 500;
+    private static final int SEARCHES = 100;
+
+    // Runs measured per setup, the fewest bytes count so one off class loading doesn't fail the test
+    private static final int ATTEMPTS = 3;
+
+    @Test
+    public void warmedUpSearchesIntoAPathBufferAllocateNothing() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        SearchContext context = new SearchContext();
+        PathBuffer path = new PathBuffer();
+        for (boolean weighted : new boolean[]{false, true}) {
+            CompactGrid map = randomGrid(weighted);
+            int start = 0;
+            int goal = SIZE * SIZE - 1;
+            for (AStar.QueueType queue : AStar.QueueType.values()) {
+                AStar aStar = new AStar(Heuristic.OCTILE, queue);
+                for (boolean compress : new boolean[]{false, true}) {
+                    assertTrue(search(aStar, map, start, goal, context, path, compress));
+                    for (int i = 0; i < WARMUP_SEARCHES; i++) {
+                        search(aStar, map, start, goal, context, path, compress);
+                    }
+
+                    long fewest = Long.MAX_VALUE;
+                    for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+                        long before = threads.getThreadAllocatedBytes(thread);
+                        for (int i = 0; i < SEARCHES; i++) {
+                            search(aStar, map, start, goal, context, path, compress);
+                        }
+                        fewest = Math.min(fewest, threads.getThreadAllocatedBytes(thread) - before);
+                    }
+                    assertEquals("Bytes allocated by " + SEARCHES + " searches, weighted=" + weighted
+                            + " queue=" + queue + " compress=" + compress, 0, fewest);
+                }
+            }
+        }
+    }
+
+    // Random obstacles, with the corners and the diagonal between them kept free so the goal is reachable
+    private static CompactGrid randomGrid(boolean weighted) {
+        CompactGrid map = weightedGrid(new Random(24), SIZE, 25, weighted ? 4 : 1);
+        for (int index = 0; index < SIZE * SIZE; index += SIZE + 1) {
+            map.setObstacle(index, false);
+        }
+        return map;
+    }
+
+    private static boolean search(AStar aStar, CompactGrid map, int start, int goal, SearchContext context,
+                                  PathBuffer path, boolean compress) {
+        boolean found = aStar.findPath(map, start, goal, context, path);
+        if (found && compress) {
+            path.compress(map.getWidth());
+        }
+        return found;
+    }
+}
@@ -0,0 +1,154 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.aysegulpekel.logic.TestMaps.cost;
+import static com.aysegulpekel.logic.TestMaps.freeCell;
+import static com.aysegulpekel.logic.TestMaps.weightedGrid;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AnytimeSearchTest {
+
+    private static final int SIZE = 96;
+    private static final int QUERIES = 30;
+
+    @Test
+    public void keepsEveryIntermediatePathWithinItsBound() {
+        Random random = new Random(14);
+        AStar aStar = new AStar();
+        for (int maxCost : new int[]{1, 5}) {
+            CompactGrid map = weightedGrid(random, SIZE, 25, maxCost);
+            for (int query = 0; query < QUERIES; query++) {
+                int start = freeCell(map, random);
+                int goal = freeCell(map, random);
+                int[] shortest = aStar.findPath(map, start, goal);
+                if (shortest.length == 0) {
+                    continue;
+                }
+                int optimal = cost(map, shortest);
+                AnytimeSearch search = new AnytimeSearch(map, start, goal);
+
+                double lastBound = Double.POSITIVE_INFINITY;
+                int lastCost = Integer.MAX_VALUE;
+                AnytimeSearch.Status status;
+                do {
+                    status = search.improve(AStar.NO_DEADLINE, 100);
+                    if (search.getPathCost() == Integer.MAX_VALUE) {
+                        continue;
+                    }
+                    int[] path = search.getPath();
+                    assertEquals(start, path[0]);
+                    assertEquals(goal, path[path.length - 1]);
+                    assertEquals(search.getPathCost(), cost(map, path));
+                    assertTrue(search.getPathCost() <= lastCost);
+                    assertTrue(search.getBound() >= 1 && search.getBound() <= lastBound);
+                    assertTrue(search.getPathCost() + " against " + optimal + " with bound " + search.getBound(),
+                            search.getPathCost() <= search.getBound() * optimal + 1e-9);
+                    assertTrue(search.getBound() <= AnytimeSearch.DEFAULT_INITIAL_WEIGHT);
+                    lastBound = search.getBound();
+                    lastCost = search.getPathCost();
+                } while (status == AnytimeSearch.Status.IMPROVING);
+
+                assertEquals(AnytimeSearch.Status.OPTIMAL, status);
+                assertEquals(optimal, search.getPathCost());
+                assertEquals(1.0, search.getBound(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void resumesAfterTheNodeBudgetWithoutLosingWork() {
+        Random random = new Random(15);
+        CompactGrid map = weightedGrid(random, SIZE, 25, 3);
+        for (int query = 0; query < QUERIES; query++) {
+            int start = freeCell(map, random);
+            int goal = freeCell(map, random);
+            AnytimeSearch whole = new AnytimeSearch(map, start, goal);
+            AnytimeSearch.Status expected = whole.improve(AStar.NO_DEADLINE, AnytimeSearch.NO_BUDGET);
+
+            AnytimeSearch sliced = new AnytimeSearch(map, start, goal);
+            AnytimeSearch.Status status;
+            int calls = 0;
+            do {
+                long before = sliced.getExpanded();
+                status = sliced.improve(AStar.NO_DEADLINE, 37);
+                assertTrue(sliced.getExpanded() - before <= 37);
+                calls++;
+            } while (status == AnytimeSearch.Status.IMPROVING);
+
+            assertEquals(expected, status);
+            assertEquals(whole.getExpanded(), sliced.getExpanded());
+            assertEquals(whole.getPathCost(), sliced.getPathCost());
+            assertArrayEquals(whole.getPath(), sliced.getPath());
+            assertTrue(calls >= whole.getExpanded() / 37);
+        }
+    }
+
+    @Test
+    public void resumesAfterThePassedDeadline() {
+        CompactGrid map = wallMap();
+        int start = map.indexOf(0, 0);
+        int goal = map.indexOf(255, 0);
+        AnytimeSearch search = new AnytimeSearch(map, start, goal);
+
+        // The clock is checked every 256 expansions, so a passed deadline stops the search soon
+        AnytimeSearch.Status status = search.improve(System.nanoTime() - 1, AnytimeSearch.NO_BUDGET);
+
+        assertEquals(AnytimeSearch.Status.IMPROVING, status);
+        assertTrue(search.getExpanded() > 0 && search.getExpanded() <= 256);
+        assertEquals(0, search.getPath().length);
+
+        status = search.improve(AStar.NO_DEADLINE, AnytimeSearch.NO_BUDGET);
+
+        assertEquals(AnytimeSearch.Status.OPTIMAL, status);
+        assertEquals(cost(map, new AStar().findPath(map, start, goal)), search.getPathCost());
+    }
+
+    @Test
+    public void stopsWhenTheThreadIsInterrupted() {
+        CompactGrid map = wallMap();
+        int start = map.indexOf(0, 0);
+        int goal = map.indexOf(255, 0);
+        AnytimeSearch search = new AnytimeSearch(map, start, goal);
+
+        Thread.currentThread().interrupt();
+        AnytimeSearch.Status status;
+        try {
+            status = search.improve(AStar.NO_DEADLINE, AnytimeSearch.NO_BUDGET);
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertEquals(AnytimeSearch.Status.IMPROVING, status);
+        assertEquals(AnytimeSearch.Status.OPTIMAL, search.improve(AStar.NO_DEADLINE, AnytimeSearch.NO_BUDGET));
+        assertEquals(cost(map, new AStar().findPath(map, start, goal)), search.getPathCost());
+    }
+
+    @Test
+    public void reportsAWalledOffGoalAsUnreachable() {
+        CompactGrid map = new CompactGrid(32, 32);
+        for (int y = 0; y < 32; y++) {
+            map.setObstacle(16, y, true);
+        }
+
+        AnytimeSearch search = new AnytimeSearch(map, 0, 31);
+
+        assertEquals(AnytimeSearch.Status.UNREACHABLE, search.improve(AStar.NO_DEADLINE, AnytimeSearch.NO_BUDGET));
+        assertEquals(0, search.getPath().length);
+        assertEquals(Integer.MAX_VALUE, search.getPathCost());
+    }
+
+    // A wall the search has to go around, so it takes more expansions than the clock check interval
+    private static CompactGrid wallMap() {
+        CompactGrid map = new CompactGrid(256, 256);
+        for (int y = 0; y < 250; y++) {
+            map.setObstacle(128, y, true);
+        }
+        return map;
+    }
+}
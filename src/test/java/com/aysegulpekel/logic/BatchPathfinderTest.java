@@ -0,0 +1,136 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.GridMap;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchPathfinderTest {
+
+    @Test
+    public void searchesAtMostMaxSearchesQueriesAtOnce() throws InterruptedException {
+        CompactGrid map = new CompactGrid(32, 32);
+        for (int y = 0; y < 30; y++) {
+            map.setObstacle(16, y, true);
+        }
+        CountingPathfinder pathfinder = new CountingPathfinder();
+        // A thread per query, as with virtual threads
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            BatchPathfinder batch = new BatchPathfinder(map, pathfinder, executor, 2);
+            List<PathQuery> queries = new ArrayList<PathQuery>();
+            for (int i = 0; i < 40; i++) {
+                queries.add(new PathQuery(i, 32 * 32 - 1 - i));
+            }
+
+            List<PathResult> results = batch.findAll(queries, 1, TimeUnit.MINUTES);
+
+            assertEquals(queries.size(), results.size());
+            for (PathResult result : results) {
+                PathQuery query = result.getQuery();
+                assertArrayEquals(new AStar().findPath(map, query.getStart(), query.getGoal()), result.getPath());
+            }
+            assertTrue("Peak of " + pathfinder.peak.get() + " searches", pathfinder.peak.get() <= 2);
+            assertTrue(pathfinder.contexts.size() <= 2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancellingStopsTheSearchOnAWorkStealingPool() throws Exception {
+        CompactGrid map = new CompactGrid(32, 32);
+        BlockingPathfinder pathfinder = new BlockingPathfinder();
+        ExecutorService executor = new ForkJoinPool(1);
+        try {
+            BatchPathfinder batch = new BatchPathfinder(map, pathfinder, executor, 1);
+            CompletableFuture<PathResult> blocked = batch.submit(new PathQuery(0, BlockingPathfinder.GOAL), 1,
+                    TimeUnit.MINUTES);
+            assertTrue(pathfinder.started.await(10, TimeUnit.SECONDS));
+
+            blocked.cancel(true);
+
+            assertTrue(pathfinder.interrupted.await(10, TimeUnit.SECONDS));
+            // The pool's only thread goes on without the interrupt
+            PathResult next = batch.submit(new PathQuery(0, 33), 1, TimeUnit.MINUTES).get(10, TimeUnit.SECONDS);
+            assertEquals(PathResult.Status.FOUND, next.getStatus());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // A* which holds the searches for GOAL until their thread is interrupted
+    private static class BlockingPathfinder implements Pathfinder {
+        static final int GOAL = 1023;
+
+        final AStar aStar = new AStar();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        public int[] findPath(GridMap map, int start, int goal) {
+            return aStar.findPath(map, start, goal);
+        }
+
+        public PathResult.Status search(GridMap map, int start, int goal, SearchContext context, long deadline) {
+            if (goal == GOAL) {
+                started.countDown();
+                while (!Thread.currentThread().isInterrupted()) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+                interrupted.countDown();
+                return PathResult.Status.CANCELLED;
+            }
+            return aStar.search(map, start, goal, context, deadline);
+        }
+
+        public int[] getPath(GridMap map, SearchContext context, int goal) {
+            return aStar.getPath(map, context, goal);
+        }
+    }
+
+    // Searches with A*, lingering a little so that queries overlap, and counts the searches and contexts
+    private static class CountingPathfinder implements Pathfinder {
+        final AStar aStar = new AStar();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        final Set<SearchContext> contexts =
+                Collections.newSetFromMap(new ConcurrentHashMap<SearchContext, Boolean>());
+
+        public int[] findPath(GridMap map, int start, int goal) {
+            return aStar.findPath(map, start, goal);
+        }
+
+        public PathResult.Status search(GridMap map, int start, int goal, SearchContext context, long deadline) {
+            contexts.add(context);
+            int now = running.incrementAndGet();
+            peak.accumulateAndGet(now, Math::max);
+            try {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                return aStar.search(map, start, goal, context, deadline);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        public int[] getPath(GridMap map, SearchContext context, int goal) {
+            return aStar.getPath(map, context, goal);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.logic.multiagent.CooperativePlanner;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.aysegulpekel.logic.TestMaps.cost;
+import static com.aysegulpekel.logic.TestMaps.freeCell;
+import static com.aysegulpekel.logic.TestMaps.randomGrid;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class CooperativePlannerTest {
+
+    private static final int SIZE = 24;
+    private static final int AGENTS = 12;
+    private static final int WINDOW = 8;
+
+    @Test
+    public void plansTheOthersWhenTheFirstAgentCanNotReachItsGoal() throws InterruptedException {
+        // Cell 35 is the corner behind 28, 29 and 34
+        CompactGrid map = new CompactGrid(6, 6);
+        for (int cell : new int[]{28, 29, 34}) {
+            map.setObstacle(cell, true);
+        }
+        CooperativePlanner planner = new CooperativePlanner(map, 4);
+        planner.addAgent(7, 35);
+        planner.addAgent(14, 20);
+
+        int[][] paths = planner.solve(6, null);
+
+        assertEquals(7, paths[0][paths[0].length - 1]);
+        assertEquals(20, paths[1][paths[1].length - 1]);
+        cost(map, paths[0]);
+        cost(map, paths[1]);
+        assertEquals(0, CooperativePlanner.countConflicts(paths));
+    }
+
+    @Test
+    public void plansTheSameCollisionFreeMovesWithAndWithoutAnExecutor() throws InterruptedException {
+        Random random = new Random(19);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 60; round++) {
+                CompactGrid map = randomGrid(random, SIZE, 17);
+                int[] starts = new int[AGENTS];
+                int[] goals = new int[AGENTS];
+                freeCells(map, random, starts);
+                freeCells(map, random, goals);
+
+                int[][] alone = solve(map, starts, goals, null);
+                int[][] parallel = solve(map, starts, goals, executor);
+
+                assertEquals("Round " + round, 0, CooperativePlanner.countConflicts(alone));
+                for (int agent = 0; agent < AGENTS; agent++) {
+                    assertEquals(starts[agent], alone[agent][0]);
+                    cost(map, alone[agent]);
+                    assertArrayEquals(alone[agent], parallel[agent]);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int[][] solve(CompactGrid map, int[] starts, int[] goals, ExecutorService executor)
+            throws InterruptedException {
+        CooperativePlanner planner = new CooperativePlanner(map, WINDOW);
+        for (int agent = 0; agent < starts.length; agent++) {
+            planner.addAgent(starts[agent], goals[agent]);
+        }
+        return planner.solve(200, executor);
+    }
+
+    // Picks distinct free cells
+    private static void freeCells(CompactGrid map, Random random, int[] cells) {
+        Set<Integer> taken = new HashSet<Integer>();
+        for (int i = 0; i < cells.length; i++) {
+            do {
+                cells[i] = freeCell(map, random);
+            } while (!taken.add(cells[i]));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.Directions;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.aysegulpekel.logic.TestMaps.cost;
+import static com.aysegulpekel.logic.TestMaps.weightedGrid;
+import static org.junit.Assert.assertEquals;
+
+public class DistanceSearchTest {
+
+    private static final int SIZE = 32;
+
+    @Test
+    public void measuresWhatAStarFinds() {
+        Random random = new Random(25);
+        DistanceSearch search = new DistanceSearch();
+        for (boolean weighted : new boolean[]{false, true}) {
+            for (boolean labelled : new boolean[]{false, true}) {
+                CompactGrid map = weightedGrid(random, SIZE, 33, weighted ? 5 : 1);
+                if (labelled) {
+                    map.getComponents();
+                }
+
+                for (int query = 0; query < 20; query++) {
+                    int source = random.nextInt(SIZE * SIZE);
+                    int[] targets = new int[10];
+                    for (int i = 0; i < targets.length; i++) {
+                        targets[i] = random.nextInt(SIZE * SIZE);
+                    }
+                    targets[9] = targets[0];
+                    int[] distances = new int[targets.length];
+
+                    search.run(map, source, targets, targets.length, distances);
+
+                    for (int i = 0; i < targets.length; i++) {
+                        int[] path = new AStar().findPath(map, source, targets[i]);
+                        boolean reachable = path.length > 0 && !map.isObstacle(source);
+                        assertEquals(reachable ? cost(map, path) : DistanceSearch.NO_DISTANCE, distances[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void measuresNearTargetsOnAnOpenMap() {
+        CompactGrid map = new CompactGrid(SIZE, SIZE);
+        int[] distances = new int[3];
+
+        new DistanceSearch().run(map, 0, new int[]{1, SIZE + 1, SIZE * SIZE - 1}, 3, distances);
+
+        assertEquals(Directions.STRAIGHT_COST, distances[0]);
+        assertEquals(Directions.DIAGONAL_COST, distances[1]);
+        assertEquals(Directions.DIAGONAL_COST * (SIZE - 1), distances[2]);
+    }
+}
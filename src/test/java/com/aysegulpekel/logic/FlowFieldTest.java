@@ -0,0 +1,164 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.aysegulpekel.logic.TestMaps.cost;
+import static com.aysegulpekel.logic.TestMaps.freeCell;
+import static com.aysegulpekel.logic.TestMaps.randomGrid;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FlowFieldTest {
+
+    private static final int SIZE = 32;
+
+    @Test
+    public void distancesAndStepsMatchAStarThroughObstacleChanges() {
+        Random random = new Random(20);
+        CompactGrid map = randomGrid(random, SIZE, 25);
+        int goal = freeCell(map, random);
+        FlowField field = new FlowField(map, goal);
+        assertMatchesAStar(map, field, random);
+
+        for (int round = 0; round < 20; round++) {
+            for (int change = 0; change < 1 + random.nextInt(10); change++) {
+                int index = random.nextInt(SIZE * SIZE);
+                if (index != goal) {
+                    map.setObstacle(index, !map.isObstacle(index));
+                }
+            }
+            field.update();
+            assertMatchesAStar(map, field, random);
+        }
+        field.detach();
+    }
+
+    @Test
+    public void cacheKeepsTheFieldsWithinItsBudget() {
+        CompactGrid map = new CompactGrid(SIZE, SIZE);
+        FlowField sizing = new FlowField(map, 0);
+        sizing.detach();
+        long fieldBytes = sizing.getMemoryBytes();
+        FlowFieldCache cache = new FlowFieldCache(map, fieldBytes * 2);
+
+        FlowField first = cache.getField(0);
+        assertSame(first, cache.getField(0));
+        cache.getField(1);
+        cache.getField(2);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(1, cache.getHits());
+        assertEquals(SIZE - 2, cache.getNextStep(SIZE - 1, 1));
+    }
+
+    @Test
+    public void agentsReadWholePathsWhileOthersRepairTheField() throws Exception {
+        Random random = new Random(21);
+        // Large enough for repairs to overlap the reads
+        int size = 128;
+        CompactGrid map = randomGrid(random, size, 20);
+        int goal = freeCell(map, random);
+        FlowFieldCache cache = new FlowFieldCache(map, Long.MAX_VALUE);
+        // Obstacles change between ticks, the agents plan during them
+        ReadWriteLock tick = new ReentrantReadWriteLock();
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        ExecutorService agents = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int agent = 0; agent < 4; agent++) {
+                long seed = random.nextLong();
+                results.add(agents.submit(() -> {
+                    Random own = new Random(seed);
+                    int paths = 0;
+                    while (running.get()) {
+                        tick.readLock().lock();
+                        try {
+                            int[] path = cache.getPath(freeCell(map, own), goal);
+                            if (path.length > 0) {
+                                assertEquals(goal, path[path.length - 1]);
+                                cost(map, path);
+                                paths++;
+                            }
+                        } finally {
+                            tick.readLock().unlock();
+                        }
+                    }
+                    return paths;
+                }));
+            }
+
+            for (int round = 0; round < 200; round++) {
+                tick.writeLock().lock();
+                try {
+                    for (int change = 0; change < 40; change++) {
+                        int index = random.nextInt(size * size);
+                        if (index != goal) {
+                            map.setObstacle(index, !map.isObstacle(index));
+                        }
+                    }
+                } finally {
+                    tick.writeLock().unlock();
+                }
+                Thread.sleep(1);
+            }
+            running.set(false);
+            for (Future<Integer> result : results) {
+                assertTrue(result.get() > 0);
+            }
+        } finally {
+            agents.shutdownNow();
+            cache.clear();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWeightedMaps() {
+        CompactGrid map = new CompactGrid(SIZE, SIZE);
+        map.setCost(1, 3);
+
+        new FlowFieldCache(map, Long.MAX_VALUE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stopsUpdatingOnceTheMapHasCosts() {
+        CompactGrid map = new CompactGrid(SIZE, SIZE);
+        FlowField field = new FlowField(map, 0);
+        field.detach();
+        map.setCost(1, 3);
+
+        field.update();
+    }
+
+    // Every sampled free cell must be as far from the goal as A* says, and its next step must lead along a shortest path
+    private static void assertMatchesAStar(CompactGrid map, FlowField field, Random random) {
+        AStar aStar = new AStar();
+        for (int sample = 0; sample < 50; sample++) {
+            int start = freeCell(map, random);
+            int[] expected = aStar.findPath(map, start, field.getGoal());
+            if (expected.length == 0) {
+                assertEquals(Integer.MAX_VALUE, field.getDistance(start));
+                assertEquals(-1, field.getNextStep(start));
+                assertEquals(0, field.getPath(start).length);
+                continue;
+            }
+            assertEquals(cost(map, expected), field.getDistance(start));
+            int[] path = field.getPath(start);
+            assertEquals(field.getGoal(), path[path.length - 1]);
+            assertEquals(cost(map, expected), cost(map, path));
+        }
+    }
+}
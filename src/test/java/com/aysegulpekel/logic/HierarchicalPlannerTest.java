@@ -0,0 +1,97 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.aysegulpekel.logic.TestMaps.cost;
+import static com.aysegulpekel.logic.TestMaps.freeCell;
+import static com.aysegulpekel.logic.TestMaps.randomGrid;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HierarchicalPlannerTest {
+
+    private static final int SIZE = 64;
+    private static final int CLUSTER_SIZE = 8;
+    private static final int QUERIES = 100;
+
+    @Test
+    public void findsValidPathsCloseToTheShortest() {
+        Random random = new Random(7);
+        for (int round = 0; round < 5; round++) {
+            CompactGrid map = randomGrid(random, SIZE, 20);
+            HierarchicalPlanner planner = new HierarchicalPlanner(map, CLUSTER_SIZE);
+
+            checkQueries(map, planner, random);
+
+            planner.detach();
+        }
+    }
+
+    @Test
+    public void followsObstacleChanges() {
+        Random random = new Random(8);
+        CompactGrid map = randomGrid(random, SIZE, 20);
+        HierarchicalPlanner planner = new HierarchicalPlanner(map, CLUSTER_SIZE);
+        for (int round = 0; round < 10; round++) {
+            for (int change = 0; change < 40; change++) {
+                int cell = random.nextInt(SIZE * SIZE);
+                map.setObstacle(cell, !map.isObstacle(cell));
+            }
+
+            checkQueries(map, planner, random);
+        }
+        planner.detach();
+    }
+
+    @Test
+    public void answersQueriesInsideOneCluster() {
+        CompactGrid map = new CompactGrid(SIZE, SIZE);
+        HierarchicalPlanner planner = new HierarchicalPlanner(map, CLUSTER_SIZE);
+
+        int[] path = planner.findPath(map.indexOf(1, 1), map.indexOf(6, 3));
+
+        assertEquals(map.indexOf(1, 1), path[0]);
+        assertEquals(map.indexOf(6, 3), path[path.length - 1]);
+        assertEquals(5 * 10 + 2 * 4, cost(map, path));
+        planner.detach();
+    }
+
+    @Test
+    public void keepsTheSearchStateSmallerThanTheMap() {
+        CompactGrid map = randomGrid(new Random(9), 256, 20);
+        HierarchicalPlanner planner = new HierarchicalPlanner(map, 32);
+
+        assertTrue(planner.getSearchBytes() < 256L * 256 * 4);
+        planner.detach();
+    }
+
+    // Compares random queries with flat A*, short queries may detour through the entrances but the total stays close
+    private static void checkQueries(CompactGrid map, HierarchicalPlanner planner, Random random) {
+        AStar aStar = new AStar();
+        long shortest = 0;
+        long found = 0;
+        for (int query = 0; query < QUERIES; query++) {
+            int start = freeCell(map, random);
+            int goal = freeCell(map, random);
+
+            int[] expected = aStar.findPath(map, start, goal);
+            int[] path = planner.findPath(start, goal);
+
+            assertEquals(expected.length == 0, path.length == 0);
+            if (path.length == 0) {
+                continue;
+            }
+            assertEquals(start, path[0]);
+            assertEquals(goal, path[path.length - 1]);
+            int expectedCost = cost(map, expected);
+            int pathCost = cost(map, path);
+            assertTrue(pathCost >= expectedCost);
+            shortest += expectedCost;
+            found += pathCost;
+        }
+        assertTrue(found + " for shortest paths of " + shortest, found * 100 <= shortest * 110);
+    }
+}
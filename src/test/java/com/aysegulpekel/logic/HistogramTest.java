@@ -0,0 +1,106 @@
+package com.aysegulpekel.logic;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void keepsSmallValuesExact() {
+        Histogram histogram = new Histogram();
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(2);
+        histogram.record(3);
+
+        assertEquals(4, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(25));
+        assertEquals(1, histogram.getPercentile(50));
+        assertEquals(2, histogram.getPercentile(75));
+        assertEquals(3, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void boundsEveryPercentileWithinAQuarterOfItsValue() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+
+        for (int percentile = 1; percentile <= 100; percentile++) {
+            long exact = 100L * percentile;
+            long bound = histogram.getPercentile(percentile);
+            assertTrue(percentile + "th percentile " + bound, bound >= exact && bound <= exact + exact / 4);
+        }
+    }
+
+    @Test
+    public void countsHugeAndNegativeValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void answersZeroUntilSomethingIsRecorded() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(99));
+
+        histogram.record(1000);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void mergesTheCountsOfAnotherHistogram() {
+        Histogram low = new Histogram();
+        Histogram high = new Histogram();
+        for (int value = 0; value < 100; value++) {
+            low.record(1);
+            high.record(1000);
+        }
+
+        low.merge(high);
+
+        assertEquals(200, low.getCount());
+        assertEquals(1, low.getPercentile(50));
+        assertEquals(histogramOf(1000).getPercentile(100), low.getPercentile(51));
+        assertEquals(100, high.getCount());
+    }
+
+    @Test
+    public void countsEveryValueRecordedFromManyThreads() throws InterruptedException {
+        Histogram histogram = new Histogram();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int value = 0; value < 10000; value++) {
+                    histogram.record(value);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, histogram.getCount());
+    }
+
+    private static Histogram histogramOf(long value) {
+        Histogram histogram = new Histogram();
+        histogram.record(value);
+        return histogram;
+    }
+}
@@ -0,0 +1,99 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.aysegulpekel.logic.TestMaps.cost;
+import static com.aysegulpekel.logic.TestMaps.freeCell;
+import static com.aysegulpekel.logic.TestMaps.randomGrid;
+import static org.junit.Assert.assertEquals;
+
+public class IncrementalPlannerTest {
+
+    private static final int SIZE = 32;
+
+    @Test
+    public void replansAsCheaplyAsAFreshSearchAfterObstacleChanges() {
+        Random random = new Random(6);
+        CompactGrid map = randomGrid(random, SIZE, 25);
+        int start = freeCell(map, random);
+        int goal = freeCell(map, random);
+        IncrementalPlanner planner = new IncrementalPlanner(map, start, goal);
+
+        for (int round = 0; round < 100; round++) {
+            for (int change = 0; change < 1 + random.nextInt(20); change++) {
+                int index = random.nextInt(SIZE * SIZE);
+                if (index != start && index != goal) {
+                    map.setObstacle(index, !map.isObstacle(index));
+                }
+            }
+
+            assertSameCost(map, new AStar().findPath(map, start, goal), planner.computePath());
+        }
+        planner.detach();
+    }
+
+    @Test
+    public void replansFromAMovingStart() {
+        Random random = new Random(7);
+        CompactGrid map = new CompactGrid(SIZE, SIZE);
+        int start = 0;
+        int goal = SIZE * SIZE - 1;
+        IncrementalPlanner planner = new IncrementalPlanner(map, start, goal);
+
+        int[] path = planner.computePath();
+        while (path.length > 1) {
+            // Step along the path, then drop an obstacle somewhere ahead unless it walls off the goal
+            start = path[1];
+            planner.setStart(start);
+            int blocked = path[random.nextInt(path.length)];
+            if (blocked != start && blocked != goal) {
+                map.setObstacle(blocked, true);
+                if (new AStar().findPath(map, start, goal).length == 0) {
+                    map.setObstacle(blocked, false);
+                }
+            }
+
+            path = planner.computePath();
+            assertEquals(start, path[0]);
+            assertSameCost(map, new AStar().findPath(map, start, goal), path);
+        }
+        assertEquals(goal, start);
+        planner.detach();
+    }
+
+    @Test
+    public void replansAfterTheStartJumpsWithoutAnyChange() {
+        Random random = new Random(8);
+        for (int round = 0; round < 20; round++) {
+            CompactGrid map = randomGrid(random, SIZE, 25);
+            int goal = freeCell(map, random);
+            IncrementalPlanner planner = new IncrementalPlanner(map, freeCell(map, random), goal);
+            planner.computePath();
+
+            for (int jump = 0; jump < 50; jump++) {
+                // Some changes now and then, so the open set keeps keys computed from earlier starts
+                if (jump % 10 == 0) {
+                    int index = random.nextInt(SIZE * SIZE);
+                    if (index != goal) {
+                        map.setObstacle(index, !map.isObstacle(index));
+                    }
+                }
+                int start = freeCell(map, random);
+                planner.setStart(start);
+
+                assertSameCost(map, new AStar().findPath(map, start, goal), planner.computePath());
+            }
+            planner.detach();
+        }
+    }
+
+    private static void assertSameCost(CompactGrid map, int[] expected, int[] path) {
+        assertEquals(expected.length == 0, path.length == 0);
+        if (path.length > 0) {
+            assertEquals(cost(map, expected), cost(map, path));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.aysegulpekel.logic.TestMaps.cost;
+import static com.aysegulpekel.logic.TestMaps.freeCell;
+import static com.aysegulpekel.logic.TestMaps.randomGrid;
+import static org.junit.Assert.assertEquals;
+
+public class JumpPointSearchTest {
+
+    private static final int SIZE = 48;
+
+    @Test
+    public void findsPathsAsCheapAsAStarOnRandomGrids() {
+        Random random = new Random(5);
+        AStar aStar = new AStar();
+        JumpPointSearch jps = new JumpPointSearch();
+        for (int density : new int[]{0, 10, 20, 30, 40}) {
+            for (int round = 0; round < 10; round++) {
+                CompactGrid map = randomGrid(random, SIZE, density);
+                for (int query = 0; query < 20; query++) {
+                    int start = freeCell(map, random);
+                    int goal = freeCell(map, random);
+
+                    int[] expected = aStar.findPath(map, start, goal);
+                    int[] path = jps.findPath(map, start, goal);
+
+                    assertEquals(expected.length == 0, path.length == 0);
+                    if (path.length > 0) {
+                        assertEquals(start, path[0]);
+                        assertEquals(goal, path[path.length - 1]);
+                        assertEquals("Density " + density + " from " + start + " to " + goal,
+                                cost(map, expected), cost(map, path));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findsNoPathToAWalledOffGoal() {
+        CompactGrid map = new CompactGrid(5, 5);
+        for (int y = 0; y < 5; y++) {
+            map.setObstacle(2, y, true);
+        }
+
+        assertEquals(0, new JumpPointSearch().findPath(map, 0, 4).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWeightedMaps() {
+        CompactGrid map = new CompactGrid(5, 5);
+        map.setCost(12, 3);
+
+        new JumpPointSearch().findPath(map, 0, 24);
+    }
+}
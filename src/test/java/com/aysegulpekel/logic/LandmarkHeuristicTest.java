@@ -0,0 +1,109 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static com.aysegulpekel.logic.TestMaps.cost;
+import static com.aysegulpekel.logic.TestMaps.freeCell;
+import static com.aysegulpekel.logic.TestMaps.randomGrid;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LandmarkHeuristicTest {
+
+    private static final int SIZE = 40;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsPathsAsCheapAsTheOctileDistance() {
+        Random random = new Random(13);
+        AStar octile = new AStar();
+        for (int round = 0; round < 5; round++) {
+            CompactGrid map = randomGrid(random, SIZE, 30);
+            AStar alt = new AStar(LandmarkHeuristic.build(map, 8));
+            for (int query = 0; query < 50; query++) {
+                int start = freeCell(map, random);
+                int goal = freeCell(map, random);
+
+                int[] expected = octile.findPath(map, start, goal);
+                int[] path = alt.findPath(map, start, goal);
+
+                assertEquals(expected.length == 0, path.length == 0);
+                assertEquals(cost(map, expected), cost(map, path));
+            }
+        }
+    }
+
+    @Test
+    public void mapsBackTheTablesItSaved() throws IOException {
+        Random random = new Random(14);
+        CompactGrid map = randomGrid(random, SIZE, 30);
+        LandmarkHeuristic built = LandmarkHeuristic.build(map, 4);
+        Path file = folder.newFile("landmarks.bin").toPath();
+        built.save(file);
+
+        LandmarkHeuristic loaded = LandmarkHeuristic.load(map, file);
+
+        assertArrayEquals(built.getLandmarks(), loaded.getLandmarks());
+        assertEquals(built.getTableBytes(), loaded.getTableBytes());
+        for (int sample = 0; sample < 200; sample++) {
+            int from = freeCell(map, random);
+            int goal = freeCell(map, random);
+            assertEquals(built.estimate(map, from, goal), loaded.estimate(map, from, goal));
+        }
+    }
+
+    @Test
+    public void rejectsTablesSavedForOtherObstacles() throws IOException {
+        CompactGrid map = randomGrid(new Random(15), SIZE, 30);
+        Path file = folder.newFile("landmarks.bin").toPath();
+        LandmarkHeuristic.build(map, 4).save(file);
+        map.setObstacle(0, !map.isObstacle(0));
+
+        try {
+            LandmarkHeuristic.load(map, file);
+            fail("Loaded tables saved for other obstacles");
+        } catch (IOException expected) {
+            // The file no longer matches the map
+        }
+        try {
+            LandmarkHeuristic.load(new CompactGrid(SIZE, SIZE + 1), file);
+            fail("Loaded tables saved for another size");
+        } catch (IOException expected) {
+            // The file belongs to a map of another size
+        }
+    }
+
+    @Test
+    public void fallsBackToTheOctileDistanceOnceTheMapChanges() {
+        // A wall with a gap at the bottom, the landmarks see the detour
+        CompactGrid map = new CompactGrid(SIZE, SIZE);
+        for (int y = 0; y < SIZE - 1; y++) {
+            map.setObstacle(SIZE / 2, y, true);
+        }
+        LandmarkHeuristic heuristic = LandmarkHeuristic.build(map, 8);
+        int from = map.indexOf(0, 0);
+        int goal = map.indexOf(SIZE - 1, 0);
+        assertTrue(heuristic.isCurrent(map));
+        assertTrue(heuristic.estimate(map, from, goal) > Heuristic.OCTILE.estimate(map, from, goal));
+
+        // Opening the wall at the top makes the old bound overestimate
+        map.setObstacle(SIZE / 2, 0, false);
+
+        assertFalse(heuristic.isCurrent(map));
+        assertEquals(Heuristic.OCTILE.estimate(map, from, goal), heuristic.estimate(map, from, goal));
+        int[] path = new AStar(heuristic).findPath(map, from, goal);
+        assertEquals(cost(map, new AStar().findPath(map, from, goal)), cost(map, path));
+    }
+}
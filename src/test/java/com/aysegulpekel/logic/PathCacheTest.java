@@ -0,0 +1,55 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class PathCacheTest {
+
+    @Test
+    public void servesPartsOfCachedPathsBothWaysOnUniformMaps() {
+        CompactGrid map = new CompactGrid(10, 1);
+        PathCache cache = new PathCache(map, new AStar(), 8);
+        cache.findPath(0, 9);
+
+        assertArrayEquals(new int[]{2, 3, 4, 5}, cache.findPath(2, 5));
+        assertArrayEquals(new int[]{5, 4, 3, 2}, cache.findPath(5, 2));
+        assertEquals(2, cache.getSubPathHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void servesOnlyForwardPartsOnWeightedMaps() {
+        CompactGrid map = new CompactGrid(10, 1);
+        map.setCost(3, 5);
+        PathCache cache = new PathCache(map, new AStar(), 8);
+        cache.findPath(0, 9);
+
+        assertArrayEquals(new int[]{2, 3, 4, 5}, cache.findPath(2, 5));
+        assertEquals(1, cache.getSubPathHits());
+
+        assertArrayEquals(new AStar().findPath(map, 5, 2), cache.findPath(5, 2));
+        assertEquals(1, cache.getSubPathHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void dropsCachedPathsWhenTheMapChanges() {
+        CompactGrid map = new CompactGrid(5, 3);
+        PathCache cache = new PathCache(map, new AStar(), 8);
+        cache.findPath(0, 4);
+        assertEquals(1, cache.size());
+
+        map.setObstacle(2, true);
+        int[] path = cache.findPath(0, 4);
+
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getMisses());
+        for (int cell : path) {
+            assertFalse(map.isObstacle(cell));
+        }
+    }
+}
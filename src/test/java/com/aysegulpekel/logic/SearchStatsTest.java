@@ -0,0 +1,134 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.aysegulpekel.logic.TestMaps.cost;
+import static com.aysegulpekel.logic.TestMaps.freeCell;
+import static com.aysegulpekel.logic.TestMaps.weightedGrid;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchStatsTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void describesTheSearchAndItsPath() {
+        Random random = new Random(11);
+        CompactGrid map = weightedGrid(random, 64, 20, 5);
+        AStar aStar = new AStar();
+        SearchContext context = new SearchContext();
+        context.setStatsEnabled(true);
+        for (int query = 0; query < 50; query++) {
+            int start = freeCell(map, random);
+            int goal = freeCell(map, random);
+
+            PathResult.Status status = aStar.search(map, start, goal, context, AStar.NO_DEADLINE);
+
+            SearchStats stats = context.getStats();
+            assertEquals(status, stats.getStatus());
+            if (status == PathResult.Status.FOUND) {
+                int[] path = aStar.getPath(map, context, goal);
+                assertEquals(path.length, stats.getPathLength());
+                assertEquals(cost(map, path), stats.getPathCost());
+            } else {
+                assertEquals(0, stats.getPathLength());
+            }
+            assertTrue(stats.getGenerated() >= stats.getOpenSetPeak());
+            assertTrue(stats.getWallTimeNanos() >= 0);
+        }
+    }
+
+    @Test
+    public void copiesOutlastTheNextSearch() {
+        CompactGrid map = new CompactGrid(32, 32);
+        AStar aStar = new AStar();
+        SearchContext context = new SearchContext();
+        context.setStatsEnabled(true);
+
+        aStar.search(map, 0, 32 * 32 - 1, context, AStar.NO_DEADLINE);
+        SearchStats first = context.getStats().copy();
+        aStar.search(map, 0, 1, context, AStar.NO_DEADLINE);
+
+        assertEquals(32, first.getPathLength());
+        assertEquals(31 * 14, first.getPathCost());
+        assertTrue(first.getExpanded() > context.getStats().getExpanded());
+        assertEquals(2, context.getStats().getPathLength());
+
+        context.setStatsEnabled(false);
+        assertNull(context.getStats());
+    }
+
+    @Test
+    public void aggregatesTheSearchesWhileEnabled() {
+        Random random = new Random(12);
+        CompactGrid map = weightedGrid(random, 64, 25, 1);
+        AStar aStar = new AStar();
+        SearchContext context = new SearchContext();
+        context.setStatsEnabled(true);
+        SearchMetrics metrics = new SearchMetrics();
+        long expanded = 0;
+        long found = 0;
+        SearchMetrics.enable(metrics);
+        try {
+            for (int query = 0; query < 100; query++) {
+                PathResult.Status status =
+                        aStar.search(map, freeCell(map, random), freeCell(map, random), context, AStar.NO_DEADLINE);
+                expanded += context.getStats().getExpanded();
+                found += status == PathResult.Status.FOUND ? 1 : 0;
+            }
+        } finally {
+            SearchMetrics.disable();
+        }
+        aStar.search(map, 0, 64 * 64 - 1, context, AStar.NO_DEADLINE);
+
+        assertEquals(100, metrics.getQueries());
+        assertEquals(found, metrics.getFound());
+        assertEquals(100 - found, metrics.getUnreachable() + metrics.getTimedOut() + metrics.getCancelled());
+        assertEquals(expanded, metrics.getExpanded());
+        assertEquals(100, metrics.getWallTimeNanos().getCount());
+        assertEquals(100, metrics.getExpandedPerQuery().getCount());
+        assertTrue(metrics.getExpandedPerQuery().getPercentile(100) >= metrics.getExpanded() / 100);
+    }
+
+    @Test
+    public void commitsAFlightRecorderEventPerSearch() throws Exception {
+        CompactGrid map = new CompactGrid(32, 32);
+        SearchContext context = new SearchContext();
+        context.setStatsEnabled(true);
+        Path file = folder.newFile("search.jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable("com.aysegulpekel.Search");
+            recording.start();
+            new AStar().search(map, 0, 32 * 32 - 1, context, AStar.NO_DEADLINE);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = new ArrayList<RecordedEvent>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            if (event.getEventType().getName().equals("com.aysegulpekel.Search")) {
+                events.add(event);
+            }
+        }
+        assertEquals(1, events.size());
+        SearchStats stats = context.getStats();
+        assertEquals("FOUND", events.get(0).getString("status"));
+        assertEquals(stats.getExpanded(), events.get(0).getInt("expanded"));
+        assertEquals(stats.getPathCost(), events.get(0).getInt("pathCost"));
+        assertEquals(stats.getWallTimeNanos(), events.get(0).getDuration("wallTime").toNanos());
+    }
+}
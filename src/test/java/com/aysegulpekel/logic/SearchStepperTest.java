@@ -0,0 +1,72 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.aysegulpekel.logic.TestMaps.freeCell;
+import static com.aysegulpekel.logic.TestMaps.weightedGrid;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SearchStepperTest {
+
+    private static final int SIZE = 48;
+
+    @Test
+    public void expandsLikeTheBinaryHeapSearch() {
+        checkQueue(AStar.QueueType.BINARY_HEAP, new Random(18));
+    }
+
+    @Test
+    public void expandsLikeTheRadixHeapSearch() {
+        checkQueue(AStar.QueueType.RADIX_HEAP, new Random(19));
+    }
+
+    // Steps random queries a few cells at a time and compares them with one uninterrupted search
+    private static void checkQueue(AStar.QueueType queueType, Random random) {
+        for (int round = 0; round < 4; round++) {
+            CompactGrid map = weightedGrid(random, SIZE, 25, round % 2 == 0 ? 1 : 5);
+            AStar aStar = new AStar(Heuristic.OCTILE, queueType);
+            SearchContext context = new SearchContext();
+            context.setStatsEnabled(true);
+            for (int query = 0; query < 30; query++) {
+                int start = freeCell(map, random);
+                int goal = freeCell(map, random);
+
+                PathResult.Status status = aStar.search(map, start, goal, context, AStar.NO_DEADLINE);
+                SearchStepper stepper = aStar.stepper(map, start, goal);
+                int expanded = 0;
+                while (!stepper.isFinished()) {
+                    expanded += stepper.step(1 + random.nextInt(7));
+                }
+
+                assertEquals(status, stepper.getStatus());
+                assertEquals(context.getStats().getExpanded(), expanded);
+                assertEquals(expanded, stepper.getClosed().size());
+                for (int cell = 0; cell < SIZE * SIZE; cell++) {
+                    assertEquals(context.isClosed(cell), stepper.getClosed().contains(cell));
+                    assertEquals(context.isOpen(cell), stepper.getFrontier().contains(cell));
+                }
+                int[] path = status == PathResult.Status.FOUND ? context.getPath(goal) : new int[0];
+                assertArrayEquals(path, stepper.getPath());
+            }
+        }
+    }
+
+    @Test
+    public void showsTheFrontierOfEitherQueue() {
+        CompactGrid map = new CompactGrid(SIZE, SIZE);
+        for (AStar.QueueType queueType : AStar.QueueType.values()) {
+            SearchStepper stepper = new AStar(Heuristic.OCTILE, queueType).stepper(map, 0, SIZE * SIZE - 1);
+            stepper.step(10);
+
+            CellView frontier = stepper.getFrontier();
+            for (int position = 0; position < frontier.size(); position++) {
+                assertTrue(frontier.contains(frontier.get(position)));
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.core.GridMap;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TestMaps builds the random square maps the search tests run on, and
+ * measures the paths found on them.
+ */
+final class TestMaps {
+
+    private TestMaps() {
+    }
+
+    /**
+     * @param random  source of the obstacles
+     * @param size    width and height of the map
+     * @param density percentage of the cells which are obstacles, roughly
+     */
+    static CompactGrid randomGrid(Random random, int size, int density) {
+        return weightedGrid(random, size, density, 1);
+    }
+
+    /**
+     * @param random  source of the obstacles and costs
+     * @param size    width and height of the map
+     * @param density percentage of the cells which are obstacles, roughly
+     * @param maxCost highest cost of a free cell, the costs run from 1 to it
+     */
+    static CompactGrid weightedGrid(Random random, int size, int density, int maxCost) {
+        CompactGrid map = new CompactGrid(size, size);
+        for (int index = 0; index < size * size; index++) {
+            if (random.nextInt(100) < density) {
+                map.setObstacle(index, true);
+            } else if (maxCost > 1) {
+                map.setCost(index, 1 + random.nextInt(maxCost));
+            }
+        }
+        return map;
+    }
+
+    static int freeCell(GridMap map, Random random) {
+        int cells = map.getWidth() * map.getHeight();
+        while (true) {
+            int index = random.nextInt(cells);
+            if (!map.isObstacle(index)) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Sums the moves' costs, each scaled by the cost of the cell it enters,
+     * and fails on a move the map doesn't allow. Waiting on a cell costs nothing.
+     *
+     * @param map  map the path runs on
+     * @param path cells of the path, the start first
+     * @return cost of the path, 0 for an empty path
+     */
+    static int cost(GridMap map, int[] path) {
+        int width = map.getWidth();
+        int cost = 0;
+        for (int step = 1; step < path.length; step++) {
+            if (path[step] == path[step - 1]) {
+                continue;
+            }
+            int dx = path[step] % width - path[step - 1] % width;
+            int dy = path[step] / width - path[step - 1] / width;
+            int direction = Directions.of(dx, dy);
+            assertTrue("Move from " + path[step - 1] + " to " + path[step], Math.abs(dx) <= 1 && Math.abs(dy) <= 1
+                    && (map.getNeighbourMask(path[step - 1]) & (1 << direction)) != 0);
+            cost += Directions.cost(direction) * map.getCost(path[step]);
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,119 @@
+package com.aysegulpekel.logic;
+
+import com.aysegulpekel.core.ClearanceMap;
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.logic.multiagent.CooperativePlanner;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.aysegulpekel.logic.TestMaps.cost;
+import static com.aysegulpekel.logic.TestMaps.freeCell;
+import static com.aysegulpekel.logic.TestMaps.weightedGrid;
+import static org.junit.Assert.assertEquals;
+
+public class WeightedSearchTest {
+
+    private static final int SIZE = 24;
+
+    @Test
+    public void anytimeSearchEndsOnTheWeightedOptimum() {
+        Random random = new Random(22);
+        for (int round = 0; round < 50; round++) {
+            CompactGrid map = weightedGrid(random, SIZE, 20, 5);
+            int start = freeCell(map, random);
+            int goal = freeCell(map, random);
+
+            AnytimeSearch search = new AnytimeSearch(map, start, goal);
+            AnytimeSearch.Status status = search.improve(AStar.NO_DEADLINE, AnytimeSearch.NO_BUDGET);
+            int[] expected = new AStar().findPath(map, start, goal);
+
+            if (expected.length == 0) {
+                assertEquals(AnytimeSearch.Status.UNREACHABLE, status);
+            } else {
+                assertEquals(AnytimeSearch.Status.OPTIMAL, status);
+                assertEquals(cost(map, expected), search.getPathCost());
+                assertEquals(cost(map, expected), cost(map, search.getPath()));
+            }
+        }
+    }
+
+    @Test
+    public void incrementalPlannerFollowsCostChanges() {
+        Random random = new Random(23);
+        CompactGrid map = weightedGrid(random, SIZE, 20, 5);
+        int start = freeCell(map, random);
+        int goal = freeCell(map, random);
+        IncrementalPlanner planner = new IncrementalPlanner(map, start, goal);
+
+        for (int round = 0; round < 50; round++) {
+            for (int change = 0; change < 10; change++) {
+                int index = random.nextInt(SIZE * SIZE);
+                if (index == start || index == goal) {
+                    continue;
+                }
+                if (random.nextBoolean()) {
+                    map.setCost(index, 1 + random.nextInt(5));
+                } else {
+                    map.setObstacle(index, !map.isObstacle(index));
+                }
+            }
+
+            int[] expected = new AStar().findPath(map, start, goal);
+            int[] path = planner.computePath();
+            assertEquals(expected.length == 0, path.length == 0);
+            if (path.length > 0) {
+                assertEquals(cost(map, expected), cost(map, path));
+                assertEquals(cost(map, path), planner.getDistance(start));
+            }
+        }
+        planner.detach();
+    }
+
+    @Test
+    public void largeAgentsPayTheCellCosts() {
+        Random random = new Random(25);
+        AStar aStar = new AStar();
+        for (int round = 0; round < 10; round++) {
+            CompactGrid map = weightedGrid(random, SIZE, 10, 5);
+            // The grid a two cell agent sees, with the same costs
+            ClearanceMap clearance = map.getClearance();
+            CompactGrid inflated = new CompactGrid(SIZE, SIZE);
+            for (int index = 0; index < SIZE * SIZE; index++) {
+                inflated.setObstacle(index, !clearance.fits(index, 2));
+                inflated.setCost(index, map.getCost(index));
+            }
+            for (int query = 0; query < 10; query++) {
+                int start = freeCell(inflated, random);
+                int goal = freeCell(inflated, random);
+
+                int[] expected = aStar.findPath(inflated, start, goal);
+                int[] path = aStar.findPath(map, start, goal, 2);
+
+                assertEquals(expected.length == 0, path.length == 0);
+                assertEquals(cost(inflated, expected), cost(map, path));
+            }
+        }
+    }
+
+    @Test
+    public void cooperativePlannerRoutesALoneAgentAlongTheWeightedOptimum() throws InterruptedException {
+        Random random = new Random(24);
+        for (int round = 0; round < 20; round++) {
+            CompactGrid map = weightedGrid(random, SIZE, 20, 5);
+            int start = freeCell(map, random);
+            int goal = freeCell(map, random);
+            int[] expected = new AStar().findPath(map, start, goal);
+            if (expected.length == 0) {
+                continue;
+            }
+
+            CooperativePlanner planner = new CooperativePlanner(map, SIZE * SIZE);
+            planner.addAgent(start, goal);
+            int[] path = planner.solve(SIZE * SIZE, null)[0];
+
+            assertEquals(goal, path[path.length - 1]);
+            assertEquals(cost(map, expected), cost(map, path));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.aysegulpekel.service;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.GridMap;
+import com.aysegulpekel.logic.AStar;
+import com.aysegulpekel.logic.BatchPathfinder;
+import com.aysegulpekel.logic.PathQuery;
+import com.aysegulpekel.logic.PathResult;
+import com.aysegulpekel.logic.Pathfinder;
+import com.aysegulpekel.logic.SearchContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryBatcherTest {
+
+    // Queries to this goal wait for the gate before they search
+    private static final int SLOW_GOAL = 99;
+
+    private final CompactGrid map = new CompactGrid(10, 10);
+    private final CountDownLatch slowStarted = new CountDownLatch(1);
+    private final CountDownLatch gate = new CountDownLatch(1);
+    private ExecutorService executor;
+
+    @Before
+    public void startWorkers() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void stopWorkers() {
+        gate.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void aSlowQueryDoesNotHoldBackTheQueriesAfterIt() throws Exception {
+        try (QueryBatcher batcher = batcher(16, 4)) {
+            CompletableFuture<PathResult> slow = batcher.submit(new PathQuery(0, SLOW_GOAL));
+            assertTrue(slowStarted.await(10, TimeUnit.SECONDS));
+
+            for (int goal = 1; goal < 10; goal++) {
+                PathResult fast = batcher.submit(new PathQuery(0, goal)).get(10, TimeUnit.SECONDS);
+                assertEquals(PathResult.Status.FOUND, fast.getStatus());
+            }
+            assertFalse(slow.isDone());
+
+            gate.countDown();
+            assertEquals(PathResult.Status.FOUND, slow.get(10, TimeUnit.SECONDS).getStatus());
+        }
+    }
+
+    @Test
+    public void turnsQueriesAwayWhileEveryRunningSlotAndTheQueueAreTaken() throws Exception {
+        try (QueryBatcher batcher = batcher(1, 1)) {
+            CompletableFuture<PathResult> slow = batcher.submit(new PathQuery(0, SLOW_GOAL));
+            assertTrue(slowStarted.await(10, TimeUnit.SECONDS));
+
+            CompletableFuture<PathResult> queued = batcher.submit(new PathQuery(0, 1));
+            assertNotNull(queued);
+            assertNull(batcher.submit(new PathQuery(0, 2)));
+            assertEquals(1, batcher.getRejected());
+
+            gate.countDown();
+            assertTrue(slow.get(10, TimeUnit.SECONDS).isFound());
+            assertTrue(queued.get(10, TimeUnit.SECONDS).isFound());
+        }
+    }
+
+    @Test
+    public void closingCancelsTheRunningQueries() throws Exception {
+        QueryBatcher batcher = batcher(16, 4);
+        CompletableFuture<PathResult> slow = batcher.submit(new PathQuery(0, SLOW_GOAL));
+        assertTrue(slowStarted.await(10, TimeUnit.SECONDS));
+
+        batcher.close();
+
+        assertTrue(slow.isCancelled());
+    }
+
+    private QueryBatcher batcher(int queueCapacity, int maxBatchSize) {
+        BatchPathfinder pathfinder = new BatchPathfinder(map, new GatedPathfinder(), executor, 2);
+        return new QueryBatcher(pathfinder, 100, queueCapacity, maxBatchSize, 10, TimeUnit.SECONDS);
+    }
+
+    // A* which holds the searches for SLOW_GOAL until the gate opens
+    private class GatedPathfinder implements Pathfinder {
+        private final AStar aStar = new AStar();
+
+        public int[] findPath(GridMap map, int start, int goal) {
+            return aStar.findPath(map, start, goal);
+        }
+
+        public PathResult.Status search(GridMap map, int start, int goal, SearchContext context, long deadline) {
+            if (goal == SLOW_GOAL) {
+                slowStarted.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    return PathResult.Status.CANCELLED;
+                }
+            }
+            return aStar.search(map, start, goal, context, deadline);
+        }
+
+        public int[] getPath(GridMap map, SearchContext context, int goal) {
+            return aStar.getPath(map, context, goal);
+        }
+    }
+}
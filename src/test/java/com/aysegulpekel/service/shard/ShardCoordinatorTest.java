@@ -0,0 +1,120 @@
+package com.aysegulpekel.service.shard;
+
+import com.aysegulpekel.core.CompactGrid;
+import com.aysegulpekel.core.Directions;
+import com.aysegulpekel.logic.AStar;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShardCoordinatorTest {
+
+    private static final int WIDTH = 60;
+    private static final int HEIGHT = 45;
+    private static final int QUERIES = 100;
+
+    @Test
+    public void plansOnOneShard() throws IOException {
+        checkLayout(1, 1, new Random(25));
+    }
+
+    @Test
+    public void stitchesPathsAcrossTwoShards() throws IOException {
+        checkLayout(2, 1, new Random(26));
+    }
+
+    @Test
+    public void stitchesPathsAcrossSixShards() throws IOException {
+        checkLayout(3, 2, new Random(27));
+    }
+
+    // Serves the map from in process workers and compares random queries with A* on the whole map
+    private static void checkLayout(int columns, int rows, Random random) throws IOException {
+        CompactGrid map = new CompactGrid(WIDTH, HEIGHT);
+        for (int index = 0; index < WIDTH * HEIGHT; index++) {
+            map.setObstacle(index, random.nextInt(100) < 20);
+        }
+
+        List<ShardWorker> workers = new ArrayList<ShardWorker>();
+        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+        try {
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    int left = WIDTH * column / columns;
+                    int top = HEIGHT * row / rows;
+                    ShardWorker worker = new ShardWorker(map, left, top,
+                            WIDTH * (column + 1) / columns - left, HEIGHT * (row + 1) / rows - top);
+                    workers.add(worker);
+                    addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), worker.start(0)));
+                }
+            }
+
+            try (ShardCoordinator coordinator = new ShardCoordinator(addresses)) {
+                assertEquals(WIDTH, coordinator.getWidth());
+                assertEquals(HEIGHT, coordinator.getHeight());
+                AStar aStar = new AStar();
+                long shortest = 0;
+                long found = 0;
+                for (int query = 0; query < QUERIES; query++) {
+                    int start = freeCell(map, random);
+                    int goal = freeCell(map, random);
+
+                    int[] expected = aStar.findPath(map, start, goal);
+                    int[] path = coordinator.findPath(start, goal);
+
+                    assertEquals(expected.length == 0, path.length == 0);
+                    if (path.length == 0) {
+                        continue;
+                    }
+                    assertEquals(start, path[0]);
+                    assertEquals(goal, path[path.length - 1]);
+                    int expectedCost = cost(map, expected);
+                    int pathCost = cost(map, path);
+                    assertTrue(pathCost >= expectedCost);
+                    shortest += expectedCost;
+                    found += pathCost;
+                }
+                // Crossing the borders at boundary nodes only costs a few percent in total
+                assertTrue(found + " for shortest paths of " + shortest, found * 100 <= shortest * 110);
+            }
+        } finally {
+            for (ShardWorker worker : workers) {
+                worker.close();
+            }
+        }
+    }
+
+    private static int freeCell(CompactGrid map, Random random) {
+        while (true) {
+            int index = random.nextInt(WIDTH * HEIGHT);
+            if (!map.isObstacle(index)) {
+                return index;
+            }
+        }
+    }
+
+    // Sums the moves' costs, failing on a move the map doesn't allow
+    private static int cost(CompactGrid map, int[] path) {
+        int cost = 0;
+        for (int step = 1; step < path.length; step++) {
+            int dx = path[step] % WIDTH - path[step - 1] % WIDTH;
+            int dy = path[step] / WIDTH - path[step - 1] / WIDTH;
+            assertTrue("Step " + step + " doesn't move to a neighbour", Math.abs(dx) <= 1 && Math.abs(dy) <= 1);
+            int direction = Directions.of(dx, dy);
+            assertTrue("Step " + step + " isn't a move", direction != -1
+                    && (map.getNeighbourMask(path[step - 1]) & 1 << direction) != 0);
+            assertFalse(map.isObstacle(path[step]));
+            cost += Directions.cost(direction);
+        }
+        return cost;
+    }
+}